@@ -0,0 +1,2149 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.AssetReport;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.CopyPath;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeSession.CountingInputStream;
+import com.matthewtamlin.android_utilities.library.helpers.ExtractionReport.ArchiveFormat;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Copies assets to the file system using a bounded pool of background threads. Several assets are
+ * copied at once, and each is streamed through a large buffer so that big assets (such as bundled
+ * models and databases) are copied in few reads and writes. Buffers are reused between assets, so
+ * copying many small assets does not allocate a new buffer for each one.
+ * <p>
+ * Assets which are stored uncompressed in the APK can be opened as file descriptors. These are
+ * copied using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which lets the kernel move the data without copying it through the application. Compressed
+ * assets fall back to stream copying. The path taken by each asset is recorded in the report, and
+ * cumulative counts are available from the copier.
+ * <p>
+ * Assets can also be synchronised incrementally using {@link #sync(AssetManager, File, int,
+ * boolean, String...)}, which records the size, checksum and app version code of each copied asset
+ * in a manifest within the target directory. Assets whose content has not changed since the last
+ * sync are not rewritten, which avoids unnecessary writes to flash storage on every app upgrade.
+ * <p>
+ * Entire asset directories can be copied using {@link #copyDirectory(AssetManager, String, File)}.
+ * Subdirectories are listed and created in parallel, and the files in each directory are copied in
+ * batches so that trees containing thousands of small files are copied efficiently.
+ * <p>
+ * Zip and gzip assets can be decompressed directly into a directory using {@link
+ * #extract(AssetManager, String, File)}, without first copying the archive. Zip archives which are
+ * stored uncompressed in the APK have their entries inflated in parallel straight from the APK,
+ * and other archives are decompressed as a stream in a single pass. The Android build tools
+ * compress zip assets by default, so apps must exclude them from compression to benefit, for
+ * example by adding {@code aaptOptions { noCompress 'zip' }} to the android block of their
+ * build.gradle file.
+ * <p>
+ * Each copy blocks until every asset has been written, and returns a {@link CopyReport} describing
+ * the throughput of each asset and of the copy as a whole. Alternatively, {@link
+ * #copyAsync(AssetManager, File, CopyCallback, String...)} returns immediately with a {@link
+ * PendingCopy} which reports progress to a callback on the main thread and can be cancelled.
+ * <p>
+ * Every file is written to a temporary file which is synced and then renamed over the target, so
+ * targets never hold partial copies, even if a copy fails, is cancelled or the process dies.
+ * Listeners registered via {@link #addCopyListener(AssetCopyListener)} are notified as each asset
+ * is copied, which allows copies to be monitored in production. This class is thread-safe.
+ */
+public class AssetCopier {
+	/**
+	 * The size of the copy buffer used by default, measured in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * The maximum number of threads used by default. Flash storage rarely benefits from more
+	 * concurrent writers than this.
+	 */
+	public static final int DEFAULT_MAX_THREAD_COUNT = 4;
+
+	/**
+	 * The maximum number of files copied by a single task when copying a directory. Batching
+	 * small files reduces the overhead of scheduling a task for each one.
+	 */
+	public static final int FILES_PER_BATCH = 32;
+
+	/**
+	 * The amount of time idle worker threads are kept alive for, measured in seconds.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * The maximum number of bytes moved by each channel transfer when progress is being reported,
+	 * so that progress is reported regularly for large assets.
+	 */
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * The suffix appended to the names of files which are being written.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * The extension of gzip archives, which is removed to name the extracted file.
+	 */
+	private static final String GZIP_EXTENSION = ".gz";
+
+	/**
+	 * The first two bytes of every gzip stream.
+	 */
+	private static final int[] GZIP_MAGIC = {0x1F, 0x8B};
+
+	/**
+	 * The first two bytes of every zip archive.
+	 */
+	private static final int[] ZIP_MAGIC = {'P', 'K'};
+
+	/**
+	 * Makes the names of temporary files unique across concurrent copies.
+	 */
+	private static final AtomicLong tempFileCounter = new AtomicLong();
+
+	/**
+	 * The size of each copy buffer, measured in bytes.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * Copies the assets.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Delivers callbacks to the main thread.
+	 */
+	private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Buffers which are not currently in use. At most one buffer is created per worker thread.
+	 */
+	private final ConcurrentLinkedQueue<byte[]> idleBuffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Whether or not uncompressed assets should be copied using channel transfer.
+	 */
+	private volatile boolean channelTransferEnabled = true;
+
+	/**
+	 * The number of assets copied using channel transfer.
+	 */
+	private final AtomicLong channelTransferCount = new AtomicLong();
+
+	/**
+	 * The number of assets copied using streams.
+	 */
+	private final AtomicLong streamCopyCount = new AtomicLong();
+
+	/**
+	 * The listeners to notify of each copied asset.
+	 */
+	private final CopyOnWriteArrayList<AssetCopyListener> copyListeners =
+			new CopyOnWriteArrayList<>();
+
+	/**
+	 * Constructs a new AssetCopier which uses the default buffer size, and one thread per available
+	 * processor up to {@link #DEFAULT_MAX_THREAD_COUNT}.
+	 */
+	public AssetCopier() {
+		this(DEFAULT_BUFFER_SIZE, Math.min(DEFAULT_MAX_THREAD_COUNT,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Constructs a new AssetCopier.
+	 *
+	 * @param bufferSize
+	 * 		the size of each copy buffer, measured in bytes, greater than zero
+	 * @param threadCount
+	 * 		the maximum number of assets to copy concurrently, greater than zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code bufferSize} is not greater than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code threadCount} is not greater than zero
+	 */
+	public AssetCopier(final int bufferSize, final int threadCount) {
+		this.bufferSize = checkGreaterThan(bufferSize, 0, "bufferSize must be greater than zero.");
+		checkGreaterThan(threadCount, 0, "threadCount must be greater than zero.");
+
+		executor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new CopyThreadFactory());
+
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Copies one or more assets to a directory. Existing files with the same names are
+	 * overwritten. If any asset cannot be copied, the assets which have not yet started are
+	 * abandoned and the exception is rethrown once the running copies have finished.
+	 *
+	 * @param assetManager
+	 * 		provides access to the assets, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the assets to, not null
+	 * @param assets
+	 * 		the names of the assets to copy (including any extensions), not null
+	 *
+	 * @return a report describing the copy, not null
+	 *
+	 * @throws IOException
+	 * 		if an asset cannot be read or written, or the calling thread is interrupted
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assets} is null or contains null
+	 */
+	public CopyReport copy(
+			final AssetManager assetManager,
+			final File targetDirectory,
+			final String... assets)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null.");
+		checkNotNull(assets, "assets cannot be null.");
+
+		for (final String asset : assets) {
+			checkNotNull(asset, "assets cannot contain null.");
+		}
+
+		final long startTime = System.nanoTime();
+		final List<Callable<AssetReport>> tasks = new ArrayList<>(assets.length);
+
+		for (final String asset : assets) {
+			tasks.add(new Callable<AssetReport>() {
+				@Override
+				public AssetReport call() throws IOException {
+					return copyAsset(assetManager, asset, new File(targetDirectory, asset), null);
+				}
+			});
+		}
+
+		final List<AssetReport> reports = invokeAll(tasks);
+
+		return new CopyReport(reports, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Asynchronously copies one or more assets to a directory. The copy is performed on the
+	 * background threads of this copier, and progress is reported to the callback on the main
+	 * thread. The total number of bytes is measured before copying begins. Existing files with the
+	 * same names are overwritten. If any asset cannot be copied, the remaining assets are
+	 * abandoned.
+	 *
+	 * @param assetManager
+	 * 		provides access to the assets, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the assets to, not null
+	 * @param callback
+	 * 		receives progress and the result on the main thread, may be null
+	 * @param assets
+	 * 		the names of the assets to copy (including any extensions), not null
+	 *
+	 * @return the pending copy, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assets} is null or contains null
+	 * @throws RejectedExecutionException
+	 * 		if this copier has been shut down
+	 */
+	public PendingCopy copyAsync(
+			final AssetManager assetManager,
+			final File targetDirectory,
+			final CopyCallback callback,
+			final String... assets) {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null.");
+		checkNotNull(assets, "assets cannot be null.");
+
+		for (final String asset : assets) {
+			checkNotNull(asset, "assets cannot contain null.");
+		}
+
+		final PendingCopy pending = new PendingCopy(assetManager, targetDirectory,
+				assets.clone(), callback);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				pending.start();
+			}
+		});
+
+		return pending;
+	}
+
+	/**
+	 * Copies the assets which are new or have changed since the last sync to a directory. The
+	 * directory holds a manifest recording the size, CRC32 checksum and app version code of each
+	 * asset it has received. An asset is skipped without being read if the manifest shows it was
+	 * copied by the same app version and the target file still has the recorded size. If the app
+	 * version has changed, the asset is read and its checksum compared with the manifest, so that
+	 * unchanged assets are still not rewritten. Assets must not change without the version code
+	 * also changing.
+	 * <p>
+	 * If {@code deleteStale} is true, files which were copied by an earlier sync but are not in the
+	 * supplied list are deleted. Files which were not copied by a sync are never deleted. The
+	 * manifest is only updated if every asset is synced successfully. Concurrent syncs to the same
+	 * directory are not supported.
+	 *
+	 * @param assetManager
+	 * 		provides access to the assets, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the assets to, not null
+	 * @param versionCode
+	 * 		the version code of the app, which must change whenever the assets change
+	 * @param deleteStale
+	 * 		whether or not to delete files copied by earlier syncs which are not in {@code assets}
+	 * @param assets
+	 * 		the names of the assets to sync (including any extensions), not null
+	 *
+	 * @return a report describing the sync, including the bytes written and skipped, not null
+	 *
+	 * @throws IOException
+	 * 		if an asset cannot be read or written, the manifest cannot be saved, or the calling
+	 * 		thread is interrupted
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assets} is null or contains null
+	 */
+	public CopyReport sync(
+			final AssetManager assetManager,
+			final File targetDirectory,
+			final int versionCode,
+			final boolean deleteStale,
+			final String... assets)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null.");
+		checkNotNull(assets, "assets cannot be null.");
+
+		for (final String asset : assets) {
+			checkNotNull(asset, "assets cannot contain null.");
+		}
+
+		final long startTime = System.nanoTime();
+		final AssetManifest manifest = new AssetManifest(targetDirectory);
+		final List<Callable<SyncResult>> tasks = new ArrayList<>(assets.length);
+
+		for (final String asset : assets) {
+			final AssetManifest.Entry previous = manifest.get(asset);
+
+			tasks.add(new Callable<SyncResult>() {
+				@Override
+				public SyncResult call() throws IOException {
+					return syncAsset(assetManager, asset, new File(targetDirectory, asset),
+							previous, versionCode);
+				}
+			});
+		}
+
+		final List<SyncResult> results = invokeAll(tasks);
+		final List<AssetReport> reports = new ArrayList<>(results.size());
+
+		for (final SyncResult result : results) {
+			reports.add(result.report);
+			manifest.put(result.report.getAssetName(), result.entry);
+		}
+
+		final List<String> deletedAssets = new ArrayList<>();
+
+		if (deleteStale) {
+			final Set<String> requested = new HashSet<>(Arrays.asList(assets));
+
+			for (final String asset : manifest.getAssets()) {
+				final File file = new File(targetDirectory, asset);
+
+				if (!requested.contains(asset) && (!file.exists() || file.delete())) {
+					manifest.remove(asset);
+					deletedAssets.add(asset);
+				}
+			}
+		}
+
+		manifest.save();
+
+		return new CopyReport(reports, deletedAssets, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Recursively copies a directory of assets to a directory, preserving the structure of the
+	 * tree. Subdirectories are listed and created in parallel, and the files of each directory
+	 * are copied in batches of up to {@link #FILES_PER_BATCH}. Since the APK does not record empty
+	 * directories, they are not recreated. If any file cannot be copied, the remaining work is
+	 * abandoned and the exception is rethrown once the running tasks have finished.
+	 *
+	 * @param assetManager
+	 * 		provides access to the assets, not null
+	 * @param assetDirectory
+	 * 		the path of the directory within the assets, empty for the root, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the tree to, created if necessary, not null
+	 *
+	 * @return a report describing each copied file (named by its path within the assets), sorted
+	 * by path, not null
+	 *
+	 * @throws IOException
+	 * 		if the tree cannot be listed, a file cannot be read or written, or the calling thread
+	 * 		is interrupted
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetDirectory} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public CopyReport copyDirectory(
+			final AssetManager assetManager,
+			final String assetDirectory,
+			final File targetDirectory)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(assetDirectory, "assetDirectory cannot be null.");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null.");
+
+		final long startTime = System.nanoTime();
+		final TreeCopy treeCopy = new TreeCopy(assetManager);
+
+		treeCopy.submitDirectory(assetDirectory, targetDirectory);
+
+		final List<AssetReport> reports = treeCopy.await();
+
+		Collections.sort(reports, new Comparator<AssetReport>() {
+			@Override
+			public int compare(final AssetReport first, final AssetReport second) {
+				return first.getAssetName().compareTo(second.getAssetName());
+			}
+		});
+
+		return new CopyReport(reports, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Decompresses a zip or gzip asset into a directory, without copying the archive itself. The
+	 * format is detected from the content of the asset. A zip archive is extracted with its
+	 * directory structure preserved, and a gzip archive is extracted to a single file named after
+	 * the asset with any ".gz" extension removed. Existing files with the same names are
+	 * overwritten, and each file is written atomically.
+	 * <p>
+	 * If the archive is a zip archive stored uncompressed in the APK and channel transfer is
+	 * enabled, its central directory is read and its entries are inflated in parallel using
+	 * positional reads from the APK. Otherwise the archive is decompressed as a stream in a single
+	 * pass on the calling thread. Entries which would be written outside the target directory are
+	 * rejected. If any entry cannot be extracted, the entries which have not started are abandoned
+	 * and the exception is rethrown once the running entries have finished.
+	 *
+	 * @param assetManager
+	 * 		provides access to the archive, not null
+	 * @param archiveAsset
+	 * 		the name of the archive asset (including any extensions), not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, created if necessary, not null
+	 *
+	 * @return a report describing the extraction, including the compressed and uncompressed
+	 * throughput, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset is not a supported archive, cannot be read or is corrupt, if a file cannot
+	 * 		be written, or if the calling thread is interrupted
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code archiveAsset} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public ExtractionReport extract(
+			final AssetManager assetManager,
+			final String archiveAsset,
+			final File targetDirectory)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(archiveAsset, "archiveAsset cannot be null.");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null.");
+
+		final long startTime = System.nanoTime();
+
+		createDirectory(targetDirectory);
+
+		final AssetFileDescriptor descriptor = channelTransferEnabled ?
+				openDescriptor(assetManager, archiveAsset) :
+				null;
+
+		if (descriptor != null) {
+			try {
+				final ExtractionReport report = extractInParallel(archiveAsset, descriptor,
+						targetDirectory, startTime);
+
+				if (report != null) {
+					return report;
+				}
+			} finally {
+				closeQuietly(descriptor);
+			}
+		}
+
+		return extractStream(assetManager, archiveAsset, targetDirectory, startTime);
+	}
+
+	/**
+	 * @return the size of each copy buffer, measured in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return the maximum number of assets copied concurrently
+	 */
+	public int getThreadCount() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Sets whether or not uncompressed assets are copied using channel transfer. When disabled,
+	 * all assets are copied using streams. The default is enabled.
+	 *
+	 * @param enabled
+	 * 		true to enable channel transfer, false to disable it
+	 */
+	public void setChannelTransferEnabled(final boolean enabled) {
+		channelTransferEnabled = enabled;
+	}
+
+	/**
+	 * @return true if uncompressed assets are copied using channel transfer, false otherwise
+	 */
+	public boolean isChannelTransferEnabled() {
+		return channelTransferEnabled;
+	}
+
+	/**
+	 * @return the number of assets this copier has copied using channel transfer
+	 */
+	public long getChannelTransferCount() {
+		return channelTransferCount.get();
+	}
+
+	/**
+	 * @return the number of assets this copier has copied using streams
+	 */
+	public long getStreamCopyCount() {
+		return streamCopyCount.get();
+	}
+
+	/**
+	 * Registers a listener to be notified of each asset copied by this copier, including assets
+	 * skipped by a sync. Files extracted from archives are not reported. Registering the same
+	 * listener more than once has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to register, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code listener} is null
+	 */
+	public void addCopyListener(final AssetCopyListener listener) {
+		checkNotNull(listener, "listener cannot be null.");
+
+		copyListeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Unregisters a listener. Unregistering a listener which is not registered has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to unregister, may be null
+	 */
+	public void removeCopyListener(final AssetCopyListener listener) {
+		copyListeners.remove(listener);
+	}
+
+	/**
+	 * Stops accepting new copies. Copies which are already in progress still complete.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Copies a single asset to a file, using channel transfer if the asset is uncompressed and
+	 * channel transfer is enabled. The file is written atomically.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset, not null
+	 * @param targetFile
+	 * 		the file to write to, not null
+	 * @param monitor
+	 * 		notified as data is copied, may be null
+	 *
+	 * @return a report describing the copy, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset cannot be read, the file cannot be written, or the monitor cancels the copy
+	 */
+	private AssetReport copyAsset(
+			final AssetManager assetManager,
+			final String asset,
+			final File targetFile,
+			final ProgressMonitor monitor)
+			throws IOException {
+
+		final long startTime = System.nanoTime();
+		final AssetFileDescriptor descriptor = channelTransferEnabled ?
+				openDescriptor(assetManager, asset) :
+				null;
+		final InputStream in = descriptor == null ?
+				assetManager.open(asset, AssetManager.ACCESS_STREAMING) :
+				null;
+
+		try {
+			final long bytesCopied = writeAtomically(targetFile, new ContentWriter() {
+				@Override
+				public long writeTo(final FileOutputStream out) throws IOException {
+					return descriptor == null ?
+							copyStream(in, out, monitor) :
+							transfer(descriptor, out.getChannel(), monitor);
+				}
+			});
+
+			if (descriptor == null) {
+				streamCopyCount.incrementAndGet();
+			} else {
+				channelTransferCount.incrementAndGet();
+			}
+
+			final AssetReport report = new AssetReport(asset, bytesCopied,
+					System.nanoTime() - startTime,
+					descriptor == null ? CopyPath.STREAM : CopyPath.CHANNEL_TRANSFER);
+
+			notifyListeners(report);
+
+			return report;
+		} finally {
+			if (descriptor == null) {
+				closeQuietly(in);
+			} else {
+				closeQuietly(descriptor);
+			}
+		}
+	}
+
+	/**
+	 * Extracts the entries of a zip archive in parallel, if the region described by a descriptor
+	 * holds a supported zip archive.
+	 *
+	 * @param archiveAsset
+	 * 		the name of the archive asset, not null
+	 * @param descriptor
+	 * 		describes the region of the APK holding the asset, not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, not null
+	 * @param startTime
+	 * 		the time at which the extraction started, as returned by {@link System#nanoTime()}
+	 *
+	 * @return a report describing the extraction, or null if the region does not hold a zip archive
+	 * which can be extracted in parallel
+	 *
+	 * @throws IOException
+	 * 		if the archive cannot be read or is corrupt, if a file cannot be written, or if the
+	 * 		calling thread is interrupted
+	 */
+	private ExtractionReport extractInParallel(
+			final String archiveAsset,
+			final AssetFileDescriptor descriptor,
+			final File targetDirectory,
+			final long startTime)
+			throws IOException {
+
+		// The stream does not own the descriptor, so it is not closed here
+		final FileChannel channel = new FileInputStream(descriptor.getFileDescriptor())
+				.getChannel();
+		final ZipArchive archive = new ZipArchive(channel, descriptor.getStartOffset(),
+				descriptor.getLength());
+		final List<ZipArchive.Entry> entries = archive.readEntries();
+
+		if (entries == null) {
+			return null;
+		}
+
+		final String canonicalTarget = targetDirectory.getCanonicalPath();
+		final List<String> extractedFiles = new ArrayList<>(entries.size());
+		final List<Callable<Long>> tasks = new ArrayList<>(entries.size());
+		long compressedBytes = 0;
+
+		for (final ZipArchive.Entry entry : entries) {
+			final File file = resolveEntry(targetDirectory, canonicalTarget, entry.name);
+
+			if (entry.isDirectory()) {
+				createDirectory(file);
+				continue;
+			}
+
+			createDirectory(file.getParentFile());
+			extractedFiles.add(entry.name);
+			compressedBytes += entry.compressedSize;
+
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					return extractEntry(archive, entry, file);
+				}
+			});
+		}
+
+		long uncompressedBytes = 0;
+
+		for (final Long size : invokeAll(tasks)) {
+			uncompressedBytes += size;
+		}
+
+		return new ExtractionReport(archiveAsset, ArchiveFormat.ZIP, extractedFiles,
+				compressedBytes, uncompressedBytes, System.nanoTime() - startTime, true);
+	}
+
+	/**
+	 * Extracts a single zip entry to a file using pooled buffers. The file is written atomically.
+	 *
+	 * @param archive
+	 * 		the archive containing the entry, not null
+	 * @param entry
+	 * 		the entry to extract, not null
+	 * @param file
+	 * 		the file to write to, not null
+	 *
+	 * @return the number of bytes written
+	 *
+	 * @throws IOException
+	 * 		if the entry cannot be read or is corrupt, or the file cannot be written
+	 */
+	private long extractEntry(
+			final ZipArchive archive,
+			final ZipArchive.Entry entry,
+			final File file)
+			throws IOException {
+
+		final byte[] inputBuffer = acquireBuffer();
+		final byte[] outputBuffer = acquireBuffer();
+
+		try {
+			return writeAtomically(file, new ContentWriter() {
+				@Override
+				public long writeTo(final FileOutputStream out) throws IOException {
+					return archive.extract(entry, out, inputBuffer, outputBuffer);
+				}
+			});
+		} finally {
+			idleBuffers.offer(inputBuffer);
+			idleBuffers.offer(outputBuffer);
+		}
+	}
+
+	/**
+	 * Decompresses an archive asset as a stream in a single pass on the calling thread.
+	 *
+	 * @param assetManager
+	 * 		provides access to the archive, not null
+	 * @param archiveAsset
+	 * 		the name of the archive asset, not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, not null
+	 * @param startTime
+	 * 		the time at which the extraction started, as returned by {@link System#nanoTime()}
+	 *
+	 * @return a report describing the extraction, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset is not a supported archive, cannot be read or is corrupt, or if a file
+	 * 		cannot be written
+	 */
+	private ExtractionReport extractStream(
+			final AssetManager assetManager,
+			final String archiveAsset,
+			final File targetDirectory,
+			final long startTime)
+			throws IOException {
+
+		// Counts the compressed bytes, and allows the format to be detected without reopening
+		final CountingInputStream in = new CountingInputStream(assetManager.open(archiveAsset,
+				AssetManager.ACCESS_STREAMING));
+
+		try {
+			in.mark(GZIP_MAGIC.length);
+			final int first = in.read();
+			final int second = in.read();
+			in.reset();
+
+			if (first == GZIP_MAGIC[0] && second == GZIP_MAGIC[1]) {
+				return extractGzipStream(archiveAsset, in, targetDirectory, startTime);
+			} else if (first == ZIP_MAGIC[0] && second == ZIP_MAGIC[1]) {
+				return extractZipStream(archiveAsset, in, targetDirectory, startTime);
+			} else {
+				throw new ZipException(archiveAsset + " is not a zip or gzip archive.");
+			}
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Decompresses a gzip stream to a single file.
+	 *
+	 * @param archiveAsset
+	 * 		the name of the archive asset, not null
+	 * @param in
+	 * 		the stream to read the archive from, not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, not null
+	 * @param startTime
+	 * 		the time at which the extraction started, as returned by {@link System#nanoTime()}
+	 *
+	 * @return a report describing the extraction, not null
+	 *
+	 * @throws IOException
+	 * 		if the stream cannot be read or is corrupt, or the file cannot be written
+	 */
+	private ExtractionReport extractGzipStream(
+			final String archiveAsset,
+			final CountingInputStream in,
+			final File targetDirectory,
+			final long startTime)
+			throws IOException {
+
+		final String archiveFileName = archiveAsset.substring(archiveAsset.lastIndexOf('/') + 1);
+		final String fileName = archiveFileName.endsWith(GZIP_EXTENSION) ?
+				archiveFileName.substring(0, archiveFileName.length() - GZIP_EXTENSION.length()) :
+				archiveFileName;
+
+		final long uncompressedBytes = writeAtomically(new File(targetDirectory, fileName),
+				new ContentWriter() {
+					@Override
+					public long writeTo(final FileOutputStream out) throws IOException {
+						// The underlying stream is closed by the caller
+						return copyStream(new GZIPInputStream(in, DecodeSession.BUFFER_SIZE), out,
+								null);
+					}
+				});
+
+		return new ExtractionReport(archiveAsset, ArchiveFormat.GZIP,
+				Collections.singletonList(fileName), in.getCount(), uncompressedBytes,
+				System.nanoTime() - startTime, false);
+	}
+
+	/**
+	 * Decompresses a zip stream entry by entry.
+	 *
+	 * @param archiveAsset
+	 * 		the name of the archive asset, not null
+	 * @param in
+	 * 		the stream to read the archive from, not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, not null
+	 * @param startTime
+	 * 		the time at which the extraction started, as returned by {@link System#nanoTime()}
+	 *
+	 * @return a report describing the extraction, not null
+	 *
+	 * @throws IOException
+	 * 		if the stream cannot be read or is corrupt, or a file cannot be written
+	 */
+	private ExtractionReport extractZipStream(
+			final String archiveAsset,
+			final CountingInputStream in,
+			final File targetDirectory,
+			final long startTime)
+			throws IOException {
+
+		final String canonicalTarget = targetDirectory.getCanonicalPath();
+		final ZipInputStream zip = new ZipInputStream(in);
+		final List<String> extractedFiles = new ArrayList<>();
+		long uncompressedBytes = 0;
+		ZipEntry entry;
+
+		while ((entry = zip.getNextEntry()) != null) {
+			final File file = resolveEntry(targetDirectory, canonicalTarget, entry.getName());
+
+			if (entry.isDirectory()) {
+				createDirectory(file);
+				continue;
+			}
+
+			createDirectory(file.getParentFile());
+
+			uncompressedBytes += writeAtomically(file, new ContentWriter() {
+				@Override
+				public long writeTo(final FileOutputStream out) throws IOException {
+					// Reads until the end of the current entry
+					return copyStream(zip, out, null);
+				}
+			});
+
+			extractedFiles.add(entry.getName());
+		}
+
+		return new ExtractionReport(archiveAsset, ArchiveFormat.ZIP, extractedFiles,
+				in.getCount(), uncompressedBytes, System.nanoTime() - startTime, false);
+	}
+
+	/**
+	 * Syncs a single asset, copying it only if the target does not already hold the same content.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset, not null
+	 * @param targetFile
+	 * 		the file to write to, not null
+	 * @param previous
+	 * 		the manifest entry recorded by the last sync, null if there is none
+	 * @param versionCode
+	 * 		the version code of the app
+	 *
+	 * @return the result of the sync, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset cannot be read or the file cannot be written
+	 */
+	private SyncResult syncAsset(
+			final AssetManager assetManager,
+			final String asset,
+			final File targetFile,
+			final AssetManifest.Entry previous,
+			final int versionCode)
+			throws IOException {
+
+		final long startTime = System.nanoTime();
+		final boolean targetIntact = previous != null &&
+				targetFile.isFile() &&
+				targetFile.length() == previous.size;
+
+		if (targetIntact) {
+			AssetManifest.Entry current = null;
+
+			if (previous.versionCode == versionCode) {
+				current = previous;
+			} else {
+				final AssetManifest.Entry checksum = checksum(assetManager.open(asset,
+						AssetManager.ACCESS_STREAMING), versionCode);
+
+				if (checksum.size == previous.size && checksum.crc == previous.crc) {
+					current = checksum;
+				}
+			}
+
+			if (current != null) {
+				final AssetReport report = new AssetReport(asset, 0, current.size,
+						System.nanoTime() - startTime, CopyPath.SKIPPED);
+
+				notifyListeners(report);
+
+				return new SyncResult(report, current);
+			}
+		}
+
+		final AssetReport report = copyAsset(assetManager, asset, targetFile, null);
+
+		// Reading back the file verifies what was written, and is usually served from memory
+		final AssetManifest.Entry entry = checksum(new FileInputStream(targetFile), versionCode);
+
+		return new SyncResult(report, entry);
+	}
+
+	/**
+	 * Notifies the registered listeners of a copied asset.
+	 *
+	 * @param report
+	 * 		describes the copy, not null
+	 */
+	private void notifyListeners(final AssetReport report) {
+		for (final AssetCopyListener listener : copyListeners) {
+			listener.onAssetCopied(report);
+		}
+	}
+
+	/**
+	 * Reads and closes a stream, calculating the size and CRC32 checksum of its contents.
+	 *
+	 * @param in
+	 * 		the stream to read, not null
+	 * @param versionCode
+	 * 		the version code to record in the entry
+	 *
+	 * @return a manifest entry describing the contents of the stream, not null
+	 *
+	 * @throws IOException
+	 * 		if the stream cannot be read
+	 */
+	private AssetManifest.Entry checksum(final InputStream in, final int versionCode)
+			throws IOException {
+
+		final byte[] buffer = acquireBuffer();
+
+		try {
+			final CRC32 crc = new CRC32();
+			long size = 0;
+			int count;
+
+			while ((count = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, count);
+				size += count;
+			}
+
+			return new AssetManifest.Entry(size, crc.getValue(), versionCode);
+		} finally {
+			idleBuffers.offer(buffer);
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes a file atomically. The content is written to a temporary file which is synced and
+	 * then renamed over the target, so the target never holds partial content. If writing fails,
+	 * the temporary file is deleted.
+	 *
+	 * @param targetFile
+	 * 		the file to write, not null
+	 * @param writer
+	 * 		writes the content, not null
+	 *
+	 * @return the number of bytes written
+	 *
+	 * @throws IOException
+	 * 		if the content cannot be written, or the temporary file cannot be renamed
+	 */
+	private static long writeAtomically(final File targetFile, final ContentWriter writer)
+			throws IOException {
+
+		final File tempFile = new File(targetFile.getPath() + "." +
+				tempFileCounter.incrementAndGet() + TEMP_SUFFIX);
+		boolean renamed = false;
+
+		try {
+			final long bytesWritten;
+			final FileOutputStream out = new FileOutputStream(tempFile);
+
+			try {
+				bytesWritten = writer.writeTo(out);
+				out.getFD().sync();
+			} finally {
+				// Failing to close the output may mean the data was not written
+				out.close();
+			}
+
+			// Renaming within a directory is atomic, so readers see either the old or new file
+			if (!tempFile.renameTo(targetFile)) {
+				throw new IOException("Could not rename " + tempFile + " to " + targetFile + ".");
+			}
+
+			renamed = true;
+
+			return bytesWritten;
+		} finally {
+			if (!renamed) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Creates a directory and any missing parents, unless it already exists.
+	 *
+	 * @param directory
+	 * 		the directory to create, not null
+	 *
+	 * @throws IOException
+	 * 		if the directory cannot be created
+	 */
+	private static void createDirectory(final File directory) throws IOException {
+		// Another thread may create the directory concurrently, which causes mkdirs to fail
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create directory " + directory + ".");
+		}
+	}
+
+	/**
+	 * Resolves the path of an archive entry against a directory, and rejects paths which would
+	 * escape the directory (for example by using "..").
+	 *
+	 * @param directory
+	 * 		the directory to resolve against, not null
+	 * @param canonicalDirectory
+	 * 		the canonical path of {@code directory}, not null
+	 * @param entryName
+	 * 		the path of the entry within the archive, not null
+	 *
+	 * @return the file for the entry, not null
+	 *
+	 * @throws IOException
+	 * 		if the entry would be written outside the directory
+	 */
+	private static File resolveEntry(
+			final File directory,
+			final String canonicalDirectory,
+			final String entryName)
+			throws IOException {
+
+		final File file = new File(directory, entryName);
+
+		if (!file.getCanonicalPath().startsWith(canonicalDirectory + File.separator)) {
+			throw new ZipException("Entry " + entryName + " is outside the target directory.");
+		}
+
+		return file;
+	}
+
+	/**
+	 * Opens an asset as a file descriptor.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset, not null
+	 *
+	 * @return the descriptor, or null if the asset is compressed or does not exist
+	 */
+	private static AssetFileDescriptor openDescriptor(
+			final AssetManager assetManager,
+			final String asset) {
+
+		final AssetFileDescriptor descriptor;
+
+		try {
+			descriptor = assetManager.openFd(asset);
+		} catch (final IOException e) {
+			// Thrown for compressed assets, and for missing assets which the stream path reports
+			return null;
+		}
+
+		if (descriptor.getLength() == AssetFileDescriptor.UNKNOWN_LENGTH) {
+			closeQuietly(descriptor);
+			return null;
+		}
+
+		return descriptor;
+	}
+
+	/**
+	 * Measures the uncompressed size of an asset without reading its contents. The size of an
+	 * uncompressed asset is taken from its descriptor, and the size of a compressed asset is taken
+	 * from the number of bytes available in a new stream, which the asset manager reports as the
+	 * full length of the asset.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset, not null
+	 *
+	 * @return the size of the asset, measured in bytes, or zero if it cannot be opened
+	 */
+	private static long measure(final AssetManager assetManager, final String asset) {
+		final AssetFileDescriptor descriptor = openDescriptor(assetManager, asset);
+
+		if (descriptor != null) {
+			try {
+				return descriptor.getLength();
+			} finally {
+				closeQuietly(descriptor);
+			}
+		}
+
+		InputStream in = null;
+
+		try {
+			in = assetManager.open(asset, AssetManager.ACCESS_STREAMING);
+			return in.available();
+		} catch (final IOException e) {
+			// The failure is reported when the asset is copied
+			return 0;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Transfers the region of the APK described by an asset descriptor to a channel. Positional
+	 * transfers are used because every descriptor for the APK may share the same file offset, so
+	 * seeking would not be safe while other assets are copied concurrently. If a monitor is
+	 * supplied, the region is transferred in chunks so that the monitor is notified regularly.
+	 *
+	 * @param descriptor
+	 * 		describes the region to transfer, not null
+	 * @param target
+	 * 		the channel to write to, not null
+	 * @param monitor
+	 * 		notified as data is transferred, may be null
+	 *
+	 * @return the number of bytes transferred
+	 *
+	 * @throws IOException
+	 * 		if the region cannot be read, the channel cannot be written, or the monitor cancels the
+	 * 		transfer
+	 */
+	private static long transfer(
+			final AssetFileDescriptor descriptor,
+			final FileChannel target,
+			final ProgressMonitor monitor)
+			throws IOException {
+
+		// The stream does not own the descriptor, so it is not closed here
+		final FileChannel source = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+		final long start = descriptor.getStartOffset();
+		final long length = descriptor.getLength();
+		long transferred = 0;
+
+		while (transferred < length) {
+			final long remaining = length - transferred;
+			final long count = source.transferTo(start + transferred,
+					monitor == null ? remaining : Math.min(remaining, TRANSFER_CHUNK_SIZE), target);
+
+			if (count <= 0) {
+				throw new EOFException("Asset ended after " + transferred + " of " + length +
+						" bytes.");
+			}
+
+			transferred += count;
+
+			if (monitor != null) {
+				monitor.onBytesCopied(count);
+			}
+		}
+
+		return transferred;
+	}
+
+	/**
+	 * Copies all data from one stream to another using a pooled buffer.
+	 *
+	 * @param in
+	 * 		the stream to read from, not null
+	 * @param out
+	 * 		the stream to write to, not null
+	 * @param monitor
+	 * 		notified as data is copied, may be null
+	 *
+	 * @return the number of bytes copied
+	 *
+	 * @throws IOException
+	 * 		if the data cannot be read or written, or the monitor cancels the copy
+	 */
+	private long copyStream(
+			final InputStream in,
+			final OutputStream out,
+			final ProgressMonitor monitor)
+			throws IOException {
+
+		final byte[] buffer = acquireBuffer();
+
+		try {
+			long total = 0;
+			int count;
+
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+				total += count;
+
+				if (monitor != null) {
+					monitor.onBytesCopied(count);
+				}
+			}
+
+			return total;
+		} finally {
+			idleBuffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * @return an idle buffer, or a new buffer if none are idle
+	 */
+	private byte[] acquireBuffer() {
+		final byte[] buffer = idleBuffers.poll();
+
+		return buffer == null ? new byte[bufferSize] : buffer;
+	}
+
+	/**
+	 * Runs a set of copies on the background threads and waits for them to complete. If any copy
+	 * fails, the copies which have not started are skipped and the first failure is rethrown once
+	 * every copy which did start has finished, so that no files are written after returning.
+	 * Completion is tracked separately from the futures of the executor, since cancelling a future
+	 * does not wait for its task to stop.
+	 *
+	 * @param tasks
+	 * 		the copies to run, not null
+	 *
+	 * @return the results of the copies, in the same order as the tasks
+	 *
+	 * @throws IOException
+	 * 		if any copy failed, or the calling thread was interrupted
+	 */
+	private <T> List<T> invokeAll(final List<Callable<T>> tasks) throws IOException {
+		final List<T> results = new ArrayList<>(Collections.<T>nCopies(tasks.size(), null));
+		final CountDownLatch completionLatch = new CountDownLatch(tasks.size());
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		for (int i = 0; i < tasks.size(); i++) {
+			final int index = i;
+			final Callable<T> task = tasks.get(i);
+
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (!aborted.get()) {
+								results.set(index, task.call());
+							}
+						} catch (final Throwable t) {
+							failure.compareAndSet(null, t);
+							aborted.set(true);
+						} finally {
+							completionLatch.countDown();
+						}
+					}
+				});
+			} catch (final RejectedExecutionException e) {
+				// The copier was shut down, so the remaining copies will never run
+				failure.compareAndSet(null, e);
+				aborted.set(true);
+
+				for (int j = i; j < tasks.size(); j++) {
+					completionLatch.countDown();
+				}
+
+				break;
+			}
+		}
+
+		boolean interrupted = false;
+
+		while (true) {
+			try {
+				completionLatch.await();
+				break;
+			} catch (final InterruptedException e) {
+				// Skip the copies which have not started, but let running copies finish
+				interrupted = true;
+				aborted.set(true);
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while copying assets.");
+		}
+
+		rethrow(failure.get());
+
+		return results;
+	}
+
+	/**
+	 * Rethrows the failure of a copy task.
+	 *
+	 * @param failure
+	 * 		the failure, may be null
+	 *
+	 * @throws IOException
+	 * 		if the failure is an IOException, or is a checked exception of another type
+	 */
+	private static void rethrow(final Throwable failure) throws IOException {
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	/**
+	 * Closes a stream, ignoring any exception.
+	 *
+	 * @param stream
+	 * 		the stream to close, may be null
+	 */
+	private static void closeQuietly(final InputStream stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				// The data has already been read
+			}
+		}
+	}
+
+	/**
+	 * Closes an asset descriptor, ignoring any exception.
+	 *
+	 * @param descriptor
+	 * 		the descriptor to close, not null
+	 */
+	private static void closeQuietly(final AssetFileDescriptor descriptor) {
+		try {
+			descriptor.close();
+		} catch (final IOException e) {
+			// Nothing useful can be done
+		}
+	}
+
+	/**
+	 * A recursive copy of an asset directory. Each task lists one directory or copies one batch of
+	 * files, and may submit further tasks. Completion is tracked by counting the pending tasks
+	 * rather than waiting on them from within the pool, so that the bounded pool cannot deadlock.
+	 */
+	private final class TreeCopy {
+		private final AssetManager assetManager;
+
+		/**
+		 * Guards the fields below, and is notified when the last pending task completes.
+		 */
+		private final Object lock = new Object();
+
+		/**
+		 * The reports for the files copied so far. Guarded by {@link #lock}.
+		 */
+		private final List<AssetReport> reports = new ArrayList<>();
+
+		/**
+		 * The number of tasks which have been submitted but have not completed. Guarded by {@link
+		 * #lock}.
+		 */
+		private int pendingTaskCount;
+
+		/**
+		 * The first failure, or null if no task has failed. Once set, queued tasks do nothing.
+		 * Guarded by {@link #lock}.
+		 */
+		private Throwable failure;
+
+		private TreeCopy(final AssetManager assetManager) {
+			this.assetManager = assetManager;
+		}
+
+		/**
+		 * Submits a task which lists a directory, creates its target directory, and submits tasks
+		 * to copy its contents.
+		 *
+		 * @param assetDirectory
+		 * 		the path of the directory within the assets, not null
+		 * @param targetDirectory
+		 * 		the directory to copy the contents to, not null
+		 */
+		private void submitDirectory(final String assetDirectory, final File targetDirectory) {
+			submit(new Task() {
+				@Override
+				public void run() throws IOException {
+					copyDirectoryContents(assetDirectory, targetDirectory);
+				}
+			});
+		}
+
+		/**
+		 * Lists a directory, creates its target directory, and submits tasks for its
+		 * subdirectories and batches of its files.
+		 *
+		 * @param assetDirectory
+		 * 		the path of the directory within the assets, not null
+		 * @param targetDirectory
+		 * 		the directory to copy the contents to, not null
+		 *
+		 * @throws IOException
+		 * 		if the directory cannot be listed or created
+		 */
+		private void copyDirectoryContents(final String assetDirectory, final File targetDirectory)
+				throws IOException {
+
+			final String[] children = assetManager.list(assetDirectory);
+
+			createDirectory(targetDirectory);
+
+			if (children == null) {
+				return;
+			}
+
+			final List<String> batch = new ArrayList<>(FILES_PER_BATCH);
+
+			for (final String child : children) {
+				final String childPath = assetDirectory.isEmpty() ?
+						child :
+						assetDirectory + "/" + child;
+				final String[] grandchildren = assetManager.list(childPath);
+
+				// The asset manager lists files as empty directories
+				if (grandchildren != null && grandchildren.length > 0) {
+					submitDirectory(childPath, new File(targetDirectory, child));
+				} else {
+					batch.add(childPath);
+
+					if (batch.size() == FILES_PER_BATCH) {
+						submitBatch(new ArrayList<>(batch), targetDirectory);
+						batch.clear();
+					}
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				submitBatch(batch, targetDirectory);
+			}
+		}
+
+		/**
+		 * Submits a task which copies a batch of files from the same directory.
+		 *
+		 * @param assetPaths
+		 * 		the paths of the files within the assets, not null
+		 * @param targetDirectory
+		 * 		the directory to copy the files to, not null
+		 */
+		private void submitBatch(final List<String> assetPaths, final File targetDirectory) {
+			submit(new Task() {
+				@Override
+				public void run() throws IOException {
+					for (final String assetPath : assetPaths) {
+						final String name = assetPath.substring(assetPath.lastIndexOf('/') + 1);
+						final AssetReport report = copyAsset(assetManager, assetPath,
+								new File(targetDirectory, name), null);
+
+						synchronized (lock) {
+							reports.add(report);
+						}
+					}
+				}
+			});
+		}
+
+		/**
+		 * Submits a task to the pool, unless an earlier task has failed.
+		 *
+		 * @param task
+		 * 		the task to submit, not null
+		 */
+		private void submit(final Task task) {
+			synchronized (lock) {
+				if (failure != null) {
+					return;
+				}
+
+				pendingTaskCount++;
+			}
+
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							synchronized (lock) {
+								if (failure != null) {
+									return;
+								}
+							}
+
+							task.run();
+						} catch (final Throwable e) {
+							fail(e);
+						} finally {
+							completeTask();
+						}
+					}
+				});
+			} catch (final RejectedExecutionException e) {
+				fail(e);
+				completeTask();
+			}
+		}
+
+		/**
+		 * Records a failure, unless one has already been recorded.
+		 *
+		 * @param e
+		 * 		the failure, not null
+		 */
+		private void fail(final Throwable e) {
+			synchronized (lock) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+
+		/**
+		 * Records the completion of a task, and wakes the waiting thread if it was the last.
+		 */
+		private void completeTask() {
+			synchronized (lock) {
+				pendingTaskCount--;
+
+				if (pendingTaskCount == 0) {
+					lock.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Blocks until every task has completed. If the calling thread is interrupted, the
+		 * remaining tasks are abandoned and an exception is thrown once the running tasks finish.
+		 *
+		 * @return the reports for the copied files, not null
+		 *
+		 * @throws IOException
+		 * 		if any task failed, or the calling thread was interrupted
+		 */
+		private List<AssetReport> await() throws IOException {
+			boolean interrupted = false;
+
+			synchronized (lock) {
+				while (pendingTaskCount > 0) {
+					try {
+						lock.wait();
+					} catch (final InterruptedException e) {
+						interrupted = true;
+
+						if (failure == null) {
+							failure = new InterruptedIOException(
+									"Interrupted while copying assets.");
+						}
+					}
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			rethrow(failure);
+
+			return new ArrayList<>(reports);
+		}
+	}
+
+	/**
+	 * An asynchronous copy of a set of assets. The result can be obtained using the methods of the
+	 * {@link Future} interface, and progress can be polled or received through a {@link
+	 * CopyCallback}.
+	 */
+	public final class PendingCopy implements Future<CopyReport> {
+		private final AssetManager assetManager;
+
+		private final File targetDirectory;
+
+		private final String[] assets;
+
+		private final CopyCallback callback;
+
+		/**
+		 * The reports for the copied assets, indexed in the same order as {@link #assets}.
+		 */
+		private final AssetReport[] reports;
+
+		/**
+		 * Released once every task has stopped.
+		 */
+		private final CountDownLatch terminationLatch = new CountDownLatch(1);
+
+		/**
+		 * The number of copy tasks which have not yet stopped.
+		 */
+		private final AtomicInteger pendingTaskCount = new AtomicInteger();
+
+		private final AtomicLong bytesCopied = new AtomicLong();
+
+		private final AtomicInteger filesCopied = new AtomicInteger();
+
+		/**
+		 * Whether or not a progress notification is waiting to be delivered. Further notifications
+		 * are not posted until it has run, so that the main thread is not flooded.
+		 */
+		private final AtomicBoolean progressPosted = new AtomicBoolean();
+
+		/**
+		 * The total size of the assets, measured in bytes. Negative until measured.
+		 */
+		private volatile long totalBytes = -1;
+
+		private volatile long startTime;
+
+		private volatile boolean cancelled;
+
+		private volatile boolean done;
+
+		private volatile Throwable failure;
+
+		private volatile CopyReport result;
+
+		/**
+		 * Records the bytes copied, and stops running copies once the copy is cancelled.
+		 */
+		private final ProgressMonitor monitor = new ProgressMonitor() {
+			@Override
+			public void onBytesCopied(final long count) throws IOException {
+				if (cancelled) {
+					throw new InterruptedIOException("Copy was cancelled.");
+				}
+
+				bytesCopied.addAndGet(count);
+				postProgress();
+			}
+		};
+
+		private PendingCopy(
+				final AssetManager assetManager,
+				final File targetDirectory,
+				final String[] assets,
+				final CopyCallback callback) {
+
+			this.assetManager = assetManager;
+			this.targetDirectory = targetDirectory;
+			this.assets = assets;
+			this.callback = callback;
+			this.reports = new AssetReport[assets.length];
+		}
+
+		/**
+		 * Cancels the copy. Assets which have not started are abandoned, and assets which are
+		 * being copied stop at the next buffer and have their temporary files deleted. Assets
+		 * which have already been copied are kept. No further callbacks are delivered.
+		 *
+		 * @param mayInterruptIfRunning
+		 * 		ignored, running copies always stop at the next buffer
+		 *
+		 * @return true if the copy was cancelled, false if it had already finished or been
+		 * cancelled
+		 */
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			synchronized (this) {
+				if (done || cancelled) {
+					return false;
+				}
+
+				cancelled = true;
+			}
+
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done || cancelled;
+		}
+
+		@Override
+		public CopyReport get() throws InterruptedException, ExecutionException {
+			if (!cancelled) {
+				terminationLatch.await();
+			}
+
+			return getResult();
+		}
+
+		@Override
+		public CopyReport get(final long timeout, final TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+
+			if (!cancelled && !terminationLatch.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+
+			return getResult();
+		}
+
+		/**
+		 * Blocks until every background task of this copy has stopped, including the cleanup of
+		 * temporary files after cancellation.
+		 *
+		 * @param timeout
+		 * 		the maximum time to wait
+		 * @param unit
+		 * 		the unit of {@code timeout}, not null
+		 *
+		 * @return true if the tasks stopped, false if the timeout elapsed first
+		 *
+		 * @throws InterruptedException
+		 * 		if the calling thread is interrupted while waiting
+		 */
+		public boolean awaitTermination(final long timeout, final TimeUnit unit)
+				throws InterruptedException {
+
+			return terminationLatch.await(timeout, unit);
+		}
+
+		/**
+		 * @return the number of bytes copied so far
+		 */
+		public long getBytesCopied() {
+			return bytesCopied.get();
+		}
+
+		/**
+		 * @return the total size of the assets, measured in bytes, or -1 if it has not yet been
+		 * measured
+		 */
+		public long getTotalBytes() {
+			return totalBytes;
+		}
+
+		/**
+		 * @return the number of assets copied so far
+		 */
+		public int getFilesCopied() {
+			return filesCopied.get();
+		}
+
+		/**
+		 * @return the total number of assets to copy
+		 */
+		public int getTotalFiles() {
+			return assets.length;
+		}
+
+		/**
+		 * Measures the assets and submits a task to copy each one.
+		 */
+		private void start() {
+			startTime = System.nanoTime();
+
+			long total = 0;
+
+			for (final String asset : assets) {
+				if (cancelled) {
+					break;
+				}
+
+				total += measure(assetManager, asset);
+			}
+
+			totalBytes = total;
+			postProgress();
+
+			if (assets.length == 0) {
+				finish();
+				return;
+			}
+
+			pendingTaskCount.set(assets.length);
+
+			for (int i = 0; i < assets.length; i++) {
+				final int index = i;
+
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							copy(index);
+						}
+					});
+				} catch (final RejectedExecutionException e) {
+					failure = e;
+
+					// Account for the tasks which will never run
+					if (pendingTaskCount.addAndGet(index - assets.length) == 0) {
+						finish();
+					}
+
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Copies a single asset, unless the copy has been cancelled or has failed.
+		 *
+		 * @param index
+		 * 		the index of the asset
+		 */
+		private void copy(final int index) {
+			try {
+				if (!cancelled && failure == null) {
+					final String asset = assets[index];
+
+					reports[index] = copyAsset(assetManager, asset,
+							new File(targetDirectory, asset), monitor);
+
+					filesCopied.incrementAndGet();
+					postProgress();
+				}
+			} catch (final Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			} finally {
+				if (pendingTaskCount.decrementAndGet() == 0) {
+					finish();
+				}
+			}
+		}
+
+		/**
+		 * Records the outcome of the copy and notifies the callback.
+		 */
+		private void finish() {
+			synchronized (this) {
+				if (!cancelled && failure == null) {
+					result = new CopyReport(Arrays.asList(reports),
+							System.nanoTime() - startTime);
+				}
+
+				done = true;
+			}
+
+			terminationLatch.countDown();
+
+			if (callback != null && !cancelled) {
+				mainThreadHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (cancelled) {
+							return;
+						}
+
+						if (result != null) {
+							callback.onCopyComplete(result);
+						} else {
+							callback.onCopyFailed(failure instanceof IOException ?
+									(IOException) failure :
+									new IOException(failure));
+						}
+					}
+				});
+			}
+		}
+
+		/**
+		 * Posts a progress notification to the main thread, unless one is already waiting.
+		 */
+		private void postProgress() {
+			if (callback == null || !progressPosted.compareAndSet(false, true)) {
+				return;
+			}
+
+			mainThreadHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					progressPosted.set(false);
+
+					if (!cancelled) {
+						callback.onProgress(bytesCopied.get(), totalBytes, filesCopied.get(),
+								assets.length);
+					}
+				}
+			});
+		}
+
+		private CopyReport getResult() throws ExecutionException {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Receives the progress and results of asynchronous copies on the main thread.
+	 */
+	public interface CopyCallback {
+		/**
+		 * Invoked on the main thread as the copy progresses. Notifications may be coalesced, so
+		 * not every change is reported.
+		 *
+		 * @param bytesCopied
+		 * 		the number of bytes copied so far
+		 * @param totalBytes
+		 * 		the total size of the assets, measured in bytes, or -1 if it has not yet been
+		 * 		measured
+		 * @param filesCopied
+		 * 		the number of assets copied so far
+		 * @param totalFiles
+		 * 		the total number of assets to copy
+		 */
+		void onProgress(long bytesCopied, long totalBytes, int filesCopied, int totalFiles);
+
+		/**
+		 * Invoked on the main thread when every asset has been copied, unless the copy was
+		 * cancelled first.
+		 *
+		 * @param report
+		 * 		describes the copy, not null
+		 */
+		void onCopyComplete(CopyReport report);
+
+		/**
+		 * Invoked on the main thread when the copy fails, unless it was cancelled first.
+		 *
+		 * @param e
+		 * 		the cause of the failure, not null
+		 */
+		void onCopyFailed(IOException e);
+	}
+
+	/**
+	 * Notified as data is copied, and able to stop the copy.
+	 */
+	private interface ProgressMonitor {
+		/**
+		 * Invoked after each block of data is written.
+		 *
+		 * @param count
+		 * 		the number of bytes in the block
+		 *
+		 * @throws IOException
+		 * 		to stop the copy
+		 */
+		void onBytesCopied(long count) throws IOException;
+	}
+
+	/**
+	 * Writes the content of a file.
+	 */
+	private interface ContentWriter {
+		/**
+		 * @param out
+		 * 		the stream to write to, not null
+		 *
+		 * @return the number of bytes written
+		 *
+		 * @throws IOException
+		 * 		if the content cannot be written
+		 */
+		long writeTo(FileOutputStream out) throws IOException;
+	}
+
+	/**
+	 * A unit of work which may fail with an IOException.
+	 */
+	private interface Task {
+		void run() throws IOException;
+	}
+
+	/**
+	 * The outcome of syncing a single asset.
+	 */
+	private static final class SyncResult {
+		private final AssetReport report;
+
+		private final AssetManifest.Entry entry;
+
+		private SyncResult(final AssetReport report, final AssetManifest.Entry entry) {
+			this.report = report;
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * Creates daemon worker threads which run at background priority.
+	 */
+	private static final class CopyThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "AssetCopier-" + threadCounter.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.AssetReport;
+
+/**
+ * Receives a notification for each asset copied by an {@link AssetCopier}. Listeners are
+ * registered using {@link AssetCopier#addCopyListener(AssetCopyListener)}, or {@link
+ * AssetsHelper#addCopyListener(AssetCopyListener)} for the copies performed by the {@link
+ * AssetsHelper}. This allows the bytes and time spent on each asset to be monitored in production.
+ */
+public interface AssetCopyListener {
+	/**
+	 * Invoked on the copying thread after each asset is copied successfully, or skipped by a sync.
+	 * Since this delays the copying of other assets, implementations should be fast and must not
+	 * block.
+	 *
+	 * @param report
+	 * 		describes the bytes copied, the time taken and the copy path of the asset, not null
+	 */
+	void onAssetCopied(AssetReport report);
+}
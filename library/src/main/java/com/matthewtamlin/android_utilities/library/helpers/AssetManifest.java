@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Records the size, checksum and app version of each asset which has been copied to a directory,
+ * so that later copies can skip assets whose content has not changed. The manifest is stored in a
+ * hidden file within the directory, and is replaced atomically when saved. This class is not
+ * thread-safe.
+ */
+final class AssetManifest {
+	/**
+	 * The name of the file which stores the manifest.
+	 */
+	static final String FILE_NAME = ".asset_manifest";
+
+	/**
+	 * Identifies manifest files.
+	 */
+	private static final int MAGIC = 0x41534D46;
+
+	/**
+	 * The version of the manifest format. Manifests with a different version are ignored.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The size of the buffer used when reading and writing the manifest, measured in bytes.
+	 */
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * The file which stores the manifest.
+	 */
+	private final File file;
+
+	/**
+	 * The entries, keyed by asset name.
+	 */
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Constructs a new AssetManifest and loads any existing entries. A missing or corrupted
+	 * manifest is treated as empty, which causes every asset to be copied.
+	 *
+	 * @param directory
+	 * 		the directory the manifest describes, not null
+	 */
+	AssetManifest(final File directory) {
+		file = new File(checkNotNull(directory, "directory cannot be null."), FILE_NAME);
+
+		if (!load()) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @param asset
+	 * 		the name of an asset, not null
+	 *
+	 * @return the entry for the asset, or null if there is none
+	 */
+	Entry get(final String asset) {
+		return entries.get(asset);
+	}
+
+	/**
+	 * Adds or replaces the entry for an asset.
+	 *
+	 * @param asset
+	 * 		the name of the asset, not null
+	 * @param entry
+	 * 		the entry, not null
+	 */
+	void put(final String asset, final Entry entry) {
+		entries.put(asset, entry);
+	}
+
+	/**
+	 * Removes the entry for an asset.
+	 *
+	 * @param asset
+	 * 		the name of the asset, not null
+	 */
+	void remove(final String asset) {
+		entries.remove(asset);
+	}
+
+	/**
+	 * @return the names of all assets in the manifest, not null
+	 */
+	Set<String> getAssets() {
+		return new HashSet<>(entries.keySet());
+	}
+
+	/**
+	 * Writes the manifest to a temporary file, then renames it over the existing manifest.
+	 *
+	 * @throws IOException
+	 * 		if the manifest cannot be written
+	 */
+	void save() throws IOException {
+		final File tempFile = new File(file.getPath() + ".tmp");
+		final FileOutputStream fileStream = new FileOutputStream(tempFile);
+
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(fileStream, BUFFER_SIZE));
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+
+			for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().size);
+				out.writeLong(entry.getValue().crc);
+				out.writeInt(entry.getValue().versionCode);
+			}
+
+			out.flush();
+			fileStream.getFD().sync();
+		} finally {
+			fileStream.close();
+		}
+
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Could not replace asset manifest " + file + ".");
+		}
+	}
+
+	/**
+	 * Reads the entries from the manifest file.
+	 *
+	 * @return true if the manifest was read, false if it is missing or corrupted
+	 */
+	private boolean load() {
+		if (!file.exists()) {
+			return false;
+		}
+
+		FileInputStream fileStream = null;
+
+		try {
+			fileStream = new FileInputStream(file);
+
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(fileStream, BUFFER_SIZE));
+
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return false;
+			}
+
+			final int count = in.readInt();
+
+			if (count < 0) {
+				return false;
+			}
+
+			for (int i = 0; i < count; i++) {
+				final String asset = in.readUTF();
+				final long size = in.readLong();
+				final long crc = in.readLong();
+				final int versionCode = in.readInt();
+
+				entries.put(asset, new Entry(size, crc, versionCode));
+			}
+
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			if (fileStream != null) {
+				try {
+					fileStream.close();
+				} catch (final IOException e) {
+					// The manifest has already been read
+				}
+			}
+		}
+	}
+
+	/**
+	 * Describes a copied asset.
+	 */
+	static final class Entry {
+		/**
+		 * The size of the asset, measured in bytes.
+		 */
+		final long size;
+
+		/**
+		 * The CRC32 checksum of the asset.
+		 */
+		final long crc;
+
+		/**
+		 * The version code of the app which copied the asset.
+		 */
+		final int versionCode;
+
+		Entry(final long size, final long crc, final int versionCode) {
+			this.size = size;
+			this.crc = crc;
+			this.versionCode = versionCode;
+		}
+	}
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Reads assets directly from the APK, for consumers which only need to read an asset and would
+ * otherwise have to copy it to the file system first. Any asset can be read as a buffered stream.
+ * Assets which are stored uncompressed can also be read as an {@link AssetRegion}, which exposes
+ * the region of the APK holding the asset as a file channel and an offset, so that it can be read
+ * with positional reads, transferred, or mapped without an intermediate copy.
+ * <p>
+ * Opening an asset descriptor is relatively expensive, so the descriptors of recently used assets
+ * are kept open in a small least-recently-used cache and shared between regions. Since regions
+ * only use positional reads, a shared descriptor can be used by several threads at once. A
+ * descriptor which is evicted while regions are still using it is closed once they have all been
+ * closed. This class is thread-safe.
+ */
+public class AssetReader {
+	/**
+	 * The number of descriptors kept open by default.
+	 */
+	public static final int DEFAULT_MAX_OPEN_DESCRIPTORS = 8;
+
+	/**
+	 * The size of the buffer used by streams, measured in bytes.
+	 */
+	public static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The maximum number of compressed asset names which are remembered.
+	 */
+	private static final int MAX_COMPRESSED_ASSETS = 64;
+
+	/**
+	 * The maximum number of descriptors which are kept open while not in use.
+	 */
+	private final int maxOpenDescriptors;
+
+	/**
+	 * Guards the fields below.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The cached descriptors, in order of least to most recent use. Guarded by {@link #lock}.
+	 */
+	private final LinkedHashMap<DescriptorKey, SharedDescriptor> descriptors =
+			new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The names of the assets which are known to be compressed, and so cannot be opened as
+	 * descriptors, in order of least to most recent use. The names are not qualified by asset
+	 * manager, so that the set never retains an asset manager. If two asset managers have assets
+	 * with the same name, the worst outcome is that an uncompressed asset is read as a stream. The
+	 * set is bounded so that readers of many assets do not grow without limit. Guarded by {@link
+	 * #lock}.
+	 */
+	private final LinkedHashMap<String, Boolean> compressedAssets =
+			new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+					return size() > MAX_COMPRESSED_ASSETS;
+				}
+			};
+
+	/**
+	 * The number of regions opened using a cached descriptor. Guarded by {@link #lock}.
+	 */
+	private long descriptorHitCount;
+
+	/**
+	 * The number of regions which required a descriptor to be opened. Guarded by {@link #lock}.
+	 */
+	private long descriptorMissCount;
+
+	/**
+	 * Constructs a new AssetReader which keeps up to {@link #DEFAULT_MAX_OPEN_DESCRIPTORS}
+	 * descriptors open.
+	 */
+	public AssetReader() {
+		this(DEFAULT_MAX_OPEN_DESCRIPTORS);
+	}
+
+	/**
+	 * Constructs a new AssetReader.
+	 *
+	 * @param maxOpenDescriptors
+	 * 		the maximum number of descriptors to keep open while they are not in use, greater than
+	 * 		zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxOpenDescriptors} is not greater than zero
+	 */
+	public AssetReader(final int maxOpenDescriptors) {
+		this.maxOpenDescriptors = checkGreaterThan(maxOpenDescriptors, 0,
+				"maxOpenDescriptors must be greater than zero.");
+	}
+
+	/**
+	 * Opens an asset as a buffered stream. This works for both compressed and uncompressed assets.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset (including any extensions), not null
+	 *
+	 * @return the stream, which must be closed by the caller, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset cannot be opened
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code asset} is null
+	 */
+	public InputStream openStream(final AssetManager assetManager, final String asset)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(asset, "asset cannot be null.");
+
+		return new BufferedInputStream(assetManager.open(asset, AssetManager.ACCESS_STREAMING),
+				STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens the region of the APK which holds an uncompressed asset. The descriptor for the APK is
+	 * shared with other regions of the same asset, and is kept open after the region is closed in
+	 * case the asset is opened again.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset (including any extensions), not null
+	 *
+	 * @return the region, which must be closed by the caller, or null if the asset is compressed
+	 * and must be read using {@link #openStream(AssetManager, String)}
+	 *
+	 * @throws IOException
+	 * 		if the asset does not exist
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code asset} is null
+	 */
+	public AssetRegion openRegion(final AssetManager assetManager, final String asset)
+			throws IOException {
+
+		checkNotNull(assetManager, "assetManager cannot be null.");
+		checkNotNull(asset, "asset cannot be null.");
+
+		final DescriptorKey key = new DescriptorKey(assetManager, asset);
+
+		synchronized (lock) {
+			if (compressedAssets.get(asset) != null) {
+				return null;
+			}
+
+			final SharedDescriptor cached = descriptors.get(key);
+
+			if (cached != null) {
+				descriptorHitCount++;
+				cached.referenceCount++;
+
+				return new AssetRegion(asset, cached);
+			}
+		}
+
+		// Opening the descriptor does not hold the lock, so other assets can be opened meanwhile
+		final AssetFileDescriptor descriptor = openDescriptor(assetManager, asset);
+
+		synchronized (lock) {
+			if (descriptor == null) {
+				compressedAssets.put(asset, Boolean.TRUE);
+				return null;
+			}
+
+			descriptorMissCount++;
+
+			SharedDescriptor shared = descriptors.get(key);
+
+			if (shared == null) {
+				shared = new SharedDescriptor(descriptor);
+				descriptors.put(key, shared);
+			} else {
+				// Another thread opened the same asset concurrently
+				closeQuietly(descriptor);
+			}
+
+			shared.referenceCount++;
+			trimToSize();
+
+			return new AssetRegion(asset, shared);
+		}
+	}
+
+	/**
+	 * @return the maximum number of descriptors kept open while they are not in use
+	 */
+	public int getMaxOpenDescriptors() {
+		return maxOpenDescriptors;
+	}
+
+	/**
+	 * @return the number of descriptors currently held in the cache
+	 */
+	public int getOpenDescriptorCount() {
+		synchronized (lock) {
+			return descriptors.size();
+		}
+	}
+
+	/**
+	 * @return the number of regions which were opened using a cached descriptor
+	 */
+	public long getDescriptorHitCount() {
+		synchronized (lock) {
+			return descriptorHitCount;
+		}
+	}
+
+	/**
+	 * @return the number of regions which required a descriptor to be opened
+	 */
+	public long getDescriptorMissCount() {
+		synchronized (lock) {
+			return descriptorMissCount;
+		}
+	}
+
+	/**
+	 * Closes all cached descriptors which are not in use, and evicts the rest so that they are
+	 * closed once their regions are closed. The reader can still be used afterwards.
+	 */
+	public void clear() {
+		synchronized (lock) {
+			for (final SharedDescriptor shared : descriptors.values()) {
+				evict(shared);
+			}
+
+			descriptors.clear();
+			compressedAssets.clear();
+		}
+	}
+
+	/**
+	 * Evicts the least recently used descriptors until the cache is within its maximum size.
+	 * Guarded by {@link #lock}.
+	 */
+	private void trimToSize() {
+		final Iterator<SharedDescriptor> iterator = descriptors.values().iterator();
+
+		while (descriptors.size() > maxOpenDescriptors && iterator.hasNext()) {
+			final SharedDescriptor eldest = iterator.next();
+
+			iterator.remove();
+			evict(eldest);
+		}
+	}
+
+	/**
+	 * Marks a descriptor as evicted, and closes it if it is not in use. Guarded by {@link #lock}.
+	 *
+	 * @param shared
+	 * 		the descriptor to evict, not null
+	 */
+	private static void evict(final SharedDescriptor shared) {
+		shared.evicted = true;
+
+		if (shared.referenceCount == 0) {
+			closeQuietly(shared.descriptor);
+		}
+	}
+
+	/**
+	 * Decrements the reference count of a descriptor, and closes it if it has been evicted and is
+	 * no longer in use.
+	 *
+	 * @param shared
+	 * 		the descriptor to release, not null
+	 */
+	private void release(final SharedDescriptor shared) {
+		synchronized (lock) {
+			shared.referenceCount--;
+
+			if (shared.referenceCount == 0 && shared.evicted) {
+				closeQuietly(shared.descriptor);
+			}
+		}
+	}
+
+	/**
+	 * Opens an asset as a file descriptor.
+	 *
+	 * @param assetManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset, not null
+	 *
+	 * @return the descriptor, or null if the asset is compressed
+	 *
+	 * @throws IOException
+	 * 		if the asset does not exist
+	 */
+	private static AssetFileDescriptor openDescriptor(
+			final AssetManager assetManager,
+			final String asset)
+			throws IOException {
+
+		final AssetFileDescriptor descriptor;
+
+		try {
+			descriptor = assetManager.openFd(asset);
+		} catch (final IOException e) {
+			// Compressed and missing assets both fail here, so check that the asset exists
+			assetManager.open(asset, AssetManager.ACCESS_STREAMING).close();
+			return null;
+		}
+
+		if (descriptor.getLength() == AssetFileDescriptor.UNKNOWN_LENGTH) {
+			closeQuietly(descriptor);
+			return null;
+		}
+
+		return descriptor;
+	}
+
+	/**
+	 * Closes an asset descriptor, ignoring any exception.
+	 *
+	 * @param descriptor
+	 * 		the descriptor to close, not null
+	 */
+	private static void closeQuietly(final AssetFileDescriptor descriptor) {
+		try {
+			descriptor.close();
+		} catch (final IOException e) {
+			// Nothing useful can be done
+		}
+	}
+
+	/**
+	 * Identifies an asset of a particular asset manager.
+	 */
+	private static final class DescriptorKey {
+		private final AssetManager assetManager;
+
+		private final String asset;
+
+		private DescriptorKey(final AssetManager assetManager, final String asset) {
+			this.assetManager = assetManager;
+			this.asset = asset;
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			if (!(object instanceof DescriptorKey)) {
+				return false;
+			}
+
+			final DescriptorKey other = (DescriptorKey) object;
+
+			return assetManager == other.assetManager && asset.equals(other.asset);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(assetManager) + asset.hashCode();
+		}
+	}
+
+	/**
+	 * A cached descriptor and the channel used to read it.
+	 */
+	private static final class SharedDescriptor {
+		private final AssetFileDescriptor descriptor;
+
+		private final FileChannel channel;
+
+		/**
+		 * The number of open regions using the descriptor. Guarded by the reader lock.
+		 */
+		private int referenceCount;
+
+		/**
+		 * Whether or not the descriptor has been removed from the cache. Guarded by the reader
+		 * lock.
+		 */
+		private boolean evicted;
+
+		private SharedDescriptor(final AssetFileDescriptor descriptor) {
+			this.descriptor = descriptor;
+
+			// The stream does not own the descriptor, so it is not closed here
+			this.channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+		}
+	}
+
+	/**
+	 * The region of the APK which holds an uncompressed asset. The channel covers the whole APK, so
+	 * reads must be offset by {@link #getStartOffset()}, or made through {@link #read(ByteBuffer,
+	 * long)} which applies the offset automatically. The position of the channel must not be used,
+	 * since the channel is shared.
+	 */
+	public final class AssetRegion {
+		private final String assetName;
+
+		private final SharedDescriptor shared;
+
+		/**
+		 * Whether or not this region has been closed. Guarded by this object.
+		 */
+		private boolean closed;
+
+		private AssetRegion(final String assetName, final SharedDescriptor shared) {
+			this.assetName = assetName;
+			this.shared = shared;
+		}
+
+		/**
+		 * @return the name of the asset, not null
+		 */
+		public String getAssetName() {
+			return assetName;
+		}
+
+		/**
+		 * @return the channel for the file containing the asset, not null
+		 */
+		public FileChannel getChannel() {
+			return shared.channel;
+		}
+
+		/**
+		 * @return the offset of the asset within the channel, measured in bytes
+		 */
+		public long getStartOffset() {
+			return shared.descriptor.getStartOffset();
+		}
+
+		/**
+		 * @return the length of the asset, measured in bytes
+		 */
+		public long getLength() {
+			return shared.descriptor.getLength();
+		}
+
+		/**
+		 * Reads part of the asset into a buffer, without moving the position of the channel.
+		 *
+		 * @param destination
+		 * 		the buffer to read into, not null
+		 * @param position
+		 * 		the position within the asset to read from, measured in bytes, not negative
+		 *
+		 * @return the number of bytes read, or -1 if {@code position} is at or beyond the end of
+		 * the asset
+		 *
+		 * @throws IOException
+		 * 		if the asset cannot be read
+		 * @throws IllegalArgumentException
+		 * 		if {@code destination} is null
+		 * @throws IllegalArgumentException
+		 * 		if {@code position} is negative
+		 * @throws IllegalStateException
+		 * 		if this region has been closed
+		 */
+		public int read(final ByteBuffer destination, final long position) throws IOException {
+			checkNotNull(destination, "destination cannot be null.");
+
+			if (position < 0) {
+				throw new IllegalArgumentException("position cannot be negative.");
+			}
+
+			synchronized (this) {
+				if (closed) {
+					throw new IllegalStateException("The region has been closed.");
+				}
+			}
+
+			final long remaining = getLength() - position;
+
+			if (remaining <= 0) {
+				return -1;
+			}
+
+			final int limit = destination.limit();
+
+			// Prevent the read from running past the end of the asset into the rest of the APK
+			if (destination.remaining() > remaining) {
+				destination.limit(destination.position() + (int) remaining);
+			}
+
+			try {
+				return shared.channel.read(destination, getStartOffset() + position);
+			} finally {
+				destination.limit(limit);
+			}
+		}
+
+		/**
+		 * Closes this region. The descriptor remains cached until it is evicted. Closing more than
+		 * once has no effect.
+		 */
+		public void close() {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+
+				closed = true;
+			}
+
+			release(shared);
+		}
+	}
+}
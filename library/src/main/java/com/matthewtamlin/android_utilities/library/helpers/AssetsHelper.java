@@ -21,19 +21,44 @@ import android.content.res.AssetManager;
 import com.matthewtamlin.java_utilities.testing.Tested;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
 
 /**
- * Copies files from assets to a directory.
+ * Copies files from assets to a directory. Assets are copied in parallel through large buffers
+ * using a shared {@link AssetCopier}. To control the buffer size or the number of threads, use an
+ * {@link AssetCopier} directly.
+ * <p>
+ * Extracted assets can be mapped into memory using {@link #mapExtractedAsset(File)}, so that large
+ * files such as lookup tables can be read without copying them into the Java heap. Assets which
+ * only need to be read once can be read directly from the APK using {@link
+ * #openAsset(AssetManager, String)} or {@link #openAssetRegion(AssetManager, String)}, without
+ * being copied at all.
+ * <p>
+ * Copies can be monitored in production by registering an {@link AssetCopyListener} using {@link
+ * #addCopyListener(AssetCopyListener)}, which reports the bytes and time spent on each asset.
  */
 public class AssetsHelper {
 	/**
-	 * Copies one or more assets to a directory.
+	 * Performs the copies for all callers.
+	 */
+	private static final AssetCopier defaultCopier = new AssetCopier();
+
+	/**
+	 * Shares the mappings of extracted assets between all callers.
+	 */
+	private static final MappedAssetRegistry defaultRegistry = new MappedAssetRegistry();
+
+	/**
+	 * Caches the asset descriptors used by all callers.
+	 */
+	private static final AssetReader defaultReader = new AssetReader();
+
+	/**
+	 * Copies one or more assets to a directory. Use {@link AssetCopier#copy(AssetManager, File,
+	 * String...)} to receive a report describing the copy.
 	 *
 	 * @param assetsManager
 	 * 		provides access to the assets, not null
@@ -61,60 +86,263 @@ public class AssetsHelper {
 		checkNotNull(targetDirectory, "targetDirectory cannot be null");
 		checkNotNull(assets, "assetFiles cannot be null");
 
-		for (final String filename : assets) {
-			final File targetFile = new File(targetDirectory, filename);
+		defaultCopier.copy(assetsManager, targetDirectory, assets);
+	}
+
+	/**
+	 * Asynchronously copies one or more assets to a directory, reporting progress to a callback on
+	 * the main thread. See {@link AssetCopier#copyAsync(AssetManager, File,
+	 * AssetCopier.CopyCallback, String...)} for details.
+	 *
+	 * @param assetsManager
+	 * 		provides access to the assets, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the assets to, not null
+	 * @param callback
+	 * 		receives progress and the result on the main thread, may be null
+	 * @param assets
+	 * 		the names of the assets to copy (including any extensions), not null
+	 *
+	 * @return the pending copy, which can be used to cancel the copy, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetsManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assets} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public static AssetCopier.PendingCopy copyAssetsToDirectoryAsync(
+			final AssetManager assetsManager,
+			final File targetDirectory,
+			final AssetCopier.CopyCallback callback,
+			final String... assets) {
+
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null");
+		checkNotNull(assets, "assets cannot be null");
+
+		return defaultCopier.copyAsync(assetsManager, targetDirectory, callback, assets);
+	}
+
+	/**
+	 * Recursively copies a directory of assets to a directory, preserving the structure of the
+	 * tree. See {@link AssetCopier#copyDirectory(AssetManager, String, File)} for details.
+	 *
+	 * @param assetsManager
+	 * 		provides access to the assets, not null
+	 * @param assetDirectory
+	 * 		the path of the directory within the assets, empty for the root, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the tree to, created if necessary, not null
+	 *
+	 * @return a report describing the number of bytes copied and the throughput of each file, not
+	 * null
+	 *
+	 * @throws IOException
+	 * 		if an unspecified IO error occurs while writing to the target directory
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetsManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetDirectory} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public static CopyReport copyAssetDirectory(
+			final AssetManager assetsManager,
+			final String assetDirectory,
+			final File targetDirectory)
+			throws IOException {
+
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(assetDirectory, "assetDirectory cannot be null");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null");
+
+		return defaultCopier.copyDirectory(assetsManager, assetDirectory, targetDirectory);
+	}
+
+	/**
+	 * Copies the assets which are new or have changed since the last sync to a directory, and
+	 * deletes files copied by earlier syncs which are no longer in the supplied list. See {@link
+	 * AssetCopier#sync(AssetManager, File, int, boolean, String...)} for details.
+	 *
+	 * @param assetsManager
+	 * 		provides access to the assets, not null
+	 * @param targetDirectory
+	 * 		the directory to copy the assets to, not null
+	 * @param versionCode
+	 * 		the version code of the app, which must change whenever the assets change
+	 * @param assets
+	 * 		the names of the assets to sync (including any extensions), not null
+	 *
+	 * @return a report describing the number of bytes written and skipped, not null
+	 *
+	 * @throws IOException
+	 * 		if an unspecified IO error occurs while writing to the target directory
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetsManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code assets} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public static CopyReport syncAssetsToDirectory(
+			final AssetManager assetsManager,
+			final File targetDirectory,
+			final int versionCode,
+			final String... assets)
+			throws IOException {
+
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null");
+		checkNotNull(assets, "assets cannot be null");
+
+		return defaultCopier.sync(assetsManager, targetDirectory, versionCode, true, assets);
+	}
+
+	/**
+	 * Decompresses a zip or gzip asset directly into a directory. Zip archives stored uncompressed
+	 * in the APK are extracted in parallel. Zip assets are compressed by default, so apps must
+	 * configure {@code aaptOptions { noCompress 'zip' }} for this to apply. See {@link
+	 * AssetCopier#extract(AssetManager, String, File)} for details.
+	 *
+	 * @param assetsManager
+	 * 		provides access to the archive, not null
+	 * @param archiveAsset
+	 * 		the name of the archive asset (including any extensions), not null
+	 * @param targetDirectory
+	 * 		the directory to extract the archive to, created if necessary, not null
+	 *
+	 * @return a report describing the compressed and uncompressed throughput, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset is not a supported archive, or an unspecified IO error occurs while
+	 * 		writing to the target directory
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetsManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code archiveAsset} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code targetDirectory} is null
+	 */
+	public static ExtractionReport extractArchive(
+			final AssetManager assetsManager,
+			final String archiveAsset,
+			final File targetDirectory)
+			throws IOException {
+
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(archiveAsset, "archiveAsset cannot be null");
+		checkNotNull(targetDirectory, "targetDirectory cannot be null");
+
+		return defaultCopier.extract(assetsManager, archiveAsset, targetDirectory);
+	}
+
+	/**
+	 * Maps an extracted asset into memory read-only, sharing the mapping with any other callers
+	 * which have mapped the same file. The returned asset must be released once it is no longer
+	 * needed. See {@link MappedAssetRegistry} for details.
+	 *
+	 * @param extractedAsset
+	 * 		the file to map, not null
+	 *
+	 * @return the mapped asset, not null
+	 *
+	 * @throws IOException
+	 * 		if the file cannot be opened or mapped
+	 * @throws IllegalArgumentException
+	 * 		if {@code extractedAsset} is null
+	 */
+	public static MappedAssetRegistry.MappedAsset mapExtractedAsset(final File extractedAsset)
+			throws IOException {
+
+		checkNotNull(extractedAsset, "extractedAsset cannot be null");
 
-			InputStream fromAssets = null;
-			OutputStream toTarget = null;
+		return defaultRegistry.acquire(extractedAsset);
+	}
 
-			try {
-				fromAssets = assetsManager.open(filename);
-				toTarget = new FileOutputStream(targetFile);
+	/**
+	 * Opens an asset as a buffered stream, without copying it to the file system. See {@link
+	 * AssetReader#openStream(AssetManager, String)} for details.
+	 *
+	 * @param assetsManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset (including any extensions), not null
+	 *
+	 * @return the stream, which must be closed by the caller, not null
+	 *
+	 * @throws IOException
+	 * 		if the asset cannot be opened
+	 * @throws IllegalArgumentException
+	 * 		if {@code assetsManager} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code asset} is null
+	 */
+	public static InputStream openAsset(final AssetManager assetsManager, final String asset)
+			throws IOException {
 
-				copyData(fromAssets, toTarget);
-			} finally {
-				if (fromAssets != null) {
-					fromAssets.close();
-				}
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(asset, "asset cannot be null");
 
-				if (toTarget != null) {
-					toTarget.close();
-				}
-			}
-		}
+		return defaultReader.openStream(assetsManager, asset);
 	}
 
 	/**
-	 * Copies data from the source stream to the target stream.
+	 * Opens the region of the APK which holds an uncompressed asset, without copying it to the file
+	 * system. Recently used descriptors are cached and shared. See {@link
+	 * AssetReader#openRegion(AssetManager, String)} for details.
 	 *
-	 * @param source
-	 * 		the stream to copy from, not null
-	 * @param target
-	 * 		the stream to copy to, not null
+	 * @param assetsManager
+	 * 		provides access to the asset, not null
+	 * @param asset
+	 * 		the name of the asset (including any extensions), not null
+	 *
+	 * @return the region, which must be closed by the caller, or null if the asset is compressed
+	 * and must be read using {@link #openAsset(AssetManager, String)}
 	 *
 	 * @throws IOException
-	 * 		if an unspecified IO error occurs while copying data
+	 * 		if the asset does not exist
 	 * @throws IllegalArgumentException
-	 * 		if {@code source} is null
+	 * 		if {@code assetsManager} is null
 	 * @throws IllegalArgumentException
-	 * 		if {@code target} is null
+	 * 		if {@code asset} is null
 	 */
-	private static void copyData(
-			final InputStream source,
-			final OutputStream target)
+	public static AssetReader.AssetRegion openAssetRegion(
+			final AssetManager assetsManager,
+			final String asset)
 			throws IOException {
 
-		checkNotNull(source, "source cannot be null.");
-		checkNotNull(target, "target cannot be null.");
+		checkNotNull(assetsManager, "assetsManager cannot be null");
+		checkNotNull(asset, "asset cannot be null");
+
+		return defaultReader.openRegion(assetsManager, asset);
+	}
 
-		final byte[] buffer = new byte[1024];
+	/**
+	 * Registers a listener to be notified of each asset copied by this class. The listener is
+	 * invoked on the copying thread, so it should be fast and must not block. Registering the same
+	 * listener more than once has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to register, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code listener} is null
+	 */
+	public static void addCopyListener(final AssetCopyListener listener) {
+		checkNotNull(listener, "listener cannot be null");
 
-		int numberOfBytesRead = source.read(buffer);
+		defaultCopier.addCopyListener(listener);
+	}
 
-		// While the buffer has data, write to the output stream from the buffer
-		while (numberOfBytesRead != -1) {
-			target.write(buffer, 0, numberOfBytesRead);
-			numberOfBytesRead = source.read(buffer);
-		}
+	/**
+	 * Unregisters a listener. Unregistering a listener which is not registered has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to unregister, may be null
+	 */
+	public static void removeCopyListener(final AssetCopyListener listener) {
+		defaultCopier.removeCopyListener(listener);
 	}
-}
\ No newline at end of file
+}
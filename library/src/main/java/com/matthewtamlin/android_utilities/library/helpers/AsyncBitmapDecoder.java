@@ -0,0 +1,508 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Decodes bitmaps on a bounded pool of background threads using the {@link
+ * BitmapEfficiencyHelper}. Each decode returns a {@link PendingDecode}, which can be used to wait
+ * for the result or to cancel the decode (e.g. when the view which requested it is recycled).
+ * Results can also be delivered to a callback on the main thread.
+ * <p>
+ * Queued decodes are executed in order of priority, then in the order they were requested.
+ * Requests to decode the same source at the same size while an earlier request is still pending
+ * are coalesced, so the image is only decoded once and all callers share the result. A coalesced
+ * decode is only abandoned once every request sharing it has been cancelled.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AsyncBitmapDecoder {
+	/**
+	 * The amount of time idle worker threads are kept alive for, measured in seconds.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * Delivers callbacks to the main thread.
+	 */
+	private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Executes the decodes in priority order.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * The decodes which have been requested but not completed, keyed by what they decode. All
+	 * access must be synchronized on this map.
+	 */
+	private final Map<DecodeKey, SharedDecode> inFlight = new HashMap<>();
+
+	/**
+	 * Orders decodes which have the same priority.
+	 */
+	private final AtomicLong sequenceCounter = new AtomicLong();
+
+	/**
+	 * Constructs a new AsyncBitmapDecoder which uses one worker thread per available processor.
+	 */
+	public AsyncBitmapDecoder() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new AsyncBitmapDecoder.
+	 *
+	 * @param threadCount
+	 * 		the maximum number of decodes to run concurrently, greater than zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code threadCount} is not greater than zero
+	 */
+	public AsyncBitmapDecoder(final int threadCount) {
+		checkGreaterThan(threadCount, 0, "threadCount must be greater than zero.");
+
+		executor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(),
+				new DecodeThreadFactory());
+
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Asynchronously decodes an image at normal priority. See {@link
+	 * BitmapEfficiencyHelper#decode(BitmapSource, int, int)} for details of the decode.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 * @param callback
+	 * 		receives the result on the main thread, may be null
+	 *
+	 * @return the pending decode, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} or {@code desHeight} is less than zero
+	 */
+	public PendingDecode decode(
+			final BitmapSource source,
+			final int desWidth,
+			final int desHeight,
+			final Callback callback) {
+
+		return decode(source, desWidth, desHeight, Priority.NORMAL, callback);
+	}
+
+	/**
+	 * Asynchronously decodes an image. See {@link BitmapEfficiencyHelper#decode(BitmapSource, int,
+	 * int)} for details of the decode.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 * @param priority
+	 * 		the priority of the decode relative to other queued decodes, not null
+	 * @param callback
+	 * 		receives the result on the main thread, may be null
+	 *
+	 * @return the pending decode, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} or {@code priority} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} or {@code desHeight} is less than zero
+	 * @throws RejectedExecutionException
+	 * 		if this decoder has been shut down
+	 */
+	public PendingDecode decode(
+			final BitmapSource source,
+			final int desWidth,
+			final int desHeight,
+			final Priority priority,
+			final Callback callback) {
+
+		checkNotNull(source, "source cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+		checkNotNull(priority, "priority cannot be null.");
+
+		final DecodeKey key = new DecodeKey(
+				source,
+				desWidth,
+				desHeight,
+				BitmapEfficiencyHelper.getScalingMode(),
+				BitmapEfficiencyHelper.getConfigPolicy());
+
+		synchronized (inFlight) {
+			SharedDecode shared = inFlight.get(key);
+
+			if (shared == null) {
+				shared = new SharedDecode(key, priority, sequenceCounter.getAndIncrement());
+				inFlight.put(key, shared);
+
+				final PendingDecode pending = shared.addRequest(callback);
+
+				try {
+					executor.execute(shared);
+				} catch (final RejectedExecutionException e) {
+					inFlight.remove(key);
+					throw e;
+				}
+
+				return pending;
+			} else {
+				final PendingDecode pending = shared.addRequest(callback);
+
+				// Re-queue the decode so that the queue reflects the new priority
+				if (priority.compareTo(shared.priority) > 0 && executor.remove(shared)) {
+					shared.priority = priority;
+					executor.execute(shared);
+				}
+
+				return pending;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of decodes which are queued or running, counting coalesced requests once
+	 */
+	public int getPendingDecodeCount() {
+		synchronized (inFlight) {
+			return inFlight.size();
+		}
+	}
+
+	/**
+	 * Stops accepting new decodes. Decodes which are already queued still complete.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * A decode which is shared by one or more requests for the same image.
+	 */
+	private final class SharedDecode implements Runnable, Comparable<SharedDecode> {
+		private final DecodeKey key;
+
+		private final long sequence;
+
+		/**
+		 * The requests which have not been cancelled. Guarded by {@link #inFlight}.
+		 */
+		private final List<PendingDecode> requests = new ArrayList<>();
+
+		/**
+		 * The priority of the decode, which may be raised by coalesced requests. Guarded by {@link
+		 * #inFlight}.
+		 */
+		private volatile Priority priority;
+
+		/**
+		 * Whether or not the decode has been taken off the queue. Guarded by {@link #inFlight}.
+		 */
+		private boolean started;
+
+		private SharedDecode(final DecodeKey key, final Priority priority, final long sequence) {
+			this.key = key;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		private PendingDecode addRequest(final Callback callback) {
+			final PendingDecode pending = new PendingDecode(this, callback);
+			requests.add(pending);
+
+			return pending;
+		}
+
+		@Override
+		public void run() {
+			synchronized (inFlight) {
+				if (requests.isEmpty()) {
+					removeFromInFlight();
+					return;
+				}
+
+				started = true;
+			}
+
+			Bitmap result = null;
+			RuntimeException failure = null;
+
+			try {
+				result = BitmapEfficiencyHelper.decode(key);
+			} catch (final RuntimeException e) {
+				failure = e;
+			}
+
+			final List<PendingDecode> toNotify;
+
+			synchronized (inFlight) {
+				removeFromInFlight();
+				toNotify = new ArrayList<>(requests);
+				requests.clear();
+			}
+
+			for (final PendingDecode pending : toNotify) {
+				pending.complete(result, failure);
+			}
+		}
+
+		/**
+		 * Removes this decode from the in-flight decodes, unless a newer decode for the same key
+		 * has already replaced it. Must be called while synchronized on {@link #inFlight}.
+		 */
+		private void removeFromInFlight() {
+			if (inFlight.get(key) == this) {
+				inFlight.remove(key);
+			}
+		}
+
+		@Override
+		public int compareTo(final SharedDecode other) {
+			// Higher priorities first, then first in first out
+			final int priorityComparison = other.priority.compareTo(priority);
+
+			if (priorityComparison != 0) {
+				return priorityComparison;
+			}
+
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * A request for an asynchronous decode. The result can be obtained using the methods of the
+	 * {@link Future} interface.
+	 */
+	public final class PendingDecode implements Future<Bitmap> {
+		private final SharedDecode shared;
+
+		private final Callback callback;
+
+		private final CountDownLatch completionLatch = new CountDownLatch(1);
+
+		private volatile boolean cancelled;
+
+		private volatile boolean done;
+
+		private volatile Bitmap result;
+
+		private volatile RuntimeException failure;
+
+		private PendingDecode(final SharedDecode shared, final Callback callback) {
+			this.shared = shared;
+			this.callback = callback;
+		}
+
+		/**
+		 * Cancels this request. If the decode has not yet completed, the request is detached from it
+		 * and the decode is abandoned if no other requests share it. If the decode has completed but
+		 * the callback has not yet run, the callback is suppressed.
+		 *
+		 * @param mayInterruptIfRunning
+		 * 		ignored, running decodes are never interrupted
+		 *
+		 * @return true if the request was detached from the decode, false if it had already
+		 * completed or been cancelled
+		 */
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			synchronized (inFlight) {
+				final boolean wasPending = !done && !cancelled;
+				cancelled = true;
+
+				if (!wasPending) {
+					return false;
+				}
+
+				shared.requests.remove(this);
+
+				if (shared.requests.isEmpty() && !shared.started) {
+					executor.remove(shared);
+					shared.removeFromInFlight();
+				}
+			}
+
+			completionLatch.countDown();
+
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled && !done;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done || cancelled;
+		}
+
+		@Override
+		public Bitmap get() throws InterruptedException, ExecutionException {
+			completionLatch.await();
+
+			return getResult();
+		}
+
+		@Override
+		public Bitmap get(final long timeout, final TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+
+			if (!completionLatch.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+
+			return getResult();
+		}
+
+		private Bitmap getResult() throws ExecutionException {
+			if (!done) {
+				throw new CancellationException();
+			}
+
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+
+			return result;
+		}
+
+		private void complete(final Bitmap bitmap, final RuntimeException exception) {
+			synchronized (inFlight) {
+				if (cancelled) {
+					return;
+				}
+
+				result = bitmap;
+				failure = exception;
+				done = true;
+			}
+
+			completionLatch.countDown();
+
+			if (callback != null) {
+				mainThreadHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (!cancelled) {
+							callback.onDecodeComplete(result);
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Receives the results of asynchronous decodes on the main thread.
+	 */
+	public interface Callback {
+		/**
+		 * Invoked on the main thread when a decode completes, unless it was cancelled first. A null
+		 * bitmap indicates that the decode failed, either because the image could not be decoded or
+		 * because the decode threw an exception. The callback cannot distinguish these cases; use
+		 * {@link PendingDecode#get()} to receive any exception as an {@link ExecutionException}.
+		 *
+		 * @param bitmap
+		 * 		the decoded image, or null if the decode failed
+		 */
+		void onDecodeComplete(Bitmap bitmap);
+	}
+
+	/**
+	 * The priorities which can be assigned to decodes, from lowest to highest.
+	 */
+	public enum Priority {
+		/**
+		 * For decodes whose results may never be needed, such as speculative prefetches.
+		 */
+		LOW,
+
+		/**
+		 * For most decodes.
+		 */
+		NORMAL,
+
+		/**
+		 * For decodes which are blocking visible content.
+		 */
+		HIGH
+	}
+
+	/**
+	 * Creates daemon worker threads which run at background priority.
+	 */
+	private static final class DecodeThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "AsyncBitmapDecoder-" + threadCounter.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+
+/**
+ * A memory-bounded cache of decoded bitmaps. When a cache is supplied to the
+ * {@link BitmapEfficiencyHelper}, decoding the same source at the same size more than once returns
+ * the cached bitmap instead of decoding the image again.
+ * <p>
+ * Each entry is weighted by the number of bytes used to store its pixels, and the least recently
+ * used entries are evicted when the byte budget is exceeded. Cached bitmaps may be shared between
+ * multiple callers, so they must not be modified, recycled or returned to a {@link BitmapPool}.
+ * This class is thread-safe.
+ */
+public class BitmapCache {
+	/**
+	 * Stores the cached bitmaps.
+	 */
+	private final LruCache<DecodeKey, Bitmap> cache;
+
+	/**
+	 * Constructs a new BitmapCache.
+	 *
+	 * @param maxSizeBytes
+	 * 		the maximum number of bytes the cache can hold, greater than zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxSizeBytes} is not greater than zero
+	 */
+	public BitmapCache(final int maxSizeBytes) {
+		checkGreaterThan(maxSizeBytes, 0, "maxSizeBytes must be greater than zero.");
+
+		cache = new LruCache<DecodeKey, Bitmap>(maxSizeBytes) {
+			@Override
+			protected int sizeOf(final DecodeKey key, final Bitmap value) {
+				return BitmapPool.getSizeBytes(value);
+			}
+		};
+	}
+
+	/**
+	 * Removes all entries from the cache. The evicted bitmaps are not recycled, since they may
+	 * still be in use.
+	 */
+	public void evictAll() {
+		cache.evictAll();
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache holds no more than the supplied number
+	 * of bytes.
+	 *
+	 * @param sizeBytes
+	 * 		the maximum size of the cache after trimming, measured in bytes
+	 */
+	public void trimToSize(final int sizeBytes) {
+		cache.trimToSize(sizeBytes);
+	}
+
+	/**
+	 * @return the maximum number of bytes the cache can hold
+	 */
+	public int getMaxSize() {
+		return cache.maxSize();
+	}
+
+	/**
+	 * @return the number of bytes currently held by the cache
+	 */
+	public int getCurrentSize() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the number of lookups which returned a cached bitmap
+	 */
+	public int getHitCount() {
+		return cache.hitCount();
+	}
+
+	/**
+	 * @return the number of lookups which did not return a cached bitmap
+	 */
+	public int getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * @return the number of entries which have been evicted to keep the cache within budget
+	 */
+	public int getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	/**
+	 * Gets the cached result of a decode.
+	 *
+	 * @param key
+	 * 		identifies the decode, not null
+	 *
+	 * @return the cached bitmap, or null if there is none
+	 */
+	Bitmap get(final DecodeKey key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Caches the result of a decode.
+	 *
+	 * @param key
+	 * 		identifies the decode, not null
+	 * @param bitmap
+	 * 		the decoded bitmap, not null
+	 */
+	void put(final DecodeKey key, final Bitmap bitmap) {
+		cache.put(key, bitmap);
+	}
+}
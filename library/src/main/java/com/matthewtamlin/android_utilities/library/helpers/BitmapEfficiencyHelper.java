@@ -19,10 +19,17 @@ package com.matthewtamlin.android_utilities.library.helpers;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.LruCache;
 
 import com.matthewtamlin.java_utilities.testing.Tested;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
 import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkLessThan;
@@ -31,8 +38,277 @@ import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull
 
 /**
  * Decodes bitmaps efficiently.
+ * <p>
+ * If a {@link BitmapPool} is supplied via {@link #setBitmapPool(BitmapPool)}, then decodes reuse
+ * the pixel buffers of pooled bitmaps where possible instead of allocating new ones. Bitmaps
+ * decoded into pooled buffers are mutable, and should be returned to the pool once they are no
+ * longer displayed.
+ * <p>
+ * If a {@link BitmapCache} is supplied via {@link #setBitmapCache(BitmapCache)}, then repeated
+ * decodes of the same source at the same size return the previously decoded bitmap.
+ * <p>
+ * If a {@link DiskBitmapCache} is supplied via {@link #setDiskCache(DiskBitmapCache)}, then the
+ * results of decoding files and resources are persisted, and later decodes of the same source at
+ * the same size read the persisted result instead of decoding the original image.
+ * <p>
+ * If deduplication is enabled via {@link #setDeduplicationEnabled(boolean)}, then concurrent
+ * requests for the same decode wait for a single decode and share its result.
+ * <p>
+ * Listeners registered via {@link #addDecodeListener(DecodeListener)} are notified of the
+ * dimensions, sample size, output size and timings of each decode. {@link DecodeMetrics} aggregates
+ * these notifications into histograms.
+ * <p>
+ * The dimensions and MIME type of an image can be obtained without decoding its pixels using the
+ * probe methods. Probe results for files and resources are cached, and are also recorded by every
+ * full decode. Results for byte arrays, buffers, streams and file descriptors are never cached.
  */
 public class BitmapEfficiencyHelper {
+	/**
+	 * The pool to draw reusable bitmaps from when decoding. Null if pooling is disabled.
+	 */
+	private static volatile BitmapPool bitmapPool;
+
+	/**
+	 * The cache which stores the results of decodes. Null if caching is disabled.
+	 */
+	private static volatile BitmapCache bitmapCache;
+
+	/**
+	 * The cache which persists the results of decodes. Null if disk caching is disabled.
+	 */
+	private static volatile DiskBitmapCache diskCache;
+
+	/**
+	 * Whether or not stream-backed sources should be opened once per decode instead of once per
+	 * pass.
+	 */
+	private static volatile boolean singleOpenDecodingEnabled = true;
+
+	/**
+	 * Whether or not concurrent requests for the same decode should share a single decode.
+	 */
+	private static volatile boolean deduplicationEnabled = false;
+
+	/**
+	 * The decodes currently in progress, used to share results when deduplication is enabled.
+	 */
+	private static final InFlightDecodes inFlightDecodes =
+			new InFlightDecodes(InFlightDecodes.DEFAULT_STRIPE_COUNT);
+
+	/**
+	 * Determines how images are scaled to the desired dimensions.
+	 */
+	private static volatile ScalingMode scalingMode = ScalingMode.SUBSAMPLE;
+
+	/**
+	 * Determines the config of decoded images, unless a policy is supplied for a particular decode.
+	 */
+	private static volatile ConfigPolicy configPolicy = ConfigPolicy.ARGB_8888;
+
+	/**
+	 * Statistics describing all decodes performed.
+	 */
+	private static final DecodeStatistics statistics = new DecodeStatistics();
+
+	/**
+	 * The listeners to notify of each decode.
+	 */
+	private static final CopyOnWriteArrayList<DecodeListener> decodeListeners =
+			new CopyOnWriteArrayList<>();
+
+	/**
+	 * The maximum number of probe results to cache.
+	 */
+	private static final int METADATA_CACHE_SIZE = 128;
+
+	/**
+	 * Caches the results of probing sources, so that repeated measure passes do not need to read
+	 * the source. Entries are small, so the cache is bounded by entry count rather than bytes. The
+	 * cache is keyed by {@link BitmapSource#getPersistentKey()} rather than by the source itself,
+	 * so that it never retains the byte arrays, buffers or Resources the sources refer to. Sources
+	 * without a persistent key are not cached.
+	 */
+	private static final LruCache<String, ImageMetadata> metadataCache =
+			new LruCache<>(METADATA_CACHE_SIZE);
+
+	/**
+	 * Sets the pool which decodes draw reusable bitmaps from. Supplying null disables pooling, which
+	 * is the default.
+	 *
+	 * @param pool
+	 * 		the pool to use, may be null
+	 */
+	public static void setBitmapPool(final BitmapPool pool) {
+		bitmapPool = pool;
+	}
+
+	/**
+	 * @return the pool which decodes draw reusable bitmaps from, null if pooling is disabled
+	 */
+	public static BitmapPool getBitmapPool() {
+		return bitmapPool;
+	}
+
+	/**
+	 * Sets the cache which stores the results of decodes. While a cache is set, decoding a source
+	 * which was recently decoded at the same size returns the cached bitmap. Since cached bitmaps
+	 * are shared between callers, they must not be modified, recycled or pooled. Supplying null
+	 * disables caching, which is the default.
+	 *
+	 * @param cache
+	 * 		the cache to use, may be null
+	 */
+	public static void setBitmapCache(final BitmapCache cache) {
+		bitmapCache = cache;
+	}
+
+	/**
+	 * @return the cache which stores the results of decodes, null if caching is disabled
+	 */
+	public static BitmapCache getBitmapCache() {
+		return bitmapCache;
+	}
+
+	/**
+	 * Sets the cache which persists the results of decodes. While a disk cache is set, decoding a
+	 * file or resource which was previously decoded at the same size reads the persisted result if
+	 * it is not held by the memory cache, and new results are written to the disk cache. Supplying
+	 * null disables disk caching, which is the default.
+	 *
+	 * @param cache
+	 * 		the disk cache to use, may be null
+	 */
+	public static void setDiskCache(final DiskBitmapCache cache) {
+		diskCache = cache;
+	}
+
+	/**
+	 * @return the cache which persists the results of decodes, null if disk caching is disabled
+	 */
+	public static DiskBitmapCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * Sets whether or not files and resources are opened once per decode. When enabled (the
+	 * default), the bounds of the image are decoded from a buffered stream which is then rewound
+	 * and reused to decode the pixels, so the header is not read from storage twice. When disabled,
+	 * the source is opened and read separately for each pass.
+	 *
+	 * @param enabled
+	 * 		true to enable single-open decoding, false to disable it
+	 */
+	public static void setSingleOpenDecodingEnabled(final boolean enabled) {
+		singleOpenDecodingEnabled = enabled;
+	}
+
+	/**
+	 * @return true if files and resources are opened once per decode, false otherwise
+	 */
+	public static boolean isSingleOpenDecodingEnabled() {
+		return singleOpenDecodingEnabled;
+	}
+
+	/**
+	 * Sets whether or not concurrent requests for the same decode share a single decode. When
+	 * enabled, a request for a file or resource which is already being decoded at the same size
+	 * and config on another thread blocks until that decode completes and returns the same bitmap,
+	 * instead of decoding the image again. This avoids redundant work when several threads request
+	 * the same image at once (e.g. when a list is rebound quickly). Since the bitmap is shared,
+	 * callers must not recycle or pool it while it may still be in use elsewhere. Sources which
+	 * can only be read once (streams, file descriptors and buffers) are never deduplicated. The
+	 * default is disabled.
+	 *
+	 * @param enabled
+	 * 		true to enable deduplication, false to disable it
+	 */
+	public static void setDeduplicationEnabled(final boolean enabled) {
+		deduplicationEnabled = enabled;
+	}
+
+	/**
+	 * @return true if concurrent requests for the same decode share a single decode, false
+	 * otherwise
+	 */
+	public static boolean isDeduplicationEnabled() {
+		return deduplicationEnabled;
+	}
+
+	/**
+	 * Sets the mode used to scale images to the desired dimensions. The default is {@link
+	 * ScalingMode#SUBSAMPLE}.
+	 *
+	 * @param mode
+	 * 		the scaling mode to use, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code mode} is null
+	 */
+	public static void setScalingMode(final ScalingMode mode) {
+		scalingMode = checkNotNull(mode, "mode cannot be null.");
+	}
+
+	/**
+	 * @return the mode used to scale images to the desired dimensions, not null
+	 */
+	public static ScalingMode getScalingMode() {
+		return scalingMode;
+	}
+
+	/**
+	 * Sets the policy which determines the config of decoded images, unless a policy is supplied
+	 * for a particular decode. The default is {@link ConfigPolicy#ARGB_8888}.
+	 *
+	 * @param policy
+	 * 		the policy to use, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code policy} is null
+	 */
+	public static void setConfigPolicy(final ConfigPolicy policy) {
+		configPolicy = checkNotNull(policy, "policy cannot be null.");
+	}
+
+	/**
+	 * @return the policy which determines the config of decoded images, not null
+	 */
+	public static ConfigPolicy getConfigPolicy() {
+		return configPolicy;
+	}
+
+	/**
+	 * @return statistics describing all decodes performed, not null
+	 */
+	public static DecodeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Registers a listener to be notified of each decode. Decodes which are satisfied by a cache
+	 * are not reported. Registering the same listener more than once has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to register, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code listener} is null
+	 */
+	public static void addDecodeListener(final DecodeListener listener) {
+		checkNotNull(listener, "listener cannot be null.");
+
+		decodeListeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Unregisters a listener. Unregistering a listener which is not registered has no effect.
+	 *
+	 * @param listener
+	 * 		the listener to unregister, may be null
+	 */
+	public static void removeDecodeListener(final DecodeListener listener) {
+		decodeListeners.remove(listener);
+	}
+
 	/**
 	 * Calculates the sampling rate which can be used to subsample an image to the desired
 	 * dimensions. The sampling rate will satisfy all of the following criteria:
@@ -41,7 +317,10 @@ public class BitmapEfficiencyHelper {
 	 * be at least the desired width.</li> </ul>.
 	 * <p>
 	 * If no sub-sampling is possible without violating one or more conditions, a sampling rate of
-	 * 1 is returned.
+	 * 1 is returned. If both desired dimensions are zero, the sampling rate reduces the larger raw
+	 * dimension to a single pixel.
+	 * <p>
+	 * The sampling rate is calculated in constant time without allocating.
 	 *
 	 * @param rawWidth
 	 * 		the inherent width of the image before scaling, measured in pixels, not less than zero
@@ -67,16 +346,85 @@ public class BitmapEfficiencyHelper {
 			throw new IllegalArgumentException("All dimensions must be greater than zero.");
 		}
 
-		// Based on the power-of-two requirement
-		final boolean scalingIsPossible = (rawWidth / 2 >= desWidth) &&
-				(rawHeight / 2 >= desHeight);
+		return 1 << Math.min(
+				getMaxHalvings(rawWidth, desWidth, rawHeight),
+				getMaxHalvings(rawHeight, desHeight, rawWidth));
+	}
+
+	/**
+	 * Calculates the sampling rates for several images in a single call. Element {@code i} of
+	 * {@code samplingRates} is set to the result of {@link #calculateSamplingRate(int, int, int,
+	 * int)} for element {@code i} of each of the other arrays. No memory is allocated, so this
+	 * method is suitable for planning large batches of decodes.
+	 *
+	 * @param rawWidths
+	 * 		the inherent widths of the images before scaling, measured in pixels, not null
+	 * @param rawHeights
+	 * 		the inherent heights of the images before scaling, measured in pixels, not null
+	 * @param desWidths
+	 * 		the desired widths of the images after scaling, measured in pixels, not null
+	 * @param desHeights
+	 * 		the desired heights of the images after scaling, measured in pixels, not null
+	 * @param samplingRates
+	 * 		the array to write the sampling rates to, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if any array is null
+	 * @throws IllegalArgumentException
+	 * 		if the arrays are not all the same length
+	 * @throws IllegalArgumentException
+	 * 		if any dimension is less than zero
+	 */
+	public static void calculateSamplingRates(
+			final int[] rawWidths,
+			final int[] rawHeights,
+			final int[] desWidths,
+			final int[] desHeights,
+			final int[] samplingRates) {
+
+		checkNotNull(rawWidths, "rawWidths cannot be null.");
+		checkNotNull(rawHeights, "rawHeights cannot be null.");
+		checkNotNull(desWidths, "desWidths cannot be null.");
+		checkNotNull(desHeights, "desHeights cannot be null.");
+		checkNotNull(samplingRates, "samplingRates cannot be null.");
+
+		final int count = samplingRates.length;
+
+		if (rawWidths.length != count || rawHeights.length != count || desWidths.length != count ||
+				desHeights.length != count) {
+			throw new IllegalArgumentException("All arrays must be the same length.");
+		}
+
+		for (int i = 0; i < count; i++) {
+			samplingRates[i] = calculateSamplingRate(rawWidths[i], rawHeights[i], desWidths[i],
+					desHeights[i]);
+		}
+	}
 
-		// Recursively double the sampling rate
-		if (scalingIsPossible) {
-			return 2 * calculateSamplingRate(rawWidth / 2, rawHeight / 2, desWidth, desHeight);
-		} else {
-			return 1;
+	/**
+	 * Calculates the number of times one dimension of an image can be halved (rounding down) while
+	 * remaining at least the desired size. Since {@code raw / 2^k >= des} if and only if {@code
+	 * 2^k <= raw / des} for integers, this is the position of the highest set bit of the quotient.
+	 *
+	 * @param raw
+	 * 		the raw size of the dimension, not less than zero
+	 * @param des
+	 * 		the desired size of the dimension, not less than zero
+	 * @param otherRaw
+	 * 		the raw size of the other dimension, not less than zero, which bounds the result when
+	 * 		the desired size is zero
+	 *
+	 * @return the number of halvings, between 0 and 30 inclusive
+	 */
+	private static int getMaxHalvings(final int raw, final int des, final int otherRaw) {
+		if (des == 0) {
+			// The dimension places no limit on sampling, so stop once the larger dimension is 1px
+			final int larger = Math.max(raw, otherRaw);
+			return larger == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(larger);
 		}
+
+		final int quotient = raw / des;
+		return quotient == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(quotient);
 	}
 
 	/**
@@ -110,19 +458,7 @@ public class BitmapEfficiencyHelper {
 		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
 		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
 
-		// Decode only the boundaries of the image to get its dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeResource(res, resId, options);
-
-		// Decode the full image using sub-sampling
-		final int rawWidth = options.outWidth;
-		final int rawHeight = options.outHeight;
-		options.inSampleSize = calculateSamplingRate(rawWidth, rawHeight, desWidth, desHeight);
-		options.inJustDecodeBounds = false; // Decode the full image
-		options.inScaled = false;
-
-		return BitmapFactory.decodeResource(res, resId, options);
+		return decode(BitmapSource.fromResource(res, resId), desWidth, desHeight);
 	}
 
 	/**
@@ -166,19 +502,7 @@ public class BitmapEfficiencyHelper {
 		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
 		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
 
-		// Decode only the boundaries of the image to get its dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeByteArray(data, offset, length, options);
-
-		// Decode the full image using sub-sampling
-		final int rawWidth = options.outWidth;
-		final int rawHeight = options.outHeight;
-		options.inSampleSize = calculateSamplingRate(rawWidth, rawHeight, desWidth, desHeight);
-		options.inJustDecodeBounds = false; // Decode the full image
-		options.inScaled = false;
-
-		return BitmapFactory.decodeByteArray(data, offset, length, options);
+		return decode(BitmapSource.fromByteArray(data, offset, length), desWidth, desHeight);
 	}
 
 	/**
@@ -237,18 +561,780 @@ public class BitmapEfficiencyHelper {
 		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
 		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
 
-		// Decode only the boundaries of the image to get its dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+		return decode(BitmapSource.fromFile(file), desWidth, desHeight);
+	}
 
-		// Decode the full image using sub-sampling
-		final int rawWidth = options.outWidth;
-		final int rawHeight = options.outHeight;
-		options.inSampleSize = calculateSamplingRate(rawWidth, rawHeight, desWidth, desHeight);
-		options.inJustDecodeBounds = false;
-		options.inScaled = false;
+	/**
+	 * Decodes an image from a stream. The memory consumed by the decoded image is reduced by
+	 * matching the image dimensions to the desired dimensions as best as possible. The dimensions
+	 * of the returned image always exceed or match the supplied dimensions. The bounds and pixels
+	 * are decoded from a single pass over the stream, and the stream is not closed.
+	 *
+	 * @param stream
+	 * 		a stream of compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code stream} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code desHeight} is less than zero
+	 */
+	public static Bitmap decodeStream(
+			final InputStream stream,
+			final int desWidth,
+			final int desHeight) {
+
+		checkNotNull(stream, "stream cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+
+		return decode(BitmapSource.fromStream(stream), desWidth, desHeight);
+	}
+
+	/**
+	 * Decodes an image from a file descriptor, starting at its current position. The memory
+	 * consumed by the decoded image is reduced by matching the image dimensions to the desired
+	 * dimensions as best as possible. The dimensions of the returned image always exceed or match
+	 * the supplied dimensions. The descriptor is not closed.
+	 *
+	 * @param fd
+	 * 		a file descriptor which is open for reading, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code fd} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code desHeight} is less than zero
+	 */
+	public static Bitmap decodeFileDescriptor(
+			final FileDescriptor fd,
+			final int desWidth,
+			final int desHeight) {
+
+		checkNotNull(fd, "fd cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+
+		return decode(BitmapSource.fromFileDescriptor(fd), desWidth, desHeight);
+	}
+
+	/**
+	 * Decodes an image from the remaining bytes of a buffer. The memory consumed by the decoded
+	 * image is reduced by matching the image dimensions to the desired dimensions as best as
+	 * possible. The dimensions of the returned image always exceed or match the supplied
+	 * dimensions. The data is not copied, so memory-mapped files can be decoded without loading
+	 * them onto the heap. The position and limit of the buffer are not changed.
+	 *
+	 * @param buffer
+	 * 		a buffer of compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code buffer} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code desHeight} is less than zero
+	 */
+	public static Bitmap decodeByteBuffer(
+			final ByteBuffer buffer,
+			final int desWidth,
+			final int desHeight) {
+
+		checkNotNull(buffer, "buffer cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+
+		return decode(BitmapSource.fromByteBuffer(buffer), desWidth, desHeight);
+	}
 
-		return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+	/**
+	 * Decodes an image from a source. The memory consumed by the decoded image is reduced by
+	 * matching the image dimensions to the desired dimensions as best as possible. The dimensions
+	 * of the returned image always exceed or match the supplied dimensions.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code desHeight} is less than zero
+	 */
+	public static Bitmap decode(final BitmapSource source, final int desWidth, final int desHeight) {
+		return decode(source, desWidth, desHeight, configPolicy);
+	}
+
+	/**
+	 * Decodes an image from a source using a specific config policy, regardless of the global
+	 * policy. See {@link #decode(BitmapSource, int, int)} for details of the decode. The config
+	 * actually used can be obtained from the returned bitmap.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels, not less than zero
+	 * @param policy
+	 * 		determines the config of the decoded image, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code desHeight} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code policy} is null
+	 */
+	public static Bitmap decode(
+			final BitmapSource source,
+			final int desWidth,
+			final int desHeight,
+			final ConfigPolicy policy) {
+
+		checkNotNull(source, "source cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+		checkNotNull(policy, "policy cannot be null.");
+
+		return decode(new DecodeKey(source, desWidth, desHeight, scalingMode, policy));
+	}
+
+	/**
+	 * Reads the dimensions and MIME type of an image resource without decoding its pixels. The
+	 * dimensions are those of the encoded image, before any density scaling.
+	 *
+	 * @param res
+	 * 		provides access to the resource to probe, not null
+	 * @param resId
+	 * 		the ID of the resource to probe
+	 *
+	 * @return the metadata of the image, or null if the image could not be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code res} is null
+	 */
+	public static ImageMetadata probeResource(final Resources res, final int resId) {
+		checkNotNull(res, "res cannot be null.");
+
+		return probe(BitmapSource.fromResource(res, resId));
+	}
+
+	/**
+	 * Reads the dimensions and MIME type of an image from an array of compressed image data without
+	 * decoding its pixels.
+	 *
+	 * @param data
+	 * 		a byte array of compressed image data, not null
+	 * @param offset
+	 * 		the offset into {@code data} to begin parsing at, counting from zero, not less than zero
+	 * @param length
+	 * 		the number of bytes at parse, not less than zero, less than {@code data.length - offset}
+	 *
+	 * @return the metadata of the image, or null if the image could not be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code data} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code offset} is not within the size limits of the data array
+	 * @throws IllegalArgumentException
+	 * 		if {@code length} is less than zero or greater than {@code data.length - offset}
+	 */
+	public static ImageMetadata probeByteArray(
+			final byte[] data,
+			final int offset,
+			final int length) {
+
+		return probe(BitmapSource.fromByteArray(data, offset, length));
+	}
+
+	/**
+	 * Reads the dimensions and MIME type of an image file without decoding its pixels.
+	 *
+	 * @param file
+	 * 		a file containing compressed image data, not null
+	 *
+	 * @return the metadata of the image, or null if the image could not be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code file} is null
+	 */
+	public static ImageMetadata probeFile(final File file) {
+		checkNotNull(file, "file cannot be null.");
+
+		return probe(BitmapSource.fromFile(file));
+	}
+
+	/**
+	 * Reads the dimensions and MIME type of an image without decoding its pixels. The result is
+	 * cached for files and resources, so probing the same file or resource again does not read it.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 *
+	 * @return the metadata of the image, or null if the image could not be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 */
+	public static ImageMetadata probe(final BitmapSource source) {
+		checkNotNull(source, "source cannot be null.");
+
+		final ImageMetadata cached = getCachedMetadata(source);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		options.inScaled = false;
+
+		final DecodeSession session = source.openSession(false);
+
+		try {
+			session.decodeBounds(options);
+		} finally {
+			session.close();
+		}
+
+		return recordMetadata(source, options);
+	}
+
+	/**
+	 * Reads the dimensions and MIME type of an image from a stream without decoding its pixels.
+	 * Results are not cached, since streams have no identity. If the stream supports marking, it is
+	 * rewound to its original position afterwards so that it can be decoded without being reopened.
+	 * Otherwise the position of the stream is undefined afterwards. The stream is not closed.
+	 *
+	 * @param stream
+	 * 		a stream of compressed image data, not null
+	 *
+	 * @return the metadata of the image, or null if the image could not be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code stream} is null
+	 */
+	public static ImageMetadata probeStream(final InputStream stream) {
+		checkNotNull(stream, "stream cannot be null.");
+
+		final boolean rewindable = stream.markSupported();
+
+		if (rewindable) {
+			stream.mark(DecodeSession.MARK_LIMIT);
+		}
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		options.inScaled = false;
+		BitmapFactory.decodeStream(stream, null, options);
+
+		if (rewindable) {
+			try {
+				stream.reset();
+			} catch (final IOException e) {
+				// The header exceeded the mark limit, so the stream cannot be rewound
+			}
+		}
+
+		return createMetadata(options);
+	}
+
+	/**
+	 * Removes all cached probe results.
+	 */
+	public static void clearMetadataCache() {
+		metadataCache.evictAll();
+	}
+
+	/**
+	 * Gets the cached probe result for a source without reading the source.
+	 *
+	 * @param source
+	 * 		the source to look up, not null
+	 *
+	 * @return the cached metadata, or null if the source has not been probed or decoded recently,
+	 * or if it has no persistent key
+	 */
+	static ImageMetadata getCachedMetadata(final BitmapSource source) {
+		final String key = source.getPersistentKey();
+
+		return key == null ? null : metadataCache.get(key);
+	}
+
+	/**
+	 * Creates metadata from the results of a bounds decode, and caches it if it is valid and the
+	 * source has a persistent key.
+	 *
+	 * @param source
+	 * 		the source which was decoded, not null
+	 * @param options
+	 * 		the options after decoding the bounds, not null
+	 *
+	 * @return the metadata, or null if the bounds are not valid
+	 */
+	private static ImageMetadata recordMetadata(
+			final BitmapSource source,
+			final BitmapFactory.Options options) {
+
+		final ImageMetadata metadata = createMetadata(options);
+		final String key = metadata == null ? null : source.getPersistentKey();
+
+		if (key != null) {
+			metadataCache.put(key, metadata);
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * @param options
+	 * 		the options after decoding the bounds, not null
+	 *
+	 * @return metadata describing the decoded bounds, or null if the bounds are not valid
+	 */
+	private static ImageMetadata createMetadata(final BitmapFactory.Options options) {
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return null;
+		}
+
+		return new ImageMetadata(options.outWidth, options.outHeight, options.outMimeType);
+	}
+
+	/**
+	 * Performs the decode described by a key, using the memory and disk caches if they are set.
+	 *
+	 * @param key
+	 * 		describes the decode, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	static Bitmap decode(final DecodeKey key) {
+		final boolean cacheable = key.getSource().isCacheable();
+		final BitmapCache cache = cacheable ? bitmapCache : null;
+
+		if (cache != null) {
+			final Bitmap cached = cache.get(key);
+
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		if (!cacheable || !deduplicationEnabled) {
+			return decodeAndCache(key);
+		}
+
+		final DeduplicatingDecoder decoder = new DeduplicatingDecoder();
+		final Bitmap decoded = inFlightDecodes.decode(key, decoder);
+
+		if (!decoder.invoked) {
+			statistics.recordDeduplicated();
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Performs the decode described by a key without checking the memory cache, reading from and
+	 * writing to the disk cache if it is set, and writing the result to the memory cache if it is
+	 * set.
+	 *
+	 * @param key
+	 * 		describes the decode, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	private static Bitmap decodeAndCache(final DecodeKey key) {
+		final boolean cacheable = key.getSource().isCacheable();
+		final BitmapCache cache = cacheable ? bitmapCache : null;
+		final DiskBitmapCache disk = cacheable ? diskCache : null;
+
+		Bitmap decoded = disk == null ? null : disk.get(key);
+
+		if (decoded == null) {
+			decoded = decodeWithSampling(key);
+
+			if (decoded != null && disk != null) {
+				disk.put(key, decoded);
+			}
+		}
+
+		if (decoded != null && cache != null) {
+			cache.put(key, decoded);
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Decodes an image using sub-sampling. The bounds of the image are decoded first to determine
+	 * the sampling rate, then the full image is decoded. If a bitmap pool is set, a pooled bitmap
+	 * is used as the target of the full decode where possible. If single-open decoding is enabled,
+	 * stream-backed sources are only opened and read once.
+	 *
+	 * @param key
+	 * 		describes the decode, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	private static Bitmap decodeWithSampling(final DecodeKey key) {
+		final DecodeSession session = key.getSource().openSession(singleOpenDecodingEnabled);
+
+		try {
+			return decodeWithSampling(session, key);
+		} finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * Decodes an image using sub-sampling. See {@link #decodeWithSampling(DecodeKey)}.
+	 *
+	 * @param session
+	 * 		the session to decode the image from, not null
+	 * @param key
+	 * 		describes the decode, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	private static Bitmap decodeWithSampling(final DecodeSession session, final DecodeKey key) {
+		final int desWidth = key.getDesWidth();
+		final int desHeight = key.getDesHeight();
+
+		// Decode only the boundaries of the image to get its unscaled dimensions
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		options.inScaled = false;
+
+		final long boundsStartTime = System.nanoTime();
+		session.decodeBounds(options);
+		final long boundsDecodeNanos = System.nanoTime() - boundsStartTime;
+
+		// The bounds are unknown if the source is missing or malformed
+		if (recordMetadata(key.getSource(), options) == null) {
+			return null;
+		}
+
+		final int rawWidth = options.outWidth;
+		final int rawHeight = options.outHeight;
+
+		// Decode the full image using sub-sampling
+		options.inSampleSize = calculateSamplingRate(rawWidth, rawHeight, desWidth, desHeight);
+		options.inJustDecodeBounds = false;
+
+		// Some decoders round down when sub-sampling, so this is the smallest possible result
+		final int sampledWidth = Math.max(1, rawWidth / options.inSampleSize);
+		final int sampledHeight = Math.max(1, rawHeight / options.inSampleSize);
+		final int naturalDensity = options.inDensity;
+
+		if (key.getScalingMode() == ScalingMode.EXACT) {
+			applyExactScaling(options, sampledWidth, sampledHeight, desWidth, desHeight);
+		}
+
+		options.inPreferredConfig = selectConfig(key.getConfigPolicy(), options.outMimeType);
+
+		final long fullStartTime = System.nanoTime();
+		final Bitmap decoded = decodeWithReuse(session, options);
+		final long fullDecodeNanos = System.nanoTime() - fullStartTime;
+
+		if (decoded == null) {
+			return null;
+		}
+
+		// Scaling changes the density, which would cause the bitmap to be drawn at the wrong size
+		if (options.inScaled) {
+			decoded.setDensity(naturalDensity == 0 ?
+					Resources.getSystem().getDisplayMetrics().densityDpi :
+					naturalDensity);
+		}
+
+		// The memory the image would have used if it had only been sub-sampled
+		final long decodedPixels = Math.max(1L, (long) decoded.getWidth() * decoded.getHeight());
+		final long decodedBytes = decoded.getByteCount();
+		final long sampledBytes = decodedBytes * sampledWidth * sampledHeight / decodedPixels;
+
+		statistics.recordDecode(
+				session.getBytesRead(),
+				Math.max(0, sampledBytes - decodedBytes),
+				decoded.getConfig());
+
+		if (!decodeListeners.isEmpty()) {
+			final DecodeEvent event = new DecodeEvent(
+					key.getSource().getSourceType(),
+					options.outMimeType,
+					rawWidth,
+					rawHeight,
+					desWidth,
+					desHeight,
+					options.inSampleSize,
+					decoded,
+					session.getBytesRead(),
+					boundsDecodeNanos,
+					fullDecodeNanos);
+
+			for (final DecodeListener listener : decodeListeners) {
+				listener.onDecode(event);
+			}
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Selects the config to decode an image with.
+	 *
+	 * @param policy
+	 * 		the policy to apply, not null
+	 * @param mimeType
+	 * 		the MIME type of the image as reported by the bounds decode, may be null
+	 *
+	 * @return the config to decode with, not null
+	 */
+	private static Bitmap.Config selectConfig(final ConfigPolicy policy, final String mimeType) {
+		switch (policy) {
+			case RGB_565:
+				return Bitmap.Config.RGB_565;
+			case RGB_565_IF_OPAQUE:
+				// JPEG has no alpha channel, so reduced precision only affects the color depth
+				return "image/jpeg".equals(mimeType) ?
+						Bitmap.Config.RGB_565 :
+						Bitmap.Config.ARGB_8888;
+			default:
+				return Bitmap.Config.ARGB_8888;
+		}
+	}
+
+	/**
+	 * Configures the options to scale the sub-sampled image down to the desired dimensions during
+	 * the decode. The scaled image is never smaller than the desired dimensions and never larger
+	 * than the sub-sampled image.
+	 *
+	 * @param options
+	 * 		the options to configure, with the sample size already set, not null
+	 * @param sampledWidth
+	 * 		the smallest possible width of the sub-sampled image, greater than zero
+	 * @param sampledHeight
+	 * 		the smallest possible height of the sub-sampled image, greater than zero
+	 * @param desWidth
+	 * 		the desired width of the decoded image, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the decoded image, not less than zero
+	 */
+	private static void applyExactScaling(
+			final BitmapFactory.Options options,
+			final int sampledWidth,
+			final int sampledHeight,
+			final int desWidth,
+			final int desHeight) {
+
+		// Scale by whichever dimension needs the larger ratio so that both meet the desired size
+		final boolean widthLimited = (long) desWidth * sampledHeight >=
+				(long) desHeight * sampledWidth;
+		final int density = widthLimited ? sampledWidth : sampledHeight;
+		final int targetDensity = widthLimited ? desWidth : desHeight;
+
+		// Never scale up, and a zero target density would disable scaling anyway
+		if (targetDensity == 0 || targetDensity >= density) {
+			return;
+		}
+
+		// The output size is derived from density / targetDensity, using the smallest possible
+		// sub-sampled size for the density guarantees the output is not smaller than desired
+		options.inScaled = true;
+		options.inDensity = density;
+		options.inTargetDensity = targetDensity;
+		options.inScreenDensity = 0;
+	}
+
+	/**
+	 * Performs the full decode. If a bitmap pool is set, a pooled bitmap is used as the target of
+	 * the decode where possible. The platform may reject a pooled bitmap, in which case the image
+	 * is decoded again without it, so the pool is not used for sessions which cannot decode twice.
+	 *
+	 * @param session
+	 * 		the session to decode the image from, not null
+	 * @param options
+	 * 		the options to decode with, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	private static Bitmap decodeWithReuse(
+			final DecodeSession session,
+			final BitmapFactory.Options options) {
+
+		final BitmapPool pool = session.isRepeatable() ? bitmapPool : null;
+		final Bitmap reusable = pool == null ? null : getReusableBitmap(pool, options);
+
+		if (reusable == null) {
+			return session.decode(options);
+		}
+
+		options.inBitmap = reusable;
+		options.inMutable = true;
+
+		try {
+			return session.decode(options);
+		} catch (final IllegalArgumentException e) {
+			// The platform rejected the pooled bitmap, so return it and decode without reuse
+			pool.put(reusable);
+			options.inBitmap = null;
+
+			return session.decode(options);
+		}
+	}
+
+	/**
+	 * Gets a pooled bitmap which can hold the result of decoding with the supplied options.
+	 *
+	 * @param pool
+	 * 		the pool to draw from, not null
+	 * @param options
+	 * 		the options the full decode will use, with the bounds and sample size already set
+	 *
+	 * @return the reusable bitmap, or null if none is available
+	 */
+	private static Bitmap getReusableBitmap(
+			final BitmapPool pool,
+			final BitmapFactory.Options options) {
+
+		// Prior to KitKat the platform can only reuse bitmaps when no scaling is applied
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT &&
+				(options.inSampleSize != 1 || options.inScaled)) {
+			return null;
+		}
+
+		// Round up because some decoders round the sub-sampled dimensions up
+		int width = ceilDivide(options.outWidth, options.inSampleSize);
+		int height = ceilDivide(options.outHeight, options.inSampleSize);
+
+		if (options.inScaled) {
+			width = ceilScale(width, options.inTargetDensity, options.inDensity);
+			height = ceilScale(height, options.inTargetDensity, options.inDensity);
+		}
+
+		final Bitmap.Config config = options.inPreferredConfig == null ?
+				Bitmap.Config.ARGB_8888 :
+				options.inPreferredConfig;
+
+		return pool.get(width, height, config);
+	}
+
+	/**
+	 * @param dividend
+	 * 		the value to divide, not less than zero
+	 * @param divisor
+	 * 		the value to divide by, greater than zero
+	 *
+	 * @return the quotient, rounded up to the nearest integer
+	 */
+	private static int ceilDivide(final int dividend, final int divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+
+	/**
+	 * @param value
+	 * 		the value to scale, not less than zero
+	 * @param numerator
+	 * 		the numerator of the scale factor, not less than zero
+	 * @param denominator
+	 * 		the denominator of the scale factor, greater than zero
+	 *
+	 * @return the scaled value, rounded up to the nearest integer
+	 */
+	private static int ceilScale(final int value, final int numerator, final int denominator) {
+		return (int) (((long) value * numerator + denominator - 1) / denominator);
+	}
+
+	/**
+	 * The ways in which images can be scaled to the desired dimensions.
+	 */
+	public enum ScalingMode {
+		/**
+		 * Images are only sub-sampled by powers of two. This is the fastest mode, however the
+		 * decoded image may be up to twice the desired size in each dimension.
+		 */
+		SUBSAMPLE,
+
+		/**
+		 * Images are sub-sampled by powers of two and then scaled down during the decode, so that
+		 * one dimension matches the desired size and the other is at least the desired size. This
+		 * uses less memory than {@link #SUBSAMPLE} at the cost of some additional decoding time.
+		 */
+		EXACT
+	}
+
+	/**
+	 * The policies which can be used to select the config of decoded images.
+	 */
+	public enum ConfigPolicy {
+		/**
+		 * Images are always decoded using {@link Bitmap.Config#ARGB_8888}, which uses four bytes per
+		 * pixel.
+		 */
+		ARGB_8888,
+
+		/**
+		 * Images are always decoded using {@link Bitmap.Config#RGB_565}, which uses two bytes per
+		 * pixel but has no alpha channel and reduced color depth. Images which have an alpha
+		 * channel may still be decoded using {@link Bitmap.Config#ARGB_8888} by the platform.
+		 */
+		RGB_565,
+
+		/**
+		 * Images which cannot have an alpha channel (such as JPEGs) are decoded using {@link
+		 * Bitmap.Config#RGB_565}, and all other images are decoded using {@link
+		 * Bitmap.Config#ARGB_8888}. The format is detected from the header of the image.
+		 */
+		RGB_565_IF_OPAQUE
+	}
+
+	/**
+	 * Decodes on behalf of {@link #inFlightDecodes}, and records whether or not the decode was
+	 * performed so that shared results can be counted.
+	 */
+	private static final class DeduplicatingDecoder implements InFlightDecodes.Decoder {
+		/**
+		 * Whether or not this decoder performed the decode. Only accessed by the requesting
+		 * thread.
+		 */
+		private boolean invoked;
+
+		@Override
+		public Bitmap decode(final DecodeKey key) {
+			invoked = true;
+			return decodeAndCache(key);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * A pool of mutable bitmaps which can be reused as the target of future decodes. Reusing a pooled
+ * bitmap avoids allocating a new pixel buffer, which reduces the number of garbage collections
+ * triggered when many images are decoded in quick succession (e.g. while scrolling a list).
+ * <p>
+ * Bitmaps are bucketed by the size of their pixel buffer. On KitKat and above any pooled bitmap
+ * which is at least as large as the requested size can be reused, however bitmaps more than
+ * {@link #MAX_SIZE_MULTIPLE} times larger than the request are not handed out to avoid wasting
+ * memory. Below KitKat the platform only allows bitmaps with exactly the same dimensions and
+ * config to be reused.
+ * <p>
+ * The total size of the pooled bitmaps never exceeds the byte budget supplied at construction.
+ * When the budget is exceeded, the least recently pooled bitmaps are recycled and discarded. This
+ * class is thread-safe.
+ */
+public class BitmapPool {
+	/**
+	 * The maximum ratio between the size of a reused bitmap and the size of the request.
+	 */
+	public static final int MAX_SIZE_MULTIPLE = 4;
+
+	/**
+	 * The pooled bitmaps, keyed by the size of their pixel buffers in bytes.
+	 */
+	private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<>();
+
+	/**
+	 * All pooled bitmaps, ordered from least recently pooled to most recently pooled.
+	 */
+	private final LinkedHashSet<Bitmap> evictionQueue = new LinkedHashSet<>();
+
+	/**
+	 * The maximum number of bytes which can be held in the pool.
+	 */
+	private long maxSizeBytes;
+
+	/**
+	 * The number of bytes currently held in the pool.
+	 */
+	private long currentSizeBytes;
+
+	/**
+	 * The number of calls to {@link #get(int, int, Bitmap.Config)} which returned a bitmap.
+	 */
+	private long hitCount;
+
+	/**
+	 * The number of calls to {@link #get(int, int, Bitmap.Config)} which returned null.
+	 */
+	private long missCount;
+
+	/**
+	 * The number of bitmaps which have been discarded to keep the pool within budget.
+	 */
+	private long evictionCount;
+
+	/**
+	 * Constructs a new BitmapPool.
+	 *
+	 * @param maxSizeBytes
+	 * 		the maximum number of bytes the pool can hold, not less than zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxSizeBytes} is less than zero
+	 */
+	public BitmapPool(final long maxSizeBytes) {
+		if (maxSizeBytes < 0) {
+			throw new IllegalArgumentException("maxSizeBytes must be at least zero.");
+		}
+
+		this.maxSizeBytes = maxSizeBytes;
+	}
+
+	/**
+	 * Removes a bitmap from the pool which can be used as the target of a decode with the supplied
+	 * properties. The contents of the returned bitmap are undefined.
+	 *
+	 * @param width
+	 * 		the width of the decoded image, measured in pixels, not less than zero
+	 * @param height
+	 * 		the height of the decoded image, measured in pixels, not less than zero
+	 * @param config
+	 * 		the config of the decoded image, not null
+	 *
+	 * @return a reusable bitmap, or null if the pool does not contain a suitable bitmap
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code width} or {@code height} is less than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code config} is null
+	 */
+	public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+		checkGreaterThanOrEqualTo(width, 0, "width must be at least zero.");
+		checkGreaterThanOrEqualTo(height, 0, "height must be at least zero.");
+		checkNotNull(config, "config cannot be null.");
+
+		final long requiredBytes = (long) width * height * getBytesPerPixel(config);
+		final Bitmap bitmap = requiredBytes > Integer.MAX_VALUE ?
+				null :
+				removeReusableBitmap(width, height, config, (int) requiredBytes);
+
+		if (bitmap == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+
+		return bitmap;
+	}
+
+	/**
+	 * Adds a bitmap to the pool so that its pixel buffer can be reused by future decodes. The
+	 * bitmap must not be used by the caller after it has been pooled. Bitmaps which cannot be
+	 * reused by the platform (immutable, recycled or larger than the pool) are ignored.
+	 *
+	 * @param bitmap
+	 * 		the bitmap to pool, not null
+	 *
+	 * @return true if the bitmap was added to the pool, false otherwise
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code bitmap} is null
+	 */
+	public synchronized boolean put(final Bitmap bitmap) {
+		checkNotNull(bitmap, "bitmap cannot be null.");
+
+		if (!isPoolable(bitmap) || evictionQueue.contains(bitmap)) {
+			return false;
+		}
+
+		final int size = getSizeBytes(bitmap);
+
+		if (size > maxSizeBytes) {
+			return false;
+		}
+
+		LinkedList<Bitmap> bucket = buckets.get(size);
+
+		if (bucket == null) {
+			bucket = new LinkedList<>();
+			buckets.put(size, bucket);
+		}
+
+		bucket.addLast(bitmap);
+		evictionQueue.add(bitmap);
+		currentSizeBytes += size;
+
+		trimToSize(maxSizeBytes);
+
+		return true;
+	}
+
+	/**
+	 * Recycles and discards the least recently pooled bitmaps until the total size of the pool is
+	 * no greater than the supplied size.
+	 *
+	 * @param sizeBytes
+	 * 		the maximum size of the pool after trimming, measured in bytes
+	 */
+	public synchronized void trimToSize(final long sizeBytes) {
+		final Iterator<Bitmap> iterator = evictionQueue.iterator();
+
+		while (currentSizeBytes > sizeBytes && iterator.hasNext()) {
+			final Bitmap eldest = iterator.next();
+			iterator.remove();
+
+			final int size = getSizeBytes(eldest);
+			removeFromBucket(size, eldest);
+			currentSizeBytes -= size;
+			evictionCount++;
+
+			eldest.recycle();
+		}
+	}
+
+	/**
+	 * Recycles and discards all bitmaps in the pool.
+	 */
+	public synchronized void clear() {
+		trimToSize(0);
+	}
+
+	/**
+	 * Changes the byte budget of the pool. If the pool currently exceeds the new budget, bitmaps
+	 * are discarded until it does not.
+	 *
+	 * @param maxSizeBytes
+	 * 		the maximum number of bytes the pool can hold, not less than zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxSizeBytes} is less than zero
+	 */
+	public synchronized void setMaxSize(final long maxSizeBytes) {
+		if (maxSizeBytes < 0) {
+			throw new IllegalArgumentException("maxSizeBytes must be at least zero.");
+		}
+
+		this.maxSizeBytes = maxSizeBytes;
+		trimToSize(maxSizeBytes);
+	}
+
+	/**
+	 * @return the maximum number of bytes the pool can hold
+	 */
+	public synchronized long getMaxSize() {
+		return maxSizeBytes;
+	}
+
+	/**
+	 * @return the number of bytes currently held in the pool
+	 */
+	public synchronized long getCurrentSize() {
+		return currentSizeBytes;
+	}
+
+	/**
+	 * @return the number of bitmaps currently held in the pool
+	 */
+	public synchronized int getBitmapCount() {
+		return evictionQueue.size();
+	}
+
+	/**
+	 * @return the number of requests which were satisfied by a pooled bitmap
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of requests which could not be satisfied by a pooled bitmap
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of bitmaps which have been discarded to keep the pool within budget
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Finds, removes and returns the bitmap which best satisfies the request.
+	 *
+	 * @param width
+	 * 		the width of the decoded image
+	 * @param height
+	 * 		the height of the decoded image
+	 * @param config
+	 * 		the config of the decoded image
+	 * @param requiredBytes
+	 * 		the number of bytes needed to hold the decoded image
+	 *
+	 * @return the reusable bitmap, or null if there is none
+	 */
+	private Bitmap removeReusableBitmap(
+			final int width,
+			final int height,
+			final Bitmap.Config config,
+			final int requiredBytes) {
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			final long maxAcceptableBytes = (long) requiredBytes * MAX_SIZE_MULTIPLE;
+
+			for (final Map.Entry<Integer, LinkedList<Bitmap>> bucket :
+					buckets.tailMap(requiredBytes, true).entrySet()) {
+
+				if (bucket.getKey() > maxAcceptableBytes) {
+					break;
+				}
+
+				final Bitmap bitmap = bucket.getValue().peekLast();
+
+				if (bitmap != null) {
+					removePooledBitmap(bucket.getKey(), bitmap);
+					bitmap.reconfigure(width, height, config);
+					return bitmap;
+				}
+			}
+		} else {
+			final LinkedList<Bitmap> bucket = buckets.get(requiredBytes);
+
+			if (bucket != null) {
+				for (final Bitmap bitmap : bucket) {
+					if (bitmap.getWidth() == width && bitmap.getHeight() == height &&
+							bitmap.getConfig() == config) {
+						removePooledBitmap(requiredBytes, bitmap);
+						return bitmap;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes a bitmap from the pool without recycling it.
+	 *
+	 * @param size
+	 * 		the size of the bitmap, measured in bytes
+	 * @param bitmap
+	 * 		the bitmap to remove
+	 */
+	private void removePooledBitmap(final int size, final Bitmap bitmap) {
+		removeFromBucket(size, bitmap);
+		evictionQueue.remove(bitmap);
+		currentSizeBytes -= size;
+	}
+
+	/**
+	 * Removes a bitmap from a bucket, and removes the bucket if it is left empty.
+	 *
+	 * @param size
+	 * 		the key of the bucket
+	 * @param bitmap
+	 * 		the bitmap to remove
+	 */
+	private void removeFromBucket(final int size, final Bitmap bitmap) {
+		final LinkedList<Bitmap> bucket = buckets.get(size);
+
+		if (bucket != null) {
+			bucket.remove(bitmap);
+
+			if (bucket.isEmpty()) {
+				buckets.remove(size);
+			}
+		}
+	}
+
+	/**
+	 * Determines whether or not a bitmap can be reused by the platform as the target of a decode.
+	 *
+	 * @param bitmap
+	 * 		the bitmap to check
+	 *
+	 * @return true if the bitmap can be reused, false otherwise
+	 */
+	private static boolean isPoolable(final Bitmap bitmap) {
+		return !bitmap.isRecycled() && bitmap.isMutable() && bitmap.getConfig() != null;
+	}
+
+	/**
+	 * @param bitmap
+	 * 		a bitmap
+	 *
+	 * @return the size of the pixel buffer backing the bitmap, measured in bytes
+	 */
+	static int getSizeBytes(final Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		} else {
+			return bitmap.getByteCount();
+		}
+	}
+
+	/**
+	 * @param config
+	 * 		a bitmap config, not null
+	 *
+	 * @return the number of bytes used to store each pixel of a bitmap with the supplied config
+	 */
+	static int getBytesPerPixel(final Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			case RGBA_F16:
+				return 8;
+			default:
+				return 4;
+		}
+	}
+}
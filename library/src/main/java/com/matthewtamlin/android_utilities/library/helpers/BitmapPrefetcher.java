@@ -0,0 +1,390 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder.PendingDecode;
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder.Priority;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Warms the {@link BitmapCache} of the {@link BitmapEfficiencyHelper} with images which are likely
+ * to be needed soon, such as the items just beyond the visible window of a scrolling list. Each
+ * call to {@link #prefetch(List)} supplies the upcoming images in order of likely use, replacing
+ * the previous window. Prefetches which are no longer in the window are cancelled, so the work
+ * follows the user as they scroll.
+ * <p>
+ * Prefetches are performed by an {@link AsyncBitmapDecoder} at {@link Priority#LOW}, so they never
+ * delay decodes for visible content. If a visible request is made for an image which is being
+ * prefetched, the two are coalesced and the image is only decoded once. Prefetching is bounded by
+ * two budgets: the number of prefetches running at once, and the estimated number of bytes the
+ * window can occupy in the cache. Images beyond the byte budget are not prefetched. The byte budget
+ * is also limited to the size of the cache, so that prefetching never evicts its own results.
+ * <p>
+ * Prefetching has no effect unless a bitmap cache has been set using {@link
+ * BitmapEfficiencyHelper#setBitmapCache(BitmapCache)}. Sources which can only be read once
+ * (streams, file descriptors and buffers) are never prefetched. This class is thread-safe.
+ */
+public class BitmapPrefetcher {
+	/**
+	 * Performs the prefetches.
+	 */
+	private final AsyncBitmapDecoder decoder;
+
+	/**
+	 * The maximum number of prefetches which can be submitted to the decoder at once.
+	 */
+	private final int maxConcurrentPrefetches;
+
+	/**
+	 * The maximum estimated size of all images in the current window, measured in bytes.
+	 */
+	private final long maxPrefetchBytes;
+
+	/**
+	 * The prefetches in the current window which have not yet been submitted, in order of likely
+	 * use. Guarded by this object.
+	 */
+	private final LinkedHashMap<DecodeKey, Target> queued = new LinkedHashMap<>();
+
+	/**
+	 * The prefetches which have been submitted and have not completed. Guarded by this object.
+	 */
+	private final Map<DecodeKey, PendingDecode> running = new HashMap<>();
+
+	/**
+	 * The number of prefetches which have completed. Guarded by this object.
+	 */
+	private long completedCount;
+
+	/**
+	 * The number of submitted prefetches which were cancelled. Guarded by this object.
+	 */
+	private long cancelledCount;
+
+	/**
+	 * Constructs a new BitmapPrefetcher.
+	 *
+	 * @param decoder
+	 * 		performs the prefetches, not null
+	 * @param maxConcurrentPrefetches
+	 * 		the maximum number of prefetches to run at once, greater than zero
+	 * @param maxPrefetchBytes
+	 * 		the maximum estimated size of all images in a window, measured in bytes, not less than
+	 * 		zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code decoder} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxConcurrentPrefetches} is not greater than zero
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxPrefetchBytes} is less than zero
+	 */
+	public BitmapPrefetcher(
+			final AsyncBitmapDecoder decoder,
+			final int maxConcurrentPrefetches,
+			final long maxPrefetchBytes) {
+
+		this.decoder = checkNotNull(decoder, "decoder cannot be null.");
+		this.maxConcurrentPrefetches = checkGreaterThan(maxConcurrentPrefetches, 0,
+				"maxConcurrentPrefetches must be greater than zero.");
+
+		if (maxPrefetchBytes < 0) {
+			throw new IllegalArgumentException("maxPrefetchBytes must be at least zero.");
+		}
+
+		this.maxPrefetchBytes = maxPrefetchBytes;
+	}
+
+	/**
+	 * Replaces the current prefetch window. Prefetches which are running but are not in the new
+	 * window are cancelled, and the images in the new window are prefetched in order until the
+	 * byte budget is exhausted. Images which are already being prefetched are not restarted.
+	 *
+	 * @param targets
+	 * 		the upcoming images in order of likely use, not null, may be empty
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code targets} is null or contains null
+	 */
+	public synchronized void prefetch(final List<Target> targets) {
+		checkNotNull(targets, "targets cannot be null.");
+
+		final BitmapCache cache = BitmapEfficiencyHelper.getBitmapCache();
+		final long budget = cache == null ? 0 : Math.min(maxPrefetchBytes, cache.getMaxSize());
+		final LinkedHashMap<DecodeKey, Target> window = new LinkedHashMap<>();
+		long windowBytes = 0;
+
+		for (final Target target : targets) {
+			checkNotNull(target, "targets cannot contain null.");
+
+			if (!target.source.isCacheable()) {
+				continue;
+			}
+
+			final DecodeKey key = new DecodeKey(
+					target.source,
+					target.desWidth,
+					target.desHeight,
+					BitmapEfficiencyHelper.getScalingMode(),
+					BitmapEfficiencyHelper.getConfigPolicy());
+
+			if (window.containsKey(key)) {
+				continue;
+			}
+
+			final long size = estimateSizeBytes(target);
+
+			if (windowBytes + size > budget) {
+				break;
+			}
+
+			windowBytes += size;
+			window.put(key, target);
+		}
+
+		final Iterator<Map.Entry<DecodeKey, PendingDecode>> iterator =
+				running.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			final Map.Entry<DecodeKey, PendingDecode> entry = iterator.next();
+
+			if (!window.containsKey(entry.getKey())) {
+				cancel(entry.getValue());
+				iterator.remove();
+			}
+		}
+
+		queued.clear();
+
+		for (final Map.Entry<DecodeKey, Target> entry : window.entrySet()) {
+			if (!running.containsKey(entry.getKey())) {
+				queued.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		submitQueued();
+	}
+
+	/**
+	 * Cancels all running prefetches and discards the current window.
+	 */
+	public synchronized void cancelAll() {
+		for (final PendingDecode pending : running.values()) {
+			cancel(pending);
+		}
+
+		running.clear();
+		queued.clear();
+	}
+
+	/**
+	 * @return the number of prefetches which have been submitted and have not completed
+	 */
+	public synchronized int getRunningCount() {
+		return running.size();
+	}
+
+	/**
+	 * @return the number of prefetches in the current window which have not yet been submitted
+	 */
+	public synchronized int getQueuedCount() {
+		return queued.size();
+	}
+
+	/**
+	 * @return the number of prefetches which have completed
+	 */
+	public synchronized long getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * @return the number of submitted prefetches which were cancelled before completing
+	 */
+	public synchronized long getCancelledCount() {
+		return cancelledCount;
+	}
+
+	/**
+	 * Submits queued prefetches until the concurrency budget is exhausted. If the decoder has been
+	 * shut down, the queue is discarded.
+	 */
+	private void submitQueued() {
+		final Iterator<Map.Entry<DecodeKey, Target>> iterator = queued.entrySet().iterator();
+
+		while (running.size() < maxConcurrentPrefetches && iterator.hasNext()) {
+			final Map.Entry<DecodeKey, Target> entry = iterator.next();
+			final Target target = entry.getValue();
+			iterator.remove();
+
+			try {
+				final PendingDecode pending = decoder.decode(
+						target.source,
+						target.desWidth,
+						target.desHeight,
+						Priority.LOW,
+						new CompletionCallback(entry.getKey()));
+
+				running.put(entry.getKey(), pending);
+			} catch (final RejectedExecutionException e) {
+				queued.clear();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Cancels a running prefetch and records the outcome. The prefetch may have completed even
+	 * though its callback has not yet been delivered, in which case it is counted as completed.
+	 *
+	 * @param pending
+	 * 		the prefetch to cancel, not null
+	 */
+	private void cancel(final PendingDecode pending) {
+		if (pending.cancel(false)) {
+			cancelledCount++;
+		} else {
+			completedCount++;
+		}
+	}
+
+	/**
+	 * Records the completion of a prefetch and submits the next queued prefetch.
+	 *
+	 * @param key
+	 * 		identifies the prefetch which completed, not null
+	 */
+	private synchronized void onPrefetchComplete(final DecodeKey key) {
+		if (running.remove(key) != null) {
+			completedCount++;
+			submitQueued();
+		}
+	}
+
+	/**
+	 * Estimates the number of bytes a decoded image will occupy in the cache. If the dimensions of
+	 * the source are already known from an earlier probe or decode, the estimate accounts for
+	 * sub-sampling. Otherwise the image is assumed to be decoded at exactly the desired size.
+	 *
+	 * @param target
+	 * 		the image to estimate, not null
+	 *
+	 * @return the estimated size, measured in bytes
+	 */
+	private static long estimateSizeBytes(final Target target) {
+		final int bytesPerPixel = BitmapPool.getBytesPerPixel(Bitmap.Config.ARGB_8888);
+		final ImageMetadata metadata = BitmapEfficiencyHelper.getCachedMetadata(target.source);
+
+		if (metadata == null) {
+			return (long) target.desWidth * target.desHeight * bytesPerPixel;
+		}
+
+		final int sampleSize = BitmapEfficiencyHelper.calculateSamplingRate(
+				metadata.getWidth(),
+				metadata.getHeight(),
+				target.desWidth,
+				target.desHeight);
+
+		final long width = (metadata.getWidth() + sampleSize - 1) / sampleSize;
+		final long height = (metadata.getHeight() + sampleSize - 1) / sampleSize;
+
+		return width * height * bytesPerPixel;
+	}
+
+	/**
+	 * Notifies the prefetcher when a prefetch completes.
+	 */
+	private final class CompletionCallback implements AsyncBitmapDecoder.Callback {
+		private final DecodeKey key;
+
+		private CompletionCallback(final DecodeKey key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onDecodeComplete(final Bitmap bitmap) {
+			onPrefetchComplete(key);
+		}
+	}
+
+	/**
+	 * An image to prefetch.
+	 */
+	public static final class Target {
+		private final BitmapSource source;
+
+		private final int desWidth;
+
+		private final int desHeight;
+
+		/**
+		 * Constructs a new Target.
+		 *
+		 * @param source
+		 * 		the source of the compressed image data, not null
+		 * @param desWidth
+		 * 		the desired width of the decoded image, measured in pixels, not less than zero
+		 * @param desHeight
+		 * 		the desired height of the decoded image, measured in pixels, not less than zero
+		 *
+		 * @throws IllegalArgumentException
+		 * 		if {@code source} is null
+		 * @throws IllegalArgumentException
+		 * 		if {@code desWidth} or {@code desHeight} is less than zero
+		 */
+		public Target(final BitmapSource source, final int desWidth, final int desHeight) {
+			this.source = checkNotNull(source, "source cannot be null.");
+			this.desWidth = checkGreaterThanOrEqualTo(desWidth, 0,
+					"desWidth must be at least zero.");
+			this.desHeight = checkGreaterThanOrEqualTo(desHeight, 0,
+					"desHeight must be at least zero.");
+		}
+
+		/**
+		 * @return the source of the compressed image data, not null
+		 */
+		public BitmapSource getSource() {
+			return source;
+		}
+
+		/**
+		 * @return the desired width of the decoded image, measured in pixels
+		 */
+		public int getDesWidth() {
+			return desWidth;
+		}
+
+		/**
+		 * @return the desired height of the decoded image, measured in pixels
+		 */
+		public int getDesHeight() {
+			return desHeight;
+		}
+	}
+}
@@ -0,0 +1,872 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.util.TypedValue;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.InvalidMarkException;
+import java.nio.channels.FileChannel;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkLessThan;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkLessThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * A source of compressed image data which can be decoded by the {@link BitmapEfficiencyHelper}.
+ * Sources are compared by identity rather than by reference, so two sources which refer to the same
+ * image data are equal. This allows decoded images to be cached and shared between callers.
+ */
+public abstract class BitmapSource {
+	/**
+	 * Creates a source which refers to an image resource.
+	 *
+	 * @param res
+	 * 		provides access to the resource, not null
+	 * @param resId
+	 * 		the ID of the resource
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code res} is null
+	 */
+	public static BitmapSource fromResource(final Resources res, final int resId) {
+		return new ResourceSource(res, resId);
+	}
+
+	/**
+	 * Creates a source which refers to an image file. Two file sources are only equal if the file
+	 * was not modified between the creation of each source.
+	 *
+	 * @param file
+	 * 		a file containing compressed image data, not null
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code file} is null
+	 */
+	public static BitmapSource fromFile(final File file) {
+		return new FileSource(file);
+	}
+
+	/**
+	 * Creates a source which refers to a range of an array of compressed image data. Two byte array
+	 * sources are only equal if they refer to the same range of the same array, and the contents of
+	 * the range were the same when each source was first compared. The range is not read until the
+	 * source is compared, so creating a source and decoding it without a cache does not hash the
+	 * data.
+	 *
+	 * @param data
+	 * 		a byte array of compressed image data, not null
+	 * @param offset
+	 * 		the offset into {@code data} to begin parsing at, counting from zero, not less than zero
+	 * @param length
+	 * 		the number of bytes at parse, not less than zero, less than {@code data.length - offset}
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code data} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code offset} is not within the size limits of the data array
+	 * @throws IllegalArgumentException
+	 * 		if {@code length} is less than zero or greater than {@code data.length - offset}
+	 */
+	public static BitmapSource fromByteArray(final byte[] data, final int offset, final int length) {
+		return new ByteArraySource(data, offset, length);
+	}
+
+	/**
+	 * Creates a source which refers to a stream of compressed image data. The stream is read at
+	 * most once, so the bounds and pixels of the image are decoded from a single pass over the
+	 * stream regardless of {@link BitmapEfficiencyHelper#isSingleOpenDecodingEnabled()}. Everything
+	 * read while decoding the bounds is buffered, so images with unusually large headers can still
+	 * be decoded. The stream is not closed. Stream sources are only equal to themselves, and
+	 * decodes of stream sources are never cached.
+	 *
+	 * @param stream
+	 * 		a stream of compressed image data, not null
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code stream} is null
+	 */
+	public static BitmapSource fromStream(final InputStream stream) {
+		return new InputStreamSource(stream);
+	}
+
+	/**
+	 * Creates a source which refers to the compressed image data starting at the current position
+	 * of a file descriptor. If the descriptor is seekable (e.g. one obtained from a content
+	 * provider), it can be decoded repeatedly. The descriptor is not closed. File descriptor
+	 * sources are only equal to themselves, and decodes of file descriptor sources are never
+	 * cached.
+	 *
+	 * @param fd
+	 * 		a file descriptor which is open for reading, not null
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code fd} is null
+	 */
+	public static BitmapSource fromFileDescriptor(final FileDescriptor fd) {
+		return new FileDescriptorSource(fd);
+	}
+
+	/**
+	 * Creates a source which refers to the remaining bytes of a buffer of compressed image data.
+	 * The data is never copied into an intermediate array: heap buffers are decoded directly from
+	 * their backing array, and direct buffers (including memory-mapped files) are read in place.
+	 * The position and limit of the buffer are not changed. Buffer sources are only equal to
+	 * themselves, and decodes of buffer sources are never cached.
+	 *
+	 * @param buffer
+	 * 		a buffer of compressed image data, not null
+	 *
+	 * @return the new source, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code buffer} is null
+	 */
+	public static BitmapSource fromByteBuffer(final ByteBuffer buffer) {
+		checkNotNull(buffer, "buffer cannot be null.");
+
+		if (buffer.hasArray()) {
+			final int offset = buffer.arrayOffset() + buffer.position();
+			return new HeapBufferSource(buffer.array(), offset, buffer.remaining());
+		} else {
+			return new DirectBufferSource(buffer);
+		}
+	}
+
+	/**
+	 * Decodes the image using the supplied options.
+	 *
+	 * @param options
+	 * 		the options to decode with, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	abstract Bitmap decode(BitmapFactory.Options options);
+
+	/**
+	 * Opens a session for decoding the source one or more times. The session must be closed once
+	 * decoding is complete.
+	 *
+	 * @param singleOpen
+	 * 		whether or not the session should attempt to read the bounds and the pixels of the image
+	 * 		from a single stream, if the source is backed by a stream
+	 *
+	 * @return the new session, not null
+	 */
+	DecodeSession openSession(final boolean singleOpen) {
+		return new DecodeSession.RandomAccessSession(this);
+	}
+
+	/**
+	 * Creates a region decoder for the source, which allows parts of the image to be decoded
+	 * without decoding the whole image.
+	 *
+	 * @return the new region decoder, not null
+	 *
+	 * @throws IOException
+	 * 		if the source cannot be read, or the image format does not support region decoding
+	 */
+	abstract BitmapRegionDecoder newRegionDecoder() throws IOException;
+
+	/**
+	 * @return the kind of source, for reporting to {@link DecodeListener}s, not null
+	 */
+	abstract DecodeEvent.SourceType getSourceType();
+
+	/**
+	 * Sources whose contents or position can change without the source changing (such as streams
+	 * and buffers) have no stable identity, so their decodes must not be cached.
+	 *
+	 * @return true if the results of decoding this source can be cached, false otherwise
+	 */
+	boolean isCacheable() {
+		return true;
+	}
+
+	/**
+	 * @return the absolute path of the file the source refers to, or null if the source does not
+	 * refer to a file
+	 */
+	String getFilePath() {
+		return null;
+	}
+
+	/**
+	 * Gets a key which identifies the image data across process restarts, for use by the {@link
+	 * DiskBitmapCache}. The key must change whenever the image data may have changed.
+	 *
+	 * @return the key, or null if the source has no identity which persists across restarts
+	 */
+	String getPersistentKey() {
+		return null;
+	}
+
+	/**
+	 * A source which is read by opening an input stream.
+	 */
+	abstract static class StreamSource extends BitmapSource {
+		/**
+		 * Opens a new stream which begins at the start of the compressed image data. The caller is
+		 * responsible for closing the stream.
+		 *
+		 * @return the new stream, not null
+		 *
+		 * @throws IOException
+		 * 		if the stream cannot be opened
+		 */
+		abstract InputStream openStream() throws IOException;
+
+		/**
+		 * Decodes the image from a stream returned by {@link #openStream()}. The stream is not
+		 * closed.
+		 *
+		 * @param stream
+		 * 		the stream to decode from, not null
+		 * @param options
+		 * 		the options to decode with, not null
+		 *
+		 * @return the decoded image, or null if the image could not be decoded
+		 */
+		Bitmap decodeStream(final InputStream stream, final BitmapFactory.Options options) {
+			return BitmapFactory.decodeStream(stream, null, options);
+		}
+
+		/**
+		 * Single-use sources are always decoded in single-open mode, and the bounds of the image
+		 * are buffered without a limit so that the stream can always be rewound for the full
+		 * decode.
+		 *
+		 * @return true if {@link #openStream()} can only succeed once, false otherwise
+		 */
+		boolean isSingleUse() {
+			return false;
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			final DecodeSession session = openSession(false);
+
+			try {
+				return session.decode(options);
+			} finally {
+				session.close();
+			}
+		}
+
+		@Override
+		DecodeSession openSession(final boolean singleOpen) {
+			// Single-use sources cannot be reopened, so both passes must share a stream
+			return new DecodeSession.StreamSession(this, singleOpen || isSingleUse());
+		}
+
+		@Override
+		BitmapRegionDecoder newRegionDecoder() throws IOException {
+			final InputStream stream = openStream();
+
+			try {
+				return BitmapRegionDecoder.newInstance(stream, false);
+			} finally {
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * A source which refers to an image resource. Unless single-open decoding is requested, the
+	 * resource is decoded using {@link BitmapFactory#decodeResource(Resources, int,
+	 * BitmapFactory.Options)}, which resolves and opens the resource in a single call.
+	 */
+	private static final class ResourceSource extends StreamSource {
+		private final Resources res;
+
+		private final int resId;
+
+		/**
+		 * The resolved value of the resource, used to apply its density when decoding from a
+		 * stream. Resolved when first needed, then reused for every decode of this source.
+		 */
+		private volatile TypedValue resolvedValue;
+
+		/**
+		 * The length of the resource in bytes, or -1 if it has not been measured yet. Measured when
+		 * first needed, then reused for every decode of this source.
+		 */
+		private volatile long length = -1;
+
+		private ResourceSource(final Resources res, final int resId) {
+			this.res = checkNotNull(res, "res cannot be null.");
+			this.resId = resId;
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			return BitmapFactory.decodeResource(res, resId, options);
+		}
+
+		@Override
+		DecodeSession openSession(final boolean singleOpen) {
+			if (singleOpen) {
+				return super.openSession(true);
+			}
+
+			// Decoding each pass directly is cheaper than opening a stream which is not rewound.
+			// Each pass reads the resource again, so the whole resource is counted for each.
+			return new DecodeSession.RandomAccessSession(this, getLength());
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.RESOURCE;
+		}
+
+		@Override
+		InputStream openStream() throws IOException {
+			try {
+				return res.openRawResource(resId);
+			} catch (final Resources.NotFoundException e) {
+				throw new FileNotFoundException("No resource found with ID " + resId);
+			}
+		}
+
+		@Override
+		Bitmap decodeStream(final InputStream stream, final BitmapFactory.Options options) {
+			// The density is needed to match the behaviour of BitmapFactory.decodeResource
+			final TypedValue value = getResolvedValue();
+
+			return BitmapFactory.decodeResourceStream(res, value, stream, null, options);
+		}
+
+		/**
+		 * @return the length of the resource in bytes, or zero if the resource does not exist or
+		 * is compressed
+		 */
+		private long getLength() {
+			if (length == -1) {
+				try {
+					final AssetFileDescriptor fd = res.openRawResourceFd(resId);
+					length = Math.max(fd.getLength(), 0);
+
+					try {
+						fd.close();
+					} catch (final IOException e) {
+						// Nothing useful can be done, and the length has already been read
+					}
+				} catch (final Resources.NotFoundException e) {
+					// Compressed resources cannot be opened as file descriptors
+					return 0;
+				}
+			}
+
+			return length;
+		}
+
+		/**
+		 * @return the resolved value of the resource, or null if the resource does not exist
+		 */
+		private TypedValue getResolvedValue() {
+			if (resolvedValue == null) {
+				final TypedValue value = new TypedValue();
+
+				try {
+					res.getValue(resId, value, true);
+					resolvedValue = value;
+				} catch (final Resources.NotFoundException e) {
+					return null;
+				}
+			}
+
+			return resolvedValue;
+		}
+
+		@Override
+		String getPersistentKey() {
+			final TypedValue value = getResolvedValue();
+
+			if (value == null) {
+				return null;
+			}
+
+			// Configuration qualifiers select the file, and the display density scales the result
+			return "resource:" + resId +
+					":" + value.assetCookie +
+					":" + value.string +
+					":" + res.getDisplayMetrics().densityDpi;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof ResourceSource)) {
+				return false;
+			}
+
+			final ResourceSource other = (ResourceSource) o;
+
+			return res == other.res && resId == other.resId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(res) + resId;
+		}
+	}
+
+	/**
+	 * A source which refers to an image file.
+	 */
+	private static final class FileSource extends StreamSource {
+		private final String path;
+
+		private final long lastModified;
+
+		private final long length;
+
+		private FileSource(final File file) {
+			checkNotNull(file, "file cannot be null.");
+
+			path = file.getAbsolutePath();
+			lastModified = file.lastModified();
+			length = file.length();
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.FILE;
+		}
+
+		@Override
+		InputStream openStream() throws IOException {
+			return new FileInputStream(path);
+		}
+
+		@Override
+		BitmapRegionDecoder newRegionDecoder() throws IOException {
+			return BitmapRegionDecoder.newInstance(path, false);
+		}
+
+		@Override
+		String getFilePath() {
+			return path;
+		}
+
+		@Override
+		String getPersistentKey() {
+			return "file:" + path + ":" + lastModified + ":" + length;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof FileSource)) {
+				return false;
+			}
+
+			final FileSource other = (FileSource) o;
+
+			return path.equals(other.path) &&
+					lastModified == other.lastModified &&
+					length == other.length;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = path.hashCode();
+			result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+			result = 31 * result + (int) (length ^ (length >>> 32));
+
+			return result;
+		}
+	}
+
+	/**
+	 * A source which refers to a range of a byte array.
+	 */
+	private static final class ByteArraySource extends BitmapSource {
+		private final byte[] data;
+
+		private final int offset;
+
+		private final int length;
+
+		/**
+		 * A hash of the bytes in the range, used to detect changes to the array contents. Hashing
+		 * the range is linear in its length, so it is only calculated when the source is first
+		 * compared or hashed (which only happens when decodes are cached or deduplicated). Only
+		 * valid once {@link #contentHashCalculated} is true.
+		 */
+		private volatile int contentHash;
+
+		private volatile boolean contentHashCalculated;
+
+		private ByteArraySource(final byte[] data, final int offset, final int length) {
+			checkNotNull(data, "data cannot be null.");
+			checkGreaterThanOrEqualTo(offset, 0, "offset must be at least zero.");
+			checkLessThan(offset, data.length, "offset must be less than " + data.length);
+			checkGreaterThanOrEqualTo(length, 0, "length must be at least zero.");
+			checkLessThanOrEqualTo(length, data.length - offset, "length must be at most " +
+					(data.length - offset));
+
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return a hash of the bytes in the range, calculated on the first call
+		 */
+		private int getContentHash() {
+			if (!contentHashCalculated) {
+				int hash = 1;
+
+				for (int i = offset; i < offset + length; i++) {
+					hash = 31 * hash + data[i];
+				}
+
+				// Concurrent callers calculate the same value, so the race is benign
+				contentHash = hash;
+				contentHashCalculated = true;
+			}
+
+			return contentHash;
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.BYTE_ARRAY;
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			return BitmapFactory.decodeByteArray(data, offset, length, options);
+		}
+
+		@Override
+		BitmapRegionDecoder newRegionDecoder() throws IOException {
+			return BitmapRegionDecoder.newInstance(data, offset, length, false);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof ByteArraySource)) {
+				return false;
+			}
+
+			final ByteArraySource other = (ByteArraySource) o;
+
+			return data == other.data &&
+					offset == other.offset &&
+					length == other.length &&
+					getContentHash() == other.getContentHash();
+		}
+
+		@Override
+		public int hashCode() {
+			int result = System.identityHashCode(data);
+			result = 31 * result + offset;
+			result = 31 * result + length;
+			result = 31 * result + getContentHash();
+
+			return result;
+		}
+	}
+
+	/**
+	 * A source which refers to a caller-supplied stream. The stream can only be opened once.
+	 */
+	private static final class InputStreamSource extends StreamSource {
+		private final InputStream stream;
+
+		private boolean opened;
+
+		private InputStreamSource(final InputStream stream) {
+			this.stream = checkNotNull(stream, "stream cannot be null.");
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.STREAM;
+		}
+
+		@Override
+		synchronized InputStream openStream() throws IOException {
+			if (opened) {
+				throw new IOException("The stream has already been read.");
+			}
+
+			opened = true;
+
+			return new NonClosingInputStream(stream);
+		}
+
+		@Override
+		boolean isSingleUse() {
+			return true;
+		}
+
+		@Override
+		boolean isCacheable() {
+			return false;
+		}
+	}
+
+	/**
+	 * A source which refers to a file descriptor. Each stream is positioned at the offset the
+	 * descriptor had when the source was created, which requires the descriptor to be seekable if
+	 * it is opened more than once.
+	 */
+	private static final class FileDescriptorSource extends StreamSource {
+		private final FileDescriptor fd;
+
+		/**
+		 * Provides access to the position of the descriptor. Closing the channel would close the
+		 * descriptor, so it is never closed.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The position of the start of the image data, or -1 if the descriptor is not seekable.
+		 */
+		private final long startPosition;
+
+		/**
+		 * Whether or not a stream has been opened. The first stream does not need to seek, since
+		 * the descriptor is already at the start of the image data.
+		 */
+		private boolean opened;
+
+		private FileDescriptorSource(final FileDescriptor fd) {
+			this.fd = checkNotNull(fd, "fd cannot be null.");
+
+			// Streams constructed from a descriptor do not own it, so they never close it
+			channel = new FileInputStream(fd).getChannel();
+
+			long position;
+
+			try {
+				position = channel.position();
+			} catch (final IOException e) {
+				position = -1;
+			}
+
+			startPosition = position;
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.FILE_DESCRIPTOR;
+		}
+
+		@Override
+		synchronized InputStream openStream() throws IOException {
+			if (opened) {
+				if (startPosition == -1) {
+					throw new IOException("The file descriptor is not seekable.");
+				}
+
+				channel.position(startPosition);
+			}
+
+			opened = true;
+
+			return new FileInputStream(fd);
+		}
+
+		@Override
+		boolean isSingleUse() {
+			// Non-seekable descriptors cannot be repositioned, so they can only be read once
+			return startPosition == -1;
+		}
+
+		@Override
+		boolean isCacheable() {
+			return false;
+		}
+	}
+
+	/**
+	 * A source which refers to a range of the array backing a heap buffer. The data is decoded
+	 * directly from the array.
+	 */
+	private static final class HeapBufferSource extends BitmapSource {
+		private final byte[] data;
+
+		private final int offset;
+
+		private final int length;
+
+		private HeapBufferSource(final byte[] data, final int offset, final int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.BYTE_BUFFER;
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			return BitmapFactory.decodeByteArray(data, offset, length, options);
+		}
+
+		@Override
+		BitmapRegionDecoder newRegionDecoder() throws IOException {
+			return BitmapRegionDecoder.newInstance(data, offset, length, false);
+		}
+
+		@Override
+		boolean isCacheable() {
+			return false;
+		}
+	}
+
+	/**
+	 * A source which refers to a direct buffer. Every stream reads from an independent view of the
+	 * buffer, so opening the source again is free and does not copy the data.
+	 */
+	private static final class DirectBufferSource extends StreamSource {
+		/**
+		 * A view of the buffer which captures its position and limit at the time of creation.
+		 */
+		private final ByteBuffer buffer;
+
+		private DirectBufferSource(final ByteBuffer buffer) {
+			this.buffer = buffer.duplicate();
+		}
+
+		@Override
+		DecodeEvent.SourceType getSourceType() {
+			return DecodeEvent.SourceType.BYTE_BUFFER;
+		}
+
+		@Override
+		InputStream openStream() {
+			return new ByteBufferInputStream(buffer.duplicate());
+		}
+
+		@Override
+		DecodeSession openSession(final boolean singleOpen) {
+			// Reopening costs nothing, so there is no benefit to buffering for a rewind
+			return super.openSession(false);
+		}
+
+		@Override
+		boolean isCacheable() {
+			return false;
+		}
+	}
+
+	/**
+	 * A stream which ignores requests to close it, so that caller-supplied streams are left open.
+	 */
+	private static final class NonClosingInputStream extends FilterInputStream {
+		private NonClosingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+			// The caller is responsible for closing the underlying stream
+		}
+	}
+
+	/**
+	 * A stream which reads the remaining bytes of a buffer. The buffer is consumed as it is read.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			if (length == 0) {
+				return 0;
+			}
+
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			final int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+
+			return count;
+		}
+
+		@Override
+		public long skip(final long n) {
+			final int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(final int readLimit) {
+			buffer.mark();
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			try {
+				buffer.reset();
+			} catch (final InvalidMarkException e) {
+				throw new IOException("The stream has not been marked.");
+			}
+		}
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Describes the outcome of copying a set of assets, including the throughput of each asset and of
+ * the copy as a whole. Since assets are copied in parallel, the total elapsed time is usually less
+ * than the sum of the per-asset times.
+ */
+public final class CopyReport {
+	/**
+	 * The number of nanoseconds in one second.
+	 */
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * The reports for the individual assets, in the order the assets were requested.
+	 */
+	private final List<AssetReport> assetReports;
+
+	/**
+	 * The wall-clock time taken to copy all assets, measured in nanoseconds.
+	 */
+	private final long elapsedNanos;
+
+	/**
+	 * The total number of bytes written across all assets.
+	 */
+	private final long totalBytes;
+
+	/**
+	 * The total number of bytes which did not need to be written because the target already held
+	 * the same content.
+	 */
+	private final long bytesSkipped;
+
+	/**
+	 * The names of the stale assets whose files were deleted.
+	 */
+	private final List<String> deletedAssets;
+
+	/**
+	 * Constructs a new CopyReport.
+	 *
+	 * @param assetReports
+	 * 		the reports for the individual assets, not null
+	 * @param elapsedNanos
+	 * 		the wall-clock time taken to copy all assets, measured in nanoseconds
+	 */
+	CopyReport(final List<AssetReport> assetReports, final long elapsedNanos) {
+		this(assetReports, Collections.<String>emptyList(), elapsedNanos);
+	}
+
+	/**
+	 * Constructs a new CopyReport.
+	 *
+	 * @param assetReports
+	 * 		the reports for the individual assets, not null
+	 * @param deletedAssets
+	 * 		the names of the stale assets whose files were deleted, not null
+	 * @param elapsedNanos
+	 * 		the wall-clock time taken to copy all assets, measured in nanoseconds
+	 */
+	CopyReport(
+			final List<AssetReport> assetReports,
+			final List<String> deletedAssets,
+			final long elapsedNanos) {
+
+		this.assetReports = Collections.unmodifiableList(checkNotNull(assetReports,
+				"assetReports cannot be null."));
+		this.deletedAssets = Collections.unmodifiableList(checkNotNull(deletedAssets,
+				"deletedAssets cannot be null."));
+		this.elapsedNanos = elapsedNanos;
+
+		long bytes = 0;
+		long skipped = 0;
+
+		for (final AssetReport report : assetReports) {
+			bytes += report.getBytesCopied();
+			skipped += report.getBytesSkipped();
+		}
+
+		totalBytes = bytes;
+		bytesSkipped = skipped;
+	}
+
+	/**
+	 * @return the reports for the individual assets in the order they were requested, not null
+	 */
+	public List<AssetReport> getAssetReports() {
+		return assetReports;
+	}
+
+	/**
+	 * @return the total number of bytes written across all assets
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return the total number of bytes which did not need to be written because the target
+	 * already held the same content
+	 */
+	public long getBytesSkipped() {
+		return bytesSkipped;
+	}
+
+	/**
+	 * @return the names of the stale assets whose files were deleted, not null
+	 */
+	public List<String> getDeletedAssets() {
+		return deletedAssets;
+	}
+
+	/**
+	 * @param path
+	 * 		a copy path, not null
+	 *
+	 * @return the number of assets which were copied using the supplied path
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code path} is null
+	 */
+	public int getAssetCount(final CopyPath path) {
+		checkNotNull(path, "path cannot be null.");
+
+		int count = 0;
+
+		for (final AssetReport report : assetReports) {
+			if (report.getCopyPath() == path) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the wall-clock time taken to copy all assets, measured in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the total number of bytes written per second of wall-clock time, zero if no time
+	 * elapsed
+	 */
+	public double getThroughputBytesPerSecond() {
+		return calculateThroughput(totalBytes, elapsedNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "CopyReport{" +
+				"assets=" + assetReports.size() +
+				", totalBytes=" + totalBytes +
+				", bytesSkipped=" + bytesSkipped +
+				", deletedAssets=" + deletedAssets.size() +
+				", elapsedNanos=" + elapsedNanos +
+				"}";
+	}
+
+	/**
+	 * @param bytes
+	 * 		a number of bytes
+	 * @param nanos
+	 * 		a duration, measured in nanoseconds
+	 *
+	 * @return the number of bytes per second, zero if the duration is not positive
+	 */
+	private static double calculateThroughput(final long bytes, final long nanos) {
+		return nanos <= 0 ? 0 : (double) bytes * NANOS_PER_SECOND / nanos;
+	}
+
+	/**
+	 * Describes the outcome of copying a single asset.
+	 */
+	public static final class AssetReport {
+		/**
+		 * The name of the asset, relative to the root of the assets.
+		 */
+		private final String assetName;
+
+		/**
+		 * The number of bytes written for the asset.
+		 */
+		private final long bytesCopied;
+
+		/**
+		 * The number of bytes which did not need to be written for the asset.
+		 */
+		private final long bytesSkipped;
+
+		/**
+		 * The time taken to copy the asset, measured in nanoseconds.
+		 */
+		private final long elapsedNanos;
+
+		/**
+		 * The way in which the asset was copied.
+		 */
+		private final CopyPath copyPath;
+
+		/**
+		 * Constructs a new AssetReport.
+		 *
+		 * @param assetName
+		 * 		the name of the asset, not null
+		 * @param bytesCopied
+		 * 		the number of bytes written for the asset
+		 * @param elapsedNanos
+		 * 		the time taken to copy the asset, measured in nanoseconds
+		 * @param copyPath
+		 * 		the way in which the asset was copied, not null
+		 */
+		AssetReport(
+				final String assetName,
+				final long bytesCopied,
+				final long elapsedNanos,
+				final CopyPath copyPath) {
+
+			this(assetName, bytesCopied, 0, elapsedNanos, copyPath);
+		}
+
+		/**
+		 * Constructs a new AssetReport.
+		 *
+		 * @param assetName
+		 * 		the name of the asset, not null
+		 * @param bytesCopied
+		 * 		the number of bytes written for the asset
+		 * @param bytesSkipped
+		 * 		the number of bytes which did not need to be written for the asset
+		 * @param elapsedNanos
+		 * 		the time taken to copy the asset, measured in nanoseconds
+		 * @param copyPath
+		 * 		the way in which the asset was copied, not null
+		 */
+		AssetReport(
+				final String assetName,
+				final long bytesCopied,
+				final long bytesSkipped,
+				final long elapsedNanos,
+				final CopyPath copyPath) {
+
+			this.assetName = checkNotNull(assetName, "assetName cannot be null.");
+			this.bytesCopied = bytesCopied;
+			this.bytesSkipped = bytesSkipped;
+			this.elapsedNanos = elapsedNanos;
+			this.copyPath = checkNotNull(copyPath, "copyPath cannot be null.");
+		}
+
+		/**
+		 * @return the name of the asset, relative to the root of the assets, not null
+		 */
+		public String getAssetName() {
+			return assetName;
+		}
+
+		/**
+		 * @return the number of bytes written for the asset
+		 */
+		public long getBytesCopied() {
+			return bytesCopied;
+		}
+
+		/**
+		 * @return the number of bytes which did not need to be written for the asset, because the
+		 * target already held the same content
+		 */
+		public long getBytesSkipped() {
+			return bytesSkipped;
+		}
+
+		/**
+		 * @return the time taken to copy the asset, measured in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return the way in which the asset was copied, not null
+		 */
+		public CopyPath getCopyPath() {
+			return copyPath;
+		}
+
+		/**
+		 * @return the number of bytes written per second, zero if no time elapsed
+		 */
+		public double getThroughputBytesPerSecond() {
+			return calculateThroughput(bytesCopied, elapsedNanos);
+		}
+
+		@Override
+		public String toString() {
+			return "AssetReport{" +
+					"assetName=" + assetName +
+					", bytesCopied=" + bytesCopied +
+					", bytesSkipped=" + bytesSkipped +
+					", elapsedNanos=" + elapsedNanos +
+					", copyPath=" + copyPath +
+					"}";
+		}
+	}
+
+	/**
+	 * The ways in which an asset can be copied.
+	 */
+	public enum CopyPath {
+		/**
+		 * The asset was stored uncompressed, so it was transferred directly from the APK to the
+		 * target file by the kernel without passing through a buffer in the application.
+		 */
+		CHANNEL_TRANSFER,
+
+		/**
+		 * The asset was read through a stream and written through a buffer, because it was
+		 * compressed or channel transfer was disabled.
+		 */
+		STREAM,
+
+		/**
+		 * The asset was not copied, because the target already held the same content.
+		 */
+		SKIPPED
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+
+/**
+ * Describes a single decode performed by the {@link BitmapEfficiencyHelper}. Instances are
+ * immutable.
+ */
+public final class DecodeEvent {
+	private final SourceType sourceType;
+
+	private final String mimeType;
+
+	private final int rawWidth;
+
+	private final int rawHeight;
+
+	private final int desWidth;
+
+	private final int desHeight;
+
+	private final int sampleSize;
+
+	private final int outputWidth;
+
+	private final int outputHeight;
+
+	private final Bitmap.Config config;
+
+	private final int byteCount;
+
+	private final long bytesRead;
+
+	private final long boundsDecodeNanos;
+
+	private final long fullDecodeNanos;
+
+	DecodeEvent(
+			final SourceType sourceType,
+			final String mimeType,
+			final int rawWidth,
+			final int rawHeight,
+			final int desWidth,
+			final int desHeight,
+			final int sampleSize,
+			final Bitmap bitmap,
+			final long bytesRead,
+			final long boundsDecodeNanos,
+			final long fullDecodeNanos) {
+
+		this.sourceType = sourceType;
+		this.mimeType = mimeType;
+		this.rawWidth = rawWidth;
+		this.rawHeight = rawHeight;
+		this.desWidth = desWidth;
+		this.desHeight = desHeight;
+		this.sampleSize = sampleSize;
+		this.outputWidth = bitmap.getWidth();
+		this.outputHeight = bitmap.getHeight();
+		this.config = bitmap.getConfig();
+		this.byteCount = bitmap.getByteCount();
+		this.bytesRead = bytesRead;
+		this.boundsDecodeNanos = boundsDecodeNanos;
+		this.fullDecodeNanos = fullDecodeNanos;
+	}
+
+	/**
+	 * @return the kind of source which was decoded, not null
+	 */
+	public SourceType getSourceType() {
+		return sourceType;
+	}
+
+	/**
+	 * @return the MIME type of the encoded image, null if it could not be determined
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * @return the width of the encoded image, measured in pixels
+	 */
+	public int getRawWidth() {
+		return rawWidth;
+	}
+
+	/**
+	 * @return the height of the encoded image, measured in pixels
+	 */
+	public int getRawHeight() {
+		return rawHeight;
+	}
+
+	/**
+	 * @return the desired width of the decoded image, measured in pixels
+	 */
+	public int getDesWidth() {
+		return desWidth;
+	}
+
+	/**
+	 * @return the desired height of the decoded image, measured in pixels
+	 */
+	public int getDesHeight() {
+		return desHeight;
+	}
+
+	/**
+	 * @return the sample size the image was decoded with, a power of two
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * @return the width of the decoded image, measured in pixels
+	 */
+	public int getOutputWidth() {
+		return outputWidth;
+	}
+
+	/**
+	 * @return the height of the decoded image, measured in pixels
+	 */
+	public int getOutputHeight() {
+		return outputHeight;
+	}
+
+	/**
+	 * @return the config of the decoded image, may be null
+	 */
+	public Bitmap.Config getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return the number of bytes used to store the pixels of the decoded image
+	 */
+	public int getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @return the number of bytes read from the source, zero if the source is not backed by a
+	 * stream
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return the time taken to decode the bounds of the image, measured in nanoseconds
+	 */
+	public long getBoundsDecodeNanos() {
+		return boundsDecodeNanos;
+	}
+
+	/**
+	 * @return the time taken to decode the pixels of the image, measured in nanoseconds
+	 */
+	public long getFullDecodeNanos() {
+		return fullDecodeNanos;
+	}
+
+	/**
+	 * Calculates how much larger the decoded image is than the desired size, by area. Ratios well
+	 * above one indicate that the image is being decoded at a much higher resolution than it is
+	 * displayed at, which happens when the image is only slightly too large to sub-sample.
+	 *
+	 * @return the ratio between the number of decoded pixels and the number of desired pixels, or
+	 * zero if either desired dimension is zero
+	 */
+	public double getOversizeRatio() {
+		final long desiredPixels = (long) desWidth * desHeight;
+
+		return desiredPixels == 0 ? 0 : (double) outputWidth * outputHeight / desiredPixels;
+	}
+
+	@Override
+	public String toString() {
+		return "DecodeEvent{" +
+				"sourceType=" + sourceType +
+				", mimeType=" + mimeType +
+				", raw=" + rawWidth + "x" + rawHeight +
+				", desired=" + desWidth + "x" + desHeight +
+				", sampleSize=" + sampleSize +
+				", output=" + outputWidth + "x" + outputHeight +
+				", config=" + config +
+				", byteCount=" + byteCount +
+				", bytesRead=" + bytesRead +
+				", boundsDecodeNanos=" + boundsDecodeNanos +
+				", fullDecodeNanos=" + fullDecodeNanos +
+				"}";
+	}
+
+	/**
+	 * The kinds of sources which can be decoded.
+	 */
+	public enum SourceType {
+		RESOURCE,
+		FILE,
+		BYTE_ARRAY,
+		STREAM,
+		FILE_DESCRIPTOR,
+		BYTE_BUFFER
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Identifies the result of decoding a particular source to a particular size. Two keys are equal
+ * if decoding them would produce the same image.
+ */
+final class DecodeKey {
+	private final BitmapSource source;
+
+	private final int desWidth;
+
+	private final int desHeight;
+
+	private final BitmapEfficiencyHelper.ScalingMode scalingMode;
+
+	private final BitmapEfficiencyHelper.ConfigPolicy configPolicy;
+
+	/**
+	 * Constructs a new DecodeKey.
+	 *
+	 * @param source
+	 * 		the source of the image, not null
+	 * @param desWidth
+	 * 		the desired width of the decoded image, measured in pixels
+	 * @param desHeight
+	 * 		the desired height of the decoded image, measured in pixels
+	 * @param scalingMode
+	 * 		the mode used to scale the image to the desired dimensions, not null
+	 * @param configPolicy
+	 * 		the policy which determines the config of the decoded image, not null
+	 */
+	DecodeKey(
+			final BitmapSource source,
+			final int desWidth,
+			final int desHeight,
+			final BitmapEfficiencyHelper.ScalingMode scalingMode,
+			final BitmapEfficiencyHelper.ConfigPolicy configPolicy) {
+
+		this.source = checkNotNull(source, "source cannot be null.");
+		this.desWidth = desWidth;
+		this.desHeight = desHeight;
+		this.scalingMode = checkNotNull(scalingMode, "scalingMode cannot be null.");
+		this.configPolicy = checkNotNull(configPolicy, "configPolicy cannot be null.");
+	}
+
+	/**
+	 * @return the source of the image, not null
+	 */
+	BitmapSource getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the desired width of the decoded image, measured in pixels
+	 */
+	int getDesWidth() {
+		return desWidth;
+	}
+
+	/**
+	 * @return the desired height of the decoded image, measured in pixels
+	 */
+	int getDesHeight() {
+		return desHeight;
+	}
+
+	/**
+	 * @return the mode used to scale the image to the desired dimensions, not null
+	 */
+	BitmapEfficiencyHelper.ScalingMode getScalingMode() {
+		return scalingMode;
+	}
+
+	/**
+	 * @return the policy which determines the config of the decoded image, not null
+	 */
+	BitmapEfficiencyHelper.ConfigPolicy getConfigPolicy() {
+		return configPolicy;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof DecodeKey)) {
+			return false;
+		}
+
+		final DecodeKey other = (DecodeKey) o;
+
+		return source.equals(other.source) &&
+				desWidth == other.desWidth &&
+				desHeight == other.desHeight &&
+				scalingMode == other.scalingMode &&
+				configPolicy == other.configPolicy;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = source.hashCode();
+		result = 31 * result + desWidth;
+		result = 31 * result + desHeight;
+		result = 31 * result + scalingMode.hashCode();
+		result = 31 * result + configPolicy.hashCode();
+
+		return result;
+	}
+}
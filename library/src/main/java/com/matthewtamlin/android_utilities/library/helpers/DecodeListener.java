@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+/**
+ * Receives a notification for each decode performed by the {@link BitmapEfficiencyHelper}.
+ * Listeners are registered using {@link BitmapEfficiencyHelper#addDecodeListener(DecodeListener)}.
+ * Decodes which are satisfied by a cache are not reported.
+ */
+public interface DecodeListener {
+	/**
+	 * Invoked on the decoding thread after each successful decode. Since this delays the return of
+	 * the decode, implementations should be fast and must not block.
+	 *
+	 * @param event
+	 * 		describes the decode, not null
+	 */
+	void onDecode(DecodeEvent event);
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * A {@link DecodeListener} which aggregates decode events into histograms. Aggregation is
+ * lock-free and does not allocate, so the metrics can be collected in production. To find screens
+ * which decode oversized images, compare the oversize ratio histogram before and after visiting
+ * each screen, or register an additional listener which inspects {@link
+ * DecodeEvent#getOversizeRatio()} directly.
+ * <p>
+ * This class is thread-safe.
+ */
+public class DecodeMetrics implements DecodeListener {
+	/**
+	 * The default oversize ratio above which a decode is counted as oversized.
+	 */
+	public static final double DEFAULT_OVERSIZE_THRESHOLD = 2.0;
+
+	private final double oversizeThreshold;
+
+	private final Histogram boundsDecodeMicros = new Histogram();
+
+	private final Histogram fullDecodeMicros = new Histogram();
+
+	private final Histogram bytesProduced = new Histogram();
+
+	private final Histogram bytesRead = new Histogram();
+
+	private final Histogram sampleSizes = new Histogram();
+
+	private final Histogram oversizeRatioPercent = new Histogram();
+
+	private final AtomicLong oversizedDecodeCount = new AtomicLong();
+
+	/**
+	 * The number of decodes of each source type, indexed by the ordinal of the type.
+	 */
+	private final AtomicLongArray sourceTypeCounts =
+			new AtomicLongArray(DecodeEvent.SourceType.values().length);
+
+	/**
+	 * Constructs a new DecodeMetrics which uses the default oversize threshold.
+	 */
+	public DecodeMetrics() {
+		this(DEFAULT_OVERSIZE_THRESHOLD);
+	}
+
+	/**
+	 * Constructs a new DecodeMetrics.
+	 *
+	 * @param oversizeThreshold
+	 * 		the oversize ratio above which a decode is counted as oversized, at least one
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code oversizeThreshold} is less than one
+	 */
+	public DecodeMetrics(final double oversizeThreshold) {
+		if (!(oversizeThreshold >= 1)) {
+			throw new IllegalArgumentException("oversizeThreshold must be at least one.");
+		}
+
+		this.oversizeThreshold = oversizeThreshold;
+	}
+
+	@Override
+	public void onDecode(final DecodeEvent event) {
+		checkNotNull(event, "event cannot be null.");
+
+		boundsDecodeMicros.record(event.getBoundsDecodeNanos() / 1000);
+		fullDecodeMicros.record(event.getFullDecodeNanos() / 1000);
+		bytesProduced.record(event.getByteCount());
+		bytesRead.record(event.getBytesRead());
+		sampleSizes.record(event.getSampleSize());
+		sourceTypeCounts.incrementAndGet(event.getSourceType().ordinal());
+
+		final double oversizeRatio = event.getOversizeRatio();
+		oversizeRatioPercent.record(Math.round(oversizeRatio * 100));
+
+		if (oversizeRatio > oversizeThreshold) {
+			oversizedDecodeCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the time taken to decode the bounds of each image, measured in microseconds, not
+	 * null
+	 */
+	public Histogram getBoundsDecodeMicros() {
+		return boundsDecodeMicros;
+	}
+
+	/**
+	 * @return the time taken to decode the pixels of each image, measured in microseconds, not
+	 * null
+	 */
+	public Histogram getFullDecodeMicros() {
+		return fullDecodeMicros;
+	}
+
+	/**
+	 * @return the number of bytes used to store the pixels of each decoded image, not null
+	 */
+	public Histogram getBytesProduced() {
+		return bytesProduced;
+	}
+
+	/**
+	 * @return the number of bytes read from the source of each image, not null
+	 */
+	public Histogram getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return the sample size each image was decoded with, not null
+	 */
+	public Histogram getSampleSizes() {
+		return sampleSizes;
+	}
+
+	/**
+	 * @return the oversize ratio of each decode as a percentage (e.g. 100 if the decoded image
+	 * matched the desired size exactly), not null
+	 */
+	public Histogram getOversizeRatioPercent() {
+		return oversizeRatioPercent;
+	}
+
+	/**
+	 * @return the number of decodes whose oversize ratio exceeded the threshold
+	 */
+	public long getOversizedDecodeCount() {
+		return oversizedDecodeCount.get();
+	}
+
+	/**
+	 * @param sourceType
+	 * 		a source type, not null
+	 *
+	 * @return the number of decodes of sources with the supplied type
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code sourceType} is null
+	 */
+	public long getDecodeCount(final DecodeEvent.SourceType sourceType) {
+		checkNotNull(sourceType, "sourceType cannot be null.");
+
+		return sourceTypeCounts.get(sourceType.ordinal());
+	}
+
+	/**
+	 * Resets all metrics to zero.
+	 */
+	public void reset() {
+		boundsDecodeMicros.reset();
+		fullDecodeMicros.reset();
+		bytesProduced.reset();
+		bytesRead.reset();
+		sampleSizes.reset();
+		oversizeRatioPercent.reset();
+		oversizedDecodeCount.set(0);
+
+		for (int i = 0; i < sourceTypeCounts.length(); i++) {
+			sourceTypeCounts.set(i, 0);
+		}
+	}
+}
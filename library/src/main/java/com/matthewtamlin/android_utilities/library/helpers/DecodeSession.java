@@ -0,0 +1,347 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a single {@link BitmapSource} one or more times, typically once to read the bounds of
+ * the image and again to read the pixels. Sessions are not thread-safe, and must be closed once
+ * decoding is complete.
+ */
+abstract class DecodeSession {
+	/**
+	 * The size of the buffer used when reading from streams, measured in bytes.
+	 */
+	static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The maximum number of bytes which can be read while decoding the bounds of an image from a
+	 * stream without preventing the stream from being rewound for the full decode. Image headers
+	 * are almost always much smaller, but JPEG headers can contain large EXIF and ICC segments.
+	 */
+	static final int MARK_LIMIT = 256 * 1024;
+
+	/**
+	 * The number of bytes read from the underlying source so far.
+	 */
+	private long bytesRead;
+
+	/**
+	 * Decodes the bounds of the image. The results are written to the out fields of {@code
+	 * options}.
+	 *
+	 * @param options
+	 * 		the options to decode with, with {@code inJustDecodeBounds} set to true, not null
+	 */
+	abstract void decodeBounds(BitmapFactory.Options options);
+
+	/**
+	 * Decodes the full image. This method can be called more than once.
+	 *
+	 * @param options
+	 * 		the options to decode with, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 */
+	abstract Bitmap decode(BitmapFactory.Options options);
+
+	/**
+	 * Releases any resources held by the session.
+	 */
+	abstract void close();
+
+	/**
+	 * @return true if the full image can be decoded again after a full decode, false if the first
+	 * full decode consumes the source
+	 */
+	boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * @return the number of bytes read from the underlying source by this session, zero if the
+	 * source is not backed by a stream or file
+	 */
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Adds to the number of bytes read from the underlying source.
+	 *
+	 * @param count
+	 * 		the number of bytes to add
+	 */
+	void addBytesRead(final long count) {
+		bytesRead += count;
+	}
+
+	/**
+	 * A session for sources which can be read repeatedly without any additional cost, such as byte
+	 * arrays, or which are cheapest to decode directly for each pass, such as resources.
+	 */
+	static final class RandomAccessSession extends DecodeSession {
+		private final BitmapSource source;
+
+		/**
+		 * The number of bytes to report as read for each pass, zero if the source is not backed by
+		 * a file.
+		 */
+		private final long bytesPerPass;
+
+		RandomAccessSession(final BitmapSource source) {
+			this(source, 0);
+		}
+
+		RandomAccessSession(final BitmapSource source, final long bytesPerPass) {
+			this.source = source;
+			this.bytesPerPass = bytesPerPass;
+		}
+
+		@Override
+		void decodeBounds(final BitmapFactory.Options options) {
+			addBytesRead(bytesPerPass);
+			source.decode(options);
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			addBytesRead(bytesPerPass);
+			return source.decode(options);
+		}
+
+		@Override
+		void close() {
+			// Nothing to release
+		}
+	}
+
+	/**
+	 * A session for sources which are read by opening a stream. In single-open mode the bounds are
+	 * decoded from a buffered stream which is then rewound and reused for the full decode, so the
+	 * source is only opened and read once. If the stream cannot be rewound (because the header was
+	 * unusually large), the source is opened again for the full decode. Single-use sources cannot
+	 * be opened again, so their streams buffer everything read for the bounds and can always be
+	 * rewound.
+	 */
+	static final class StreamSession extends DecodeSession {
+		private final BitmapSource.StreamSource source;
+
+		private final boolean singleOpen;
+
+		/**
+		 * A stream which has been rewound to the start of the image data after decoding the
+		 * bounds, or null if there is none.
+		 */
+		private CountingInputStream rewoundStream;
+
+		StreamSession(final BitmapSource.StreamSource source, final boolean singleOpen) {
+			this.source = source;
+			this.singleOpen = singleOpen;
+		}
+
+		@Override
+		void decodeBounds(final BitmapFactory.Options options) {
+			if (!singleOpen) {
+				decodeFromNewStream(options);
+				return;
+			}
+
+			final CountingInputStream stream = openStream();
+
+			if (stream == null) {
+				return;
+			}
+
+			stream.mark(MARK_LIMIT);
+			source.decodeStream(stream, options);
+
+			try {
+				stream.reset();
+				rewoundStream = stream;
+			} catch (final IOException e) {
+				// The header exceeded the mark limit, so the full decode must reopen the source.
+				// Single-use sources never get here, since their streams have no mark limit.
+				closeStream(stream);
+			}
+		}
+
+		@Override
+		Bitmap decode(final BitmapFactory.Options options) {
+			if (rewoundStream == null) {
+				return decodeFromNewStream(options);
+			}
+
+			final CountingInputStream stream = rewoundStream;
+			rewoundStream = null;
+
+			try {
+				return source.decodeStream(stream, options);
+			} finally {
+				closeStream(stream);
+			}
+		}
+
+		@Override
+		boolean isRepeatable() {
+			return !source.isSingleUse();
+		}
+
+		@Override
+		void close() {
+			if (rewoundStream != null) {
+				closeStream(rewoundStream);
+				rewoundStream = null;
+			}
+		}
+
+		/**
+		 * Opens the source, decodes it once and closes it.
+		 *
+		 * @param options
+		 * 		the options to decode with, not null
+		 *
+		 * @return the decoded image, or null if the image could not be decoded
+		 */
+		private Bitmap decodeFromNewStream(final BitmapFactory.Options options) {
+			final CountingInputStream stream = openStream();
+
+			if (stream == null) {
+				return null;
+			}
+
+			try {
+				return source.decodeStream(stream, options);
+			} finally {
+				closeStream(stream);
+			}
+		}
+
+		/**
+		 * @return a new buffered stream for the source, or null if the source could not be opened
+		 */
+		private CountingInputStream openStream() {
+			final int markLimit = source.isSingleUse() ? Integer.MAX_VALUE : MARK_LIMIT;
+
+			try {
+				return new CountingInputStream(source.openStream(), markLimit);
+			} catch (final IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Closes a stream and records the number of bytes which were read from it.
+		 *
+		 * @param stream
+		 * 		the stream to close, not null
+		 */
+		private void closeStream(final CountingInputStream stream) {
+			addBytesRead(stream.getCount());
+
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				// Nothing useful can be done, and the data has already been read
+			}
+		}
+	}
+
+	/**
+	 * A buffered stream which counts the bytes read from the underlying stream. Since some versions
+	 * of BitmapFactory mark the stream themselves with a small limit, the mark limit is never
+	 * reduced below a minimum, which is {@link #MARK_LIMIT} unless otherwise specified. This does
+	 * not interfere with the decoder, because all marks are placed at the start of the image data.
+	 */
+	static final class CountingInputStream extends BufferedInputStream {
+		/**
+		 * The smallest mark limit which can be set, measured in bytes.
+		 */
+		private final int minimumMarkLimit;
+
+		CountingInputStream(final InputStream in) {
+			this(in, MARK_LIMIT);
+		}
+
+		CountingInputStream(final InputStream in, final int minimumMarkLimit) {
+			super(new CountingFilter(in), BUFFER_SIZE);
+			this.minimumMarkLimit = minimumMarkLimit;
+		}
+
+		@Override
+		public synchronized void mark(final int readLimit) {
+			super.mark(Math.max(readLimit, minimumMarkLimit));
+		}
+
+		/**
+		 * @return the number of bytes read from the underlying stream so far
+		 */
+		long getCount() {
+			return ((CountingFilter) in).count;
+		}
+	}
+
+	/**
+	 * Counts the bytes read from a stream.
+	 */
+	private static final class CountingFilter extends FilterInputStream {
+		private long count;
+
+		private CountingFilter(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int result = super.read();
+
+			if (result != -1) {
+				count++;
+			}
+
+			return result;
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length)
+				throws IOException {
+
+			final int result = super.read(buffer, offset, length);
+
+			if (result > 0) {
+				count += result;
+			}
+
+			return result;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long result = super.skip(n);
+			count += result;
+
+			return result;
+		}
+	}
+}
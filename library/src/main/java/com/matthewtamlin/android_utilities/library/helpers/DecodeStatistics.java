@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Cumulative statistics describing the decodes performed by the {@link BitmapEfficiencyHelper}.
+ * Decodes which are satisfied by a cache are not counted. This class is thread-safe.
+ */
+public final class DecodeStatistics {
+	/**
+	 * The number of full decodes performed.
+	 */
+	private final AtomicLong decodeCount = new AtomicLong();
+
+	/**
+	 * The number of bytes read from stream-backed sources (files and resources) across all passes
+	 * of all decodes.
+	 */
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	/**
+	 * The number of bytes of pixel memory saved by scaling beyond sub-sampling.
+	 */
+	private final AtomicLong bytesSavedByScaling = new AtomicLong();
+
+	/**
+	 * The number of decodes which produced each config, indexed by the ordinal of the config.
+	 */
+	private final AtomicLongArray configCounts = new AtomicLongArray(Bitmap.Config.values().length);
+
+	/**
+	 * The number of requests which shared the result of an identical decode already in progress.
+	 */
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+
+	/**
+	 * Constructs a new DecodeStatistics with all values set to zero.
+	 */
+	DecodeStatistics() {}
+
+	/**
+	 * @return the number of full decodes performed
+	 */
+	public long getDecodeCount() {
+		return decodeCount.get();
+	}
+
+	/**
+	 * @return the number of bytes read from stream-backed sources (files and resources) across all
+	 * passes of all decodes
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return the average number of bytes read from the source per decode, zero if no decodes have
+	 * been performed
+	 */
+	public long getBytesReadPerDecode() {
+		final long count = decodeCount.get();
+
+		return count == 0 ? 0 : bytesRead.get() / count;
+	}
+
+	/**
+	 * @return the number of bytes of pixel memory saved by scaling images beyond power-of-two
+	 * sub-sampling (see {@link BitmapEfficiencyHelper.ScalingMode#EXACT})
+	 */
+	public long getBytesSavedByScaling() {
+		return bytesSavedByScaling.get();
+	}
+
+	/**
+	 * @return the average number of bytes of pixel memory saved per decode by scaling images beyond
+	 * power-of-two sub-sampling, zero if no decodes have been performed
+	 */
+	public long getBytesSavedByScalingPerDecode() {
+		final long count = decodeCount.get();
+
+		return count == 0 ? 0 : bytesSavedByScaling.get() / count;
+	}
+
+	/**
+	 * @param config
+	 * 		a bitmap config, not null
+	 *
+	 * @return the number of decodes which produced a bitmap with the supplied config
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code config} is null
+	 */
+	public long getDecodeCount(final Bitmap.Config config) {
+		checkNotNull(config, "config cannot be null.");
+
+		return configCounts.get(config.ordinal());
+	}
+
+	/**
+	 * @return the number of requests which shared the result of an identical decode already in
+	 * progress instead of decoding the image themselves (see {@link
+	 * BitmapEfficiencyHelper#setDeduplicationEnabled(boolean)})
+	 */
+	public long getDeduplicatedCount() {
+		return deduplicatedCount.get();
+	}
+
+	/**
+	 * Resets all statistics to zero.
+	 */
+	public void reset() {
+		decodeCount.set(0);
+		bytesRead.set(0);
+		bytesSavedByScaling.set(0);
+		deduplicatedCount.set(0);
+
+		for (int i = 0; i < configCounts.length(); i++) {
+			configCounts.set(i, 0);
+		}
+	}
+
+	/**
+	 * Records a decode.
+	 *
+	 * @param sourceBytesRead
+	 * 		the number of bytes read from the source by the decode
+	 * @param scalingBytesSaved
+	 * 		the number of bytes of pixel memory saved by scaling beyond sub-sampling
+	 * @param config
+	 * 		the config of the decoded bitmap, may be null if the platform did not report it
+	 */
+	void recordDecode(
+			final long sourceBytesRead,
+			final long scalingBytesSaved,
+			final Bitmap.Config config) {
+
+		decodeCount.incrementAndGet();
+		bytesRead.addAndGet(sourceBytesRead);
+		bytesSavedByScaling.addAndGet(scalingBytesSaved);
+
+		if (config != null) {
+			configCounts.incrementAndGet(config.ordinal());
+		}
+	}
+
+	/**
+	 * Records a request which shared the result of an identical decode already in progress.
+	 */
+	void recordDeduplicated() {
+		deduplicatedCount.incrementAndGet();
+	}
+}
@@ -0,0 +1,685 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * A persistent cache of decoded bitmaps, stored as files in a directory. When a disk cache is
+ * supplied to the {@link BitmapEfficiencyHelper}, the results of decodes are written to disk, and
+ * later decodes of the same source at the same size (including those in later processes) read the
+ * stored result instead of decoding the original image. This is most effective for thumbnails of
+ * large photos, where the stored result is much smaller and faster to read than the original.
+ * <p>
+ * Only sources with an identity which persists across restarts are cached: files (identified by
+ * path, modification time and length) and resources (identified by ID and screen density). The
+ * application version supplied at construction is part of every key, so that resources which
+ * change between versions are not served from stale entries.
+ * <p>
+ * Each entry holds either the raw pixels of the bitmap, which are fastest to read, or a lossless
+ * PNG encoding, which is smaller. Entries are written to a temporary file and then renamed, so
+ * readers never observe a partially written entry. Each entry records a CRC32 checksum of its
+ * contents which is verified on every read, and corrupted entries are deleted. When the total size
+ * of the entries exceeds the budget, the least recently used entries are deleted. Recency is
+ * persisted using the modification times of the files.
+ * <p>
+ * The methods of this class perform disk IO, so they should not be called from the main thread.
+ * This class is thread-safe.
+ */
+public class DiskBitmapCache {
+	/**
+	 * Identifies files written by this class.
+	 */
+	private static final int MAGIC = 0x424D4443;
+
+	/**
+	 * The version of the entry format. Entries with a different version are discarded.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The suffix of the files which entries are written to before being renamed.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * The size of the buffers used when reading and writing entries, measured in bytes.
+	 */
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The directory containing the entries.
+	 */
+	private final File directory;
+
+	/**
+	 * The maximum number of bytes the entries can occupy.
+	 */
+	private final long maxSizeBytes;
+
+	/**
+	 * The version of the application, included in every key.
+	 */
+	private final int appVersion;
+
+	/**
+	 * How new entries are encoded.
+	 */
+	private final Encoding encoding;
+
+	/**
+	 * The sizes of the entries, keyed by file name, ordered from least recently used to most
+	 * recently used. Null until the directory has been scanned. Guarded by this object.
+	 */
+	private LinkedHashMap<String, Long> entries;
+
+	/**
+	 * The total size of the entries, measured in bytes. Guarded by this object.
+	 */
+	private long currentSizeBytes;
+
+	/**
+	 * The number of lookups which returned a cached bitmap. Guarded by this object.
+	 */
+	private long hitCount;
+
+	/**
+	 * The number of lookups which did not return a cached bitmap. Guarded by this object.
+	 */
+	private long missCount;
+
+	/**
+	 * The number of entries which have been deleted to keep the cache within budget. Guarded by
+	 * this object.
+	 */
+	private long evictionCount;
+
+	/**
+	 * Distinguishes the temporary files of concurrent writes.
+	 */
+	private final AtomicInteger tempFileCounter = new AtomicInteger();
+
+	/**
+	 * Constructs a new DiskBitmapCache. The directory is not scanned until the cache is first used.
+	 *
+	 * @param directory
+	 * 		the directory to store entries in, which should not be used for anything else, not null
+	 * @param maxSizeBytes
+	 * 		the maximum number of bytes the entries can occupy, greater than zero
+	 * @param appVersion
+	 * 		the version of the application, which should be changed whenever resources change
+	 * @param encoding
+	 * 		how new entries are encoded, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code directory} or {@code encoding} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code maxSizeBytes} is not greater than zero
+	 */
+	public DiskBitmapCache(
+			final File directory,
+			final long maxSizeBytes,
+			final int appVersion,
+			final Encoding encoding) {
+
+		this.directory = checkNotNull(directory, "directory cannot be null.");
+		this.encoding = checkNotNull(encoding, "encoding cannot be null.");
+
+		if (maxSizeBytes <= 0) {
+			throw new IllegalArgumentException("maxSizeBytes must be greater than zero.");
+		}
+
+		this.maxSizeBytes = maxSizeBytes;
+		this.appVersion = appVersion;
+	}
+
+	/**
+	 * Deletes all entries from the cache.
+	 */
+	public synchronized void evictAll() {
+		trimToSize(0);
+	}
+
+	/**
+	 * Deletes the least recently used entries until the entries occupy no more than the supplied
+	 * number of bytes.
+	 *
+	 * @param sizeBytes
+	 * 		the maximum size of the cache after trimming, measured in bytes
+	 */
+	public synchronized void trimToSize(final long sizeBytes) {
+		ensureInitialised();
+
+		final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+
+		while (currentSizeBytes > sizeBytes && iterator.hasNext()) {
+			final Map.Entry<String, Long> eldest = iterator.next();
+			iterator.remove();
+
+			currentSizeBytes -= eldest.getValue();
+			evictionCount++;
+
+			new File(directory, eldest.getKey()).delete();
+		}
+	}
+
+	/**
+	 * @return the maximum number of bytes the entries can occupy
+	 */
+	public long getMaxSize() {
+		return maxSizeBytes;
+	}
+
+	/**
+	 * @return the number of bytes currently occupied by the entries
+	 */
+	public synchronized long getCurrentSize() {
+		ensureInitialised();
+		return currentSizeBytes;
+	}
+
+	/**
+	 * @return the number of entries currently in the cache
+	 */
+	public synchronized int getEntryCount() {
+		ensureInitialised();
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of lookups which returned a cached bitmap
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups which did not return a cached bitmap
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of entries which have been deleted to keep the cache within budget
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Gets the stored result of a decode.
+	 *
+	 * @param key
+	 * 		identifies the decode, not null
+	 *
+	 * @return the stored bitmap, or null if there is none or it could not be read
+	 */
+	Bitmap get(final DecodeKey key) {
+		final String entryKey = createEntryKey(key);
+
+		if (entryKey == null) {
+			return null;
+		}
+
+		final String fileName = createFileName(entryKey);
+
+		synchronized (this) {
+			ensureInitialised();
+
+			if (!entries.containsKey(fileName)) {
+				missCount++;
+				return null;
+			}
+		}
+
+		final File file = new File(directory, fileName);
+		final Bitmap bitmap = readEntry(file, entryKey);
+
+		synchronized (this) {
+			if (bitmap == null) {
+				// The entry is corrupted, or was evicted while it was being read
+				removeEntry(fileName);
+				missCount++;
+			} else {
+				// Reading the entry moves it to the end of the access order
+				entries.get(fileName);
+				file.setLastModified(System.currentTimeMillis());
+				hitCount++;
+			}
+		}
+
+		return bitmap;
+	}
+
+	/**
+	 * Stores the result of a decode, replacing any existing entry for the same decode. Nothing is
+	 * stored if the source has no persistent identity, or if the bitmap cannot be encoded.
+	 *
+	 * @param key
+	 * 		identifies the decode, not null
+	 * @param bitmap
+	 * 		the decoded bitmap, not null
+	 */
+	void put(final DecodeKey key, final Bitmap bitmap) {
+		final String entryKey = createEntryKey(key);
+
+		if (entryKey == null || bitmap.getConfig() == null || bitmap.isRecycled()) {
+			return;
+		}
+
+		final String fileName = createFileName(entryKey);
+		final File tempFile = new File(directory,
+				fileName + "." + tempFileCounter.incrementAndGet() + TEMP_SUFFIX);
+
+		synchronized (this) {
+			ensureInitialised();
+		}
+
+		if (!writeEntry(tempFile, entryKey, bitmap)) {
+			tempFile.delete();
+			return;
+		}
+
+		synchronized (this) {
+			final File file = new File(directory, fileName);
+
+			// Renaming within a directory is atomic, so readers see either the old or new entry
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				return;
+			}
+
+			final Long previousSize = entries.remove(fileName);
+
+			if (previousSize != null) {
+				currentSizeBytes -= previousSize;
+			}
+
+			entries.put(fileName, file.length());
+			currentSizeBytes += file.length();
+
+			trimToSize(maxSizeBytes);
+		}
+	}
+
+	/**
+	 * Scans the directory to rebuild the index of entries, if it has not already been done.
+	 * Temporary files left behind by interrupted writes are deleted. Must be called while
+	 * synchronized on this object.
+	 */
+	private void ensureInitialised() {
+		if (entries != null) {
+			return;
+		}
+
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		directory.mkdirs();
+
+		final File[] files = directory.listFiles();
+
+		if (files == null) {
+			return;
+		}
+
+		// The modification time of each entry is updated when it is read
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(final File first, final File second) {
+				final long firstModified = first.lastModified();
+				final long secondModified = second.lastModified();
+
+				return firstModified < secondModified ? -1 :
+						(firstModified == secondModified ? 0 : 1);
+			}
+		});
+
+		for (final File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+			} else if (file.isFile()) {
+				entries.put(file.getName(), file.length());
+				currentSizeBytes += file.length();
+			}
+		}
+
+		trimToSize(maxSizeBytes);
+	}
+
+	/**
+	 * Removes an entry from the index and deletes its file. Must be called while synchronized on
+	 * this object.
+	 *
+	 * @param fileName
+	 * 		the name of the file containing the entry
+	 */
+	private void removeEntry(final String fileName) {
+		final Long size = entries.remove(fileName);
+
+		if (size != null) {
+			currentSizeBytes -= size;
+			new File(directory, fileName).delete();
+		}
+	}
+
+	/**
+	 * Creates a key which identifies a decode across process restarts.
+	 *
+	 * @param key
+	 * 		identifies the decode, not null
+	 *
+	 * @return the key, or null if the source has no persistent identity
+	 */
+	private String createEntryKey(final DecodeKey key) {
+		final String sourceKey = key.getSource().getPersistentKey();
+
+		if (sourceKey == null) {
+			return null;
+		}
+
+		return sourceKey +
+				"|" + key.getDesWidth() + "x" + key.getDesHeight() +
+				"|" + key.getScalingMode() +
+				"|" + key.getConfigPolicy() +
+				"|" + appVersion;
+	}
+
+	/**
+	 * Creates a file name for an entry. Keys can contain arbitrary characters (e.g. file paths), so
+	 * the name is derived from a digest of the key. The full key is stored in the entry to detect
+	 * collisions.
+	 *
+	 * @param entryKey
+	 * 		the key of the entry, not null
+	 *
+	 * @return the file name, not null
+	 */
+	private static String createFileName(final String entryKey) {
+		final byte[] digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(entryKey.getBytes("UTF-8"));
+		} catch (final NoSuchAlgorithmException | IOException e) {
+			// Both are guaranteed to be available on all platforms
+			throw new IllegalStateException(e);
+		}
+
+		final StringBuilder builder = new StringBuilder(digest.length * 2);
+
+		for (final byte b : digest) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Encodes a bitmap and writes it to a file. The file is synced to disk before returning.
+	 *
+	 * @param file
+	 * 		the file to write to, not null
+	 * @param entryKey
+	 * 		the key of the entry, not null
+	 * @param bitmap
+	 * 		the bitmap to write, not null
+	 *
+	 * @return true if the entry was written, false otherwise
+	 */
+	private boolean writeEntry(final File file, final String entryKey, final Bitmap bitmap) {
+		final byte[] payload = encode(bitmap);
+
+		if (payload == null) {
+			return false;
+		}
+
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		FileOutputStream fileStream = null;
+
+		try {
+			fileStream = new FileOutputStream(file);
+
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(fileStream, BUFFER_SIZE));
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(entryKey);
+			out.writeUTF(encoding.name());
+			out.writeUTF(bitmap.getConfig().name());
+			out.writeInt(bitmap.getWidth());
+			out.writeInt(bitmap.getHeight());
+			out.writeInt(bitmap.getDensity());
+			out.writeBoolean(bitmap.hasAlpha());
+			out.writeInt(payload.length);
+			out.writeLong(crc.getValue());
+			out.write(payload);
+			out.flush();
+
+			fileStream.getFD().sync();
+
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			closeQuietly(fileStream);
+		}
+	}
+
+	/**
+	 * Reads and verifies an entry.
+	 *
+	 * @param file
+	 * 		the file containing the entry, not null
+	 * @param entryKey
+	 * 		the expected key of the entry, not null
+	 *
+	 * @return the decoded bitmap, or null if the entry is missing, corrupted, or belongs to a
+	 * different key
+	 */
+	private static Bitmap readEntry(final File file, final String entryKey) {
+		FileInputStream fileStream = null;
+
+		try {
+			fileStream = new FileInputStream(file);
+
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(fileStream, BUFFER_SIZE));
+
+			if (in.readInt() != MAGIC ||
+					in.readInt() != FORMAT_VERSION ||
+					!in.readUTF().equals(entryKey)) {
+				return null;
+			}
+
+			final Encoding entryEncoding = Encoding.valueOf(in.readUTF());
+			final Bitmap.Config config = Bitmap.Config.valueOf(in.readUTF());
+			final int width = in.readInt();
+			final int height = in.readInt();
+			final int density = in.readInt();
+			final boolean hasAlpha = in.readBoolean();
+			final int payloadLength = in.readInt();
+			final long expectedCrc = in.readLong();
+
+			if (width <= 0 || height <= 0 || payloadLength < 0 ||
+					payloadLength > file.length()) {
+				return null;
+			}
+
+			final byte[] payload = new byte[payloadLength];
+			in.readFully(payload);
+
+			final CRC32 crc = new CRC32();
+			crc.update(payload);
+
+			if (crc.getValue() != expectedCrc) {
+				return null;
+			}
+
+			final Bitmap bitmap = decode(payload, entryEncoding, config, width, height);
+
+			if (bitmap != null) {
+				bitmap.setDensity(density);
+				bitmap.setHasAlpha(hasAlpha);
+			}
+
+			return bitmap;
+		} catch (final IOException | IllegalArgumentException e) {
+			// The file is missing, truncated, or contains an unknown encoding or config
+			return null;
+		} finally {
+			closeQuietly(fileStream);
+		}
+	}
+
+	/**
+	 * Encodes a bitmap using the encoding of this cache.
+	 *
+	 * @param bitmap
+	 * 		the bitmap to encode, not null
+	 *
+	 * @return the encoded bitmap, or null if it could not be encoded
+	 */
+	private byte[] encode(final Bitmap bitmap) {
+		switch (encoding) {
+			case RAW:
+				final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+				bitmap.copyPixelsToBuffer(pixels);
+				return pixels.array();
+
+			case PNG:
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				return bitmap.compress(Bitmap.CompressFormat.PNG, 100, out) ? out.toByteArray() :
+						null;
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Decodes the payload of an entry.
+	 *
+	 * @param payload
+	 * 		the payload, not null
+	 * @param encoding
+	 * 		the encoding of the payload, not null
+	 * @param config
+	 * 		the config of the bitmap, not null
+	 * @param width
+	 * 		the width of the bitmap, measured in pixels
+	 * @param height
+	 * 		the height of the bitmap, measured in pixels
+	 *
+	 * @return the decoded bitmap, or null if the payload does not match the dimensions
+	 */
+	private static Bitmap decode(
+			final byte[] payload,
+			final Encoding encoding,
+			final Bitmap.Config config,
+			final int width,
+			final int height) {
+
+		switch (encoding) {
+			case RAW:
+				final Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+
+				if (bitmap.getByteCount() != payload.length) {
+					bitmap.recycle();
+					return null;
+				}
+
+				bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(payload));
+				return bitmap;
+
+			case PNG:
+				final BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inPreferredConfig = config;
+
+				final Bitmap decoded = BitmapFactory.decodeByteArray(payload, 0, payload.length,
+						options);
+
+				if (decoded != null &&
+						(decoded.getWidth() != width || decoded.getHeight() != height)) {
+					decoded.recycle();
+					return null;
+				}
+
+				return decoded;
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Closes a stream, ignoring any exceptions.
+	 *
+	 * @param stream
+	 * 		the stream to close, may be null
+	 */
+	private static void closeQuietly(final Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				// Nothing useful can be done
+			}
+		}
+	}
+
+	/**
+	 * The ways in which entries can be encoded.
+	 */
+	public enum Encoding {
+		/**
+		 * The raw pixels of the bitmap. Entries are larger, but are read without decoding.
+		 */
+		RAW,
+
+		/**
+		 * A lossless PNG encoding of the bitmap. Entries are smaller, but must be decoded when read.
+		 */
+		PNG
+	}
+}
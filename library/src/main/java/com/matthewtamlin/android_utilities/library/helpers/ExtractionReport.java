@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Describes the outcome of extracting an archive asset, including the throughput measured against
+ * both the compressed size of the archive and the uncompressed size of the extracted files.
+ */
+public final class ExtractionReport {
+	/**
+	 * The number of nanoseconds in one second.
+	 */
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * The name of the archive, relative to the root of the assets.
+	 */
+	private final String archiveName;
+
+	/**
+	 * The format of the archive.
+	 */
+	private final ArchiveFormat format;
+
+	/**
+	 * The paths of the extracted files relative to the target directory, in archive order.
+	 */
+	private final List<String> extractedFiles;
+
+	/**
+	 * The number of compressed bytes read from the archive.
+	 */
+	private final long compressedBytes;
+
+	/**
+	 * The number of uncompressed bytes written to the extracted files.
+	 */
+	private final long uncompressedBytes;
+
+	/**
+	 * The wall-clock time taken to extract the archive, measured in nanoseconds.
+	 */
+	private final long elapsedNanos;
+
+	/**
+	 * Whether or not the entries were extracted in parallel.
+	 */
+	private final boolean parallel;
+
+	/**
+	 * Constructs a new ExtractionReport.
+	 *
+	 * @param archiveName
+	 * 		the name of the archive, not null
+	 * @param format
+	 * 		the format of the archive, not null
+	 * @param extractedFiles
+	 * 		the paths of the extracted files relative to the target directory, not null
+	 * @param compressedBytes
+	 * 		the number of compressed bytes read from the archive
+	 * @param uncompressedBytes
+	 * 		the number of uncompressed bytes written to the extracted files
+	 * @param elapsedNanos
+	 * 		the wall-clock time taken to extract the archive, measured in nanoseconds
+	 * @param parallel
+	 * 		whether or not the entries were extracted in parallel
+	 */
+	ExtractionReport(
+			final String archiveName,
+			final ArchiveFormat format,
+			final List<String> extractedFiles,
+			final long compressedBytes,
+			final long uncompressedBytes,
+			final long elapsedNanos,
+			final boolean parallel) {
+
+		this.archiveName = checkNotNull(archiveName, "archiveName cannot be null.");
+		this.format = checkNotNull(format, "format cannot be null.");
+		this.extractedFiles = Collections.unmodifiableList(checkNotNull(extractedFiles,
+				"extractedFiles cannot be null."));
+		this.compressedBytes = compressedBytes;
+		this.uncompressedBytes = uncompressedBytes;
+		this.elapsedNanos = elapsedNanos;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @return the name of the archive, relative to the root of the assets, not null
+	 */
+	public String getArchiveName() {
+		return archiveName;
+	}
+
+	/**
+	 * @return the format of the archive, not null
+	 */
+	public ArchiveFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the paths of the extracted files relative to the target directory, in the order
+	 * they appear in the archive, not null
+	 */
+	public List<String> getExtractedFiles() {
+		return extractedFiles;
+	}
+
+	/**
+	 * @return the number of compressed bytes read from the archive
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * @return the number of uncompressed bytes written to the extracted files
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	/**
+	 * @return the wall-clock time taken to extract the archive, measured in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return true if the entries of the archive were extracted in parallel, false if the archive
+	 * was extracted sequentially as a stream
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * @return the number of compressed bytes read per second of wall-clock time, zero if no time
+	 * elapsed
+	 */
+	public double getCompressedThroughputBytesPerSecond() {
+		return calculateThroughput(compressedBytes, elapsedNanos);
+	}
+
+	/**
+	 * @return the number of uncompressed bytes written per second of wall-clock time, zero if no
+	 * time elapsed
+	 */
+	public double getUncompressedThroughputBytesPerSecond() {
+		return calculateThroughput(uncompressedBytes, elapsedNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "ExtractionReport{" +
+				"archiveName=" + archiveName +
+				", format=" + format +
+				", files=" + extractedFiles.size() +
+				", compressedBytes=" + compressedBytes +
+				", uncompressedBytes=" + uncompressedBytes +
+				", elapsedNanos=" + elapsedNanos +
+				", parallel=" + parallel +
+				"}";
+	}
+
+	/**
+	 * @param bytes
+	 * 		a number of bytes
+	 * @param nanos
+	 * 		a duration, measured in nanoseconds
+	 *
+	 * @return the number of bytes per second, zero if the duration is not positive
+	 */
+	private static double calculateThroughput(final long bytes, final long nanos) {
+		return nanos <= 0 ? 0 : (double) bytes * NANOS_PER_SECOND / nanos;
+	}
+
+	/**
+	 * The archive formats which can be extracted.
+	 */
+	public enum ArchiveFormat {
+		/**
+		 * A gzip stream containing a single file.
+		 */
+		GZIP,
+
+		/**
+		 * A zip archive containing any number of files and directories.
+		 */
+		ZIP
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkLessThan;
+
+/**
+ * A histogram of non-negative values with exponentially sized buckets. Bucket zero holds the value
+ * zero, and bucket {@code i} holds values from {@code 2^(i-1)} inclusive to {@code 2^i} exclusive.
+ * Recording a value is lock-free and does not allocate, so histograms are cheap enough to update
+ * on every decode. Percentiles are accurate to within a factor of two.
+ * <p>
+ * This class is thread-safe, however the values returned by the getters may not reflect a single
+ * point in time if values are recorded concurrently.
+ */
+public final class Histogram {
+	/**
+	 * The number of buckets, enough to hold any non-negative long.
+	 */
+	public static final int BUCKET_COUNT = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 *
+	 * @param value
+	 * 		the value to record
+	 */
+	public void record(final long value) {
+		final long clamped = Math.max(0, value);
+
+		buckets.incrementAndGet(getBucketIndex(clamped));
+		count.incrementAndGet();
+		sum.addAndGet(clamped);
+
+		long currentMax = max.get();
+
+		while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of the values recorded
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return the largest value recorded, zero if no values have been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of the values recorded, zero if no values have been recorded
+	 */
+	public double getMean() {
+		final long currentCount = count.get();
+
+		return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+	}
+
+	/**
+	 * Estimates a percentile of the values recorded. The result is the upper bound of the bucket
+	 * containing the percentile, limited to the largest value recorded.
+	 *
+	 * @param percentile
+	 * 		the percentile to estimate, between 0 and 100 inclusive
+	 *
+	 * @return the estimated percentile, zero if no values have been recorded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code percentile} is not between 0 and 100 inclusive
+	 */
+	public long getPercentile(final double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100.");
+		}
+
+		final long currentCount = count.get();
+
+		if (currentCount == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * currentCount));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+
+			if (seen >= rank) {
+				return Math.min(getBucketUpperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * @param index
+	 * 		the index of a bucket, between 0 and {@link #BUCKET_COUNT} exclusive
+	 *
+	 * @return the number of values recorded in the bucket
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code index} is out of range
+	 */
+	public long getBucketCount(final int index) {
+		checkGreaterThanOrEqualTo(index, 0, "index must be at least zero.");
+		checkLessThan(index, BUCKET_COUNT, "index must be less than " + BUCKET_COUNT);
+
+		return buckets.get(index);
+	}
+
+	/**
+	 * @param index
+	 * 		the index of a bucket, between 0 and {@link #BUCKET_COUNT} exclusive
+	 *
+	 * @return the largest value which can be recorded in the bucket
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code index} is out of range
+	 */
+	public static long getBucketUpperBound(final int index) {
+		checkGreaterThanOrEqualTo(index, 0, "index must be at least zero.");
+		checkLessThan(index, BUCKET_COUNT, "index must be less than " + BUCKET_COUNT);
+
+		return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << index) - 1;
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * @param value
+	 * 		a non-negative value
+	 *
+	 * @return the index of the bucket which holds the value
+	 */
+	private static int getBucketIndex(final long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+}
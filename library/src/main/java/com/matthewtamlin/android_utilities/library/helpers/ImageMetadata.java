@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+/**
+ * Describes an encoded image without decoding its pixels. The dimensions are those of the encoded
+ * image, before any sub-sampling or density scaling is applied.
+ */
+public final class ImageMetadata {
+	/**
+	 * The width of the encoded image, measured in pixels.
+	 */
+	private final int width;
+
+	/**
+	 * The height of the encoded image, measured in pixels.
+	 */
+	private final int height;
+
+	/**
+	 * The MIME type of the encoded image, null if it could not be determined.
+	 */
+	private final String mimeType;
+
+	/**
+	 * Constructs a new ImageMetadata.
+	 *
+	 * @param width
+	 * 		the width of the encoded image, measured in pixels
+	 * @param height
+	 * 		the height of the encoded image, measured in pixels
+	 * @param mimeType
+	 * 		the MIME type of the encoded image, may be null
+	 */
+	ImageMetadata(final int width, final int height, final String mimeType) {
+		this.width = width;
+		this.height = height;
+		this.mimeType = mimeType;
+	}
+
+	/**
+	 * @return the width of the encoded image, measured in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the encoded image, measured in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the MIME type of the encoded image (e.g. "image/png"), null if it could not be
+	 * determined
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof ImageMetadata)) {
+			return false;
+		}
+
+		final ImageMetadata other = (ImageMetadata) o;
+
+		return width == other.width &&
+				height == other.height &&
+				(mimeType == null ? other.mimeType == null : mimeType.equals(other.mimeType));
+	}
+
+	@Override
+	public int hashCode() {
+		int result = width;
+		result = 31 * result + height;
+		result = 31 * result + (mimeType == null ? 0 : mimeType.hashCode());
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "ImageMetadata{width=" + width + ", height=" + height + ", mimeType=" + mimeType + "}";
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Tracks the decodes which are currently in progress, so that concurrent requests for the same
+ * {@link DecodeKey} wait for a single decode and share its result instead of each decoding the
+ * image. Keys are spread across a fixed number of independently locked stripes, so threads
+ * requesting different images rarely contend for the same lock. This class is thread-safe.
+ */
+final class InFlightDecodes {
+	/**
+	 * The number of stripes used by default.
+	 */
+	static final int DEFAULT_STRIPE_COUNT = 16;
+
+	/**
+	 * The stripes, each holding the in-progress decodes for the keys which hash to it.
+	 */
+	private final Stripe[] stripes;
+
+	/**
+	 * Constructs a new InFlightDecodes.
+	 *
+	 * @param stripeCount
+	 * 		the number of stripes to spread keys across, rounded up to a power of two, greater than
+	 * 		zero
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code stripeCount} is not greater than zero
+	 */
+	InFlightDecodes(final int stripeCount) {
+		checkGreaterThan(stripeCount, 0, "stripeCount must be greater than zero.");
+
+		final int roundedCount = Integer.highestOneBit(stripeCount) == stripeCount ?
+				stripeCount :
+				Integer.highestOneBit(stripeCount) << 1;
+
+		stripes = new Stripe[roundedCount];
+
+		for (int i = 0; i < roundedCount; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Performs a decode, unless an identical decode is already in progress on another thread, in
+	 * which case this method blocks until that decode completes and returns its result. If the
+	 * calling thread is interrupted while waiting, it continues to wait and the interrupt status
+	 * is restored before returning.
+	 *
+	 * @param key
+	 * 		describes the decode, not null
+	 * @param decoder
+	 * 		performs the decode if no identical decode is in progress, not null
+	 *
+	 * @return the decoded image, or null if the image could not be decoded
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code key} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code decoder} is null
+	 */
+	Bitmap decode(final DecodeKey key, final Decoder decoder) {
+		checkNotNull(key, "key cannot be null.");
+		checkNotNull(decoder, "decoder cannot be null.");
+
+		final Stripe stripe = getStripe(key);
+		final Call call;
+		final boolean isOwner;
+
+		synchronized (stripe) {
+			final Call existing = stripe.calls.get(key);
+
+			if (existing == null) {
+				call = new Call();
+				stripe.calls.put(key, call);
+				isOwner = true;
+			} else {
+				call = existing;
+				isOwner = false;
+			}
+		}
+
+		if (!isOwner) {
+			return call.await();
+		}
+
+		try {
+			call.result = decoder.decode(key);
+		} finally {
+			synchronized (stripe) {
+				stripe.calls.remove(key);
+			}
+
+			// If the decode threw, the waiting threads see a null result
+			call.latch.countDown();
+		}
+
+		return call.result;
+	}
+
+	/**
+	 * @return the number of decodes currently in progress
+	 */
+	int getInFlightCount() {
+		int count = 0;
+
+		for (final Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.calls.size();
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * @param key
+	 * 		a key, not null
+	 *
+	 * @return the stripe which holds the key
+	 */
+	private Stripe getStripe(final DecodeKey key) {
+		final int hash = key.hashCode();
+
+		// Mix the high bits in, since the stripe count is usually much smaller than the hash range
+		return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+	}
+
+	/**
+	 * Performs a decode on behalf of an {@link InFlightDecodes}.
+	 */
+	interface Decoder {
+		/**
+		 * Performs a decode.
+		 *
+		 * @param key
+		 * 		describes the decode, not null
+		 *
+		 * @return the decoded image, or null if the image could not be decoded
+		 */
+		Bitmap decode(DecodeKey key);
+	}
+
+	/**
+	 * The in-progress decodes for a subset of the keys. Access is synchronized on the stripe.
+	 */
+	private static final class Stripe {
+		private final HashMap<DecodeKey, Call> calls = new HashMap<>();
+	}
+
+	/**
+	 * A single in-progress decode.
+	 */
+	private static final class Call {
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		/**
+		 * The result of the decode. Safely published to waiting threads by the latch.
+		 */
+		private Bitmap result;
+
+		/**
+		 * Blocks until the decode completes.
+		 *
+		 * @return the result of the decode, or null if the image could not be decoded
+		 */
+		private Bitmap await() {
+			boolean interrupted = false;
+
+			try {
+				while (true) {
+					try {
+						latch.await();
+						return result;
+					} catch (final InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Maps extracted assets into memory and shares the mappings between their users. Each file is
+ * mapped read-only using {@link FileChannel#map(FileChannel.MapMode, long, long)}, so its contents
+ * are paged in from storage on demand and never copied into the Java heap. Mapping the same file
+ * again while it is still acquired returns the existing mapping, and the mapping is dropped from
+ * the registry once every user has released it.
+ * <p>
+ * Since Java provides no way to unmap a buffer explicitly, the memory of a dropped mapping is
+ * reclaimed when its buffers are garbage collected. Users must not access buffers after releasing
+ * them. If a file is replaced while it is mapped (for example by extracting a newer version of the
+ * asset), existing users keep the old mapping and new users receive a mapping of the new file. This
+ * class is thread-safe.
+ */
+public class MappedAssetRegistry {
+	/**
+	 * Guards {@link #mappings} and the reference counts of the mappings.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The current mapping of each file, keyed by canonical path. Guarded by {@link #lock}.
+	 */
+	private final Map<String, SharedMapping> mappings = new HashMap<>();
+
+	/**
+	 * Maps a file read-only, or shares the existing mapping if the file is already mapped and has
+	 * not changed since. The returned asset must be released once it is no longer needed.
+	 *
+	 * @param file
+	 * 		the file to map, not null
+	 *
+	 * @return the mapped asset, not null
+	 *
+	 * @throws IOException
+	 * 		if the file cannot be opened or mapped, or is larger than 2 GiB
+	 * @throws IllegalArgumentException
+	 * 		if {@code file} is null
+	 */
+	public MappedAsset acquire(final File file) throws IOException {
+		checkNotNull(file, "file cannot be null.");
+
+		final String key = file.getCanonicalPath();
+
+		synchronized (lock) {
+			SharedMapping mapping = mappings.get(key);
+
+			if (mapping == null || mapping.isStale(file)) {
+				// A stale mapping stays valid for its existing users, but is no longer shared
+				mapping = map(key, file);
+				mappings.put(key, mapping);
+			}
+
+			mapping.referenceCount++;
+
+			return new MappedAsset(file, mapping);
+		}
+	}
+
+	/**
+	 * @return the number of files which are currently mapped and shared by this registry
+	 */
+	public int getMappedCount() {
+		synchronized (lock) {
+			return mappings.size();
+		}
+	}
+
+	/**
+	 * @return the total size of the files which are currently mapped and shared by this registry,
+	 * measured in bytes
+	 */
+	public long getMappedBytes() {
+		synchronized (lock) {
+			long total = 0;
+
+			for (final SharedMapping mapping : mappings.values()) {
+				total += mapping.buffer.capacity();
+			}
+
+			return total;
+		}
+	}
+
+	/**
+	 * Maps an entire file read-only. The file is closed once mapped, since the mapping remains
+	 * valid without it.
+	 *
+	 * @param key
+	 * 		the canonical path of the file, not null
+	 * @param file
+	 * 		the file to map, not null
+	 *
+	 * @return the mapping, with a reference count of zero, not null
+	 *
+	 * @throws IOException
+	 * 		if the file cannot be opened or mapped, or is larger than 2 GiB
+	 */
+	private static SharedMapping map(final String key, final File file) throws IOException {
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+			final long size = channel.size();
+
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Cannot map " + file + " because it is larger than 2 GiB.");
+			}
+
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			return new SharedMapping(key, buffer, file.lastModified());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Decrements the reference count of a mapping, and drops it from the registry if it is no
+	 * longer used.
+	 *
+	 * @param mapping
+	 * 		the mapping to release, not null
+	 */
+	private void release(final SharedMapping mapping) {
+		synchronized (lock) {
+			mapping.referenceCount--;
+
+			if (mapping.referenceCount == 0 && mappings.get(mapping.key) == mapping) {
+				mappings.remove(mapping.key);
+			}
+		}
+	}
+
+	/**
+	 * A read-only mapping of a file which is shared by one or more users.
+	 */
+	private static final class SharedMapping {
+		/**
+		 * The canonical path of the file.
+		 */
+		private final String key;
+
+		/**
+		 * The mapping of the entire file. Users only receive duplicates, so its position and
+		 * limit never change.
+		 */
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * The modification time of the file when it was mapped.
+		 */
+		private final long lastModified;
+
+		/**
+		 * The number of users which have not released the mapping. Guarded by the registry lock.
+		 */
+		private int referenceCount;
+
+		private SharedMapping(final String key, final MappedByteBuffer buffer,
+				final long lastModified) {
+
+			this.key = key;
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @param file
+		 * 		the file which was mapped, not null
+		 *
+		 * @return true if the file has been changed or replaced since it was mapped, false
+		 * otherwise
+		 */
+		private boolean isStale(final File file) {
+			return file.length() != buffer.capacity() || file.lastModified() != lastModified;
+		}
+	}
+
+	/**
+	 * A user's reference to a mapped file. Each call to {@link #getBuffer()} returns an independent
+	 * read-only view of the same memory, so views can be used concurrently by different threads.
+	 */
+	public final class MappedAsset {
+		private final File file;
+
+		private final SharedMapping mapping;
+
+		/**
+		 * Whether or not this reference has been released. Guarded by this object.
+		 */
+		private boolean released;
+
+		private MappedAsset(final File file, final SharedMapping mapping) {
+			this.file = file;
+			this.mapping = mapping;
+		}
+
+		/**
+		 * @return the mapped file, not null
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the size of the mapped file, measured in bytes
+		 */
+		public int getSize() {
+			return mapping.buffer.capacity();
+		}
+
+		/**
+		 * Creates a new read-only view of the mapped file, positioned at the start of the file.
+		 *
+		 * @return the view, not null
+		 *
+		 * @throws IllegalStateException
+		 * 		if this asset has been released
+		 */
+		public synchronized ByteBuffer getBuffer() {
+			if (released) {
+				throw new IllegalStateException("The asset has been released.");
+			}
+
+			return mapping.buffer.asReadOnlyBuffer();
+		}
+
+		/**
+		 * Releases this reference to the mapping. The mapping is dropped from the registry once all
+		 * references have been released. Views obtained from this asset must not be used
+		 * afterwards. Releasing more than once has no effect.
+		 */
+		public void release() {
+			synchronized (this) {
+				if (released) {
+					return;
+				}
+
+				released = true;
+			}
+
+			MappedAssetRegistry.this.release(mapping);
+		}
+
+		/**
+		 * @return true if this asset has been released, false otherwise
+		 */
+		public synchronized boolean isReleased() {
+			return released;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.media.ExifInterface;
+
+import java.io.IOException;
+
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * A source which provides a preview of another source. If the other source is a file with an
+ * embedded EXIF thumbnail, the thumbnail is decoded instead of the file, which avoids reading and
+ * parsing the full image. Otherwise the other source is decoded directly, and the preview relies on
+ * heavy sub-sampling.
+ */
+final class PreviewSource extends BitmapSource {
+	/**
+	 * The source to provide a preview of.
+	 */
+	private final BitmapSource source;
+
+	/**
+	 * Constructs a new PreviewSource.
+	 *
+	 * @param source
+	 * 		the source to provide a preview of, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 */
+	PreviewSource(final BitmapSource source) {
+		this.source = checkNotNull(source, "source cannot be null.");
+	}
+
+	@Override
+	Bitmap decode(final BitmapFactory.Options options) {
+		final DecodeSession session = openSession(false);
+
+		try {
+			return session.decode(options);
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	DecodeSession openSession(final boolean singleOpen) {
+		final byte[] thumbnail = readExifThumbnail();
+
+		if (thumbnail == null) {
+			return source.openSession(singleOpen);
+		} else {
+			return BitmapSource.fromByteArray(thumbnail, 0, thumbnail.length).openSession(singleOpen);
+		}
+	}
+
+	@Override
+	BitmapRegionDecoder newRegionDecoder() throws IOException {
+		return source.newRegionDecoder();
+	}
+
+	@Override
+	DecodeEvent.SourceType getSourceType() {
+		return source.getSourceType();
+	}
+
+	@Override
+	boolean isCacheable() {
+		return source.isCacheable();
+	}
+
+	@Override
+	String getPersistentKey() {
+		final String sourceKey = source.getPersistentKey();
+
+		return sourceKey == null ? null : "preview:" + sourceKey;
+	}
+
+	/**
+	 * @return the EXIF thumbnail of the source, or null if the source is not a file or has no
+	 * thumbnail
+	 */
+	private byte[] readExifThumbnail() {
+		final String path = source.getFilePath();
+
+		if (path == null) {
+			return null;
+		}
+
+		try {
+			final ExifInterface exif = new ExifInterface(path);
+			final byte[] thumbnail = exif.hasThumbnail() ? exif.getThumbnail() : null;
+
+			return thumbnail == null || thumbnail.length == 0 ? null : thumbnail;
+		} catch (final IOException | RuntimeException e) {
+			// Some versions of ExifInterface throw unchecked exceptions for malformed metadata
+			return null;
+		}
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof PreviewSource && source.equals(((PreviewSource) o).source);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * source.hashCode() + 1;
+	}
+}
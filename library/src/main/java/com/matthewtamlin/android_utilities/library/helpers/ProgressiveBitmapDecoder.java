@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder.PendingDecode;
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder.Priority;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThanOrEqualTo;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Decodes images in two stages so that something can be displayed as soon as possible. A small
+ * preview is delivered first, followed by the image at the desired size. For files which contain
+ * an embedded EXIF thumbnail the preview is decoded from the thumbnail, otherwise it is decoded
+ * from the image itself using heavy sub-sampling. The preview is skipped if the full image arrives
+ * first. Since the two stages read the source independently, the preview is never decoded for
+ * sources which cannot be read more than once or concurrently, such as streams and file
+ * descriptors.
+ * <p>
+ * Both stages are performed by an {@link AsyncBitmapDecoder}, with the preview queued at a higher
+ * priority than the full decode. Results are delivered to a callback on the main thread. This class
+ * is thread-safe.
+ */
+public class ProgressiveBitmapDecoder {
+	/**
+	 * The default ratio between the desired dimensions of the full image and the dimensions of the
+	 * preview.
+	 */
+	public static final int DEFAULT_PREVIEW_DIVISOR = 8;
+
+	/**
+	 * Performs both stages of each decode.
+	 */
+	private final AsyncBitmapDecoder decoder;
+
+	/**
+	 * The ratio between the desired dimensions of the full image and the dimensions of the preview.
+	 */
+	private final int previewDivisor;
+
+	/**
+	 * Constructs a new ProgressiveBitmapDecoder which uses the default preview divisor.
+	 *
+	 * @param decoder
+	 * 		performs the decodes, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code decoder} is null
+	 */
+	public ProgressiveBitmapDecoder(final AsyncBitmapDecoder decoder) {
+		this(decoder, DEFAULT_PREVIEW_DIVISOR);
+	}
+
+	/**
+	 * Constructs a new ProgressiveBitmapDecoder.
+	 *
+	 * @param decoder
+	 * 		performs the decodes, not null
+	 * @param previewDivisor
+	 * 		the ratio between the desired dimensions of the full image and the dimensions of the
+	 * 		preview, greater than one
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code decoder} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code previewDivisor} is not greater than one
+	 */
+	public ProgressiveBitmapDecoder(final AsyncBitmapDecoder decoder, final int previewDivisor) {
+		this.decoder = checkNotNull(decoder, "decoder cannot be null.");
+		this.previewDivisor = checkGreaterThan(previewDivisor, 1,
+				"previewDivisor must be greater than one.");
+	}
+
+	/**
+	 * Asynchronously decodes a preview of an image followed by the image itself. See {@link
+	 * BitmapEfficiencyHelper#decode(BitmapSource, int, int)} for details of the full decode. If the
+	 * source is a stream, file descriptor or buffer, only the full image is decoded.
+	 *
+	 * @param source
+	 * 		the source of the compressed image data, not null
+	 * @param desWidth
+	 * 		the desired width of the full image, measured in pixels, not less than zero
+	 * @param desHeight
+	 * 		the desired height of the full image, measured in pixels, not less than zero
+	 * @param callback
+	 * 		receives the preview and the full image on the main thread, not null
+	 *
+	 * @return the pending decode, not null
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} or {@code callback} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code desWidth} or {@code desHeight} is less than zero
+	 */
+	public ProgressiveDecode decode(
+			final BitmapSource source,
+			final int desWidth,
+			final int desHeight,
+			final Callback callback) {
+
+		checkNotNull(source, "source cannot be null.");
+		checkGreaterThanOrEqualTo(desWidth, 0, "desWidth must be at least zero.");
+		checkGreaterThanOrEqualTo(desHeight, 0, "desHeight must be at least zero.");
+		checkNotNull(callback, "callback cannot be null.");
+
+		final ProgressiveDecode progressive = new ProgressiveDecode(callback);
+
+		// Sources without a stable identity may be consumed or repositioned by the preview decode
+		if (source.isCacheable()) {
+			// Queue the preview first so that it is not delayed behind the full decode
+			progressive.previewDecode = decoder.decode(
+					new PreviewSource(source),
+					Math.max(1, desWidth / previewDivisor),
+					Math.max(1, desHeight / previewDivisor),
+					Priority.HIGH,
+					new AsyncBitmapDecoder.Callback() {
+						@Override
+						public void onDecodeComplete(final Bitmap bitmap) {
+							progressive.deliverPreview(bitmap);
+						}
+					});
+		}
+
+		progressive.fullDecode = decoder.decode(
+				source,
+				desWidth,
+				desHeight,
+				Priority.NORMAL,
+				new AsyncBitmapDecoder.Callback() {
+					@Override
+					public void onDecodeComplete(final Bitmap bitmap) {
+						progressive.deliverFull(bitmap);
+					}
+				});
+
+		return progressive;
+	}
+
+	/**
+	 * A two stage decode which has been requested. Both stages can be cancelled together.
+	 */
+	public static final class ProgressiveDecode {
+		private final Callback callback;
+
+		/**
+		 * The time the decode was requested, measured in milliseconds since boot.
+		 */
+		private final long startTime = SystemClock.elapsedRealtime();
+
+		private volatile PendingDecode previewDecode;
+
+		private volatile PendingDecode fullDecode;
+
+		private volatile boolean cancelled;
+
+		/**
+		 * Whether or not the full image has been delivered. Only accessed on the main thread.
+		 */
+		private boolean fullDelivered;
+
+		private volatile long timeToPreview = -1;
+
+		private volatile long timeToFull = -1;
+
+		private ProgressiveDecode(final Callback callback) {
+			this.callback = callback;
+		}
+
+		/**
+		 * Cancels both stages of the decode. No further callbacks are delivered.
+		 */
+		public void cancel() {
+			cancelled = true;
+
+			if (previewDecode != null) {
+				previewDecode.cancel(false);
+			}
+
+			if (fullDecode != null) {
+				fullDecode.cancel(false);
+			}
+		}
+
+		/**
+		 * @return true if the decode was cancelled, false otherwise
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * @return true if the full image has been decoded, false otherwise
+		 */
+		public boolean isDone() {
+			return fullDecode != null && fullDecode.isDone();
+		}
+
+		/**
+		 * @return the time between requesting the decode and delivering the preview, measured in
+		 * milliseconds, or -1 if the preview has not been delivered
+		 */
+		public long getTimeToPreviewMillis() {
+			return timeToPreview;
+		}
+
+		/**
+		 * @return the time between requesting the decode and delivering the full image, measured in
+		 * milliseconds, or -1 if the full image has not been delivered
+		 */
+		public long getTimeToFullMillis() {
+			return timeToFull;
+		}
+
+		/**
+		 * Delivers the preview on the main thread, unless the full image was delivered first.
+		 *
+		 * @param preview
+		 * 		the preview, may be null
+		 */
+		private void deliverPreview(final Bitmap preview) {
+			if (cancelled || fullDelivered || preview == null) {
+				return;
+			}
+
+			timeToPreview = SystemClock.elapsedRealtime() - startTime;
+			callback.onPreviewDecoded(preview);
+		}
+
+		/**
+		 * Delivers the full image on the main thread.
+		 *
+		 * @param full
+		 * 		the full image, may be null
+		 */
+		private void deliverFull(final Bitmap full) {
+			if (cancelled) {
+				return;
+			}
+
+			fullDelivered = true;
+
+			// The preview can never arrive later, so it no longer needs to be decoded
+			if (previewDecode != null) {
+				previewDecode.cancel(false);
+			}
+
+			timeToFull = SystemClock.elapsedRealtime() - startTime;
+			callback.onFullDecoded(full);
+		}
+	}
+
+	/**
+	 * Receives the results of progressive decodes on the main thread.
+	 */
+	public interface Callback {
+		/**
+		 * Invoked on the main thread when the preview is available. Not invoked if the full image
+		 * is delivered first, if the preview could not be decoded, if the source does not support
+		 * previews, or if the decode was cancelled.
+		 *
+		 * @param preview
+		 * 		the preview, not null
+		 */
+		void onPreviewDecoded(Bitmap preview);
+
+		/**
+		 * Invoked on the main thread when the full image is available, unless the decode was
+		 * cancelled.
+		 *
+		 * @param bitmap
+		 * 		the full image, or null if the image could not be decoded
+		 */
+		void onFullDecoded(Bitmap bitmap);
+	}
+}
@@ -0,0 +1,724 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.matthewtamlin.java_utilities.checkers.IntChecker.checkGreaterThan;
+import static com.matthewtamlin.java_utilities.checkers.NullChecker.checkNotNull;
+
+/**
+ * Decodes parts of images which are too large to decode in full, such as maps and document scans.
+ * The image is divided into a grid of square tiles at each sample size (level), and only the tiles
+ * which intersect the visible viewport are decoded. Since each tile covers a larger area of the
+ * image at higher sample sizes, the memory used is bounded by the size of the viewport rather than
+ * the size of the image.
+ * <p>
+ * Decoded tiles are cached by level and position, up to a byte budget. Visible tiles are decoded
+ * in parallel using one region decoder per worker thread, since each region decoder can only
+ * decode one region at a time. Decoders must be recycled once they are no longer needed.
+ * <p>
+ * This class is thread-safe.
+ */
+public class TiledBitmapDecoder {
+	/**
+	 * The default length of each side of a tile, measured in pixels of the decoded tile.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/**
+	 * The source of the image.
+	 */
+	private final BitmapSource source;
+
+	/**
+	 * The length of each side of a tile, measured in pixels of the decoded tile.
+	 */
+	private final int tileSize;
+
+	/**
+	 * The width of the full image, measured in pixels.
+	 */
+	private final int imageWidth;
+
+	/**
+	 * The height of the full image, measured in pixels.
+	 */
+	private final int imageHeight;
+
+	/**
+	 * Region decoders which are not currently in use. A decoder is taken from the queue for the
+	 * duration of each tile decode. Additional decoders are created on demand, up to one per
+	 * worker thread.
+	 */
+	private final LinkedBlockingQueue<BitmapRegionDecoder> idleDecoders =
+			new LinkedBlockingQueue<>();
+
+	/**
+	 * All region decoders which have been created. All access must be synchronized on this list.
+	 */
+	private final List<BitmapRegionDecoder> allDecoders = new ArrayList<>();
+
+	/**
+	 * The maximum number of region decoders to create.
+	 */
+	private final int maxDecoderCount;
+
+	/**
+	 * Caches decoded tiles.
+	 */
+	private final LruCache<TileKey, Tile> tileCache;
+
+	/**
+	 * Decodes tiles in parallel.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Delivers asynchronously decoded tiles to the main thread.
+	 */
+	private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Whether or not {@link #recycle()} has been called.
+	 */
+	private volatile boolean recycled;
+
+	/**
+	 * Constructs a new TiledBitmapDecoder which uses the default tile size and one worker thread
+	 * per available processor.
+	 *
+	 * @param source
+	 * 		the source of the image, not null
+	 * @param cacheSizeBytes
+	 * 		the maximum number of bytes of decoded tiles to cache, greater than zero
+	 *
+	 * @throws IOException
+	 * 		if the source cannot be read, or the image format does not support region decoding
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code cacheSizeBytes} is not greater than zero
+	 */
+	public TiledBitmapDecoder(final BitmapSource source, final int cacheSizeBytes)
+			throws IOException {
+
+		this(source, DEFAULT_TILE_SIZE, cacheSizeBytes, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new TiledBitmapDecoder.
+	 *
+	 * @param source
+	 * 		the source of the image, not null
+	 * @param tileSize
+	 * 		the length of each side of a tile, measured in pixels of the decoded tile, greater than
+	 * 		zero
+	 * @param cacheSizeBytes
+	 * 		the maximum number of bytes of decoded tiles to cache, greater than zero
+	 * @param threadCount
+	 * 		the maximum number of tiles to decode concurrently, greater than zero
+	 *
+	 * @throws IOException
+	 * 		if the source cannot be read, or the image format does not support region decoding
+	 * @throws IllegalArgumentException
+	 * 		if {@code source} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code tileSize}, {@code cacheSizeBytes} or {@code threadCount} is not greater than
+	 * 		zero
+	 */
+	public TiledBitmapDecoder(
+			final BitmapSource source,
+			final int tileSize,
+			final int cacheSizeBytes,
+			final int threadCount)
+			throws IOException {
+
+		this.source = checkNotNull(source, "source cannot be null.");
+		this.tileSize = checkGreaterThan(tileSize, 0, "tileSize must be greater than zero.");
+		checkGreaterThan(cacheSizeBytes, 0, "cacheSizeBytes must be greater than zero.");
+		checkGreaterThan(threadCount, 0, "threadCount must be greater than zero.");
+
+		// Single-use sources cannot be reopened, so the first decoder must be shared by all threads
+		maxDecoderCount = isSingleUse(source) ? 1 : threadCount;
+
+		final BitmapRegionDecoder firstDecoder = createDecoder();
+		imageWidth = firstDecoder.getWidth();
+		imageHeight = firstDecoder.getHeight();
+		idleDecoders.add(firstDecoder);
+
+		tileCache = new LruCache<TileKey, Tile>(cacheSizeBytes) {
+			@Override
+			protected int sizeOf(final TileKey key, final Tile tile) {
+				return tile.getBitmap().getByteCount();
+			}
+		};
+
+		final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				30,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new TileThreadFactory());
+
+		threadPool.allowCoreThreadTimeOut(true);
+		executor = threadPool;
+	}
+
+	/**
+	 * @return the width of the full image, measured in pixels
+	 */
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	/**
+	 * @return the height of the full image, measured in pixels
+	 */
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	/**
+	 * @return the length of each side of a tile, measured in pixels of the decoded tile
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Calculates the sample size to use when the image is displayed at a particular scale. The
+	 * sample size is the largest power of two which does not reduce the resolution of the decoded
+	 * tiles below the resolution at which they are displayed.
+	 *
+	 * @param scale
+	 * 		the ratio between the displayed size of the image and its full size, greater than zero
+	 *
+	 * @return the sample size, a power of two
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code scale} is not greater than zero
+	 */
+	public static int calculateSampleSize(final float scale) {
+		if (!(scale > 0)) {
+			throw new IllegalArgumentException("scale must be greater than zero.");
+		}
+
+		int sampleSize = 1;
+
+		while (sampleSize <= (1 << 29) && 1f / (sampleSize * 2) >= scale) {
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+
+	/**
+	 * Decodes all tiles which intersect a viewport, blocking until they are available. Tiles which
+	 * are cached are returned immediately, and the rest are decoded in parallel. This method should
+	 * not be called from the main thread.
+	 *
+	 * @param viewport
+	 * 		the visible part of the image, in the coordinates of the full image, not null
+	 * @param sampleSize
+	 * 		the sample size to decode the tiles at, a power of two
+	 *
+	 * @return the tiles which intersect the viewport, not null, excluding any which could not be
+	 * decoded
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting for tiles to decode
+	 * @throws IllegalArgumentException
+	 * 		if {@code viewport} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code sampleSize} is not a power of two
+	 * @throws IllegalStateException
+	 * 		if this decoder has been recycled
+	 */
+	public List<Tile> decodeViewport(final Rect viewport, final int sampleSize)
+			throws InterruptedException {
+
+		final List<TileKey> keys = getVisibleTiles(viewport, sampleSize);
+		final List<Tile> tiles = new ArrayList<>(keys.size());
+		final List<Future<Tile>> pending = new ArrayList<>();
+
+		for (final TileKey key : keys) {
+			final Tile cached = tileCache.get(key);
+
+			if (cached != null) {
+				tiles.add(cached);
+			} else {
+				pending.add(executor.submit(new TileDecode(key)));
+			}
+		}
+
+		try {
+			for (final Future<Tile> future : pending) {
+				final Tile tile = future.get();
+
+				if (tile != null) {
+					tiles.add(tile);
+				}
+			}
+		} catch (final ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (final Future<Tile> future : pending) {
+				future.cancel(false);
+			}
+		}
+
+		return tiles;
+	}
+
+	/**
+	 * Asynchronously decodes all tiles which intersect a viewport. Each tile is delivered to the
+	 * callback on the main thread as soon as it is available. Cached tiles are delivered before this
+	 * method returns.
+	 *
+	 * @param viewport
+	 * 		the visible part of the image, in the coordinates of the full image, not null
+	 * @param sampleSize
+	 * 		the sample size to decode the tiles at, a power of two
+	 * @param callback
+	 * 		receives the tiles, not null
+	 *
+	 * @return the pending tile decodes, not null, which should be cancelled if the viewport moves
+	 * before they complete
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code viewport} or {@code callback} is null
+	 * @throws IllegalArgumentException
+	 * 		if {@code sampleSize} is not a power of two
+	 * @throws IllegalStateException
+	 * 		if this decoder has been recycled
+	 */
+	public List<Future<?>> decodeViewportAsync(
+			final Rect viewport,
+			final int sampleSize,
+			final TileCallback callback) {
+
+		checkNotNull(callback, "callback cannot be null.");
+
+		final List<TileKey> keys = getVisibleTiles(viewport, sampleSize);
+		final List<Future<?>> pending = new ArrayList<>();
+
+		for (final TileKey key : keys) {
+			final Tile cached = tileCache.get(key);
+
+			if (cached != null) {
+				callback.onTileDecoded(cached);
+			} else {
+				final TileDecode decode = new TileDecode(key);
+
+				pending.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						final Tile tile = decode.call();
+
+						if (tile != null) {
+							mainThreadHandler.post(new Runnable() {
+								@Override
+								public void run() {
+									if (!recycled) {
+										callback.onTileDecoded(tile);
+									}
+								}
+							});
+						}
+					}
+				}));
+			}
+		}
+
+		return pending;
+	}
+
+	/**
+	 * Gets a tile from the cache without decoding it.
+	 *
+	 * @param sampleSize
+	 * 		the sample size of the tile, a power of two
+	 * @param column
+	 * 		the column of the tile in the grid for the sample size, counting from zero
+	 * @param row
+	 * 		the row of the tile in the grid for the sample size, counting from zero
+	 *
+	 * @return the cached tile, or null if it is not cached
+	 */
+	public Tile getCachedTile(final int sampleSize, final int column, final int row) {
+		return tileCache.get(new TileKey(sampleSize, column, row));
+	}
+
+	/**
+	 * @return the number of bytes of decoded tiles currently cached
+	 */
+	public int getCacheSize() {
+		return tileCache.size();
+	}
+
+	/**
+	 * Removes all tiles from the cache. The tiles are not recycled, since they may still be
+	 * displayed.
+	 */
+	public void evictAllTiles() {
+		tileCache.evictAll();
+	}
+
+	/**
+	 * Releases all resources held by this decoder. Tiles which are queued are abandoned, and no
+	 * further callbacks are delivered. Tiles which were already delivered are not recycled.
+	 */
+	public void recycle() {
+		recycled = true;
+		executor.shutdownNow();
+		tileCache.evictAll();
+
+		synchronized (allDecoders) {
+			for (final BitmapRegionDecoder decoder : allDecoders) {
+				// Recycling waits for any in-progress decode on the same decoder to finish
+				decoder.recycle();
+			}
+
+			allDecoders.clear();
+		}
+	}
+
+	/**
+	 * Gets the keys of all tiles which intersect a viewport.
+	 *
+	 * @param viewport
+	 * 		the visible part of the image, in the coordinates of the full image, not null
+	 * @param sampleSize
+	 * 		the sample size of the tiles, a power of two
+	 *
+	 * @return the keys, not null
+	 */
+	private List<TileKey> getVisibleTiles(final Rect viewport, final int sampleSize) {
+		checkNotNull(viewport, "viewport cannot be null.");
+
+		if (sampleSize <= 0 || (sampleSize & (sampleSize - 1)) != 0) {
+			throw new IllegalArgumentException("sampleSize must be a power of two.");
+		}
+
+		if (recycled) {
+			throw new IllegalStateException("This decoder has been recycled.");
+		}
+
+		final List<TileKey> keys = new ArrayList<>();
+
+		final Rect clipped = new Rect(viewport);
+
+		if (!clipped.intersect(0, 0, imageWidth, imageHeight)) {
+			return keys;
+		}
+
+		final long span = (long) tileSize * sampleSize;
+		final int firstColumn = (int) (clipped.left / span);
+		final int lastColumn = (int) ((clipped.right - 1) / span);
+		final int firstRow = (int) (clipped.top / span);
+		final int lastRow = (int) ((clipped.bottom - 1) / span);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				keys.add(new TileKey(sampleSize, column, row));
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @param source
+	 * 		the source to check, not null
+	 *
+	 * @return true if the source can only be opened once, false otherwise
+	 */
+	private static boolean isSingleUse(final BitmapSource source) {
+		return source instanceof BitmapSource.StreamSource &&
+				((BitmapSource.StreamSource) source).isSingleUse();
+	}
+
+	/**
+	 * @return a new region decoder for the source, not null
+	 *
+	 * @throws IOException
+	 * 		if the source cannot be read, or the image format does not support region decoding
+	 */
+	private BitmapRegionDecoder createDecoder() throws IOException {
+		final BitmapRegionDecoder decoder = source.newRegionDecoder();
+
+		if (decoder == null) {
+			throw new IOException("The image format does not support region decoding.");
+		}
+
+		synchronized (allDecoders) {
+			allDecoders.add(decoder);
+		}
+
+		return decoder;
+	}
+
+	/**
+	 * Takes an idle region decoder, or creates a new one if none are idle and the limit has not been
+	 * reached. Blocks until a decoder is available.
+	 *
+	 * @return the decoder, not null
+	 *
+	 * @throws IOException
+	 * 		if a new decoder cannot be created, or this decoder has been recycled
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 */
+	private BitmapRegionDecoder acquireDecoder() throws IOException, InterruptedException {
+		final BitmapRegionDecoder idle = idleDecoders.poll();
+
+		if (idle != null) {
+			return idle;
+		}
+
+		synchronized (allDecoders) {
+			// Checked under the lock so that recycle() cannot miss a decoder created after it ran
+			if (recycled) {
+				throw new IOException("The decoder has been recycled.");
+			}
+
+			if (allDecoders.size() < maxDecoderCount) {
+				return createDecoder();
+			}
+		}
+
+		return idleDecoders.take();
+	}
+
+	/**
+	 * Decodes a single tile and caches it.
+	 */
+	private final class TileDecode implements Callable<Tile> {
+		private final TileKey key;
+
+		private TileDecode(final TileKey key) {
+			this.key = key;
+		}
+
+		@Override
+		public Tile call() {
+			final Tile cached = tileCache.get(key);
+
+			if (cached != null) {
+				return cached;
+			}
+
+			final long span = (long) tileSize * key.sampleSize;
+			final Rect region = new Rect(
+					(int) (key.column * span),
+					(int) (key.row * span),
+					(int) Math.min(imageWidth, (key.column + 1) * span),
+					(int) Math.min(imageHeight, (key.row + 1) * span));
+
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = key.sampleSize;
+
+			final BitmapRegionDecoder decoder;
+
+			try {
+				decoder = acquireDecoder();
+			} catch (final IOException e) {
+				return null;
+			} catch (final InterruptedException e) {
+				// Preserve the interrupt so that the executor can see the task was cancelled
+				Thread.currentThread().interrupt();
+				return null;
+			}
+
+			Bitmap bitmap = null;
+
+			try {
+				if (!recycled && !decoder.isRecycled()) {
+					bitmap = decoder.decodeRegion(region, options);
+				}
+			} catch (final IllegalStateException e) {
+				// The decoder was recycled concurrently
+				return null;
+			} finally {
+				idleDecoders.add(decoder);
+			}
+
+			if (bitmap == null) {
+				return null;
+			}
+
+			final Tile tile = new Tile(key.sampleSize, key.column, key.row, region, bitmap);
+			tileCache.put(key, tile);
+
+			return tile;
+		}
+	}
+
+	/**
+	 * Identifies a tile by its sample size and position in the grid.
+	 */
+	private static final class TileKey {
+		private final int sampleSize;
+
+		private final int column;
+
+		private final int row;
+
+		private TileKey(final int sampleSize, final int column, final int row) {
+			this.sampleSize = sampleSize;
+			this.column = column;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TileKey)) {
+				return false;
+			}
+
+			final TileKey other = (TileKey) o;
+
+			return sampleSize == other.sampleSize && column == other.column && row == other.row;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = sampleSize;
+			result = 31 * result + column;
+			result = 31 * result + row;
+
+			return result;
+		}
+	}
+
+	/**
+	 * A decoded part of the image.
+	 */
+	public static final class Tile {
+		private final int sampleSize;
+
+		private final int column;
+
+		private final int row;
+
+		private final Rect region;
+
+		private final Bitmap bitmap;
+
+		private Tile(
+				final int sampleSize,
+				final int column,
+				final int row,
+				final Rect region,
+				final Bitmap bitmap) {
+
+			this.sampleSize = sampleSize;
+			this.column = column;
+			this.row = row;
+			this.region = region;
+			this.bitmap = bitmap;
+		}
+
+		/**
+		 * @return the sample size the tile was decoded at
+		 */
+		public int getSampleSize() {
+			return sampleSize;
+		}
+
+		/**
+		 * @return the column of the tile in the grid for its sample size, counting from zero
+		 */
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * @return the row of the tile in the grid for its sample size, counting from zero
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		/**
+		 * @return the part of the full image covered by the tile, in the coordinates of the full
+		 * image, not null
+		 */
+		public Rect getRegion() {
+			return new Rect(region);
+		}
+
+		/**
+		 * @return the decoded pixels of the tile, not null, which must not be recycled since tiles
+		 * are cached
+		 */
+		public Bitmap getBitmap() {
+			return bitmap;
+		}
+	}
+
+	/**
+	 * Receives tiles which were decoded asynchronously.
+	 */
+	public interface TileCallback {
+		/**
+		 * Invoked on the main thread when a tile is available.
+		 *
+		 * @param tile
+		 * 		the tile, not null
+		 */
+		void onTileDecoded(Tile tile);
+	}
+
+	/**
+	 * Creates daemon worker threads for decoding tiles.
+	 */
+	private static final class TileThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable,
+					"TiledBitmapDecoder-" + threadCounter.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
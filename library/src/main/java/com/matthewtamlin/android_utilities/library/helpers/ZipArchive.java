@@ -0,0 +1,442 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.library.helpers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a zip archive which occupies a region of a file, such as an asset which is stored
+ * uncompressed in the APK. The central directory at the end of the archive is read first, so each
+ * entry can then be extracted independently using positional reads. Since positional reads do not
+ * move the file offset, several entries can be extracted concurrently from the same channel. Zip64
+ * archives and encrypted entries are not supported.
+ */
+final class ZipArchive {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+	private static final int END_RECORD_SIGNATURE = 0x06054b50;
+
+	private static final int LOCAL_HEADER_LENGTH = 30;
+
+	private static final int CENTRAL_HEADER_LENGTH = 46;
+
+	private static final int END_RECORD_LENGTH = 22;
+
+	/**
+	 * The maximum length of the comment which may follow the end record, measured in bytes.
+	 */
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	/**
+	 * The value of a 16-bit field which indicates that the real value is in a zip64 record.
+	 */
+	private static final int ZIP64_MARKER_16 = 0xFFFF;
+
+	/**
+	 * The value of a 32-bit field which indicates that the real value is in a zip64 record.
+	 */
+	private static final long ZIP64_MARKER_32 = 0xFFFFFFFFL;
+
+	private static final int FLAG_ENCRYPTED = 1;
+
+	private static final int METHOD_STORED = 0;
+
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Supplied to the inflater after the compressed data, since raw inflation can need one byte
+	 * beyond the end of the data to recognise the end of the stream.
+	 */
+	private static final byte[] PADDING = new byte[1];
+
+	private final FileChannel channel;
+
+	/**
+	 * The offset of the archive within the file, measured in bytes.
+	 */
+	private final long start;
+
+	/**
+	 * The length of the archive, measured in bytes.
+	 */
+	private final long length;
+
+	/**
+	 * Constructs a new ZipArchive. The channel is not closed by the archive.
+	 *
+	 * @param channel
+	 * 		the channel to read from, not null
+	 * @param start
+	 * 		the offset of the archive within the file, measured in bytes
+	 * @param length
+	 * 		the length of the archive, measured in bytes
+	 */
+	ZipArchive(final FileChannel channel, final long start, final long length) {
+		this.channel = channel;
+		this.start = start;
+		this.length = length;
+	}
+
+	/**
+	 * Reads the central directory of the archive.
+	 *
+	 * @return the entries in the order they appear in the central directory, or null if the region
+	 * does not hold a zip archive or holds a zip64 archive
+	 *
+	 * @throws IOException
+	 * 		if the region cannot be read, or the central directory is malformed
+	 */
+	List<Entry> readEntries() throws IOException {
+		if (length < END_RECORD_LENGTH) {
+			return null;
+		}
+
+		final int signature = read(0, 4).getInt(0);
+
+		if (signature != LOCAL_HEADER_SIGNATURE && signature != END_RECORD_SIGNATURE) {
+			return null;
+		}
+
+		final int tailLength = (int) Math.min(length, END_RECORD_LENGTH + MAX_COMMENT_LENGTH);
+		final ByteBuffer tail = read(length - tailLength, tailLength);
+		int endOffset = -1;
+
+		// The end record is followed by a comment of unknown length, so search backwards for it
+		for (int i = tailLength - END_RECORD_LENGTH; i >= 0; i--) {
+			if (tail.getInt(i) == END_RECORD_SIGNATURE) {
+				endOffset = i;
+				break;
+			}
+		}
+
+		if (endOffset == -1) {
+			return null;
+		}
+
+		final int entryCount = tail.getShort(endOffset + 10) & 0xFFFF;
+		final long directorySize = tail.getInt(endOffset + 12) & 0xFFFFFFFFL;
+		final long directoryOffset = tail.getInt(endOffset + 16) & 0xFFFFFFFFL;
+
+		if (entryCount == ZIP64_MARKER_16 || directorySize == ZIP64_MARKER_32 ||
+				directoryOffset == ZIP64_MARKER_32) {
+			return null;
+		}
+
+		if (directoryOffset + directorySize > length) {
+			throw new ZipException("The central directory is outside the archive.");
+		}
+
+		final ByteBuffer directory = read(directoryOffset, (int) directorySize);
+		final List<Entry> entries = new ArrayList<>(entryCount);
+		int position = 0;
+
+		for (int i = 0; i < entryCount; i++) {
+			if (position + CENTRAL_HEADER_LENGTH > directorySize ||
+					directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("The central directory is malformed.");
+			}
+
+			final int flags = directory.getShort(position + 8) & 0xFFFF;
+			final int method = directory.getShort(position + 10) & 0xFFFF;
+			final long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+			final long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+			final long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+			final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+			final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+			final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+			final long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+			if (compressedSize == ZIP64_MARKER_32 || size == ZIP64_MARKER_32 ||
+					localHeaderOffset == ZIP64_MARKER_32) {
+				return null;
+			}
+
+			if (position + CENTRAL_HEADER_LENGTH + nameLength > directorySize) {
+				throw new ZipException("The central directory is malformed.");
+			}
+
+			final byte[] name = new byte[nameLength];
+			directory.position(position + CENTRAL_HEADER_LENGTH);
+			directory.get(name);
+
+			entries.add(new Entry(new String(name, UTF_8), flags, method, crc, compressedSize, size,
+					localHeaderOffset));
+
+			position += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Decompresses an entry to a stream, and verifies its size and checksum.
+	 *
+	 * @param entry
+	 * 		the entry to extract, not null
+	 * @param out
+	 * 		the stream to write to, not null
+	 * @param inputBuffer
+	 * 		holds compressed data while it is inflated, not null
+	 * @param outputBuffer
+	 * 		holds decompressed data while it is written, not null
+	 *
+	 * @return the number of bytes written
+	 *
+	 * @throws IOException
+	 * 		if the entry cannot be read, is corrupt, or is not supported, or the stream cannot be
+	 * 		written
+	 */
+	long extract(
+			final Entry entry,
+			final OutputStream out,
+			final byte[] inputBuffer,
+			final byte[] outputBuffer)
+			throws IOException {
+
+		if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+			throw new ZipException("Entry " + entry.name + " is encrypted.");
+		}
+
+		final ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_LENGTH);
+
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Entry " + entry.name + " has a malformed header.");
+		}
+
+		// The extra field of the local header can differ from the one in the central directory
+		final long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_LENGTH +
+				(header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+		if (dataOffset + entry.compressedSize > length) {
+			throw new ZipException("Entry " + entry.name + " is outside the archive.");
+		}
+
+		final CRC32 crc = new CRC32();
+		final long written;
+
+		if (entry.method == METHOD_STORED) {
+			written = copyStored(entry, dataOffset, out, outputBuffer, crc);
+		} else if (entry.method == METHOD_DEFLATED) {
+			written = inflate(entry, dataOffset, out, inputBuffer, outputBuffer, crc);
+		} else {
+			throw new ZipException("Entry " + entry.name + " uses unsupported compression method " +
+					entry.method + ".");
+		}
+
+		if (written != entry.size || crc.getValue() != entry.crc) {
+			throw new ZipException("Entry " + entry.name + " is corrupt.");
+		}
+
+		return written;
+	}
+
+	/**
+	 * Copies the data of an uncompressed entry to a stream.
+	 */
+	private long copyStored(
+			final Entry entry,
+			final long dataOffset,
+			final OutputStream out,
+			final byte[] buffer,
+			final CRC32 crc)
+			throws IOException {
+
+		long copied = 0;
+
+		while (copied < entry.compressedSize) {
+			final int count = (int) Math.min(entry.compressedSize - copied, buffer.length);
+
+			readFully(buffer, count, dataOffset + copied);
+			crc.update(buffer, 0, count);
+			out.write(buffer, 0, count);
+
+			copied += count;
+		}
+
+		return copied;
+	}
+
+	/**
+	 * Inflates the data of a deflated entry to a stream.
+	 */
+	private long inflate(
+			final Entry entry,
+			final long dataOffset,
+			final OutputStream out,
+			final byte[] inputBuffer,
+			final byte[] outputBuffer,
+			final CRC32 crc)
+			throws IOException {
+
+		final Inflater inflater = new Inflater(true);
+
+		try {
+			long consumed = 0;
+			long written = 0;
+			boolean paddingSupplied = false;
+
+			while (!inflater.finished()) {
+				if (inflater.needsInput()) {
+					if (consumed < entry.compressedSize) {
+						final int count = (int) Math.min(entry.compressedSize - consumed,
+								inputBuffer.length);
+
+						readFully(inputBuffer, count, dataOffset + consumed);
+						inflater.setInput(inputBuffer, 0, count);
+						consumed += count;
+					} else if (!paddingSupplied) {
+						inflater.setInput(PADDING, 0, PADDING.length);
+						paddingSupplied = true;
+					} else {
+						throw new EOFException("Entry " + entry.name + " ended unexpectedly.");
+					}
+				}
+
+				final int count;
+
+				try {
+					count = inflater.inflate(outputBuffer);
+				} catch (final DataFormatException e) {
+					throw new ZipException("Entry " + entry.name + " is corrupt: " +
+							e.getMessage());
+				}
+
+				if (count == 0 && inflater.needsDictionary()) {
+					throw new ZipException("Entry " + entry.name + " requires a dictionary.");
+				}
+
+				crc.update(outputBuffer, 0, count);
+				out.write(outputBuffer, 0, count);
+				written += count;
+			}
+
+			return written;
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Reads part of the archive into a new little-endian buffer.
+	 *
+	 * @param offset
+	 * 		the offset to read from, relative to the start of the archive
+	 * @param count
+	 * 		the number of bytes to read
+	 *
+	 * @return the buffer, not null
+	 *
+	 * @throws IOException
+	 * 		if the data cannot be read
+	 */
+	private ByteBuffer read(final long offset, final int count) throws IOException {
+		final byte[] data = new byte[count];
+		readFully(data, count, offset);
+
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Fills the start of an array with part of the archive.
+	 *
+	 * @param data
+	 * 		the array to fill, not null
+	 * @param count
+	 * 		the number of bytes to read
+	 * @param offset
+	 * 		the offset to read from, relative to the start of the archive
+	 *
+	 * @throws IOException
+	 * 		if the data cannot be read
+	 */
+	private void readFully(final byte[] data, final int count, final long offset)
+			throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.wrap(data, 0, count);
+
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, start + offset + buffer.position());
+
+			if (read == -1) {
+				throw new EOFException("The archive ended unexpectedly.");
+			}
+		}
+	}
+
+	/**
+	 * An entry in the central directory of an archive.
+	 */
+	static final class Entry {
+		/**
+		 * The path of the entry within the archive. Directories end with a slash.
+		 */
+		final String name;
+
+		final int flags;
+
+		final int method;
+
+		final long crc;
+
+		final long compressedSize;
+
+		final long size;
+
+		final long localHeaderOffset;
+
+		private Entry(
+				final String name,
+				final int flags,
+				final int method,
+				final long crc,
+				final long compressedSize,
+				final long size,
+				final long localHeaderOffset) {
+
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * @return true if the entry is a directory, false otherwise
+		 */
+		boolean isDirectory() {
+			return name.endsWith("/");
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopier;
+import com.matthewtamlin.android_utilities.library.helpers.AssetReader;
+import com.matthewtamlin.android_utilities.library.helpers.AssetReader.AssetRegion;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Benchmarks which compare reading an asset directly from the APK with extracting it to the file
+ * system and then reading the file, across several asset sizes. Each operation reads the entire
+ * asset once, as a consumer which only needs the asset once would. See {@link BenchmarkRunner} for
+ * details of the measurements and of using the suite as a regression gate.
+ * <p>
+ * The benchmarks take several minutes, so they should be run on their own rather than as part of
+ * the correctness tests.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkAssetReader {
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASURED_ITERATIONS = 15;
+
+	/**
+	 * The benchmark assets, in ascending order of size. They contain random data, so they are
+	 * stored uncompressed in the APK.
+	 */
+	static final String[] BENCHMARK_ASSETS = {
+			"benchmark/4k.bin",
+			"benchmark/64k.bin",
+			"benchmark/1m.bin"};
+
+	/**
+	 * The size of the buffer which the assets are read into, measured in bytes.
+	 */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private static AssetManager assets;
+
+	private static File outputDirectory;
+
+	private static BenchmarkRunner runner;
+
+	private static AssetCopier copier;
+
+	private static AssetReader reader;
+
+	/**
+	 * Receives the data read by every operation, so that reads do not allocate.
+	 */
+	private static byte[] readBuffer;
+
+	@BeforeClass
+	public static void setupClass() {
+		final Context context = InstrumentationRegistry.getTargetContext();
+
+		assets = InstrumentationRegistry.getContext().getAssets();
+		outputDirectory = new File(context.getCacheDir(), "asset reader benchmark");
+		runner = new BenchmarkRunner("AssetReader", WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+		copier = new AssetCopier();
+		reader = new AssetReader();
+		readBuffer = new byte[READ_BUFFER_SIZE];
+
+		TestAssetCopier.deleteRecursively(outputDirectory);
+
+		// The assets are copied to the same relative paths, so their directory must exist
+		new File(outputDirectory, BENCHMARK_ASSETS[0]).getParentFile().mkdirs();
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws IOException {
+		copier.shutdown();
+		reader.clear();
+		TestAssetCopier.deleteRecursively(outputDirectory);
+
+		runner.finish();
+	}
+
+	/**
+	 * Benchmarks copying each asset to the file system and then reading the file.
+	 *
+	 * @throws Exception
+	 * 		if an asset cannot be copied or read
+	 */
+	@Test
+	public void benchmarkExtractThenRead() throws Exception {
+		for (final String asset : BENCHMARK_ASSETS) {
+			runner.run("extractThenRead/" + getSizeName(asset), new BenchmarkRunner.Operation() {
+				@Override
+				public Object run() throws IOException {
+					copier.copy(assets, outputDirectory, asset);
+
+					return consume(new FileInputStream(new File(outputDirectory, asset)));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Benchmarks reading each asset through a buffered stream from the APK.
+	 *
+	 * @throws Exception
+	 * 		if an asset cannot be read
+	 */
+	@Test
+	public void benchmarkDirectStream() throws Exception {
+		for (final String asset : BENCHMARK_ASSETS) {
+			runner.run("directStream/" + getSizeName(asset), new BenchmarkRunner.Operation() {
+				@Override
+				public Object run() throws IOException {
+					return consume(reader.openStream(assets, asset));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Benchmarks reading each asset through positional reads from its region of the APK, using a
+	 * cached descriptor.
+	 *
+	 * @throws Exception
+	 * 		if an asset cannot be read
+	 */
+	@Test
+	public void benchmarkDirectRegion() throws Exception {
+		final ByteBuffer buffer = ByteBuffer.wrap(readBuffer);
+
+		for (final String asset : BENCHMARK_ASSETS) {
+			runner.run("directRegion/" + getSizeName(asset), new BenchmarkRunner.Operation() {
+				@Override
+				public Object run() throws IOException {
+					final AssetRegion region = reader.openRegion(assets, asset);
+
+					if (region == null) {
+						throw new IllegalStateException(asset + " is compressed in the APK.");
+					}
+
+					try {
+						long position = 0;
+						int count;
+
+						while ((count = region.read(buffer, position)) != -1) {
+							position += count;
+							buffer.clear();
+						}
+
+						return null;
+					} finally {
+						region.close();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reads and closes a stream, discarding the data.
+	 *
+	 * @param in
+	 * 		the stream to read, not null
+	 *
+	 * @return null, so that the operation has no output to release
+	 *
+	 * @throws IOException
+	 * 		if the stream cannot be read
+	 */
+	private static Object consume(final InputStream in) throws IOException {
+		try {
+			while (in.read(readBuffer) != -1) {
+				// Discard the data
+			}
+
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param asset
+	 * 		the name of a benchmark asset, not null
+	 *
+	 * @return the size component of the name of the asset, not null
+	 */
+	static String getSizeName(final String asset) {
+		return asset.substring(asset.lastIndexOf('/') + 1, asset.lastIndexOf('.'));
+	}
+}
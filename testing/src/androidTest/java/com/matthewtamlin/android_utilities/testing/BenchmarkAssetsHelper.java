@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.AssetManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopier;
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopyListener;
+import com.matthewtamlin.android_utilities.library.helpers.AssetsHelper;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.AssetReport;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.CopyPath;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks for {@link AssetsHelper#copyAssetsToDirectory(AssetManager, File, String...)} across
+ * asset sizes and file counts, and for {@link AssetCopier} across buffer strategies. Alongside the
+ * latency measurements of the {@link BenchmarkRunner}, each benchmark records its throughput, the
+ * number of read and write system calls made by a single copy (taken from {@code /proc/self/io},
+ * where available), and the mean time spent on each asset as reported by an {@link
+ * AssetCopyListener}. See {@link BenchmarkRunner} for details of the report and of using the suite
+ * as a regression gate.
+ * <p>
+ * The benchmarks take several minutes, so they should be run on their own rather than as part of
+ * the correctness tests.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkAssetsHelper {
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASURED_ITERATIONS = 15;
+
+	/**
+	 * The directory containing the small benchmark assets, which are 4 KiB each.
+	 */
+	private static final String SMALL_ASSET_DIRECTORY = "benchmark/files";
+
+	/**
+	 * The numbers of small assets copied at once by the file count benchmarks.
+	 */
+	private static final int[] FILE_COUNTS = {1, 8, 32};
+
+	/**
+	 * The buffer sizes used by the stream strategies, measured in bytes.
+	 */
+	private static final int[] BUFFER_SIZES = {
+			8 * 1024,
+			64 * 1024,
+			AssetCopier.DEFAULT_BUFFER_SIZE};
+
+	private static AssetManager assets;
+
+	private static File outputDirectory;
+
+	private static BenchmarkRunner runner;
+
+	/**
+	 * The names of the small benchmark assets, in ascending order.
+	 */
+	private static String[] smallAssets;
+
+	@BeforeClass
+	public static void setupClass() throws IOException {
+		assets = InstrumentationRegistry.getContext().getAssets();
+		outputDirectory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+				"assets helper benchmark");
+		runner = new BenchmarkRunner("AssetsHelper", WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+
+		final String[] names = assets.list(SMALL_ASSET_DIRECTORY);
+		Arrays.sort(names);
+		smallAssets = new String[names.length];
+
+		for (int i = 0; i < names.length; i++) {
+			smallAssets[i] = SMALL_ASSET_DIRECTORY + "/" + names[i];
+		}
+
+		TestAssetCopier.deleteRecursively(outputDirectory);
+		new File(outputDirectory, SMALL_ASSET_DIRECTORY).mkdirs();
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws IOException {
+		TestAssetCopier.deleteRecursively(outputDirectory);
+
+		runner.finish();
+	}
+
+	/**
+	 * Benchmarks {@link AssetsHelper#copyAssetsToDirectory(AssetManager, File, String...)} with a
+	 * single asset of each size.
+	 *
+	 * @throws Exception
+	 * 		if a copy fails
+	 */
+	@Test
+	public void benchmarkCopyAssetsToDirectory_sizes() throws Exception {
+		for (final String asset : BenchmarkAssetReader.BENCHMARK_ASSETS) {
+			measure("copyAssetsToDirectory/size/" + BenchmarkAssetReader.getSizeName(asset), null,
+					new CopyOperation() {
+						@Override
+						public void copy() throws IOException {
+							AssetsHelper.copyAssetsToDirectory(assets, outputDirectory, asset);
+						}
+					});
+		}
+	}
+
+	/**
+	 * Benchmarks {@link AssetsHelper#copyAssetsToDirectory(AssetManager, File, String...)} with
+	 * increasing numbers of small assets.
+	 *
+	 * @throws Exception
+	 * 		if a copy fails
+	 */
+	@Test
+	public void benchmarkCopyAssetsToDirectory_fileCounts() throws Exception {
+		for (final int fileCount : FILE_COUNTS) {
+			final String[] batch = Arrays.copyOf(smallAssets, Math.min(fileCount,
+					smallAssets.length));
+
+			measure("copyAssetsToDirectory/count/" + batch.length, null, new CopyOperation() {
+				@Override
+				public void copy() throws IOException {
+					AssetsHelper.copyAssetsToDirectory(assets, outputDirectory, batch);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Benchmarks copying the largest asset and all of the small assets using streams with each
+	 * buffer size, and using channel transfer.
+	 *
+	 * @throws Exception
+	 * 		if a copy fails
+	 */
+	@Test
+	public void benchmarkBufferStrategies() throws Exception {
+		final String[] sizedAssets = BenchmarkAssetReader.BENCHMARK_ASSETS;
+		final String largeAsset = sizedAssets[sizedAssets.length - 1];
+
+		for (final int bufferSize : BUFFER_SIZES) {
+			final AssetCopier copier = new AssetCopier(bufferSize,
+					AssetCopier.DEFAULT_MAX_THREAD_COUNT);
+			copier.setChannelTransferEnabled(false);
+
+			try {
+				measureStrategy("stream-" + bufferSize / 1024 + "k", copier, CopyPath.STREAM,
+						largeAsset);
+			} finally {
+				copier.shutdown();
+			}
+		}
+
+		final AssetCopier copier = new AssetCopier();
+
+		try {
+			measureStrategy("channelTransfer", copier, CopyPath.CHANNEL_TRANSFER, largeAsset);
+		} finally {
+			copier.shutdown();
+		}
+	}
+
+	/**
+	 * Benchmarks a copier with the largest asset and with all of the small assets. Every copy is
+	 * checked to have used the expected path, so that a strategy which silently falls back to
+	 * another path does not produce misleading results.
+	 *
+	 * @param strategyName
+	 * 		the name of the buffer strategy used by the copier, not null
+	 * @param copier
+	 * 		the copier to benchmark, not null
+	 * @param expectedPath
+	 * 		the path every asset is expected to be copied by, not null
+	 * @param largeAsset
+	 * 		the name of the largest benchmark asset, not null
+	 *
+	 * @throws Exception
+	 * 		if a copy fails
+	 */
+	private static void measureStrategy(
+			final String strategyName,
+			final AssetCopier copier,
+			final CopyPath expectedPath,
+			final String largeAsset)
+			throws Exception {
+
+		measure("bufferStrategy/" + strategyName + "/" +
+				BenchmarkAssetReader.getSizeName(largeAsset), copier, new CopyOperation() {
+			@Override
+			public void copy() throws IOException {
+				checkCopyPath(copier.copy(assets, outputDirectory, largeAsset), expectedPath);
+			}
+		});
+
+		measure("bufferStrategy/" + strategyName + "/count/" + smallAssets.length, copier,
+				new CopyOperation() {
+					@Override
+					public void copy() throws IOException {
+						checkCopyPath(copier.copy(assets, outputDirectory, smallAssets),
+								expectedPath);
+					}
+				});
+	}
+
+	/**
+	 * Checks that every asset in a copy was copied by a particular path.
+	 *
+	 * @param report
+	 * 		the report of the copy, not null
+	 * @param expectedPath
+	 * 		the path every asset is expected to be copied by, not null
+	 *
+	 * @throws IllegalStateException
+	 * 		if any asset was copied by a different path
+	 */
+	private static void checkCopyPath(final CopyReport report, final CopyPath expectedPath) {
+		if (report.getAssetCount(expectedPath) != report.getAssetReports().size()) {
+			throw new IllegalStateException("Assets were not copied using " + expectedPath + ".");
+		}
+	}
+
+	/**
+	 * Runs a copy benchmark, then performs one more copy to measure the throughput, system calls
+	 * and per-asset times.
+	 *
+	 * @param name
+	 * 		the name of the benchmark, unique within the suite, not null
+	 * @param copier
+	 * 		the copier which performs the copy, or null if the copy is performed by the {@link
+	 * 		AssetsHelper}
+	 * @param operation
+	 * 		performs a single copy, not null
+	 *
+	 * @throws Exception
+	 * 		if a copy fails
+	 */
+	private static void measure(
+			final String name,
+			final AssetCopier copier,
+			final CopyOperation operation)
+			throws Exception {
+
+		final BenchmarkResult result = runner.run(name, new BenchmarkRunner.Operation() {
+			@Override
+			public Object run() throws IOException {
+				operation.copy();
+				return null;
+			}
+		});
+
+		final AtomicInteger assetCount = new AtomicInteger();
+		final AtomicLong assetBytes = new AtomicLong();
+		final AtomicLong assetNanos = new AtomicLong();
+		final AssetCopyListener listener = new AssetCopyListener() {
+			@Override
+			public void onAssetCopied(final AssetReport report) {
+				assetCount.incrementAndGet();
+				assetBytes.addAndGet(report.getBytesCopied());
+				assetNanos.addAndGet(report.getElapsedNanos());
+			}
+		};
+
+		if (copier == null) {
+			AssetsHelper.addCopyListener(listener);
+		} else {
+			copier.addCopyListener(listener);
+		}
+
+		final IoCounters before = IoCounters.read();
+
+		try {
+			operation.copy();
+		} finally {
+			if (copier == null) {
+				AssetsHelper.removeCopyListener(listener);
+			} else {
+				copier.removeCopyListener(listener);
+			}
+		}
+
+		final IoCounters after = IoCounters.read();
+
+		runner.recordMetric(name, "bytesPerSecond",
+				assetBytes.get() * result.getOpsPerSecond());
+		runner.recordMetric(name, "meanAssetNanos",
+				assetCount.get() == 0 ? 0 : (double) assetNanos.get() / assetCount.get());
+
+		if (before != null && after != null) {
+			final IoCounters delta = after.minus(before);
+
+			runner.recordMetric(name, "readCallsPerOp", delta.readCalls);
+			runner.recordMetric(name, "writeCallsPerOp", delta.writeCalls);
+			runner.recordMetric(name, "bytesReadPerOp", delta.bytesRead);
+			runner.recordMetric(name, "bytesWrittenPerOp", delta.bytesWritten);
+		}
+	}
+
+	/**
+	 * Performs a single copy.
+	 */
+	private interface CopyOperation {
+		/**
+		 * @throws IOException
+		 * 		if the copy fails
+		 */
+		void copy() throws IOException;
+	}
+}
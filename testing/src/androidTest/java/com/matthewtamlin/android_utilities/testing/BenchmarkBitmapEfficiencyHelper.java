@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
+
+/**
+ * Benchmarks for the decode entry points of the {@link BitmapEfficiencyHelper} class. Each entry
+ * point is measured across several image sizes and formats, and the file entry point is also
+ * measured across several target sizes. See {@link BenchmarkRunner} for details of the measurements
+ * and of using the suite as a regression gate.
+ * <p>
+ * The benchmarks take several minutes, so they should be run on their own rather than as part of
+ * the correctness tests.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkBitmapEfficiencyHelper {
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASURED_ITERATIONS = 15;
+
+	/**
+	 * The dimensions of the generated test images, as {width, height} pairs.
+	 */
+	private static final int[][] IMAGE_SIZES = {{640, 480}, {1600, 1200}, {3264, 2448}};
+
+	/**
+	 * The formats of the generated test images.
+	 */
+	private static final Bitmap.CompressFormat[] FORMATS = {
+			Bitmap.CompressFormat.JPEG,
+			Bitmap.CompressFormat.PNG,
+			Bitmap.CompressFormat.WEBP};
+
+	/**
+	 * The target dimensions used by most benchmarks, typical of a thumbnail grid.
+	 */
+	private static final int THUMBNAIL_SIZE = 256;
+
+	/**
+	 * The number of sampling rates calculated by each operation in the sampling rate benchmarks,
+	 * since a single calculation is too fast to time accurately.
+	 */
+	private static final int SAMPLING_RATE_BATCH_SIZE = 10000;
+
+	private static Context context;
+
+	private static BenchmarkRunner runner;
+
+	/**
+	 * The compressed test images, indexed by size then format.
+	 */
+	private static byte[][][] encodedImages;
+
+	/**
+	 * Files containing the compressed test images, indexed by size then format.
+	 */
+	private static File[][] imageFiles;
+
+	@BeforeClass
+	public static void setupClass() throws IOException {
+		context = InstrumentationRegistry.getTargetContext();
+		runner = new BenchmarkRunner("BitmapEfficiencyHelper", WARMUP_ITERATIONS,
+				MEASURED_ITERATIONS);
+
+		// Caching would skip the work being measured
+		BitmapEfficiencyHelper.setBitmapCache(null);
+		BitmapEfficiencyHelper.setDiskCache(null);
+		BitmapEfficiencyHelper.setBitmapPool(null);
+
+		encodedImages = new byte[IMAGE_SIZES.length][FORMATS.length][];
+		imageFiles = new File[IMAGE_SIZES.length][FORMATS.length];
+
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			final Bitmap source = createTestImage(IMAGE_SIZES[i][0], IMAGE_SIZES[i][1]);
+
+			for (int j = 0; j < FORMATS.length; j++) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				source.compress(FORMATS[j], 90, out);
+				encodedImages[i][j] = out.toByteArray();
+
+				imageFiles[i][j] = new File(context.getCacheDir(), "benchmark-" + getImageName(i, j));
+				writeToFile(encodedImages[i][j], imageFiles[i][j]);
+			}
+
+			source.recycle();
+		}
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws IOException {
+		for (final File[] files : imageFiles) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+
+		runner.finish();
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeResource(android.content.res.Resources, int,
+	 * int, int)}.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeResource() throws Exception {
+		runner.run("decodeResource/raw-image/" + THUMBNAIL_SIZE, new BenchmarkRunner.Operation() {
+			@Override
+			public Object run() {
+				return BitmapEfficiencyHelper.decodeResource(context.getResources(), image,
+						THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+			}
+		});
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeByteArray(byte[], int, int)} across image
+	 * sizes and formats.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeByteArray() throws Exception {
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			for (int j = 0; j < FORMATS.length; j++) {
+				final byte[] data = encodedImages[i][j];
+
+				runner.run("decodeByteArray/" + getImageName(i, j) + "/" + THUMBNAIL_SIZE,
+						new BenchmarkRunner.Operation() {
+							@Override
+							public Object run() {
+								return BitmapEfficiencyHelper.decodeByteArray(data, THUMBNAIL_SIZE,
+										THUMBNAIL_SIZE);
+							}
+						});
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeFile(File, int, int)} across image sizes,
+	 * formats and target sizes.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeFile() throws Exception {
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			final int[] targetSizes = {THUMBNAIL_SIZE, IMAGE_SIZES[i][0] / 3, IMAGE_SIZES[i][0]};
+
+			for (int j = 0; j < FORMATS.length; j++) {
+				for (final int targetSize : targetSizes) {
+					final File file = imageFiles[i][j];
+
+					runner.run("decodeFile/" + getImageName(i, j) + "/" + targetSize,
+							new BenchmarkRunner.Operation() {
+								@Override
+								public Object run() {
+									return BitmapEfficiencyHelper.decodeFile(file, targetSize,
+											targetSize);
+								}
+							});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeStream(java.io.InputStream, int, int)} across
+	 * image sizes and formats.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeStream() throws Exception {
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			for (int j = 0; j < FORMATS.length; j++) {
+				final byte[] data = encodedImages[i][j];
+
+				runner.run("decodeStream/" + getImageName(i, j) + "/" + THUMBNAIL_SIZE,
+						new BenchmarkRunner.Operation() {
+							@Override
+							public Object run() {
+								return BitmapEfficiencyHelper.decodeStream(
+										new ByteArrayInputStream(data), THUMBNAIL_SIZE,
+										THUMBNAIL_SIZE);
+							}
+						});
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeFileDescriptor(java.io.FileDescriptor, int,
+	 * int)} across image sizes and formats.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeFileDescriptor() throws Exception {
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			for (int j = 0; j < FORMATS.length; j++) {
+				final File file = imageFiles[i][j];
+
+				runner.run("decodeFileDescriptor/" + getImageName(i, j) + "/" + THUMBNAIL_SIZE,
+						new BenchmarkRunner.Operation() {
+							@Override
+							public Object run() throws IOException {
+								final FileInputStream in = new FileInputStream(file);
+
+								try {
+									return BitmapEfficiencyHelper.decodeFileDescriptor(in.getFD(),
+											THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+								} finally {
+									in.close();
+								}
+							}
+						});
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#decodeByteBuffer(java.nio.ByteBuffer, int, int)}
+	 * with memory-mapped files across image sizes and formats.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void benchmarkDecodeMappedByteBuffer() throws Exception {
+		for (int i = 0; i < IMAGE_SIZES.length; i++) {
+			for (int j = 0; j < FORMATS.length; j++) {
+				final RandomAccessFile file = new RandomAccessFile(imageFiles[i][j], "r");
+
+				try {
+					final MappedByteBuffer buffer = file.getChannel().map(
+							FileChannel.MapMode.READ_ONLY, 0, file.length());
+
+					runner.run("decodeMappedByteBuffer/" + getImageName(i, j) + "/" +
+							THUMBNAIL_SIZE, new BenchmarkRunner.Operation() {
+						@Override
+						public Object run() {
+							return BitmapEfficiencyHelper.decodeByteBuffer(buffer, THUMBNAIL_SIZE,
+									THUMBNAIL_SIZE);
+						}
+					});
+				} finally {
+					file.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks {@link BitmapEfficiencyHelper#calculateSamplingRate(int, int, int, int)} and
+	 * {@link BitmapEfficiencyHelper#calculateSamplingRates(int[], int[], int[], int[], int[])}
+	 * against the original recursive implementation.
+	 *
+	 * @throws Exception
+	 * 		if a calculation fails
+	 */
+	@Test
+	public void benchmarkCalculateSamplingRate() throws Exception {
+		final int[] rawWidths = new int[SAMPLING_RATE_BATCH_SIZE];
+		final int[] rawHeights = new int[SAMPLING_RATE_BATCH_SIZE];
+		final int[] desWidths = new int[SAMPLING_RATE_BATCH_SIZE];
+		final int[] desHeights = new int[SAMPLING_RATE_BATCH_SIZE];
+		final int[] samplingRates = new int[SAMPLING_RATE_BATCH_SIZE];
+		final Random random = new Random(0);
+
+		for (int i = 0; i < SAMPLING_RATE_BATCH_SIZE; i++) {
+			rawWidths[i] = 1 + random.nextInt(8000);
+			rawHeights[i] = 1 + random.nextInt(8000);
+			desWidths[i] = 1 + random.nextInt(1000);
+			desHeights[i] = 1 + random.nextInt(1000);
+		}
+
+		runner.run("calculateSamplingRate/recursive/" + SAMPLING_RATE_BATCH_SIZE,
+				new BenchmarkRunner.Operation() {
+					@Override
+					public Object run() {
+						for (int i = 0; i < SAMPLING_RATE_BATCH_SIZE; i++) {
+							samplingRates[i] = ReferenceSamplingRate.calculate(rawWidths[i],
+									rawHeights[i], desWidths[i], desHeights[i]);
+						}
+
+						return null;
+					}
+				});
+
+		runner.run("calculateSamplingRate/single/" + SAMPLING_RATE_BATCH_SIZE,
+				new BenchmarkRunner.Operation() {
+					@Override
+					public Object run() {
+						for (int i = 0; i < SAMPLING_RATE_BATCH_SIZE; i++) {
+							samplingRates[i] = BitmapEfficiencyHelper.calculateSamplingRate(
+									rawWidths[i], rawHeights[i], desWidths[i], desHeights[i]);
+						}
+
+						return null;
+					}
+				});
+
+		runner.run("calculateSamplingRate/batch/" + SAMPLING_RATE_BATCH_SIZE,
+				new BenchmarkRunner.Operation() {
+					@Override
+					public Object run() {
+						BitmapEfficiencyHelper.calculateSamplingRates(rawWidths, rawHeights,
+								desWidths, desHeights, samplingRates);
+
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Creates an image with enough detail that it does not compress trivially.
+	 *
+	 * @param width
+	 * 		the width of the image
+	 * @param height
+	 * 		the height of the image
+	 *
+	 * @return the image
+	 */
+	private static Bitmap createTestImage(final int width, final int height) {
+		final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		final int[] row = new int[width];
+		final Random random = new Random(0);
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int red = (x * 255 / width + random.nextInt(16)) & 0xFF;
+				final int green = (y * 255 / height + random.nextInt(16)) & 0xFF;
+				final int blue = ((x + y) & 0xFF) ^ random.nextInt(8);
+
+				row[x] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+			}
+
+			bitmap.setPixels(row, 0, width, 0, y, width, 1);
+		}
+
+		return bitmap;
+	}
+
+	private static String getImageName(final int sizeIndex, final int formatIndex) {
+		return IMAGE_SIZES[sizeIndex][0] + "x" + IMAGE_SIZES[sizeIndex][1] + "." +
+				FORMATS[formatIndex].name().toLowerCase();
+	}
+
+	private static void writeToFile(final byte[] data, final File file) throws IOException {
+		final OutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import java.util.Locale;
+
+/**
+ * The measurements taken by a single benchmark.
+ */
+public class BenchmarkResult {
+	private final String name;
+
+	private final int iterations;
+
+	private final double opsPerSecond;
+
+	private final long p50Nanos;
+
+	private final long p99Nanos;
+
+	private final long allocatedBytesPerOp;
+
+	private final long bitmapBytesPerOp;
+
+	/**
+	 * Constructs a new BenchmarkResult.
+	 *
+	 * @param name
+	 * 		the name of the benchmark
+	 * @param iterations
+	 * 		the number of measured iterations
+	 * @param opsPerSecond
+	 * 		the mean number of operations completed per second
+	 * @param p50Nanos
+	 * 		the median latency of a single operation, measured in nanoseconds
+	 * @param p99Nanos
+	 * 		the 99th percentile latency of a single operation, measured in nanoseconds
+	 * @param allocatedBytesPerOp
+	 * 		the number of bytes allocated by a single operation, including native allocations
+	 * @param bitmapBytesPerOp
+	 * 		the number of bytes used to store the pixels produced by a single operation
+	 */
+	BenchmarkResult(
+			final String name,
+			final int iterations,
+			final double opsPerSecond,
+			final long p50Nanos,
+			final long p99Nanos,
+			final long allocatedBytesPerOp,
+			final long bitmapBytesPerOp) {
+
+		this.name = name;
+		this.iterations = iterations;
+		this.opsPerSecond = opsPerSecond;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.allocatedBytesPerOp = allocatedBytesPerOp;
+		this.bitmapBytesPerOp = bitmapBytesPerOp;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public double getOpsPerSecond() {
+		return opsPerSecond;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getAllocatedBytesPerOp() {
+		return allocatedBytesPerOp;
+	}
+
+	public long getBitmapBytesPerOp() {
+		return bitmapBytesPerOp;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US,
+				"%s: %.1f ops/s, p50 %.3f ms, p99 %.3f ms, %d B allocated/op, %d B bitmap/op (n=%d)",
+				name,
+				opsPerSecond,
+				p50Nanos / 1e6,
+				p99Nanos / 1e6,
+				allocatedBytesPerOp,
+				bitmapBytesPerOp,
+				iterations);
+	}
+}
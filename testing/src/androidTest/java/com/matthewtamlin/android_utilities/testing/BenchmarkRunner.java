@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runs benchmarks on the device and reports their results. Each benchmark is warmed up, then
+ * timed over a fixed number of iterations, then run once more with allocation counting enabled
+ * (which is kept separate since counting slows down allocation).
+ * <p>
+ * Results are logged and written to a properties file named after the suite in the cache
+ * directory of the target context, which can be pulled from the device and used as a baseline for
+ * later runs. To use the suite as a regression gate, pass the path of a baseline file on the device
+ * using the {@code benchmarkBaseline} instrumentation argument (and optionally a tolerance using
+ * the {@code benchmarkTolerance} argument, which defaults to 0.25). Any benchmark whose median
+ * latency exceeds its baseline by more than the tolerance then fails.
+ * <p>
+ * Example: {@code adb shell am instrument -w -e class <benchmark class> -e benchmarkBaseline
+ * /data/local/tmp/baseline.properties <test runner>}
+ */
+public class BenchmarkRunner {
+	private static final String TAG = "BenchmarkRunner";
+
+	/**
+	 * The instrumentation argument which specifies the path of the baseline file.
+	 */
+	public static final String BASELINE_ARGUMENT = "benchmarkBaseline";
+
+	/**
+	 * The instrumentation argument which specifies the allowed regression, as a fraction.
+	 */
+	public static final String TOLERANCE_ARGUMENT = "benchmarkTolerance";
+
+	private static final double DEFAULT_TOLERANCE = 0.25;
+
+	private final String suiteName;
+
+	private final int warmupIterations;
+
+	private final int measuredIterations;
+
+	private final Properties baseline;
+
+	private final double tolerance;
+
+	private final Properties report = new Properties();
+
+	private final List<String> regressions = new ArrayList<>();
+
+	/**
+	 * Constructs a new BenchmarkRunner.
+	 *
+	 * @param suiteName
+	 * 		the name of the suite, used to name the report file
+	 * @param warmupIterations
+	 * 		the number of unmeasured iterations to run before measuring each benchmark
+	 * @param measuredIterations
+	 * 		the number of measured iterations to run for each benchmark
+	 */
+	public BenchmarkRunner(
+			final String suiteName,
+			final int warmupIterations,
+			final int measuredIterations) {
+
+		this.suiteName = suiteName;
+		this.warmupIterations = warmupIterations;
+		this.measuredIterations = measuredIterations;
+
+		final Bundle arguments = InstrumentationRegistry.getArguments();
+		final String baselinePath = arguments == null ? null :
+				arguments.getString(BASELINE_ARGUMENT);
+		final String toleranceArgument = arguments == null ? null :
+				arguments.getString(TOLERANCE_ARGUMENT);
+
+		baseline = baselinePath == null ? null : loadProperties(new File(baselinePath));
+		tolerance = toleranceArgument == null ? DEFAULT_TOLERANCE :
+				Double.parseDouble(toleranceArgument);
+	}
+
+	/**
+	 * Runs a benchmark and records its result. If the operation returns a bitmap, the size of its
+	 * pixels is recorded and it is recycled.
+	 *
+	 * @param name
+	 * 		the name of the benchmark, unique within the suite
+	 * @param operation
+	 * 		the operation to measure
+	 *
+	 * @return the result, not null
+	 *
+	 * @throws Exception
+	 * 		if the operation fails
+	 */
+	public BenchmarkResult run(final String name, final Operation operation) throws Exception {
+		for (int i = 0; i < warmupIterations; i++) {
+			release(operation.run());
+		}
+
+		final long[] latencies = new long[measuredIterations];
+		long totalNanos = 0;
+		long bitmapBytes = 0;
+
+		for (int i = 0; i < measuredIterations; i++) {
+			final long start = System.nanoTime();
+			final Object output = operation.run();
+			latencies[i] = System.nanoTime() - start;
+			totalNanos += latencies[i];
+
+			bitmapBytes = output instanceof Bitmap ? ((Bitmap) output).getByteCount() : 0;
+			release(output);
+		}
+
+		final long allocatedBytes = measureAllocation(operation);
+
+		Arrays.sort(latencies);
+
+		final BenchmarkResult result = new BenchmarkResult(
+				name,
+				measuredIterations,
+				totalNanos == 0 ? 0 : measuredIterations * 1e9 / totalNanos,
+				percentile(latencies, 50),
+				percentile(latencies, 99),
+				allocatedBytes,
+				bitmapBytes);
+
+		record(result);
+
+		return result;
+	}
+
+	/**
+	 * Records an additional measurement for a benchmark, such as its throughput. Additional
+	 * measurements are logged and written to the report, but are not compared to the baseline.
+	 *
+	 * @param name
+	 * 		the name of the benchmark, unique within the suite
+	 * @param metric
+	 * 		the name of the measurement, unique within the benchmark
+	 * @param value
+	 * 		the measured value
+	 */
+	public void recordMetric(final String name, final String metric, final double value) {
+		final String formattedValue = String.format(Locale.US, "%.2f", value);
+
+		Log.i(TAG, name + " " + metric + "=" + formattedValue);
+		report.setProperty(name + "." + metric, formattedValue);
+	}
+
+	/**
+	 * Writes the report for all benchmarks run so far and throws an exception if any of them
+	 * regressed against the baseline.
+	 *
+	 * @throws IOException
+	 * 		if the report cannot be written
+	 * @throws AssertionError
+	 * 		if any benchmark regressed
+	 */
+	public void finish() throws IOException {
+		final File reportFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+				suiteName + ".properties");
+		final OutputStream out = new FileOutputStream(reportFile);
+
+		try {
+			report.store(out, suiteName);
+		} finally {
+			out.close();
+		}
+
+		Log.i(TAG, "Wrote benchmark report to " + reportFile.getAbsolutePath());
+
+		if (!regressions.isEmpty()) {
+			throw new AssertionError("Benchmarks regressed:\n" + joinLines(regressions));
+		}
+	}
+
+	/**
+	 * Logs a result, adds it to the report and compares it to the baseline.
+	 *
+	 * @param result
+	 * 		the result to record
+	 */
+	private void record(final BenchmarkResult result) {
+		Log.i(TAG, result.toString());
+
+		final String name = result.getName();
+		report.setProperty(name + ".opsPerSecond", String.format(Locale.US, "%.2f",
+				result.getOpsPerSecond()));
+		report.setProperty(name + ".p50Nanos", Long.toString(result.getP50Nanos()));
+		report.setProperty(name + ".p99Nanos", Long.toString(result.getP99Nanos()));
+		report.setProperty(name + ".allocatedBytesPerOp",
+				Long.toString(result.getAllocatedBytesPerOp()));
+		report.setProperty(name + ".bitmapBytesPerOp",
+				Long.toString(result.getBitmapBytesPerOp()));
+
+		final String baselineP50 = baseline == null ? null :
+				baseline.getProperty(name + ".p50Nanos");
+
+		if (baselineP50 != null) {
+			final long limit = (long) (Long.parseLong(baselineP50) * (1 + tolerance));
+
+			if (result.getP50Nanos() > limit) {
+				regressions.add(String.format(Locale.US, "%s: p50 %d ns exceeds limit %d ns",
+						name, result.getP50Nanos(), limit));
+			}
+		}
+	}
+
+	/**
+	 * Runs an operation once while counting the bytes allocated on the Java and native heaps.
+	 *
+	 * @param operation
+	 * 		the operation to measure
+	 *
+	 * @return the number of bytes allocated
+	 *
+	 * @throws Exception
+	 * 		if the operation fails
+	 */
+	@SuppressWarnings("deprecation") // No replacement exists for per-thread allocation counting
+	private static long measureAllocation(final Operation operation) throws Exception {
+		Runtime.getRuntime().gc();
+
+		final long nativeBefore = Debug.getNativeHeapAllocatedSize();
+
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+
+		final Object output;
+
+		try {
+			output = operation.run();
+		} finally {
+			Debug.stopAllocCounting();
+		}
+
+		final long javaBytes = Debug.getThreadAllocSize();
+		final long nativeBytes = Math.max(0, Debug.getNativeHeapAllocatedSize() - nativeBefore);
+
+		release(output);
+
+		return javaBytes + nativeBytes;
+	}
+
+	/**
+	 * @param sortedValues
+	 * 		the values to take the percentile of, in ascending order, not empty
+	 * @param percentile
+	 * 		the percentile to take, between 0 and 100
+	 *
+	 * @return the value at the percentile
+	 */
+	private static long percentile(final long[] sortedValues, final int percentile) {
+		final int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+		return sortedValues[Math.max(0, Math.min(sortedValues.length - 1, index))];
+	}
+
+	/**
+	 * Releases the output of an operation so that it does not affect later iterations.
+	 *
+	 * @param output
+	 * 		the output, may be null
+	 */
+	private static void release(final Object output) {
+		if (output instanceof Bitmap) {
+			((Bitmap) output).recycle();
+		}
+	}
+
+	/**
+	 * @param file
+	 * 		the properties file to load
+	 *
+	 * @return the loaded properties
+	 */
+	private static Properties loadProperties(final File file) {
+		final Properties properties = new Properties();
+
+		try {
+			final InputStream in = new FileInputStream(file);
+
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException("Cannot read benchmark baseline " + file, e);
+		}
+
+		return properties;
+	}
+
+	private static String joinLines(final List<String> lines) {
+		final StringBuilder builder = new StringBuilder();
+
+		for (final String line : lines) {
+			builder.append(line).append('\n');
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * An operation to benchmark.
+	 */
+	public interface Operation {
+		/**
+		 * Performs the operation once.
+		 *
+		 * @return the output of the operation, which is released after measurement, may be null
+		 *
+		 * @throws Exception
+		 * 		if the operation fails
+		 */
+		Object run() throws Exception;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * A snapshot of the I/O counters which the kernel keeps for this process in {@code /proc/self/io}.
+ * The counters cover every thread in the process, so the difference between two snapshots taken
+ * around an operation approximates the number of read and write system calls it made, provided
+ * nothing else in the process performs I/O at the same time. Calls which neither read nor write
+ * (such as opening, syncing and renaming files) are not counted.
+ */
+final class IoCounters {
+	private static final String COUNTERS_FILE = "/proc/self/io";
+
+	/**
+	 * The number of read system calls, such as read and pread.
+	 */
+	final long readCalls;
+
+	/**
+	 * The number of write system calls, such as write and pwrite.
+	 */
+	final long writeCalls;
+
+	/**
+	 * The number of bytes passed to read system calls, including data served from the page cache.
+	 */
+	final long bytesRead;
+
+	/**
+	 * The number of bytes passed to write system calls.
+	 */
+	final long bytesWritten;
+
+	private IoCounters(
+			final long readCalls,
+			final long writeCalls,
+			final long bytesRead,
+			final long bytesWritten) {
+
+		this.readCalls = readCalls;
+		this.writeCalls = writeCalls;
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+	}
+
+	/**
+	 * Reads the current counters.
+	 *
+	 * @return the counters, or null if the kernel does not make them available to this process
+	 */
+	static IoCounters read() {
+		long readCalls = -1;
+		long writeCalls = -1;
+		long bytesRead = -1;
+		long bytesWritten = -1;
+
+		try {
+			final BufferedReader reader = new BufferedReader(new FileReader(COUNTERS_FILE));
+
+			try {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					final int separator = line.indexOf(':');
+
+					if (separator == -1) {
+						continue;
+					}
+
+					final String name = line.substring(0, separator);
+					final long value = Long.parseLong(line.substring(separator + 1).trim());
+
+					if (name.equals("syscr")) {
+						readCalls = value;
+					} else if (name.equals("syscw")) {
+						writeCalls = value;
+					} else if (name.equals("rchar")) {
+						bytesRead = value;
+					} else if (name.equals("wchar")) {
+						bytesWritten = value;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (final IOException | NumberFormatException e) {
+			return null;
+		}
+
+		if (readCalls < 0 || writeCalls < 0 || bytesRead < 0 || bytesWritten < 0) {
+			return null;
+		}
+
+		return new IoCounters(readCalls, writeCalls, bytesRead, bytesWritten);
+	}
+
+	/**
+	 * @param earlier
+	 * 		a snapshot taken before this one, not null
+	 *
+	 * @return the change in each counter between the snapshots, not null
+	 */
+	IoCounters minus(final IoCounters earlier) {
+		return new IoCounters(
+				readCalls - earlier.readCalls,
+				writeCalls - earlier.writeCalls,
+				bytesRead - earlier.bytesRead,
+				bytesWritten - earlier.bytesWritten);
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+
+/**
+ * The original recursive implementation of {@link BitmapEfficiencyHelper#calculateSamplingRate(int,
+ * int, int, int)}, kept as a reference for equivalence tests and benchmarks. It never terminates if
+ * both desired dimensions are zero.
+ */
+final class ReferenceSamplingRate {
+	static int calculate(
+			final int rawWidth,
+			final int rawHeight,
+			final int desWidth,
+			final int desHeight) {
+
+		final boolean scalingIsPossible = (rawWidth / 2 >= desWidth) &&
+				(rawHeight / 2 >= desHeight);
+
+		if (scalingIsPossible) {
+			return 2 * calculate(rawWidth / 2, rawHeight / 2, desWidth, desHeight);
+		} else {
+			return 1;
+		}
+	}
+}
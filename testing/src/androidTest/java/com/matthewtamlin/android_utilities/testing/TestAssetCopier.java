@@ -0,0 +1,619 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.AssetManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopier;
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopyListener;
+import com.matthewtamlin.android_utilities.library.helpers.AssetCopier.PendingCopy;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.AssetReport;
+import com.matthewtamlin.android_utilities.library.helpers.CopyReport.CopyPath;
+import com.matthewtamlin.android_utilities.library.helpers.ExtractionReport;
+import com.matthewtamlin.android_utilities.library.helpers.ExtractionReport.ArchiveFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Automated tests for the {@link AssetCopier} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestAssetCopier {
+	private static final String[] ASSETS_TO_COPY = {"small test file.txt", "image.png"};
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private static final String MISSING_ASSET = "missing asset.txt";
+
+	private static final String ASSET_TREE = "tree";
+
+	private static final String[] ASSET_TREE_FILES = {"tree/first.txt",
+			"tree/nested/deeper/deeper.txt", "tree/nested/nested.txt", "tree/second.txt"};
+
+	private static final String ZIP_ARCHIVE = "bundle.zip";
+
+	private static final String GZIP_ARCHIVE = "table.csv.gz";
+
+	private static final String README_TEXT = "Archive entry at the root of the bundle.\n";
+
+	private static final int README_REPEATS = 20;
+
+	private static final int TABLE_ROWS = 500;
+
+	private static final int STORED_REPEATS = 4;
+
+	private static final File OUTPUT_DIR = new File(
+			InstrumentationRegistry.getTargetContext().getCacheDir(), "asset copier test");
+
+	private AssetManager assets;
+
+	private AssetCopier copier;
+
+	@Before
+	public void setup() {
+		assets = InstrumentationRegistry.getContext().getAssets();
+
+		// A tiny buffer ensures each asset takes several reads
+		copier = new AssetCopier(7, 2);
+
+		deleteRecursively(OUTPUT_DIR);
+		assertThat("Output directory could not be created.", OUTPUT_DIR.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		copier.shutdown();
+		deleteRecursively(OUTPUT_DIR);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code bufferSize} argument of
+	 * {@link AssetCopier#AssetCopier(int, int)} is zero.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroBufferSize() {
+		new AssetCopier(0, 1);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code threadCount} argument of
+	 * {@link AssetCopier#AssetCopier(int, int)} is zero.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroThreadCount() {
+		new AssetCopier(1024, 0);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code assets} argument of
+	 * {@link AssetCopier#copy(AssetManager, File, String...)} contains null.
+	 *
+	 * @throws Exception
+	 * 		should not occur in this test, but declared by signature of called method
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCopy_invalidArg_nullAsset() throws Exception {
+		copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY[0], null);
+	}
+
+	/**
+	 * Test to verify that the copied files match the assets, and that the report describes each
+	 * asset in the order requested.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be copied or read
+	 */
+	@Test
+	public void testCopy_validArgs() throws Exception {
+		final CopyReport report = copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY);
+
+		assertThat("Wrong number of asset reports.", report.getAssetReports().size(),
+				is(ASSETS_TO_COPY.length));
+
+		long expectedTotal = 0;
+
+		for (int i = 0; i < ASSETS_TO_COPY.length; i++) {
+			final byte[] expected = readFully(assets.open(ASSETS_TO_COPY[i]));
+			final byte[] actual = readFully(new FileInputStream(new File(OUTPUT_DIR,
+					ASSETS_TO_COPY[i])));
+			final CopyReport.AssetReport assetReport = report.getAssetReports().get(i);
+
+			assertThat("Copied file does not match the asset.", Arrays.equals(expected, actual));
+			assertThat("Asset report is out of order.", assetReport.getAssetName(),
+					is(ASSETS_TO_COPY[i]));
+			assertThat("Asset report has the wrong size.", assetReport.getBytesCopied(),
+					is((long) expected.length));
+
+			expectedTotal += expected.length;
+		}
+
+		assertThat("Total is incorrect.", report.getTotalBytes(), is(expectedTotal));
+	}
+
+	/**
+	 * Test to verify that uncompressed assets are copied using channel transfer. PNG files are
+	 * never compressed when packaged, so the image asset can always be opened as a descriptor.
+	 *
+	 * @throws Exception
+	 * 		if the asset cannot be copied
+	 */
+	@Test
+	public void testCopy_uncompressedAssetUsesChannelTransfer() throws Exception {
+		final CopyReport report = copier.copy(assets, OUTPUT_DIR, "image.png");
+
+		assertThat("Wrong copy path.", report.getAssetReports().get(0).getCopyPath(),
+				is(CopyPath.CHANNEL_TRANSFER));
+		assertThat("Channel transfer was not counted.", copier.getChannelTransferCount(), is(1L));
+		assertThat("Copied file has the wrong size.", new File(OUTPUT_DIR, "image.png").length(),
+				is(report.getTotalBytes()));
+	}
+
+	/**
+	 * Test to verify that all assets are copied using streams when channel transfer is disabled.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be copied
+	 */
+	@Test
+	public void testCopy_channelTransferDisabled() throws Exception {
+		copier.setChannelTransferEnabled(false);
+
+		final CopyReport report = copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY);
+
+		assertThat("Wrong stream count.", report.getAssetCount(CopyPath.STREAM),
+				is(ASSETS_TO_COPY.length));
+		assertThat("Stream copies were not counted.", copier.getStreamCopyCount(),
+				is((long) ASSETS_TO_COPY.length));
+		assertThat("Channel transfer was used.", copier.getChannelTransferCount(), is(0L));
+	}
+
+	/**
+	 * Test to verify that a registered listener is notified once for each copied asset, and that
+	 * it is no longer notified once it has been unregistered.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be copied
+	 */
+	@Test
+	public void testCopy_listenerNotified() throws Exception {
+		final List<AssetReport> reports = new CopyOnWriteArrayList<>();
+		final AssetCopyListener listener = new AssetCopyListener() {
+			@Override
+			public void onAssetCopied(final AssetReport report) {
+				reports.add(report);
+			}
+		};
+
+		copier.addCopyListener(listener);
+		copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY);
+
+		final HashSet<String> reportedAssets = new HashSet<>();
+
+		for (final AssetReport report : reports) {
+			reportedAssets.add(report.getAssetName());
+			assertThat(report.getBytesCopied() > 0, is(true));
+		}
+
+		assertThat(reports.size(), is(ASSETS_TO_COPY.length));
+		assertThat(reportedAssets, is(new HashSet<>(Arrays.asList(ASSETS_TO_COPY))));
+
+		copier.removeCopyListener(listener);
+		copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY);
+
+		assertThat(reports.size(), is(ASSETS_TO_COPY.length));
+	}
+
+	/**
+	 * Test to verify that a second sync by the same app version skips every asset.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be synced
+	 */
+	@Test
+	public void testSync_unchangedAssetsSkipped() throws Exception {
+		final CopyReport first = copier.sync(assets, OUTPUT_DIR, 1, false, ASSETS_TO_COPY);
+		final CopyReport second = copier.sync(assets, OUTPUT_DIR, 1, false, ASSETS_TO_COPY);
+
+		assertThat("First sync skipped assets.", first.getBytesSkipped(), is(0L));
+		assertThat("Second sync wrote assets.", second.getTotalBytes(), is(0L));
+		assertThat("Second sync skipped the wrong number of bytes.", second.getBytesSkipped(),
+				is(first.getTotalBytes()));
+		assertThat("Wrong skipped count.", second.getAssetCount(CopyPath.SKIPPED),
+				is(ASSETS_TO_COPY.length));
+	}
+
+	/**
+	 * Test to verify that assets whose content has not changed are skipped after the app version
+	 * changes.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be synced
+	 */
+	@Test
+	public void testSync_newVersionWithSameContentSkipped() throws Exception {
+		copier.sync(assets, OUTPUT_DIR, 1, false, ASSETS_TO_COPY);
+		final CopyReport report = copier.sync(assets, OUTPUT_DIR, 2, false, ASSETS_TO_COPY);
+
+		assertThat("Unchanged assets were rewritten.", report.getAssetCount(CopyPath.SKIPPED),
+				is(ASSETS_TO_COPY.length));
+	}
+
+	/**
+	 * Test to verify that an asset is copied again if its target file has been modified.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be synced
+	 */
+	@Test
+	public void testSync_modifiedTargetRecopied() throws Exception {
+		copier.sync(assets, OUTPUT_DIR, 1, false, ASSETS_TO_COPY);
+
+		final File target = new File(OUTPUT_DIR, ASSETS_TO_COPY[0]);
+		new FileOutputStream(target).close();
+
+		final CopyReport report = copier.sync(assets, OUTPUT_DIR, 1, false, ASSETS_TO_COPY);
+		final byte[] expected = readFully(assets.open(ASSETS_TO_COPY[0]));
+
+		assertThat("Modified target was not recopied.",
+				report.getAssetReports().get(0).getCopyPath() != CopyPath.SKIPPED);
+		assertThat("Recopied file has the wrong size.", target.length(),
+				is((long) expected.length));
+	}
+
+	/**
+	 * Test to verify that files copied by an earlier sync are deleted when they are no longer
+	 * requested, and that files which were not copied by a sync are kept.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be synced
+	 */
+	@Test
+	public void testSync_staleFilesDeleted() throws Exception {
+		final File unrelated = new File(OUTPUT_DIR, "unrelated.txt");
+		new FileOutputStream(unrelated).close();
+
+		copier.sync(assets, OUTPUT_DIR, 1, true, ASSETS_TO_COPY);
+		final CopyReport report = copier.sync(assets, OUTPUT_DIR, 2, true, ASSETS_TO_COPY[0]);
+
+		assertThat("Wrong deleted assets.", report.getDeletedAssets(),
+				is(Collections.singletonList(ASSETS_TO_COPY[1])));
+		assertThat("Stale file was not deleted.", new File(OUTPUT_DIR, ASSETS_TO_COPY[1]).exists(),
+				is(false));
+		assertThat("Unrelated file was deleted.", unrelated.exists(), is(true));
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code assetDirectory} argument
+	 * of {@link AssetCopier#copyDirectory(AssetManager, String, File)} is null.
+	 *
+	 * @throws Exception
+	 * 		should not occur in this test, but declared by signature of called method
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCopyDirectory_invalidArg_nullAssetDirectory() throws Exception {
+		copier.copyDirectory(assets, null, OUTPUT_DIR);
+	}
+
+	/**
+	 * Test to verify that every file in an asset directory tree is copied to the corresponding
+	 * location in the target directory, and that the report lists the files in path order.
+	 *
+	 * @throws Exception
+	 * 		if the tree cannot be copied or read
+	 */
+	@Test
+	public void testCopyDirectory_validArgs() throws Exception {
+		final File target = new File(OUTPUT_DIR, "copied tree");
+		final CopyReport report = copier.copyDirectory(assets, ASSET_TREE, target);
+
+		assertThat("Wrong number of files copied.", report.getAssetReports().size(),
+				is(ASSET_TREE_FILES.length));
+
+		for (int i = 0; i < ASSET_TREE_FILES.length; i++) {
+			final String relativePath = ASSET_TREE_FILES[i].substring(ASSET_TREE.length() + 1);
+			final byte[] expected = readFully(assets.open(ASSET_TREE_FILES[i]));
+			final byte[] actual = readFully(new FileInputStream(new File(target, relativePath)));
+
+			assertThat("Report is out of order.", report.getAssetReports().get(i).getAssetName(),
+					is(ASSET_TREE_FILES[i]));
+			assertThat("Copied file does not match the asset.", Arrays.equals(expected, actual));
+		}
+	}
+
+	/**
+	 * Test to verify that an asynchronous copy writes every asset, reports its progress, and
+	 * leaves no temporary files behind.
+	 *
+	 * @throws Exception
+	 * 		if the assets cannot be copied
+	 */
+	@Test
+	public void testCopyAsync_validArgs() throws Exception {
+		final PendingCopy pending = copier.copyAsync(assets, OUTPUT_DIR, null, ASSETS_TO_COPY);
+		final CopyReport report = pending.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertThat("Wrong number of asset reports.", report.getAssetReports().size(),
+				is(ASSETS_TO_COPY.length));
+		assertThat("Total bytes were not measured.", pending.getTotalBytes(),
+				is(report.getTotalBytes()));
+		assertThat("Bytes copied is incorrect.", pending.getBytesCopied(),
+				is(report.getTotalBytes()));
+		assertThat("Files copied is incorrect.", pending.getFilesCopied(),
+				is(ASSETS_TO_COPY.length));
+		assertThat("Temporary files were left behind.", findTemporaryFiles(), is(0));
+
+		for (final String asset : ASSETS_TO_COPY) {
+			assertThat("Asset was not copied.", new File(OUTPUT_DIR, asset).exists());
+		}
+	}
+
+	/**
+	 * Test to verify that a cancelled asynchronous copy stops, removes its temporary files, and
+	 * does not provide a result. The copy may finish before it can be cancelled, in which case the
+	 * result is available as normal.
+	 *
+	 * @throws Exception
+	 * 		if the copy does not stop
+	 */
+	@Test
+	public void testCopyAsync_cancelled() throws Exception {
+		final PendingCopy pending = copier.copyAsync(assets, OUTPUT_DIR, null, ASSETS_TO_COPY);
+		final boolean wasCancelled = pending.cancel(true);
+
+		assertThat("Copy did not stop.", pending.awaitTermination(TIMEOUT_SECONDS,
+				TimeUnit.SECONDS));
+		assertThat("Wrong cancellation state.", pending.isCancelled(), is(wasCancelled));
+		assertThat("Temporary files were left behind.", findTemporaryFiles(), is(0));
+
+		if (wasCancelled) {
+			try {
+				pending.get();
+				throw new AssertionError("Result of cancelled copy was available.");
+			} catch (final CancellationException e) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code archiveAsset} argument of
+	 * {@link AssetCopier#extract(AssetManager, String, File)} is null.
+	 *
+	 * @throws Exception
+	 * 		expected, since the archive asset is null
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testExtract_invalidArg_nullArchiveAsset() throws Exception {
+		copier.extract(assets, null, OUTPUT_DIR);
+	}
+
+	/**
+	 * Test to verify that a zip archive is extracted in parallel directly from the APK when it is
+	 * stored uncompressed, which the testing app configures in its build.gradle file.
+	 *
+	 * @throws Exception
+	 * 		if the archive cannot be extracted
+	 */
+	@Test
+	public void testExtract_zipArchive() throws Exception {
+		final ExtractionReport report = copier.extract(assets, ZIP_ARCHIVE, OUTPUT_DIR);
+
+		// The build excludes zip assets from compression, so the entries can be read directly
+		assertThat(report.isParallel(), is(true));
+		checkZipExtraction(report);
+	}
+
+	/**
+	 * Test to verify that a zip archive is extracted as a stream when channel transfer is
+	 * disabled, and that the result is the same as a parallel extraction.
+	 *
+	 * @throws Exception
+	 * 		if the archive cannot be extracted
+	 */
+	@Test
+	public void testExtract_zipArchiveChannelTransferDisabled() throws Exception {
+		copier.setChannelTransferEnabled(false);
+
+		final ExtractionReport report = copier.extract(assets, ZIP_ARCHIVE, OUTPUT_DIR);
+
+		assertThat(report.isParallel(), is(false));
+		checkZipExtraction(report);
+	}
+
+	/**
+	 * Test to verify that a gzip archive is decompressed to a single file named after the asset
+	 * without its extension.
+	 *
+	 * @throws Exception
+	 * 		if the archive cannot be extracted
+	 */
+	@Test
+	public void testExtract_gzipArchive() throws Exception {
+		final ExtractionReport report = copier.extract(assets, GZIP_ARCHIVE, OUTPUT_DIR);
+		final byte[] expected = createTable();
+
+		assertThat(report.getFormat(), is(ArchiveFormat.GZIP));
+		assertThat(report.getExtractedFiles(), is(Collections.singletonList("table.csv")));
+		assertThat(report.getUncompressedBytes(), is((long) expected.length));
+		assertThat(report.getCompressedBytes() < report.getUncompressedBytes(), is(true));
+		assertThat(readFully(new FileInputStream(new File(OUTPUT_DIR, "table.csv"))),
+				is(expected));
+		assertThat(findTemporaryFiles(), is(0));
+	}
+
+	/**
+	 * Test to verify that an exception is thrown when the asset is neither a zip nor a gzip
+	 * archive.
+	 *
+	 * @throws Exception
+	 * 		expected, since the asset is not an archive
+	 */
+	@Test(expected = IOException.class)
+	public void testExtract_notAnArchive() throws Exception {
+		copier.extract(assets, ASSETS_TO_COPY[0], OUTPUT_DIR);
+	}
+
+	/**
+	 * Test to verify that an exception is thrown when one of the assets does not exist.
+	 *
+	 * @throws Exception
+	 * 		expected, since the asset does not exist
+	 */
+	@Test(expected = IOException.class)
+	public void testCopy_missingAsset() throws Exception {
+		copier.copy(assets, OUTPUT_DIR, ASSETS_TO_COPY[0], MISSING_ASSET);
+	}
+
+	/**
+	 * Checks that the test zip archive was extracted correctly to the output directory.
+	 *
+	 * @param report
+	 * 		the report returned by the extraction, not null
+	 *
+	 * @throws IOException
+	 * 		if the extracted files cannot be read
+	 */
+	private static void checkZipExtraction(final ExtractionReport report) throws IOException {
+		final ByteArrayOutputStream readme = new ByteArrayOutputStream();
+		final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+
+		for (int i = 0; i < README_REPEATS; i++) {
+			readme.write(README_TEXT.getBytes("UTF-8"));
+		}
+
+		for (int i = 0; i < STORED_REPEATS * 256; i++) {
+			stored.write(i);
+		}
+
+		final byte[] table = createTable();
+
+		assertThat(report.getFormat(), is(ArchiveFormat.ZIP));
+		assertThat(report.getExtractedFiles(), is(Arrays.asList("readme.txt", "data/values.csv",
+				"data/nested/stored.bin")));
+		assertThat(report.getUncompressedBytes(),
+				is((long) (readme.size() + table.length + stored.size())));
+		assertThat(report.getCompressedBytes() < report.getUncompressedBytes(), is(true));
+
+		assertThat(readFully(new FileInputStream(new File(OUTPUT_DIR, "readme.txt"))),
+				is(readme.toByteArray()));
+		assertThat(readFully(new FileInputStream(new File(OUTPUT_DIR, "data/values.csv"))),
+				is(table));
+		assertThat(readFully(new FileInputStream(new File(OUTPUT_DIR, "data/nested/stored.bin"))),
+				is(stored.toByteArray()));
+		assertThat(new File(OUTPUT_DIR, "data/empty").isDirectory(), is(true));
+		assertThat(findTemporaryFiles(), is(0));
+	}
+
+	/**
+	 * @return the contents of the table in the test archives, not null
+	 *
+	 * @throws IOException
+	 * 		if the table cannot be encoded
+	 */
+	private static byte[] createTable() throws IOException {
+		final StringBuilder table = new StringBuilder();
+
+		for (int i = 0; i < TABLE_ROWS; i++) {
+			table.append(i).append(',').append(i * i).append('\n');
+		}
+
+		return table.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * @return the number of temporary files in the output directory
+	 */
+	private static int findTemporaryFiles() {
+		int count = 0;
+
+		for (final File file : OUTPUT_DIR.listFiles()) {
+			if (file.getName().endsWith(".tmp")) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Reads and closes a stream.
+	 *
+	 * @param in
+	 * 		the stream to read, not null
+	 *
+	 * @return the contents of the stream, not null
+	 *
+	 * @throws IOException
+	 * 		if the stream cannot be read
+	 */
+	static byte[] readFully(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[1024];
+			int count;
+
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Deletes a file, or a directory and all of its contents.
+	 *
+	 * @param file
+	 * 		the file to delete, not null
+	 */
+	static void deleteRecursively(final File file) {
+		final File[] children = file.listFiles();
+
+		if (children != null) {
+			for (final File child : children) {
+				deleteRecursively(child);
+			}
+		}
+
+		file.delete();
+	}
+}
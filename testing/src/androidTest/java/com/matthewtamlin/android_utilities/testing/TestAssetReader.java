@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.AssetManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AssetReader;
+import com.matthewtamlin.android_utilities.library.helpers.AssetReader.AssetRegion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Automated tests for the {@link AssetReader} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestAssetReader {
+	/**
+	 * An asset which is stored uncompressed in the APK.
+	 */
+	private static final String UNCOMPRESSED_ASSET = "image.png";
+
+	private static final String OTHER_UNCOMPRESSED_ASSET = "bundle.zip";
+
+	private static final String MISSING_ASSET = "missing asset.txt";
+
+	private AssetManager assets;
+
+	private AssetReader reader;
+
+	@Before
+	public void setup() {
+		assets = InstrumentationRegistry.getContext().getAssets();
+		reader = new AssetReader(1);
+	}
+
+	@After
+	public void tearDown() {
+		reader.clear();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroMaxOpenDescriptors() {
+		new AssetReader(0);
+	}
+
+	@Test
+	public void testOpenStream_validArgs() throws IOException {
+		final byte[] expected = TestAssetCopier.readFully(assets.open(UNCOMPRESSED_ASSET));
+
+		assertThat(TestAssetCopier.readFully(reader.openStream(assets, UNCOMPRESSED_ASSET)),
+				is(expected));
+	}
+
+	@Test(expected = IOException.class)
+	public void testOpenStream_missingAsset() throws IOException {
+		reader.openStream(assets, MISSING_ASSET);
+	}
+
+	@Test
+	public void testOpenRegion_validArgs() throws IOException {
+		final byte[] expected = TestAssetCopier.readFully(assets.open(UNCOMPRESSED_ASSET));
+		final AssetRegion region = reader.openRegion(assets, UNCOMPRESSED_ASSET);
+
+		assertThat(region, is(notNullValue()));
+
+		try {
+			assertThat(region.getLength(), is((long) expected.length));
+
+			// A larger buffer checks that reads stop at the end of the asset
+			final ByteBuffer buffer = ByteBuffer.allocate(expected.length * 2);
+			long position = 0;
+			int count;
+
+			while ((count = region.read(buffer, position)) != -1) {
+				position += count;
+			}
+
+			assertThat(position, is((long) expected.length));
+
+			final byte[] actual = new byte[expected.length];
+			buffer.flip();
+			buffer.get(actual);
+
+			assertThat(actual, is(expected));
+		} finally {
+			region.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testOpenRegion_missingAsset() throws IOException {
+		reader.openRegion(assets, MISSING_ASSET);
+	}
+
+	@Test
+	public void testOpenRegion_descriptorReused() throws IOException {
+		reader.openRegion(assets, UNCOMPRESSED_ASSET).close();
+		reader.openRegion(assets, UNCOMPRESSED_ASSET).close();
+
+		assertThat(reader.getDescriptorMissCount(), is(1L));
+		assertThat(reader.getDescriptorHitCount(), is(1L));
+		assertThat(reader.getOpenDescriptorCount(), is(1));
+	}
+
+	@Test
+	public void testOpenRegion_leastRecentlyUsedEvicted() throws IOException {
+		final AssetRegion first = reader.openRegion(assets, UNCOMPRESSED_ASSET);
+		final AssetRegion second = reader.openRegion(assets, OTHER_UNCOMPRESSED_ASSET);
+
+		assertThat(reader.getOpenDescriptorCount(), is(1));
+
+		// The evicted descriptor stays open until its region is closed
+		assertThat(first.read(ByteBuffer.allocate(1), 0), is(1));
+
+		first.close();
+		second.close();
+
+		reader.openRegion(assets, UNCOMPRESSED_ASSET).close();
+
+		assertThat(reader.getDescriptorMissCount(), is(3L));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRead_closedRegion() throws IOException {
+		final AssetRegion region = reader.openRegion(assets, UNCOMPRESSED_ASSET);
+
+		region.close();
+		region.read(ByteBuffer.allocate(1), 0);
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder;
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder.PendingDecode;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Automated tests for the {@link AsyncBitmapDecoder} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestAsyncBitmapDecoder {
+	private Resources res;
+
+	private Bitmap fullSizeImage;
+
+	private AsyncBitmapDecoder decoder;
+
+	@Before
+	public void setup() {
+		// Using the target context provides access to the raw resources
+		res = InstrumentationRegistry.getTargetContext().getResources();
+		fullSizeImage = BitmapFactory.decodeResource(res, image);
+		decoder = new AsyncBitmapDecoder(1);
+
+		assertThat("Precondition failed.", fullSizeImage, is(notNullValue()));
+	}
+
+	@After
+	public void tearDown() {
+		decoder.shutdown();
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code threadCount} argument of
+	 * {@link AsyncBitmapDecoder#AsyncBitmapDecoder(int)} is not positive.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroThreadCount() {
+		new AsyncBitmapDecoder(0);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code source} argument of
+	 * {@link AsyncBitmapDecoder#decode(BitmapSource, int, int, AsyncBitmapDecoder.Callback)} is
+	 * null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecode_invalidArg_nullSource() {
+		decoder.decode(null, 10, 10, null);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code priority} argument of
+	 * {@link AsyncBitmapDecoder#decode(BitmapSource, int, int, AsyncBitmapDecoder.Priority,
+	 * AsyncBitmapDecoder.Callback)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecode_invalidArg_nullPriority() {
+		decoder.decode(BitmapSource.fromResource(res, image), 10, 10, null, null);
+	}
+
+	/**
+	 * Test to verify that the result of an asynchronous decode can be obtained from the pending
+	 * decode, and that the result is sub-sampled.
+	 *
+	 * @throws Exception
+	 * 		if waiting for the result fails
+	 */
+	@Test
+	public void testDecode_validArgs() throws Exception {
+		final PendingDecode pending = decoder.decode(
+				BitmapSource.fromResource(res, image),
+				fullSizeImage.getWidth() / 2,
+				fullSizeImage.getHeight() / 2,
+				null);
+
+		final Bitmap decodedImage = pending.get();
+
+		assertThat("Decoded image should not be null.", decodedImage, is(notNullValue()));
+		assertThat("Width was not reduced.", decodedImage.getWidth(), is(lessThan(
+				fullSizeImage.getWidth())));
+		assertThat("Pending decode should be done.", pending.isDone(), is(true));
+	}
+
+	/**
+	 * Test to verify that identical requests made at the same time both receive a result.
+	 *
+	 * @throws Exception
+	 * 		if waiting for the results fails
+	 */
+	@Test
+	public void testDecode_identicalRequests() throws Exception {
+		final BitmapSource source = BitmapSource.fromResource(res, image);
+
+		final PendingDecode first = decoder.decode(source, 10, 10, null);
+		final PendingDecode second = decoder.decode(source, 10, 10, null);
+
+		final Bitmap firstResult = first.get();
+		final Bitmap secondResult = second.get();
+
+		assertThat("Decoded image should not be null.", firstResult, is(notNullValue()));
+		assertThat("Decoded image should not be null.", secondResult, is(notNullValue()));
+	}
+
+	/**
+	 * Test to verify that cancelling a completed decode has no effect.
+	 *
+	 * @throws Exception
+	 * 		if waiting for the result fails
+	 */
+	@Test
+	public void testCancel_afterCompletion() throws Exception {
+		final PendingDecode pending = decoder.decode(
+				BitmapSource.fromResource(res, image), 10, 10, null);
+
+		pending.get();
+
+		assertThat("Completed decode was cancelled.", pending.cancel(true), is(false));
+		assertThat("Completed decode reports cancellation.", pending.isCancelled(), is(false));
+	}
+}
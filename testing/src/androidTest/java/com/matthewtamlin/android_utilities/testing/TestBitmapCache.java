@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapCache;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Automated tests for the {@link BitmapCache} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBitmapCache {
+	private static final int CACHE_SIZE_BYTES = 16 * 1024 * 1024;
+
+	private Resources res;
+
+	private BitmapCache cache;
+
+	@Before
+	public void setup() {
+		// Using the target context provides access to the raw resources
+		res = InstrumentationRegistry.getTargetContext().getResources();
+		cache = new BitmapCache(CACHE_SIZE_BYTES);
+
+		BitmapEfficiencyHelper.setBitmapCache(cache);
+	}
+
+	@After
+	public void tearDown() {
+		BitmapEfficiencyHelper.setBitmapCache(null);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code maxSizeBytes} argument
+	 * of {@link BitmapCache#BitmapCache(int)} is not positive.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroMaxSize() {
+		new BitmapCache(0);
+	}
+
+	/**
+	 * Test to verify that decoding the same source at the same size twice returns the cached
+	 * bitmap, and that the statistics are updated.
+	 */
+	@Test
+	public void testDecode_sameSourceAndSize() {
+		final Bitmap first = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromResource(res, image), 10, 10);
+		final Bitmap second = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromResource(res, image), 10, 10);
+
+		assertThat("Decoded image should not be null.", first, is(notNullValue()));
+		assertThat("Cached image was not returned.", second, is(sameInstance(first)));
+		assertThat("Hit count should be 1.", cache.getHitCount(), is(1));
+		assertThat("Miss count should be 1.", cache.getMissCount(), is(1));
+		assertThat("Cache size is incorrect.", cache.getCurrentSize(), is(first.getByteCount()));
+	}
+
+	/**
+	 * Test to verify that decoding the same source at a different size does not return the cached
+	 * bitmap.
+	 */
+	@Test
+	public void testDecode_sameSourceDifferentSize() {
+		final Bitmap first = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromResource(res, image), 10, 10);
+		final Bitmap second = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromResource(res, image), 20, 20);
+
+		assertThat("Cached image was returned.", second, is(not(sameInstance(first))));
+		assertThat("Hit count should be 0.", cache.getHitCount(), is(0));
+		assertThat("Miss count should be 2.", cache.getMissCount(), is(2));
+	}
+
+	/**
+	 * Test to verify that evicting all entries empties the cache.
+	 */
+	@Test
+	public void testEvictAll() {
+		BitmapEfficiencyHelper.decode(BitmapSource.fromResource(res, image), 10, 10);
+
+		cache.evictAll();
+
+		assertThat("Cache should be empty.", cache.getCurrentSize(), is(0));
+	}
+}
@@ -24,21 +24,49 @@ import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper.ConfigPolicy;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper.ScalingMode;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapPool;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeStatistics;
+import com.matthewtamlin.android_utilities.library.helpers.ImageMetadata;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper.decodeResource;
 import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  * Automated tests for the {@link BitmapEfficiencyHelper} class.
@@ -133,6 +161,85 @@ public class TestBitmapEfficiencyHelper {
 		assertThat("Sampling rate should be 2.", samplingRate, is(2));
 	}
 
+	/**
+	 * Test to verify that the {@link BitmapEfficiencyHelper#calculateSamplingRate(int, int, int,
+	 * int)} method returns the same results as the original recursive implementation, for every
+	 * combination of small dimensions and for random large dimensions.
+	 */
+	@Test
+	public void testCalculateSamplingRate_equivalentToRecursiveImplementation() {
+		for (int rawWidth = 0; rawWidth <= 64; rawWidth++) {
+			for (int rawHeight = 0; rawHeight <= 64; rawHeight++) {
+				for (int desWidth = 0; desWidth <= 32; desWidth++) {
+					for (int desHeight = 0; desHeight <= 32; desHeight++) {
+						// The recursive implementation never terminates in this case
+						if (desWidth != 0 || desHeight != 0) {
+							checkSamplingRateEquivalence(rawWidth, rawHeight, desWidth, desHeight);
+						}
+					}
+				}
+			}
+		}
+
+		final Random random = new Random(0);
+
+		for (int i = 0; i < 100000; i++) {
+			final int rawWidth = random.nextInt(Integer.MAX_VALUE);
+			final int rawHeight = random.nextInt(Integer.MAX_VALUE);
+			final int desWidth = 1 + random.nextInt(1 << random.nextInt(31));
+			final int desHeight = random.nextInt(1 << random.nextInt(31));
+
+			checkSamplingRateEquivalence(rawWidth, rawHeight, desWidth, desHeight);
+		}
+	}
+
+	/**
+	 * Test to verify that the {@link BitmapEfficiencyHelper#calculateSamplingRate(int, int, int,
+	 * int)} method reduces the larger raw dimension to a single pixel when both desired dimensions
+	 * are zero.
+	 */
+	@Test
+	public void testCalculateSamplingRate_validArgs_desiredDimensionsZero() {
+		assertThat(BitmapEfficiencyHelper.calculateSamplingRate(100, 40, 0, 0), is(64));
+		assertThat(BitmapEfficiencyHelper.calculateSamplingRate(0, 0, 0, 0), is(1));
+		assertThat(BitmapEfficiencyHelper.calculateSamplingRate(Integer.MAX_VALUE, 1, 0, 0),
+				is(1 << 30));
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the arrays passed to {@link
+	 * BitmapEfficiencyHelper#calculateSamplingRates(int[], int[], int[], int[], int[])} have
+	 * different lengths.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCalculateSamplingRates_invalidArg_mismatchedLengths() {
+		BitmapEfficiencyHelper.calculateSamplingRates(new int[2], new int[2], new int[2], new int[1],
+				new int[2]);
+	}
+
+	/**
+	 * Test to verify that the {@link BitmapEfficiencyHelper#calculateSamplingRates(int[], int[],
+	 * int[], int[], int[])} method produces the same results as calculating each sampling rate
+	 * individually.
+	 */
+	@Test
+	public void testCalculateSamplingRates_validArgs() {
+		final int[] rawWidths = {4000, 4000, 100, 640};
+		final int[] rawHeights = {3000, 3000, 100, 480};
+		final int[] desWidths = {256, 4000, 200, 0};
+		final int[] desHeights = {256, 3000, 200, 100};
+		final int[] samplingRates = new int[4];
+
+		BitmapEfficiencyHelper.calculateSamplingRates(rawWidths, rawHeights, desWidths, desHeights,
+				samplingRates);
+
+		for (int i = 0; i < samplingRates.length; i++) {
+			assertThat("Sampling rate " + i + " is incorrect.", samplingRates[i],
+					is(BitmapEfficiencyHelper.calculateSamplingRate(rawWidths[i], rawHeights[i],
+							desWidths[i], desHeights[i])));
+		}
+	}
+
 	/**
 	 * Test to verify that the correct exception is thrown when the {@code context} argument of
 	 * {@link BitmapEfficiencyHelper#decodeResource(Resources, int, int, int)} is null.
@@ -288,4 +395,456 @@ public class TestBitmapEfficiencyHelper {
 	public void testDecodeFile_invalidArg_negativeHeight() {
 		BitmapEfficiencyHelper.decodeFile(new File(""), 10, -1);
 	}
+
+	/**
+	 * Test to verify that the {@link BitmapEfficiencyHelper#decodeFile(File, int, int)} method
+	 * reads fewer bytes from the file when single-open decoding is enabled than when it is
+	 * disabled.
+	 *
+	 * @throws Exception
+	 * 		if the test image cannot be written to a file
+	 */
+	@Test
+	public void testDecodeFile_singleOpenReadsLess() throws Exception {
+		final File imageFile = writeTestImageToFile();
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+		final DecodeStatistics statistics = BitmapEfficiencyHelper.getStatistics();
+
+		try {
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(false);
+			statistics.reset();
+			final Bitmap twoOpenImage = BitmapEfficiencyHelper.decodeFile(imageFile, testWidth,
+					testHeight);
+			final long twoOpenBytesRead = statistics.getBytesReadPerDecode();
+
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(true);
+			statistics.reset();
+			final Bitmap singleOpenImage = BitmapEfficiencyHelper.decodeFile(imageFile, testWidth,
+					testHeight);
+			final long singleOpenBytesRead = statistics.getBytesReadPerDecode();
+
+			assertThat("Decoded image should not be null.", twoOpenImage, is(notNullValue()));
+			assertThat("Decoded image should not be null.", singleOpenImage, is(notNullValue()));
+			assertThat("Single-open decode changed the result.", singleOpenImage.getWidth(),
+					is(twoOpenImage.getWidth()));
+			assertThat("Single-open decode did not read less.", singleOpenBytesRead,
+					is(lessThan(twoOpenBytesRead)));
+		} finally {
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(true);
+		}
+	}
+
+	/**
+	 * Test to verify that the {@link BitmapEfficiencyHelper#decodeResource(Resources, int, int,
+	 * int)} method reports the bytes read from the resource whether or not single-open decoding is
+	 * enabled, and reads fewer bytes when it is enabled.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void testDecodeResource_singleOpenReadsLess() throws Exception {
+		final Resources res = context.getResources();
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+		final DecodeStatistics statistics = BitmapEfficiencyHelper.getStatistics();
+
+		try {
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(false);
+			statistics.reset();
+			final Bitmap twoOpenImage = decodeResource(res, IMAGE_RES_ID, testWidth, testHeight);
+			final long twoOpenBytesRead = statistics.getBytesReadPerDecode();
+
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(true);
+			statistics.reset();
+			final Bitmap singleOpenImage = decodeResource(res, IMAGE_RES_ID, testWidth,
+					testHeight);
+			final long singleOpenBytesRead = statistics.getBytesReadPerDecode();
+
+			assertThat("Decoded image should not be null.", twoOpenImage, is(notNullValue()));
+			assertThat("Decoded image should not be null.", singleOpenImage, is(notNullValue()));
+			assertThat("No bytes were reported for the two-open decode.", twoOpenBytesRead,
+					is(greaterThan(0L)));
+			assertThat("Single-open decode did not read less.", singleOpenBytesRead,
+					is(lessThan(twoOpenBytesRead)));
+		} finally {
+			BitmapEfficiencyHelper.setSingleOpenDecodingEnabled(true);
+		}
+	}
+
+	/**
+	 * Test to verify that decoding with {@link ScalingMode#EXACT} produces an image which is no
+	 * smaller than the desired dimensions, and smaller than the sub-sampled image.
+	 */
+	@Test
+	public void testDecodeResource_exactScaling() {
+		final int testWidth = (int) (fullSizeImage.getWidth() * 0.3);
+		final int testHeight = (int) (fullSizeImage.getHeight() * 0.3);
+
+		try {
+			BitmapEfficiencyHelper.setScalingMode(ScalingMode.SUBSAMPLE);
+			final Bitmap sampledImage = decodeResource(context.getResources(), IMAGE_RES_ID,
+					testWidth, testHeight);
+
+			BitmapEfficiencyHelper.setScalingMode(ScalingMode.EXACT);
+			final Bitmap scaledImage = decodeResource(context.getResources(), IMAGE_RES_ID,
+					testWidth, testHeight);
+
+			assertThat("Decoded image should not be null.", scaledImage, is(notNullValue()));
+			assertThat("Width is less than desired.", scaledImage.getWidth(),
+					is(greaterThanOrEqualTo(testWidth)));
+			assertThat("Height is less than desired.", scaledImage.getHeight(),
+					is(greaterThanOrEqualTo(testHeight)));
+			assertThat("Image was not scaled beyond sub-sampling.", scaledImage.getByteCount(),
+					is(lessThan(sampledImage.getByteCount())));
+		} finally {
+			BitmapEfficiencyHelper.setScalingMode(ScalingMode.SUBSAMPLE);
+		}
+	}
+
+	/**
+	 * Test to verify that decoding an opaque JPEG with {@link ConfigPolicy#RGB_565_IF_OPAQUE}
+	 * produces an RGB_565 image.
+	 */
+	@Test
+	public void testDecode_rgb565IfOpaquePolicy_jpeg() {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		fullSizeImage.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+		final byte[] jpegData = stream.toByteArray();
+
+		final Bitmap decodedImage = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromByteArray(jpegData, 0, jpegData.length),
+				10,
+				10,
+				ConfigPolicy.RGB_565_IF_OPAQUE);
+
+		assertThat("Decoded image should not be null.", decodedImage, is(notNullValue()));
+		assertThat("Wrong config used.", decodedImage.getConfig(), is(Bitmap.Config.RGB_565));
+	}
+
+	/**
+	 * Test to verify that decoding a PNG with {@link ConfigPolicy#RGB_565_IF_OPAQUE} produces an
+	 * ARGB_8888 image, since PNGs may have an alpha channel.
+	 */
+	@Test
+	public void testDecode_rgb565IfOpaquePolicy_png() {
+		final Bitmap decodedImage = BitmapEfficiencyHelper.decode(
+				BitmapSource.fromResource(context.getResources(), IMAGE_RES_ID),
+				10,
+				10,
+				ConfigPolicy.RGB_565_IF_OPAQUE);
+
+		assertThat("Decoded image should not be null.", decodedImage, is(notNullValue()));
+		assertThat("Wrong config used.", decodedImage.getConfig(), is(Bitmap.Config.ARGB_8888));
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code source} argument of
+	 * {@link BitmapEfficiencyHelper#probe(BitmapSource)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testProbe_invalidArg_nullSource() {
+		BitmapEfficiencyHelper.probe(null);
+	}
+
+	/**
+	 * Test to verify that probing a resource returns the unscaled dimensions of the image, and that
+	 * the result is cached.
+	 */
+	@Test
+	public void testProbeResource_validArgs() {
+		final Resources res = context.getResources();
+
+		final BitmapFactory.Options bounds = new BitmapFactory.Options();
+		bounds.inJustDecodeBounds = true;
+		bounds.inScaled = false;
+		BitmapFactory.decodeResource(res, IMAGE_RES_ID, bounds);
+
+		BitmapEfficiencyHelper.clearMetadataCache();
+		final ImageMetadata metadata = BitmapEfficiencyHelper.probeResource(res, IMAGE_RES_ID);
+
+		assertThat("Metadata should not be null.", metadata, is(notNullValue()));
+		assertThat("Width is incorrect.", metadata.getWidth(), is(bounds.outWidth));
+		assertThat("Height is incorrect.", metadata.getHeight(), is(bounds.outHeight));
+		assertThat("MIME type is incorrect.", metadata.getMimeType(), is(bounds.outMimeType));
+		assertThat("Metadata was not cached.",
+				BitmapEfficiencyHelper.probeResource(res, IMAGE_RES_ID), is(sameInstance(metadata)));
+	}
+
+	/**
+	 * Test to verify that probing a non-existent resource returns null.
+	 */
+	@Test
+	public void testProbeResource_nonExistentResource() {
+		final ImageMetadata metadata = BitmapEfficiencyHelper.probeResource(
+				context.getResources(), -1);
+
+		assertThat("Metadata should be null.", metadata, is(nullValue()));
+	}
+
+	/**
+	 * Test to verify that probing a stream returns the dimensions of the image, and rewinds the
+	 * stream so that it can still be decoded.
+	 */
+	@Test
+	public void testProbeStream_rewindsStream() {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		fullSizeImage.compress(Bitmap.CompressFormat.PNG, 100, compressed);
+
+		final InputStream stream = new BufferedInputStream(
+				new ByteArrayInputStream(compressed.toByteArray()));
+
+		final ImageMetadata metadata = BitmapEfficiencyHelper.probeStream(stream);
+
+		assertThat("Metadata should not be null.", metadata, is(notNullValue()));
+		assertThat("Width is incorrect.", metadata.getWidth(), is(fullSizeImage.getWidth()));
+		assertThat("Height is incorrect.", metadata.getHeight(), is(fullSizeImage.getHeight()));
+		assertThat("MIME type is incorrect.", metadata.getMimeType(), is("image/png"));
+		assertThat("Stream was not rewound.", BitmapFactory.decodeStream(stream),
+				is(notNullValue()));
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code stream} argument of
+	 * {@link BitmapEfficiencyHelper#decodeStream(InputStream, int, int)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeStream_invalidArg_nullStream() {
+		BitmapEfficiencyHelper.decodeStream(null, 10, 10);
+	}
+
+	/**
+	 * Test to verify that an image can be sub-sampled from a stream which is only read once.
+	 */
+	@Test
+	public void testDecodeStream_validArgs() {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		fullSizeImage.compress(Bitmap.CompressFormat.PNG, 100, compressed);
+
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+		final Bitmap decoded = BitmapEfficiencyHelper.decodeStream(
+				new ByteArrayInputStream(compressed.toByteArray()), testWidth, testHeight);
+
+		assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+		assertThat("Decoded image is too small.", decoded.getWidth(),
+				is(greaterThanOrEqualTo(testWidth)));
+		assertThat("Decoded image was not sub-sampled.", decoded.getWidth(),
+				is(lessThan(fullSizeImage.getWidth())));
+	}
+
+	/**
+	 * Test to verify that a stream is decoded without drawing from the bitmap pool. If the platform
+	 * rejected the pooled bitmap the image would have to be decoded again, which is not possible
+	 * since the stream can only be read once.
+	 */
+	@Test
+	public void testDecodeStream_bitmapPoolNotUsed() {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		fullSizeImage.compress(Bitmap.CompressFormat.PNG, 100, compressed);
+
+		final int width = fullSizeImage.getWidth();
+		final int height = fullSizeImage.getHeight();
+		final BitmapPool pool = new BitmapPool((long) width * height * 8);
+		pool.put(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+
+		try {
+			BitmapEfficiencyHelper.setBitmapPool(pool);
+
+			final Bitmap decoded = BitmapEfficiencyHelper.decodeStream(
+					new ByteArrayInputStream(compressed.toByteArray()), width, height);
+
+			assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+			assertThat("Decoded image has the wrong width.", decoded.getWidth(), is(width));
+			assertThat("Pooled bitmap was used.", pool.getHitCount(), is(0L));
+			assertThat("Pooled bitmap was removed.", pool.getBitmapCount(), is(1));
+		} finally {
+			BitmapEfficiencyHelper.setBitmapPool(null);
+		}
+	}
+
+	/**
+	 * Test to verify that an image can be decoded from a file descriptor.
+	 *
+	 * @throws Exception
+	 * 		if the test image cannot be written to a file
+	 */
+	@Test
+	public void testDecodeFileDescriptor_validArgs() throws Exception {
+		final FileInputStream in = new FileInputStream(writeTestImageToFile());
+
+		try {
+			final Bitmap decoded = BitmapEfficiencyHelper.decodeFileDescriptor(in.getFD(),
+					fullSizeImage.getWidth(), fullSizeImage.getHeight());
+
+			assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+			assertThat("Decoded image has the wrong width.", decoded.getWidth(),
+					is(fullSizeImage.getWidth()));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Test to verify that an image can be decoded from a memory-mapped file, and that the position
+	 * of the buffer is not changed.
+	 *
+	 * @throws Exception
+	 * 		if the test image cannot be written to a file
+	 */
+	@Test
+	public void testDecodeByteBuffer_mappedFile() throws Exception {
+		final RandomAccessFile file = new RandomAccessFile(writeTestImageToFile(), "r");
+
+		try {
+			final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					0, file.length());
+
+			final Bitmap decoded = BitmapEfficiencyHelper.decodeByteBuffer(buffer,
+					fullSizeImage.getWidth(), fullSizeImage.getHeight());
+
+			assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+			assertThat("Decoded image has the wrong width.", decoded.getWidth(),
+					is(fullSizeImage.getWidth()));
+			assertThat("Buffer position was changed.", buffer.position(), is(0));
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Test to verify that an image can be decoded from a heap buffer which does not start at the
+	 * beginning of its backing array.
+	 */
+	@Test
+	public void testDecodeByteBuffer_heapBufferWithOffset() {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(0);
+		fullSizeImage.compress(Bitmap.CompressFormat.PNG, 100, compressed);
+
+		final ByteBuffer buffer = ByteBuffer.wrap(compressed.toByteArray());
+		buffer.position(1);
+
+		final Bitmap decoded = BitmapEfficiencyHelper.decodeByteBuffer(buffer.slice(),
+				fullSizeImage.getWidth(), fullSizeImage.getHeight());
+
+		assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+		assertThat("Decoded image has the wrong width.", decoded.getWidth(),
+				is(fullSizeImage.getWidth()));
+	}
+
+	/**
+	 * Test to verify that concurrent requests for the same decode all receive a result when
+	 * deduplication is enabled, and that each request is either decoded or shared.
+	 *
+	 * @throws Exception
+	 * 		if the test image cannot be written to a file, or a request fails
+	 */
+	@Test
+	public void testDecodeFile_deduplicationEnabled() throws Exception {
+		final File imageFile = writeTestImageToFile();
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+		final int requestCount = 8;
+		final DecodeStatistics statistics = BitmapEfficiencyHelper.getStatistics();
+		final CyclicBarrier barrier = new CyclicBarrier(requestCount);
+		final ExecutorService executor = Executors.newFixedThreadPool(requestCount);
+
+		try {
+			BitmapEfficiencyHelper.setDeduplicationEnabled(true);
+			statistics.reset();
+
+			final List<Future<Bitmap>> results = new ArrayList<>();
+
+			for (int i = 0; i < requestCount; i++) {
+				results.add(executor.submit(new Callable<Bitmap>() {
+					@Override
+					public Bitmap call() throws Exception {
+						barrier.await();
+						return BitmapEfficiencyHelper.decodeFile(imageFile, testWidth, testHeight);
+					}
+				}));
+			}
+
+			for (final Future<Bitmap> result : results) {
+				final Bitmap decoded = result.get();
+
+				assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+				assertThat("Decoded image has the wrong width.", decoded.getWidth(),
+						is(greaterThanOrEqualTo(testWidth)));
+			}
+
+			assertThat("Some requests were neither decoded nor shared.",
+					statistics.getDecodeCount() + statistics.getDeduplicatedCount(),
+					is((long) requestCount));
+		} finally {
+			executor.shutdown();
+			BitmapEfficiencyHelper.setDeduplicationEnabled(false);
+		}
+	}
+
+	/**
+	 * Test to verify that no requests are shared when deduplication is disabled.
+	 *
+	 * @throws Exception
+	 * 		if the test image cannot be written to a file
+	 */
+	@Test
+	public void testDecodeFile_deduplicationDisabled() throws Exception {
+		final File imageFile = writeTestImageToFile();
+		final DecodeStatistics statistics = BitmapEfficiencyHelper.getStatistics();
+
+		BitmapEfficiencyHelper.setDeduplicationEnabled(false);
+		statistics.reset();
+
+		BitmapEfficiencyHelper.decodeFile(imageFile, fullSizeImage.getWidth(),
+				fullSizeImage.getHeight());
+		BitmapEfficiencyHelper.decodeFile(imageFile, fullSizeImage.getWidth(),
+				fullSizeImage.getHeight());
+
+		assertThat("Decode count should be 2.", statistics.getDecodeCount(), is(2L));
+		assertThat("Deduplicated count should be 0.", statistics.getDeduplicatedCount(), is(0L));
+	}
+
+	/**
+	 * Checks that the sampling rate matches the original recursive implementation.
+	 */
+	private static void checkSamplingRateEquivalence(
+			final int rawWidth,
+			final int rawHeight,
+			final int desWidth,
+			final int desHeight) {
+
+		final int expected = ReferenceSamplingRate.calculate(rawWidth, rawHeight, desWidth,
+				desHeight);
+		final int actual = BitmapEfficiencyHelper.calculateSamplingRate(rawWidth, rawHeight,
+				desWidth, desHeight);
+
+		if (actual != expected) {
+			throw new AssertionError(String.format("Expected %d but was %d for raw %dx%d, desired " +
+					"%dx%d.", expected, actual, rawWidth, rawHeight, desWidth, desHeight));
+		}
+	}
+
+	/**
+	 * Writes the test image to a file in the cache directory of the target context.
+	 *
+	 * @return the file, not null
+	 *
+	 * @throws IOException
+	 * 		if the file cannot be written
+	 */
+	private File writeTestImageToFile() throws IOException {
+		final File imageFile = new File(context.getCacheDir(), "image.png");
+		final OutputStream out = new FileOutputStream(imageFile);
+
+		try {
+			fullSizeImage.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} finally {
+			out.close();
+		}
+
+		return imageFile;
+	}
 }
\ No newline at end of file
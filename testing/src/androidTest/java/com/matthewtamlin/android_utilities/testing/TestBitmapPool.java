@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Automated tests for the {@link BitmapPool} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBitmapPool {
+	private static final int WIDTH = 100;
+
+	private static final int HEIGHT = 50;
+
+	private static final int BITMAP_SIZE_BYTES = WIDTH * HEIGHT * 4;
+
+	private BitmapPool pool;
+
+	@Before
+	public void setup() {
+		pool = new BitmapPool(BITMAP_SIZE_BYTES * 2);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code maxSizeBytes} argument
+	 * of {@link BitmapPool#BitmapPool(long)} is negative.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_negativeMaxSize() {
+		new BitmapPool(-1);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code bitmap} argument of
+	 * {@link BitmapPool#put(Bitmap)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPut_invalidArg_nullBitmap() {
+		pool.put(null);
+	}
+
+	/**
+	 * Test to verify that the {@link BitmapPool#put(Bitmap)} method rejects recycled bitmaps.
+	 */
+	@Test
+	public void testPut_recycledBitmap() {
+		final Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		bitmap.recycle();
+
+		assertThat("Recycled bitmap was pooled.", pool.put(bitmap), is(false));
+		assertThat("Pool size should be 0.", pool.getCurrentSize(), is(0L));
+	}
+
+	/**
+	 * Test to verify that a bitmap added to the pool is returned by a matching request, and that
+	 * the hit and miss counters are updated.
+	 */
+	@Test
+	public void testGet_matchingBitmapPooled() {
+		final Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+
+		assertThat("Mutable bitmap was not pooled.", pool.put(bitmap), is(true));
+		assertThat("Pool size is incorrect.", pool.getCurrentSize(), is((long) BITMAP_SIZE_BYTES));
+
+		final Bitmap reused = pool.get(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+
+		assertThat("Pooled bitmap was not reused.", reused, is(sameInstance(bitmap)));
+		assertThat("Pool size should be 0.", pool.getCurrentSize(), is(0L));
+		assertThat("Hit count should be 1.", pool.getHitCount(), is(1L));
+		assertThat("Miss count should be 0.", pool.getMissCount(), is(0L));
+	}
+
+	/**
+	 * Test to verify that a request is not satisfied when the pool only contains bitmaps which are
+	 * too small, and that the miss counter is updated.
+	 */
+	@Test
+	public void testGet_onlySmallerBitmapPooled() {
+		pool.put(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+		final Bitmap reused = pool.get(WIDTH * 2, HEIGHT * 2, Bitmap.Config.ARGB_8888);
+
+		assertThat("A bitmap was returned.", reused, is(nullValue()));
+		assertThat("Hit count should be 0.", pool.getHitCount(), is(0L));
+		assertThat("Miss count should be 1.", pool.getMissCount(), is(1L));
+	}
+
+	/**
+	 * Test to verify that the least recently pooled bitmap is evicted when the byte budget is
+	 * exceeded.
+	 */
+	@Test
+	public void testPut_budgetExceeded() {
+		final Bitmap first = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		final Bitmap second = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		final Bitmap third = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+
+		pool.put(first);
+		pool.put(second);
+		pool.put(third);
+
+		assertThat("Pool exceeds its budget.", pool.getCurrentSize(),
+				is((long) BITMAP_SIZE_BYTES * 2));
+		assertThat("Eviction count should be 1.", pool.getEvictionCount(), is(1L));
+		assertThat("Eldest bitmap was not recycled.", first.isRecycled(), is(true));
+		assertThat("Newer bitmap was recycled.", third.isRecycled(), is(false));
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapCache;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapPrefetcher;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapPrefetcher.Target;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Automated tests for the {@link BitmapPrefetcher} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBitmapPrefetcher {
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private static final int CACHE_SIZE_BYTES = 32 * 1024 * 1024;
+
+	private Resources res;
+
+	private Bitmap fullSizeImage;
+
+	private BitmapCache cache;
+
+	private AsyncBitmapDecoder asyncDecoder;
+
+	@Before
+	public void setup() {
+		// Using the target context provides access to the raw resources
+		res = InstrumentationRegistry.getTargetContext().getResources();
+		fullSizeImage = BitmapFactory.decodeResource(res, image);
+		cache = new BitmapCache(CACHE_SIZE_BYTES);
+		asyncDecoder = new AsyncBitmapDecoder(1);
+
+		BitmapEfficiencyHelper.setBitmapCache(cache);
+
+		assertThat("Precondition failed.", fullSizeImage, is(notNullValue()));
+	}
+
+	@After
+	public void tearDown() {
+		asyncDecoder.shutdown();
+		BitmapEfficiencyHelper.setBitmapCache(null);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code decoder} argument of
+	 * {@link BitmapPrefetcher#BitmapPrefetcher(AsyncBitmapDecoder, int, long)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_nullDecoder() {
+		new BitmapPrefetcher(null, 1, CACHE_SIZE_BYTES);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code maxConcurrentPrefetches}
+	 * argument of {@link BitmapPrefetcher#BitmapPrefetcher(AsyncBitmapDecoder, int, long)} is
+	 * zero.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroConcurrency() {
+		new BitmapPrefetcher(asyncDecoder, 0, CACHE_SIZE_BYTES);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code targets} argument of
+	 * {@link BitmapPrefetcher#prefetch(List)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPrefetch_invalidArg_nullTargets() {
+		new BitmapPrefetcher(asyncDecoder, 1, CACHE_SIZE_BYTES).prefetch(null);
+	}
+
+	/**
+	 * Test to verify that a prefetched image is placed in the cache, so that a later decode of the
+	 * same image is served from the cache.
+	 */
+	@Test
+	public void testPrefetch_warmsCache() {
+		final BitmapPrefetcher prefetcher = new BitmapPrefetcher(asyncDecoder, 1, CACHE_SIZE_BYTES);
+		final int width = fullSizeImage.getWidth() / 2;
+		final int height = fullSizeImage.getHeight() / 2;
+
+		prefetcher.prefetch(Collections.singletonList(
+				new Target(BitmapSource.fromResource(res, image), width, height)));
+
+		waitForCompletedCount(prefetcher, 1);
+
+		final int hitCount = cache.getHitCount();
+		final Bitmap decoded = BitmapEfficiencyHelper.decodeResource(res, image, width, height);
+
+		assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+		assertThat("Decode was not served from the cache.", cache.getHitCount(), is(hitCount + 1));
+	}
+
+	/**
+	 * Test to verify that only one prefetch is submitted at a time when the concurrency budget is
+	 * one, and that the remaining images are queued.
+	 */
+	@Test
+	public void testPrefetch_concurrencyBudget() {
+		final BitmapPrefetcher prefetcher = new BitmapPrefetcher(asyncDecoder, 1, CACHE_SIZE_BYTES);
+
+		prefetcher.prefetch(createTargets(3));
+
+		assertThat("Too many prefetches are running.", prefetcher.getRunningCount(),
+				is(lessThanOrEqualTo(1)));
+		assertThat("Some prefetches were lost.", prefetcher.getRunningCount() +
+				prefetcher.getQueuedCount() + (int) prefetcher.getCompletedCount(), is(3));
+
+		prefetcher.cancelAll();
+	}
+
+	/**
+	 * Test to verify that images beyond the byte budget are not prefetched.
+	 */
+	@Test
+	public void testPrefetch_memoryBudget() {
+		final List<Target> targets = createTargets(3);
+		final Target first = targets.get(0);
+		final long firstSize = (long) first.getDesWidth() * first.getDesHeight() * 4;
+		final BitmapPrefetcher prefetcher = new BitmapPrefetcher(asyncDecoder, 3, firstSize);
+
+		BitmapEfficiencyHelper.clearMetadataCache();
+		prefetcher.prefetch(targets);
+
+		assertThat("Too many images were prefetched.", prefetcher.getRunningCount() +
+				prefetcher.getQueuedCount() + (int) prefetcher.getCompletedCount(), is(1));
+
+		prefetcher.cancelAll();
+	}
+
+	/**
+	 * Test to verify that moving the window discards prefetches which are no longer in it.
+	 */
+	@Test
+	public void testPrefetch_staleWorkDiscarded() {
+		final BitmapPrefetcher prefetcher = new BitmapPrefetcher(asyncDecoder, 1, CACHE_SIZE_BYTES);
+		final List<Target> targets = createTargets(3);
+
+		prefetcher.prefetch(targets);
+		prefetcher.prefetch(Collections.<Target>emptyList());
+
+		assertThat("Stale prefetches are still running.", prefetcher.getRunningCount(), is(0));
+		assertThat("Stale prefetches are still queued.", prefetcher.getQueuedCount(), is(0));
+	}
+
+	/**
+	 * Test to verify that nothing is prefetched when no bitmap cache is set.
+	 */
+	@Test
+	public void testPrefetch_noCache() {
+		final BitmapPrefetcher prefetcher = new BitmapPrefetcher(asyncDecoder, 1, CACHE_SIZE_BYTES);
+		BitmapEfficiencyHelper.setBitmapCache(null);
+
+		prefetcher.prefetch(createTargets(1));
+
+		assertThat("Prefetch was submitted without a cache.", prefetcher.getRunningCount() +
+				prefetcher.getQueuedCount(), is(0));
+	}
+
+	/**
+	 * Creates targets for the test image at several distinct sizes.
+	 *
+	 * @param count
+	 * 		the number of targets to create
+	 *
+	 * @return the targets, not null
+	 */
+	private List<Target> createTargets(final int count) {
+		final List<Target> targets = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			targets.add(new Target(BitmapSource.fromResource(res, image),
+					fullSizeImage.getWidth() / (i + 2), fullSizeImage.getHeight() / (i + 2)));
+		}
+
+		return targets;
+	}
+
+	/**
+	 * Blocks until the prefetcher has completed the supplied number of prefetches.
+	 *
+	 * @param prefetcher
+	 * 		the prefetcher to wait for, not null
+	 * @param count
+	 * 		the number of prefetches to wait for
+	 */
+	private static void waitForCompletedCount(final BitmapPrefetcher prefetcher, final long count) {
+		final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+
+		while (prefetcher.getCompletedCount() < count) {
+			if (SystemClock.uptimeMillis() > deadline) {
+				throw new AssertionError("Prefetch did not complete in time.");
+			}
+
+			SystemClock.sleep(10);
+		}
+	}
+}
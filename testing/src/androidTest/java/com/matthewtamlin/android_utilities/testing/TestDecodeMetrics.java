@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeEvent;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeListener;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeMetrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Automated tests for the {@link DecodeMetrics} class and the decode listener mechanism of the
+ * {@link BitmapEfficiencyHelper} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDecodeMetrics {
+	private static final int IMAGE_WIDTH = 400;
+
+	private static final int IMAGE_HEIGHT = 300;
+
+	private byte[] encodedImage;
+
+	private DecodeMetrics metrics;
+
+	private List<DecodeEvent> events;
+
+	private DecodeListener recordingListener;
+
+	@Before
+	public void setup() {
+		final Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		image.compress(Bitmap.CompressFormat.PNG, 100, out);
+		encodedImage = out.toByteArray();
+
+		metrics = new DecodeMetrics();
+		events = new ArrayList<>();
+		recordingListener = new DecodeListener() {
+			@Override
+			public void onDecode(final DecodeEvent event) {
+				events.add(event);
+			}
+		};
+
+		BitmapEfficiencyHelper.addDecodeListener(metrics);
+		BitmapEfficiencyHelper.addDecodeListener(recordingListener);
+	}
+
+	@After
+	public void tearDown() {
+		BitmapEfficiencyHelper.removeDecodeListener(metrics);
+		BitmapEfficiencyHelper.removeDecodeListener(recordingListener);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code oversizeThreshold}
+	 * argument of {@link DecodeMetrics#DecodeMetrics(double)} is less than one.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_thresholdLessThanOne() {
+		new DecodeMetrics(0.5);
+	}
+
+	/**
+	 * Test to verify that listeners receive an event describing the decode.
+	 */
+	@Test
+	public void testDecode_listenerNotified() {
+		BitmapEfficiencyHelper.decodeByteArray(encodedImage, IMAGE_WIDTH / 4, IMAGE_HEIGHT / 4);
+
+		assertThat("Wrong number of events.", events.size(), is(1));
+
+		final DecodeEvent event = events.get(0);
+
+		assertThat(event.getSourceType(), is(DecodeEvent.SourceType.BYTE_ARRAY));
+		assertThat(event.getMimeType(), is("image/png"));
+		assertThat(event.getRawWidth(), is(IMAGE_WIDTH));
+		assertThat(event.getRawHeight(), is(IMAGE_HEIGHT));
+		assertThat(event.getDesWidth(), is(IMAGE_WIDTH / 4));
+		assertThat(event.getSampleSize(), is(4));
+		assertThat(event.getOutputWidth(), is(IMAGE_WIDTH / 4));
+		assertThat(event.getByteCount(), is(IMAGE_WIDTH / 4 * IMAGE_HEIGHT / 4 * 4));
+		assertThat(event.getFullDecodeNanos(), is(greaterThan(0L)));
+	}
+
+	/**
+	 * Test to verify that decodes which are much larger than the desired size are counted as
+	 * oversized.
+	 */
+	@Test
+	public void testDecode_oversizedDecodeCounted() {
+		// Slightly too large to sub-sample, so the decoded image has almost four times the pixels
+		BitmapEfficiencyHelper.decodeByteArray(encodedImage, IMAGE_WIDTH / 2 + 1,
+				IMAGE_HEIGHT / 2 + 1);
+
+		assertThat("Decode was not counted.",
+				metrics.getDecodeCount(DecodeEvent.SourceType.BYTE_ARRAY), is(1L));
+		assertThat("Oversized decode was not counted.", metrics.getOversizedDecodeCount(),
+				is(1L));
+		assertThat("Bytes produced were not recorded.", metrics.getBytesProduced().getSum(),
+				is((long) IMAGE_WIDTH * IMAGE_HEIGHT * 4));
+	}
+
+	/**
+	 * Test to verify that unregistered listeners are not notified.
+	 */
+	@Test
+	public void testRemoveDecodeListener() {
+		BitmapEfficiencyHelper.removeDecodeListener(recordingListener);
+		BitmapEfficiencyHelper.decodeByteArray(encodedImage, IMAGE_WIDTH / 4, IMAGE_HEIGHT / 4);
+
+		assertThat("Unregistered listener was notified.", events.size(), is(0));
+	}
+}
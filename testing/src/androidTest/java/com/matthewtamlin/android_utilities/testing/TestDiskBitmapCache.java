@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapEfficiencyHelper;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+import com.matthewtamlin.android_utilities.library.helpers.DecodeStatistics;
+import com.matthewtamlin.android_utilities.library.helpers.DiskBitmapCache;
+import com.matthewtamlin.android_utilities.library.helpers.DiskBitmapCache.Encoding;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Automated tests for the {@link DiskBitmapCache} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDiskBitmapCache {
+	private static final int IMAGE_WIDTH = 400;
+
+	private static final int IMAGE_HEIGHT = 300;
+
+	private static final long CACHE_SIZE_BYTES = 4 * 1024 * 1024;
+
+	private Context context;
+
+	private File cacheDirectory;
+
+	private File imageFile;
+
+	@Before
+	public void setup() throws IOException {
+		context = InstrumentationRegistry.getTargetContext();
+		cacheDirectory = new File(context.getCacheDir(), "test-disk-bitmap-cache");
+		deleteDirectory(cacheDirectory);
+
+		imageFile = new File(context.getCacheDir(), "disk-cache-image.png");
+		final Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+		image.eraseColor(0xFF336699);
+
+		final OutputStream out = new FileOutputStream(imageFile);
+
+		try {
+			image.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		BitmapEfficiencyHelper.setDiskCache(null);
+		deleteDirectory(cacheDirectory);
+		imageFile.delete();
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code directory} argument of
+	 * {@link DiskBitmapCache#DiskBitmapCache(File, long, int, Encoding)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_nullDirectory() {
+		new DiskBitmapCache(null, CACHE_SIZE_BYTES, 1, Encoding.RAW);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code maxSizeBytes} argument
+	 * of {@link DiskBitmapCache#DiskBitmapCache(File, long, int, Encoding)} is not positive.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_zeroMaxSize() {
+		new DiskBitmapCache(cacheDirectory, 0, 1, Encoding.RAW);
+	}
+
+	/**
+	 * Test to verify that a decode is read from a raw disk cache by a new cache instance (as would
+	 * happen after a restart) instead of being decoded again.
+	 */
+	@Test
+	public void testDecode_rawEntryPersisted() {
+		checkEntryPersisted(Encoding.RAW);
+	}
+
+	/**
+	 * Test to verify that a decode is read from a PNG disk cache by a new cache instance (as would
+	 * happen after a restart) instead of being decoded again.
+	 */
+	@Test
+	public void testDecode_pngEntryPersisted() {
+		checkEntryPersisted(Encoding.PNG);
+	}
+
+	/**
+	 * Test to verify that corrupted entries are detected and deleted instead of being returned.
+	 *
+	 * @throws Exception
+	 * 		if the entry cannot be corrupted
+	 */
+	@Test
+	public void testDecode_corruptedEntry() throws Exception {
+		BitmapEfficiencyHelper.setDiskCache(new DiskBitmapCache(cacheDirectory, CACHE_SIZE_BYTES,
+				1, Encoding.RAW));
+		BitmapEfficiencyHelper.decodeFile(imageFile, IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+
+		final File entry = cacheDirectory.listFiles()[0];
+		final RandomAccessFile file = new RandomAccessFile(entry, "rw");
+
+		try {
+			// Flip the last byte of the pixels
+			file.seek(file.length() - 1);
+			final int lastByte = file.read();
+			file.seek(file.length() - 1);
+			file.write(lastByte ^ 0xFF);
+		} finally {
+			file.close();
+		}
+
+		final DiskBitmapCache cache = new DiskBitmapCache(cacheDirectory, CACHE_SIZE_BYTES, 1,
+				Encoding.RAW);
+		BitmapEfficiencyHelper.setDiskCache(cache);
+
+		final Bitmap decoded = BitmapEfficiencyHelper.decodeFile(imageFile, IMAGE_WIDTH / 2,
+				IMAGE_HEIGHT / 2);
+
+		assertThat("Decoded image should not be null.", decoded, is(notNullValue()));
+		assertThat("Corrupted entry was returned.", cache.getHitCount(), is(0L));
+	}
+
+	/**
+	 * Test to verify that the least recently used entries are deleted to keep the cache within
+	 * budget.
+	 */
+	@Test
+	public void testPut_budgetExceeded() {
+		// Each entry holds at least the raw pixels of one quarter-size decode
+		final long entrySize = (IMAGE_WIDTH / 2) * (IMAGE_HEIGHT / 2) * 4;
+		final DiskBitmapCache cache = new DiskBitmapCache(cacheDirectory, entrySize * 2, 1,
+				Encoding.RAW);
+		BitmapEfficiencyHelper.setDiskCache(cache);
+
+		BitmapEfficiencyHelper.decodeFile(imageFile, IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+		BitmapEfficiencyHelper.decodeFile(imageFile, IMAGE_WIDTH / 2 - 1, IMAGE_HEIGHT / 2 - 1);
+		BitmapEfficiencyHelper.decodeFile(imageFile, IMAGE_WIDTH / 2 - 2, IMAGE_HEIGHT / 2 - 2);
+
+		assertThat("Cache exceeds its budget.", cache.getCurrentSize(),
+				is(lessThanOrEqualTo(entrySize * 2)));
+		assertThat("No entries were evicted.", cache.getEvictionCount() > 0, is(true));
+	}
+
+	/**
+	 * Decodes the test image with one cache instance, then decodes it again with a new instance
+	 * backed by the same directory, and checks that the second decode was read from disk.
+	 *
+	 * @param encoding
+	 * 		the encoding to use, not null
+	 */
+	private void checkEntryPersisted(final Encoding encoding) {
+		final DecodeStatistics statistics = BitmapEfficiencyHelper.getStatistics();
+
+		BitmapEfficiencyHelper.setDiskCache(new DiskBitmapCache(cacheDirectory, CACHE_SIZE_BYTES,
+				1, encoding));
+		final Bitmap first = BitmapEfficiencyHelper.decode(BitmapSource.fromFile(imageFile),
+				IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+
+		final DiskBitmapCache restarted = new DiskBitmapCache(cacheDirectory, CACHE_SIZE_BYTES, 1,
+				encoding);
+		BitmapEfficiencyHelper.setDiskCache(restarted);
+		statistics.reset();
+
+		final Bitmap second = BitmapEfficiencyHelper.decode(BitmapSource.fromFile(imageFile),
+				IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+
+		assertThat("Decoded image should not be null.", first, is(notNullValue()));
+		assertThat("Cached image should not be null.", second, is(notNullValue()));
+		assertThat("Entry was not read from disk.", restarted.getHitCount(), is(1L));
+		assertThat("Image was decoded again.", statistics.getDecodeCount(), is(0L));
+		assertThat("Cached image has the wrong width.", second.getWidth(), is(first.getWidth()));
+		assertThat("Cached image has the wrong pixels.", second.getPixel(0, 0),
+				is(first.getPixel(0, 0)));
+	}
+
+	/**
+	 * Deletes a directory and its contents.
+	 *
+	 * @param directory
+	 * 		the directory to delete, not null
+	 */
+	private static void deleteDirectory(final File directory) {
+		final File[] files = directory.listFiles();
+
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+
+		directory.delete();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.Histogram;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Automated tests for the {@link Histogram} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestHistogram {
+	private Histogram histogram;
+
+	@Before
+	public void setup() {
+		histogram = new Histogram();
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code percentile} argument of
+	 * {@link Histogram#getPercentile(double)} is greater than 100.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetPercentile_invalidArg_percentileTooLarge() {
+		histogram.getPercentile(101);
+	}
+
+	/**
+	 * Test to verify that values are placed in the correct buckets.
+	 */
+	@Test
+	public void testRecord_bucketBoundaries() {
+		histogram.record(0);
+		histogram.record(1);
+		histogram.record(2);
+		histogram.record(3);
+		histogram.record(4);
+		histogram.record(-5);
+
+		assertThat("Bucket 0 is incorrect.", histogram.getBucketCount(0), is(2L));
+		assertThat("Bucket 1 is incorrect.", histogram.getBucketCount(1), is(1L));
+		assertThat("Bucket 2 is incorrect.", histogram.getBucketCount(2), is(2L));
+		assertThat("Bucket 3 is incorrect.", histogram.getBucketCount(3), is(1L));
+		assertThat("Upper bound of bucket 3 is incorrect.", Histogram.getBucketUpperBound(3),
+				is(7L));
+	}
+
+	/**
+	 * Test to verify that the summary values and percentiles are calculated correctly.
+	 */
+	@Test
+	public void testGetters_afterRecording() {
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertThat("Count is incorrect.", histogram.getCount(), is(100L));
+		assertThat("Sum is incorrect.", histogram.getSum(), is(5050L));
+		assertThat("Max is incorrect.", histogram.getMax(), is(100L));
+		assertThat("Mean is incorrect.", histogram.getMean(), is(50.5));
+
+		// 50 lies in the bucket holding 32 to 63
+		assertThat("Median is incorrect.", histogram.getPercentile(50), is(63L));
+
+		// 99 lies in the bucket holding 64 to 127, which is limited by the max
+		assertThat("99th percentile is incorrect.", histogram.getPercentile(99), is(100L));
+	}
+
+	/**
+	 * Test to verify that resetting removes all recorded values.
+	 */
+	@Test
+	public void testReset() {
+		histogram.record(10);
+		histogram.reset();
+
+		assertThat("Count is incorrect.", histogram.getCount(), is(0L));
+		assertThat("Max is incorrect.", histogram.getMax(), is(0L));
+		assertThat("Percentile is incorrect.", histogram.getPercentile(50), is(0L));
+	}
+}
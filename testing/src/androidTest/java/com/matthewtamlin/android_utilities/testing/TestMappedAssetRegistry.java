@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.MappedAssetRegistry;
+import com.matthewtamlin.android_utilities.library.helpers.MappedAssetRegistry.MappedAsset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Automated tests for the {@link MappedAssetRegistry} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestMappedAssetRegistry {
+	private static final File OUTPUT_DIR = new File(
+			InstrumentationRegistry.getTargetContext().getCacheDir(), "mapped asset registry test");
+
+	private static final File TABLE_FILE = new File(OUTPUT_DIR, "table.bin");
+
+	private static final int TABLE_SIZE = 64 * 1024;
+
+	private MappedAssetRegistry registry;
+
+	@Before
+	public void setup() throws IOException {
+		registry = new MappedAssetRegistry();
+
+		TestAssetCopier.deleteRecursively(OUTPUT_DIR);
+		assertThat("Output directory could not be created.", OUTPUT_DIR.mkdirs());
+
+		writeTable(TABLE_FILE, TABLE_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		TestAssetCopier.deleteRecursively(OUTPUT_DIR);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcquire_invalidArg_nullFile() throws IOException {
+		registry.acquire(null);
+	}
+
+	@Test(expected = IOException.class)
+	public void testAcquire_missingFile() throws IOException {
+		registry.acquire(new File(OUTPUT_DIR, "missing.bin"));
+	}
+
+	@Test
+	public void testAcquire_validArg() throws IOException {
+		final MappedAsset asset = registry.acquire(TABLE_FILE);
+		final ByteBuffer buffer = asset.getBuffer();
+
+		assertThat(asset.getSize(), is(TABLE_SIZE));
+		assertThat(buffer.isReadOnly(), is(true));
+		assertThat(buffer.remaining(), is(TABLE_SIZE));
+
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			assertThat(buffer.get(i), is((byte) i));
+		}
+
+		assertThat(registry.getMappedCount(), is(1));
+		assertThat(registry.getMappedBytes(), is((long) TABLE_SIZE));
+	}
+
+	@Test(expected = ReadOnlyBufferException.class)
+	public void testGetBuffer_writeRejected() throws IOException {
+		registry.acquire(TABLE_FILE).getBuffer().put(0, (byte) 1);
+	}
+
+	@Test
+	public void testAcquire_sharedUntilAllReleased() throws IOException {
+		final MappedAsset first = registry.acquire(TABLE_FILE);
+		final MappedAsset second = registry.acquire(TABLE_FILE);
+
+		// Views are independent, so reading one does not move the other
+		first.getBuffer().get();
+		assertThat(second.getBuffer().position(), is(0));
+		assertThat(registry.getMappedCount(), is(1));
+
+		first.release();
+		first.release();
+
+		assertThat(first.isReleased(), is(true));
+		assertThat(registry.getMappedCount(), is(1));
+
+		second.release();
+
+		assertThat(registry.getMappedCount(), is(0));
+		assertThat(registry.getMappedBytes(), is(0L));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetBuffer_released() throws IOException {
+		final MappedAsset asset = registry.acquire(TABLE_FILE);
+
+		asset.release();
+		asset.getBuffer();
+	}
+
+	@Test
+	public void testAcquire_replacedFileRemapped() throws IOException {
+		final MappedAsset original = registry.acquire(TABLE_FILE);
+
+		writeTable(TABLE_FILE, TABLE_SIZE / 2);
+
+		final MappedAsset replacement = registry.acquire(TABLE_FILE);
+
+		assertThat(original.getSize(), is(TABLE_SIZE));
+		assertThat(replacement.getSize(), is(TABLE_SIZE / 2));
+		assertThat(registry.getMappedCount(), is(1));
+
+		// Releasing the stale mapping must not drop the current one
+		original.release();
+		assertThat(registry.getMappedCount(), is(1));
+
+		replacement.release();
+		assertThat(registry.getMappedCount(), is(0));
+	}
+
+	/**
+	 * Replaces a file with a table of bytes, where each byte holds the low bits of its index. The
+	 * table is written to a new file which is renamed over the target, as extraction does.
+	 *
+	 * @param file
+	 * 		the file to write, not null
+	 * @param size
+	 * 		the size of the table, measured in bytes
+	 *
+	 * @throws IOException
+	 * 		if the file cannot be written
+	 */
+	private static void writeTable(final File file, final int size) throws IOException {
+		final File tempFile = new File(file.getPath() + ".tmp");
+		final byte[] table = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			table[i] = (byte) i;
+		}
+
+		final FileOutputStream out = new FileOutputStream(tempFile);
+
+		try {
+			out.write(table);
+		} finally {
+			out.close();
+		}
+
+		assertThat("Table could not be written.", tempFile.renameTo(file));
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.AsyncBitmapDecoder;
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+import com.matthewtamlin.android_utilities.library.helpers.ProgressiveBitmapDecoder;
+import com.matthewtamlin.android_utilities.library.helpers.ProgressiveBitmapDecoder.ProgressiveDecode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.matthewtamlin.android_utilities.testing.test.R.raw.image;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Automated tests for the {@link ProgressiveBitmapDecoder} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestProgressiveBitmapDecoder {
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private Resources res;
+
+	private Bitmap fullSizeImage;
+
+	private AsyncBitmapDecoder asyncDecoder;
+
+	private ProgressiveBitmapDecoder decoder;
+
+	@Before
+	public void setup() {
+		// Using the target context provides access to the raw resources
+		res = InstrumentationRegistry.getTargetContext().getResources();
+		fullSizeImage = BitmapFactory.decodeResource(res, image);
+		asyncDecoder = new AsyncBitmapDecoder(1);
+		decoder = new ProgressiveBitmapDecoder(asyncDecoder);
+
+		assertThat("Precondition failed.", fullSizeImage, is(notNullValue()));
+	}
+
+	@After
+	public void tearDown() {
+		asyncDecoder.shutdown();
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code previewDivisor} argument
+	 * of {@link ProgressiveBitmapDecoder#ProgressiveBitmapDecoder(AsyncBitmapDecoder, int)} is not
+	 * greater than one.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_previewDivisorOne() {
+		new ProgressiveBitmapDecoder(asyncDecoder, 1);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code callback} argument of
+	 * {@link ProgressiveBitmapDecoder#decode(BitmapSource, int, int,
+	 * ProgressiveBitmapDecoder.Callback)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecode_invalidArg_nullCallback() {
+		decoder.decode(BitmapSource.fromResource(res, image), 10, 10, null);
+	}
+
+	/**
+	 * Test to verify that the full image is delivered, and that the preview is smaller than the
+	 * full image if it is delivered first.
+	 *
+	 * @throws Exception
+	 * 		if waiting for the result fails
+	 */
+	@Test
+	public void testDecode_validArgs() throws Exception {
+		final CountDownLatch fullLatch = new CountDownLatch(1);
+		final Bitmap[] results = new Bitmap[2];
+
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+
+		final ProgressiveDecode progressive = decoder.decode(
+				BitmapSource.fromResource(res, image),
+				testWidth,
+				testHeight,
+				new ProgressiveBitmapDecoder.Callback() {
+					@Override
+					public void onPreviewDecoded(final Bitmap preview) {
+						results[0] = preview;
+					}
+
+					@Override
+					public void onFullDecoded(final Bitmap bitmap) {
+						results[1] = bitmap;
+						fullLatch.countDown();
+					}
+				});
+
+		assertThat("Full image was not delivered.", fullLatch.await(TIMEOUT_SECONDS,
+				TimeUnit.SECONDS), is(true));
+		assertThat("Full image should not be null.", results[1], is(notNullValue()));
+		assertThat("Full image is too small.", results[1].getWidth(),
+				is(greaterThanOrEqualTo(testWidth)));
+		assertThat("Time to full image was not recorded.", progressive.getTimeToFullMillis(),
+				is(greaterThanOrEqualTo(0L)));
+
+		if (results[0] != null) {
+			assertThat("Preview is not smaller than the full image.", results[0].getWidth(),
+					is(lessThan(results[1].getWidth())));
+			assertThat("Preview arrived after the full image.", progressive.getTimeToPreviewMillis(),
+					is(lessThan(progressive.getTimeToFullMillis() + 1)));
+		}
+	}
+
+	/**
+	 * Test to verify that a stream source is decoded in full without a preview, since the preview
+	 * would consume the stream before the full decode could read it.
+	 *
+	 * @throws Exception
+	 * 		if waiting for the result fails
+	 */
+	@Test
+	public void testDecode_streamSource() throws Exception {
+		final CountDownLatch fullLatch = new CountDownLatch(1);
+		final Bitmap[] results = new Bitmap[2];
+
+		final int testWidth = fullSizeImage.getWidth() / 2;
+		final int testHeight = fullSizeImage.getHeight() / 2;
+		final InputStream stream = res.openRawResource(image);
+
+		try {
+			decoder.decode(
+					BitmapSource.fromStream(stream),
+					testWidth,
+					testHeight,
+					new ProgressiveBitmapDecoder.Callback() {
+						@Override
+						public void onPreviewDecoded(final Bitmap preview) {
+							results[0] = preview;
+						}
+
+						@Override
+						public void onFullDecoded(final Bitmap bitmap) {
+							results[1] = bitmap;
+							fullLatch.countDown();
+						}
+					});
+
+			assertThat("Full image was not delivered.", fullLatch.await(TIMEOUT_SECONDS,
+					TimeUnit.SECONDS), is(true));
+			assertThat("Full image should not be null.", results[1], is(notNullValue()));
+			assertThat("Full image is too small.", results[1].getWidth(),
+					is(greaterThanOrEqualTo(testWidth)));
+			assertThat("Preview should not be delivered.", results[0], is(nullValue()));
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Matthew Tamlin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.matthewtamlin.android_utilities.testing;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.matthewtamlin.android_utilities.library.helpers.BitmapSource;
+import com.matthewtamlin.android_utilities.library.helpers.TiledBitmapDecoder;
+import com.matthewtamlin.android_utilities.library.helpers.TiledBitmapDecoder.Tile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Automated tests for the {@link TiledBitmapDecoder} class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestTiledBitmapDecoder {
+	private static final int IMAGE_WIDTH = 1000;
+
+	private static final int IMAGE_HEIGHT = 600;
+
+	private static final int TILE_SIZE = 256;
+
+	private static final int CACHE_SIZE_BYTES = 16 * 1024 * 1024;
+
+	private byte[] data;
+
+	private BitmapSource source;
+
+	private TiledBitmapDecoder decoder;
+
+	@Before
+	public void setup() throws IOException {
+		final Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		image.compress(Bitmap.CompressFormat.PNG, 100, compressed);
+		image.recycle();
+
+		data = compressed.toByteArray();
+		source = BitmapSource.fromByteArray(data, 0, data.length);
+		decoder = new TiledBitmapDecoder(source, TILE_SIZE, CACHE_SIZE_BYTES, 2);
+	}
+
+	@After
+	public void tearDown() {
+		decoder.recycle();
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code source} argument of
+	 * {@link TiledBitmapDecoder#TiledBitmapDecoder(BitmapSource, int)} is null.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidArg_nullSource() throws IOException {
+		new TiledBitmapDecoder(null, CACHE_SIZE_BYTES);
+	}
+
+	/**
+	 * Test to verify that the correct exception is thrown when the {@code sampleSize} argument of
+	 * {@link TiledBitmapDecoder#decodeViewport(Rect, int)} is not a power of two.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeViewport_invalidArg_sampleSizeNotPowerOfTwo()
+			throws InterruptedException {
+		decoder.decodeViewport(new Rect(0, 0, 10, 10), 3);
+	}
+
+	/**
+	 * Test to verify that the dimensions of the full image are read from the source.
+	 */
+	@Test
+	public void testGetImageDimensions() {
+		assertThat("Image width is incorrect.", decoder.getImageWidth(), is(IMAGE_WIDTH));
+		assertThat("Image height is incorrect.", decoder.getImageHeight(), is(IMAGE_HEIGHT));
+	}
+
+	/**
+	 * Test to verify that {@link TiledBitmapDecoder#calculateSampleSize(float)} returns the largest
+	 * power of two which does not reduce the resolution below the displayed resolution.
+	 */
+	@Test
+	public void testCalculateSampleSize() {
+		assertThat(TiledBitmapDecoder.calculateSampleSize(2f), is(1));
+		assertThat(TiledBitmapDecoder.calculateSampleSize(1f), is(1));
+		assertThat(TiledBitmapDecoder.calculateSampleSize(0.5f), is(2));
+		assertThat(TiledBitmapDecoder.calculateSampleSize(0.3f), is(2));
+		assertThat(TiledBitmapDecoder.calculateSampleSize(0.25f), is(4));
+	}
+
+	/**
+	 * Test to verify that only the tiles which intersect the viewport are decoded, and that each
+	 * tile has the correct size.
+	 */
+	@Test
+	public void testDecodeViewport_fullResolution() throws InterruptedException {
+		// Covers the first two columns and the first row
+		final List<Tile> tiles = decoder.decodeViewport(new Rect(0, 0, 300, 200), 1);
+
+		assertThat("Wrong number of tiles decoded.", tiles.size(), is(2));
+
+		for (final Tile tile : tiles) {
+			assertThat("Tile is in the wrong row.", tile.getRow(), is(0));
+			assertThat("Tile bitmap width is incorrect.", tile.getBitmap().getWidth(), is(TILE_SIZE));
+			assertThat("Tile bitmap height is incorrect.", tile.getBitmap().getHeight(),
+					is(TILE_SIZE));
+		}
+	}
+
+	/**
+	 * Test to verify that edge tiles are clipped to the bounds of the image, and that the whole
+	 * image fits in a single tile at a high enough sample size.
+	 */
+	@Test
+	public void testDecodeViewport_subsampled() throws InterruptedException {
+		final Rect wholeImage = new Rect(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+		final List<Tile> tiles = decoder.decodeViewport(wholeImage, 4);
+
+		assertThat("Wrong number of tiles decoded.", tiles.size(), is(1));
+
+		final Tile tile = tiles.get(0);
+
+		assertThat("Tile region is incorrect.", tile.getRegion(), is(wholeImage));
+		assertThat("Tile bitmap width is incorrect.", tile.getBitmap().getWidth(),
+				is(IMAGE_WIDTH / 4));
+		assertThat("Tile bitmap height is incorrect.", tile.getBitmap().getHeight(),
+				is(IMAGE_HEIGHT / 4));
+	}
+
+	/**
+	 * Test to verify that decoding the same viewport twice returns the cached tiles.
+	 */
+	@Test
+	public void testDecodeViewport_tilesCached() throws InterruptedException {
+		final Rect viewport = new Rect(0, 0, 100, 100);
+
+		final Tile first = decoder.decodeViewport(viewport, 1).get(0);
+		final Tile cached = decoder.getCachedTile(1, 0, 0);
+
+		assertThat("Tile was not cached.", cached, is(notNullValue()));
+		assertThat("Cached tile is not the decoded tile.", cached, is(sameInstance(first)));
+		assertThat("Tile was decoded again.", decoder.decodeViewport(viewport, 1).get(0),
+				is(sameInstance(first)));
+	}
+
+	/**
+	 * Test to verify that no tiles are decoded when the viewport lies outside the image.
+	 */
+	@Test
+	public void testDecodeViewport_viewportOutsideImage() throws InterruptedException {
+		final Rect viewport = new Rect(IMAGE_WIDTH + 10, 0, IMAGE_WIDTH + 100, 100);
+
+		assertThat("Tiles were decoded.", decoder.decodeViewport(viewport, 1).size(), is(0));
+	}
+
+	/**
+	 * Test to verify that every tile is decoded from a source which can only be read once, even
+	 * when several threads are used.
+	 *
+	 * @throws Exception
+	 * 		if a decode fails
+	 */
+	@Test
+	public void testDecodeViewport_streamSource_multipleThreads() throws Exception {
+		final BitmapSource streamSource = BitmapSource.fromStream(new ByteArrayInputStream(data));
+		final TiledBitmapDecoder streamDecoder = new TiledBitmapDecoder(streamSource, TILE_SIZE,
+				CACHE_SIZE_BYTES, 4);
+
+		try {
+			// 4 columns and 3 rows of tiles at full resolution
+			final List<Tile> tiles = streamDecoder.decodeViewport(
+					new Rect(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT), 1);
+
+			assertThat("Wrong number of tiles decoded.", tiles.size(), is(12));
+		} finally {
+			streamDecoder.recycle();
+		}
+	}
+}